@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.benchmark;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.rs.VaultAPI;
+import fr.paris.lutece.plugins.vault.service.VaultPolicyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the policy and token calls made through the shared HTTP client.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+public class VaultAPIBenchmark
+{
+    private Environnement _environnement;
+    private String _strPolicy;
+    private String _strPolicyText;
+    private String _strAccessor;
+
+    /**
+     * Creates the environnement of the policies.
+     *
+     * @param state
+     *            the benchmark state
+     */
+    @Setup( Level.Trial )
+    public void setUp( VaultBenchmarkState state )
+    {
+        _environnement = state.createEnvironnement( 0 );
+        _strPolicy = VaultPolicyService.getPolicyName( VaultBenchmarkState.APPLICATION_CODE, _environnement.getCode( ) );
+        _strPolicyText = VaultPolicyService.renderPolicy( VaultBenchmarkState.APPLICATION_CODE, _environnement.getCode( ) );
+    }
+
+    /**
+     * Adds a token to revoke in the stub.
+     *
+     * @param state
+     *            the benchmark state
+     */
+    @Setup( Level.Invocation )
+    public void createToken( VaultBenchmarkState state )
+    {
+        _strAccessor = UUID.randomUUID( ).toString( );
+        state.getStub( ).getTokens( ).put( _strAccessor, "hvs." + _strAccessor );
+    }
+
+    /**
+     * Creates (or replaces) the policy of the environnement.
+     *
+     * @throws VaultException
+     *             the vault exception
+     */
+    @Benchmark
+    public void createPolicy( ) throws VaultException
+    {
+        VaultAPI.writePolicy( VaultBenchmarkState.APPLICATION_CODE, _strPolicy, _strPolicyText );
+    }
+
+    /**
+     * Renders the policy of the environnement from the compiled template.
+     *
+     * @return the policy
+     */
+    @Benchmark
+    public String renderPolicy( )
+    {
+        return VaultPolicyService.renderPolicy( VaultBenchmarkState.APPLICATION_CODE, _environnement.getCode( ) );
+    }
+
+    /**
+     * Deploys the unchanged policy of the environnement, which is written once and then skipped.
+     *
+     * @return true if the policy was written
+     * @throws VaultException
+     *             the vault exception
+     */
+    @Benchmark
+    public boolean deployPolicy( ) throws VaultException
+    {
+        return VaultPolicyService.getInstance( ).deployPolicy( VaultBenchmarkState.APPLICATION_CODE, _environnement );
+    }
+
+    /**
+     * Removes the policy of the environnement.
+     */
+    @Benchmark
+    public void removePolicy( )
+    {
+        VaultAPI.removePolicy( VaultBenchmarkState.APPLICATION_CODE, _strPolicy );
+    }
+
+    /**
+     * Revokes a token by its accessor.
+     */
+    @Benchmark
+    public void removeTokenJackson( )
+    {
+        VaultAPI.removeTokenJackson( VaultBenchmarkState.APPLICATION_CODE, _strAccessor );
+    }
+}
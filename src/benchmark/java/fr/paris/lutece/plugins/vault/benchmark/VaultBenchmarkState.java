@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.benchmark;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Application;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.service.EnvironnementUtil;
+import fr.paris.lutece.plugins.vault.service.VaultStubServer;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.test.LuteceTestCase;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared state of the benchmarks : the Lutece services started as for the unit tests, and the Vault stub listening on the address configured in
+ * vault.properties (also used by VaultAPI), so no real Vault server must be running there. The stub latency and error rate are read from the
+ * vault.stub.latency and vault.stub.errorRate system properties.
+ */
+@State( Scope.Benchmark )
+public class VaultBenchmarkState
+{
+    public static final String APPLICATION_CODE = "benchmark";
+    public static final String KEY_PREFIX = "key";
+    private static final String PROPERTY_SERVER_ADDRESS = "vault.vaultServerAdress";
+    private static final String PROPERTY_STUB_LATENCY = "vault.stub.latency";
+    private static final String PROPERTY_STUB_ERROR_RATE = "vault.stub.errorRate";
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static final String VALUE = "0123456789abcdef0123456789abcdef";
+
+    private final AtomicInteger _nIdEnvironnement = new AtomicInteger( 100000 );
+    private LuteceContext _context;
+    private VaultStubServer _stub;
+    private Application _application;
+    private double _dErrorRate;
+
+    /**
+     * Starts the Lutece services and the Vault stub.
+     *
+     * @throws Exception
+     *             if the services cannot be started
+     */
+    @Setup( Level.Trial )
+    public void setUp( ) throws Exception
+    {
+        _context = new LuteceContext( );
+        _context.start( );
+
+        URI uri = URI.create( AppPropertiesService.getProperty( PROPERTY_SERVER_ADDRESS ) );
+        _stub = new VaultStubServer( ).start( uri.getPort( ) );
+
+        // Latency (min,max in milliseconds) and error rate given as system properties of the forked JVM
+        String [ ] latency = System.getProperty( PROPERTY_STUB_LATENCY, "0,0" ).split( "," );
+        _stub.setLatency( Long.parseLong( latency [0].trim( ) ), Long.parseLong( latency [latency.length - 1].trim( ) ) );
+        _dErrorRate = Double.parseDouble( System.getProperty( PROPERTY_STUB_ERROR_RATE, "0" ) );
+        _stub.setErrorRate( _dErrorRate, HTTP_SERVICE_UNAVAILABLE );
+
+        _application = new Application( );
+        _application.setId( 1 );
+        _application.setCode( APPLICATION_CODE );
+    }
+
+    /**
+     * Stops the Vault stub and the Lutece services.
+     *
+     * @throws Exception
+     *             if the services cannot be stopped
+     */
+    @TearDown( Level.Trial )
+    public void tearDown( ) throws Exception
+    {
+        _stub.stop( );
+        _context.stop( );
+    }
+
+    /**
+     * Creates an environnement holding the given number of secrets in the stub. The environnement is not stored in the database.
+     *
+     * @param nKeys
+     *            the number of secrets
+     * @return the environnement
+     */
+    public Environnement createEnvironnement( int nKeys )
+    {
+        int nId = _nIdEnvironnement.incrementAndGet( );
+        Environnement environnement = new Environnement( );
+        environnement.setId( nId );
+        environnement.setIdapplication( _application.getId( ) );
+        environnement.setCode( "env" + nId );
+        environnement.setPath( EnvironnementUtil.getEnvironmentPath( APPLICATION_CODE, environnement.getCode( ) ) );
+
+        Map<String, String> mapSecrets = new TreeMap<>( );
+        for ( int i = 0; i < nKeys; i++ )
+        {
+            mapSecrets.put( KEY_PREFIX + i, VALUE );
+        }
+        _stub.putSecrets( environnement.getPath( ), mapSecrets );
+        return environnement;
+    }
+
+    /**
+     * Runs a preparation step of a benchmark (creation or cleanup of an environnement) without the injected errors.
+     *
+     * @param step
+     *            the step
+     * @throws VaultException
+     *             the vault exception
+     */
+    public void prepare( VaultStep step ) throws VaultException
+    {
+        _stub.setErrorRate( 0, HTTP_SERVICE_UNAVAILABLE );
+        try
+        {
+            step.run( );
+        }
+        finally
+        {
+            _stub.setErrorRate( _dErrorRate, HTTP_SERVICE_UNAVAILABLE );
+        }
+    }
+
+    /**
+     * Gets the application of the environnements.
+     *
+     * @return the application
+     */
+    public Application getApplication( )
+    {
+        return _application;
+    }
+
+    /**
+     * Gets the Vault stub.
+     *
+     * @return the stub
+     */
+    public VaultStubServer getStub( )
+    {
+        return _stub;
+    }
+
+    /**
+     * A step calling Vault.
+     */
+    @FunctionalInterface
+    public interface VaultStep
+    {
+        /**
+         * Runs the step.
+         *
+         * @throws VaultException
+         *             the vault exception
+         */
+        void run( ) throws VaultException;
+    }
+
+    /**
+     * Starts the Lutece services (properties, database, Spring context) the same way as the unit tests.
+     */
+    private static final class LuteceContext extends LuteceTestCase
+    {
+        void start( ) throws Exception
+        {
+            setUp( );
+        }
+
+        void stop( ) throws Exception
+        {
+            tearDown( );
+        }
+    }
+}
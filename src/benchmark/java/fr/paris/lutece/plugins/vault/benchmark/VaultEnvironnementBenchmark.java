@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.benchmark;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.service.EnvironnementUtil;
+import fr.paris.lutece.plugins.vault.service.VaultService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the removal and the rename of an environnement. Each invocation works on a new environnement with its own token, created before the
+ * measured call.
+ */
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+public class VaultEnvironnementBenchmark
+{
+    /**
+     * An environnement and its token.
+     */
+    @State( Scope.Thread )
+    public static class RemoveState
+    {
+        @Param( {
+                "10", "100", "1000"
+        } )
+        public int _nKeys;
+
+        private Environnement _environnement;
+
+        /**
+         * Creates the environnement and its token.
+         *
+         * @param state
+         *            the benchmark state
+         * @throws VaultException
+         *             the vault exception
+         */
+        @Setup( Level.Invocation )
+        public void setUp( VaultBenchmarkState state ) throws VaultException
+        {
+            state.prepare( ( ) -> _environnement = createEnvironnement( state, _nKeys ) );
+        }
+    }
+
+    /**
+     * An environnement and its token, with the token of its new code created as the rename job does.
+     */
+    @State( Scope.Thread )
+    public static class RenameState
+    {
+        @Param( {
+                "10", "100", "1000"
+        } )
+        public int _nKeys;
+
+        private Environnement _environnement;
+        private String _strOldCode;
+        private String _strOldToken;
+
+        /**
+         * Creates the environnement, its token and the token of its new code.
+         *
+         * @param state
+         *            the benchmark state
+         * @throws VaultException
+         *             the vault exception
+         */
+        @Setup( Level.Invocation )
+        public void setUp( VaultBenchmarkState state ) throws VaultException
+        {
+            state.prepare( ( ) -> {
+                _environnement = createEnvironnement( state, _nKeys );
+                _strOldCode = _environnement.getCode( );
+                _strOldToken = _environnement.getToken( );
+
+                _environnement.setCode( _strOldCode + "r" );
+                _environnement.setPath( EnvironnementUtil.getEnvironmentPath( VaultBenchmarkState.APPLICATION_CODE, _environnement.getCode( ) ) );
+                VaultService.getInstance( ).createEnvironnementToken( VaultBenchmarkState.APPLICATION_CODE, _environnement );
+                _environnement.setToken( VaultService.getInstance( ).getEnvAccessor( _environnement.getId( ) ) );
+            } );
+        }
+
+        /**
+         * Removes the renamed environnement.
+         *
+         * @param state
+         *            the benchmark state
+         * @throws VaultException
+         *             the vault exception
+         */
+        @TearDown( Level.Invocation )
+        public void tearDown( VaultBenchmarkState state ) throws VaultException
+        {
+            state.prepare( ( ) -> VaultService.getInstance( ).removeEnv( _environnement.getToken( ), VaultBenchmarkState.APPLICATION_CODE, _environnement ) );
+        }
+    }
+
+    /**
+     * Removes the environnement : document, policy and token.
+     *
+     * @param removeState
+     *            the environnement to remove
+     * @return false if the call failed on an injected error
+     */
+    @Benchmark
+    public boolean removeEnv( RemoveState removeState )
+    {
+        Environnement environnement = removeState._environnement;
+        try
+        {
+            VaultService.getInstance( ).removeEnv( environnement.getToken( ), VaultBenchmarkState.APPLICATION_CODE, environnement );
+            return true;
+        }
+        catch( VaultException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Moves the secrets of the environnement to its new code and removes the old one.
+     *
+     * @param state
+     *            the benchmark state
+     * @param renameState
+     *            the environnement to rename
+     * @return false if the call failed on an injected error
+     */
+    @Benchmark
+    public boolean renameEnvironnement( VaultBenchmarkState state, RenameState renameState )
+    {
+        try
+        {
+            VaultService.getInstance( ).renameEnvironnement( state.getApplication( ), renameState._environnement, renameState._strOldCode,
+                    renameState._strOldToken );
+            return true;
+        }
+        catch( VaultException e )
+        {
+            return false;
+        }
+    }
+
+    private static Environnement createEnvironnement( VaultBenchmarkState state, int nKeys ) throws VaultException
+    {
+        Environnement environnement = state.createEnvironnement( nKeys );
+        VaultService.getInstance( ).createEnvironnementToken( VaultBenchmarkState.APPLICATION_CODE, environnement );
+        environnement.setToken( VaultService.getInstance( ).getEnvAccessor( environnement.getId( ) ) );
+        return environnement;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.benchmark;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.business.Properties;
+import fr.paris.lutece.plugins.vault.service.VaultService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the reads and writes of secrets in an environnement of 10, 100 and 1000 keys.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+public class VaultServiceBenchmark
+{
+    private static final String KEY_WRITE = "written";
+
+    @Param( {
+            "10", "100", "1000"
+    } )
+    public int _nKeys;
+
+    private Environnement _environnement;
+    private int _nValue;
+
+    /**
+     * Creates the environnement.
+     *
+     * @param state
+     *            the benchmark state
+     */
+    @Setup( Level.Trial )
+    public void setUp( VaultBenchmarkState state )
+    {
+        _environnement = state.createEnvironnement( _nKeys );
+    }
+
+    /**
+     * Reads the secrets from Vault, the cache entry being invalidated first.
+     *
+     * @param state
+     *            the benchmark state
+     * @return the secrets
+     */
+    @Benchmark
+    public List<Properties> getSecretsByEnv( VaultBenchmarkState state )
+    {
+        VaultService.getInstance( ).getSecretCache( ).invalidate( _environnement.getPath( ) );
+        return VaultService.getInstance( ).getSecretsByEnv( state.getApplication( ), _environnement );
+    }
+
+    /**
+     * Reads the secrets, from the cache after the first call.
+     *
+     * @param state
+     *            the benchmark state
+     * @return the secrets
+     */
+    @Benchmark
+    public List<Properties> getSecretsByEnvCached( VaultBenchmarkState state )
+    {
+        return VaultService.getInstance( ).getSecretsByEnv( state.getApplication( ), _environnement );
+    }
+
+    /**
+     * Adds a key to the environnement. The same key is written each time so the size of the environnement does not grow.
+     *
+     * @param state
+     *            the benchmark state
+     * @return false if the call failed on an injected error
+     */
+    @Benchmark
+    public boolean writeSecret( VaultBenchmarkState state )
+    {
+        try
+        {
+            VaultService.getInstance( ).writeSecret( KEY_WRITE, String.valueOf( _nValue++ ), state.getApplication( ), _environnement );
+            return true;
+        }
+        catch( VaultException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Updates an existing key of the environnement.
+     *
+     * @param state
+     *            the benchmark state
+     * @return false if the call failed on an injected error
+     */
+    @Benchmark
+    public boolean updateSecret( VaultBenchmarkState state )
+    {
+        try
+        {
+            VaultService.getInstance( ).updateSecret( VaultBenchmarkState.KEY_PREFIX + 0, String.valueOf( _nValue++ ), state.getApplication( ),
+                    _environnement );
+            return true;
+        }
+        catch( VaultException e )
+        {
+            return false;
+        }
+    }
+}
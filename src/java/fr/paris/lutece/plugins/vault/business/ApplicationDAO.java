@@ -56,6 +56,8 @@ public final class ApplicationDAO implements IApplicationDAO
     private static final String SQL_QUERY_SELECTALL = "SELECT id_application, name, code FROM vault_application";
     private static final String SQL_QUERY_SELECTALL_ID = "SELECT id_application FROM vault_application";
     private static final String SQL_QUERY_SELECTALL_BY_IDS = "SELECT id_application, name, code FROM vault_application WHERE id_application IN (  ";
+    private static final String SQL_QUERY_SELECT_PAGE_AFTER = "SELECT id_application, name, code FROM vault_application WHERE id_application > ? ORDER BY id_application LIMIT ?";
+    private static final String SQL_QUERY_SELECT_PAGE_BEFORE = "SELECT id_application, name, code FROM vault_application WHERE id_application < ? ORDER BY id_application DESC LIMIT ?";
 
     /**
      * {@inheritDoc }
@@ -250,4 +252,33 @@ public final class ApplicationDAO implements IApplicationDAO
         return applicationList;
 
     }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public List<Application> selectApplicationsPage( int nIdFrom, boolean bForward, int nLimit, Plugin plugin )
+    {
+        List<Application> applicationList = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( bForward ? SQL_QUERY_SELECT_PAGE_AFTER : SQL_QUERY_SELECT_PAGE_BEFORE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdFrom );
+            daoUtil.setInt( 2, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                Application application = new Application( );
+                int nIndex = 1;
+
+                application.setId( daoUtil.getInt( nIndex++ ) );
+                application.setName( daoUtil.getString( nIndex++ ) );
+                application.setCode( daoUtil.getString( nIndex ) );
+
+                applicationList.add( application );
+            }
+
+            return applicationList;
+        }
+    }
 }
@@ -39,7 +39,11 @@ import fr.paris.lutece.portal.service.plugin.PluginService;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.util.ReferenceList;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -137,7 +141,7 @@ public final class ApplicationHome
     }
 
     /**
-     * Gets applications list by ids.
+     * Gets applications list by ids, in the order of the ids.
      *
      * @param listIds
      *            the list ids
@@ -145,7 +149,42 @@ public final class ApplicationHome
      */
     public static List<Application> getApplicationsListByIds( List<Integer> listIds )
     {
-        return _dao.selectApplicationsListByIds( _plugin, listIds );
+        Map<Integer, Application> mapApplications = new HashMap<>( );
+        for ( Application application : _dao.selectApplicationsListByIds( _plugin, listIds ) )
+        {
+            mapApplications.put( application.getId( ), application );
+        }
+        List<Application> listApplications = new ArrayList<>( mapApplications.size( ) );
+        for ( Integer nId : listIds )
+        {
+            Application application = mapApplications.get( nId );
+            if ( application != null )
+            {
+                listApplications.add( application );
+            }
+        }
+        return listApplications;
+    }
+
+    /**
+     * Gets a page of applications, in ascending order of id.
+     *
+     * @param nIdFrom
+     *            the id the page starts after, or ends before, excluded
+     * @param bForward
+     *            true for the page after nIdFrom, false for the page before it
+     * @param nLimit
+     *            the maximum number of applications
+     * @return the applications of the page
+     */
+    public static List<Application> getApplicationsPage( int nIdFrom, boolean bForward, int nLimit )
+    {
+        List<Application> listApplications = _dao.selectApplicationsPage( nIdFrom, bForward, nLimit, _plugin );
+        if ( !bForward )
+        {
+            Collections.reverse( listApplications );
+        }
+        return listApplications;
     }
 
 }
@@ -37,6 +37,7 @@ import javax.validation.constraints.Size;
 import javax.validation.constraints.NotEmpty;
 import java.io.Serializable;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * The type Environnement.
@@ -59,10 +60,15 @@ public class Environnement implements Serializable
 
     private int _nIdapplication;
 
+    private String _strApplicationCode;
+
     private String _strType;
 
     private List<Properties> _listProperties;
 
+    // Loads the properties from Vault on first access, not kept in session serialization
+    private transient Supplier<List<Properties>> _supplierProperties;
+
     /**
      * Gets id.
      *
@@ -147,6 +153,27 @@ public class Environnement implements Serializable
         _nIdapplication = nIdapplication;
     }
 
+    /**
+     * Gets the code of the application, filled by the queries joining the application.
+     *
+     * @return the application code
+     */
+    public String getApplicationCode( )
+    {
+        return _strApplicationCode;
+    }
+
+    /**
+     * Sets the code of the application.
+     *
+     * @param strApplicationCode
+     *            the str application code
+     */
+    public void setApplicationCode( String strApplicationCode )
+    {
+        _strApplicationCode = strApplicationCode;
+    }
+
     /**
      * Gets path.
      *
@@ -190,12 +217,17 @@ public class Environnement implements Serializable
     }
 
     /**
-     * Gets list properties.
+     * Gets list properties. When a supplier is set, the properties are loaded on first call and kept.
      *
      * @return the list properties
      */
-    public List<Properties> getListProperties( )
+    public synchronized List<Properties> getListProperties( )
     {
+        if ( _listProperties == null && _supplierProperties != null )
+        {
+            _listProperties = _supplierProperties.get( );
+            _supplierProperties = null;
+        }
         return _listProperties;
     }
 
@@ -205,8 +237,21 @@ public class Environnement implements Serializable
      * @param _listProperties
      *            the list properties
      */
-    public void setListProperties( List<Properties> _listProperties )
+    public synchronized void setListProperties( List<Properties> _listProperties )
     {
         this._listProperties = _listProperties;
+        this._supplierProperties = null;
+    }
+
+    /**
+     * Sets the supplier loading the list properties on first access.
+     *
+     * @param supplierProperties
+     *            the supplier
+     */
+    public synchronized void setListPropertiesSupplier( Supplier<List<Properties>> supplierProperties )
+    {
+        _listProperties = null;
+        _supplierProperties = supplierProperties;
     }
 }
@@ -35,6 +35,7 @@
 package fr.paris.lutece.plugins.vault.business;
 
 import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.util.ReferenceList;
 import fr.paris.lutece.util.sql.DAOUtil;
 import java.sql.Statement;
@@ -58,6 +59,14 @@ public final class EnvironnementDAO implements IEnvironnementDAO
     private static final String SQL_QUERY_SELECTALL_IDAPP = "SELECT id_environnement FROM vault_environnement where idapplication = ?";
     private static final String SQL_QUERY_SELECTALL_BY_IDS = "SELECT id_environnement, type, code, idapplication FROM vault_environnement WHERE id_environnement IN (  ";
     private static final String SQL_QUERY_SELECTALL_BY_TYPE = "SELECT id_environnement, type, code, idapplication FROM vault_environnement WHERE type = ?";
+    private static final String SQL_QUERY_SELECT_CODES_BY_APP_AND_TYPE = "SELECT code FROM vault_environnement WHERE idapplication = ? AND type = ? FOR UPDATE";
+    private static final String SQL_QUERY_SELECTALL_WITH_APPLICATION = "SELECT e.id_environnement, e.type, e.code, e.idapplication, a.code FROM vault_environnement e INNER JOIN vault_application a ON a.id_application = e.idapplication";
+    private static final String SQL_QUERY_SELECTALL_WITH_APPLICATION_BY_IDS = SQL_QUERY_SELECTALL_WITH_APPLICATION + " WHERE e.id_environnement IN (  ";
+    private static final String SQL_QUERY_SELECT_WITH_APPLICATION_BY_CODES = SQL_QUERY_SELECTALL_WITH_APPLICATION + " WHERE a.code = ? AND e.code = ?";
+    private static final String SQL_QUERY_SELECT_PAGE_BY_APP_AFTER = SQL_QUERY_SELECTALL_WITH_APPLICATION
+            + " WHERE e.idapplication = ? AND e.id_environnement > ? ORDER BY e.id_environnement LIMIT ?";
+    private static final String SQL_QUERY_SELECT_PAGE_BY_APP_BEFORE = SQL_QUERY_SELECTALL_WITH_APPLICATION
+            + " WHERE e.idapplication = ? AND e.id_environnement < ? ORDER BY e.id_environnement DESC LIMIT ?";
 
     @Override
     public void insert( Environnement environnement, Plugin plugin )
@@ -78,6 +87,33 @@ public final class EnvironnementDAO implements IEnvironnementDAO
 
     }
 
+    @Override
+    public void insertBatch( List<Environnement> listEnvironnements, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, plugin ) )
+        {
+            for ( Environnement environnement : listEnvironnements )
+            {
+                int nIndex = 1;
+                daoUtil.setString( nIndex++, environnement.getType( ) );
+                daoUtil.setString( nIndex++, environnement.getCode( ) );
+                daoUtil.setInt( nIndex, environnement.getIdapplication( ) );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+            // The generated keys come in the order of the rows
+            for ( Environnement environnement : listEnvironnements )
+            {
+                if ( !daoUtil.nextGeneratedKey( ) )
+                {
+                    throw new AppException( "No generated key for the environnement " + environnement.getCode( ) );
+                }
+                environnement.setId( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+        }
+    }
+
     @Override
     public Optional<Environnement> load( int nKey, Plugin plugin )
     {
@@ -234,6 +270,96 @@ public final class EnvironnementDAO implements IEnvironnementDAO
 
     }
 
+    @Override
+    public List<Environnement> selectEnvironnementsWithApplicationList( Plugin plugin )
+    {
+        List<Environnement> environnementList = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECTALL_WITH_APPLICATION, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                environnementList.add( dataToEnvironnementWithApplication( daoUtil ) );
+            }
+
+            return environnementList;
+        }
+    }
+
+    @Override
+    public List<Environnement> selectEnvironnementsWithApplicationListByIds( Plugin plugin, List<Integer> listIds )
+    {
+        List<Environnement> environnementList = new ArrayList<>( );
+
+        if ( !listIds.isEmpty( ) )
+        {
+            StringBuilder builder = new StringBuilder( );
+            for ( int i = 0; i < listIds.size( ); i++ )
+            {
+                builder.append( "?," );
+            }
+
+            String placeHolders = builder.deleteCharAt( builder.length( ) - 1 ).toString( );
+            String stmt = SQL_QUERY_SELECTALL_WITH_APPLICATION_BY_IDS + placeHolders + ")";
+
+            try ( DAOUtil daoUtil = new DAOUtil( stmt, plugin ) )
+            {
+                int index = 1;
+                for ( Integer n : listIds )
+                {
+                    daoUtil.setInt( index++, n );
+                }
+
+                daoUtil.executeQuery( );
+                while ( daoUtil.next( ) )
+                {
+                    environnementList.add( dataToEnvironnementWithApplication( daoUtil ) );
+                }
+            }
+        }
+        return environnementList;
+    }
+
+    @Override
+    public Optional<Environnement> loadWithApplicationByCodes( String strApplicationCode, String strCode, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_WITH_APPLICATION_BY_CODES, plugin ) )
+        {
+            daoUtil.setString( 1, strApplicationCode );
+            daoUtil.setString( 2, strCode );
+            daoUtil.executeQuery( );
+            Environnement environnement = null;
+
+            if ( daoUtil.next( ) )
+            {
+                environnement = dataToEnvironnementWithApplication( daoUtil );
+            }
+
+            return Optional.ofNullable( environnement );
+        }
+    }
+
+    @Override
+    public List<Environnement> selectEnvironnementsPageByApp( int nIdApplication, int nIdFrom, boolean bForward, int nLimit, Plugin plugin )
+    {
+        List<Environnement> environnementList = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( bForward ? SQL_QUERY_SELECT_PAGE_BY_APP_AFTER : SQL_QUERY_SELECT_PAGE_BY_APP_BEFORE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdApplication );
+            daoUtil.setInt( 2, nIdFrom );
+            daoUtil.setInt( 3, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                environnementList.add( dataToEnvironnementWithApplication( daoUtil ) );
+            }
+
+            return environnementList;
+        }
+    }
+
     @Override
     public List<Integer> selectIdEnvironnementByIdApp( int nKey, Plugin plugin )
     {
@@ -251,6 +377,25 @@ public final class EnvironnementDAO implements IEnvironnementDAO
         }
     }
 
+    @Override
+    public List<String> selectCodesByAppAndTypeForUpdate( int nIdApplication, String strType, Plugin plugin )
+    {
+        List<String> listCodes = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CODES_BY_APP_AND_TYPE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdApplication );
+            daoUtil.setString( 2, strType );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listCodes.add( daoUtil.getString( 1 ) );
+            }
+
+            return listCodes;
+        }
+    }
+
     @Override
     public List<Environnement> selectEnvironnementByType( String nKey, Plugin plugin )
     {
@@ -278,4 +423,18 @@ public final class EnvironnementDAO implements IEnvironnementDAO
 
     }
 
+    private Environnement dataToEnvironnementWithApplication( DAOUtil daoUtil )
+    {
+        Environnement environnement = new Environnement( );
+        int nIndex = 1;
+
+        environnement.setId( daoUtil.getInt( nIndex++ ) );
+        environnement.setType( daoUtil.getString( nIndex++ ) );
+        environnement.setCode( daoUtil.getString( nIndex++ ) );
+        environnement.setIdapplication( daoUtil.getInt( nIndex++ ) );
+        environnement.setApplicationCode( daoUtil.getString( nIndex ) );
+
+        return environnement;
+    }
+
 }
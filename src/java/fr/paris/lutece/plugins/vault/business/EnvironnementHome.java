@@ -43,9 +43,16 @@ import fr.paris.lutece.portal.service.i18n.I18nService;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.plugin.PluginService;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.util.ReferenceList;
+import fr.paris.lutece.util.sql.TransactionManager;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -57,29 +64,121 @@ public final class EnvironnementHome
     private static IEnvironnementDAO _dao = SpringContextService.getBean( "vault.environnementDAO" );
     private static Plugin _plugin = PluginService.getPlugin( "vault" );
 
-    private static Integer _count = 1;
-
     private EnvironnementHome( )
     {
 
     }
 
     /**
-     * Create environnement.
+     * Create environnement. Its code is its type followed by the next free number of this type in its application.
      *
      * @param environnement
      *            the environnement
      * @return the environnement
+     * @throws fr.paris.lutece.portal.service.util.AppException
+     *             if the environnement could not be inserted, see {@link #isConcurrentCreation(AppException)}
      */
     public static Environnement create( Environnement environnement )
     {
-        List<Environnement> listEnv = EnvironnementHome.getEnvironnementListByType( environnement.getType( ) );
-        environnement.setCode( environnement.getType( ) + listEnv.size( ) );
-        _dao.insert( environnement, _plugin );
+        TransactionManager.beginTransaction( _plugin );
+        try
+        {
+            environnement.setCode( environnement.getType( ) + getNextCodeNumber( environnement.getIdapplication( ), environnement.getType( ) ) );
+            _dao.insert( environnement, _plugin );
+            TransactionManager.commitTransaction( _plugin );
+        }
+        catch( RuntimeException e )
+        {
+            TransactionManager.rollBack( _plugin, e );
+            throw e;
+        }
 
         return environnement;
     }
 
+    /**
+     * Create environnements with one batch insert, in a transaction : either all of them are created or none. The code of each one is computed from its
+     * type as when creating a single environnement.
+     *
+     * @param listEnvironnements
+     *            the environnements
+     * @return the environnements, with their id
+     * @throws fr.paris.lutece.portal.service.util.AppException
+     *             if the environnements could not be inserted, see {@link #isConcurrentCreation(AppException)}
+     */
+    public static List<Environnement> createAll( List<Environnement> listEnvironnements )
+    {
+        TransactionManager.beginTransaction( _plugin );
+        try
+        {
+            Map<String, Integer> mapNextNumbers = new HashMap<>( );
+            for ( Environnement environnement : listEnvironnements )
+            {
+                String strKey = environnement.getIdapplication( ) + "/" + environnement.getType( );
+                int nNumber = mapNextNumbers.computeIfAbsent( strKey,
+                        k -> getNextCodeNumber( environnement.getIdapplication( ), environnement.getType( ) ) );
+                environnement.setCode( environnement.getType( ) + nNumber );
+                mapNextNumbers.put( strKey, nNumber + 1 );
+            }
+            _dao.insertBatch( listEnvironnements, _plugin );
+            TransactionManager.commitTransaction( _plugin );
+        }
+        catch( RuntimeException e )
+        {
+            TransactionManager.rollBack( _plugin, e );
+            throw e;
+        }
+
+        return listEnvironnements;
+    }
+
+    /**
+     * Tells if the creation of environnements failed because another creation in the same application got the same code or locked it first, so that
+     * trying again computes a free code.
+     *
+     * @param e
+     *            the exception thrown by {@link #create(Environnement)} or {@link #createAll(List)}
+     * @return true for a duplicate code, a deadlock or a lock timeout
+     */
+    public static boolean isConcurrentCreation( AppException e )
+    {
+        for ( Throwable cause = e.getCause( ); cause != null; cause = cause.getCause( ) )
+        {
+            if ( cause instanceof SQLException )
+            {
+                String strState = ( (SQLException) cause ).getSQLState( );
+                // 23 : integrity constraint violation, 40 : transaction rollback (deadlock)
+                return strState != null && ( strState.startsWith( "23" ) || strState.startsWith( "40" ) );
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number following the highest one of the codes made of a type followed by a number in an application, locking these codes until the end
+     * of the current transaction.
+     *
+     * @param nIdApplication
+     *            the id of the application
+     * @param strType
+     *            the type
+     * @return the next number, 0 for the first environnement of the type
+     */
+    private static int getNextCodeNumber( int nIdApplication, String strType )
+    {
+        int nNext = 0;
+        String strPrefix = String.valueOf( strType );
+        for ( String strCode : _dao.selectCodesByAppAndTypeForUpdate( nIdApplication, strType, _plugin ) )
+        {
+            String strNumber = strCode.startsWith( strPrefix ) ? strCode.substring( strPrefix.length( ) ) : "";
+            if ( !strNumber.isEmpty( ) && strNumber.length( ) < 10 && strNumber.chars( ).allMatch( Character::isDigit ) )
+            {
+                nNext = Math.max( nNext, Integer.parseInt( strNumber ) + 1 );
+            }
+        }
+        return nNext;
+    }
+
     /**
      * Update environnement.
      *
@@ -115,18 +214,46 @@ public final class EnvironnementHome
      */
     public static Optional<Environnement> findByPrimaryKey( int nKey )
     {
-        Optional<Environnement> env = _dao.load( nKey, _plugin );
-        Application app = ApplicationHome.findByPrimaryKey( env.get( ).getIdapplication( ) ).get( );
+        Optional<Environnement> env = findByPrimaryKeyWithoutSecrets( nKey );
         if ( env.isPresent( ) )
         {
-            env.get( ).setType( env.get( ).getCode( ) );
-            env.get( ).setToken( VaultService.getInstance( ).getEnvAccessor( env.get( ).getId( ) ) );
-            env.get( ).setPath( EnvironnementUtil.getEnvironmentPath( app.getCode( ), env.get( ).getCode( ) ) );
-            env.get( ).setListProperties( VaultService.getInstance( ).getSecretsByEnv( app, env.get( ) ) );
+            Environnement environnement = env.get( );
+            environnement.setType( environnement.getCode( ) );
+            environnement.setToken( VaultService.getInstance( ).getEnvAccessor( environnement.getId( ) ) );
+            environnement.setListPropertiesSupplier( ( ) -> VaultService.getInstance( ).getSecretsByEnv( getApplication( environnement ), environnement ) );
         }
         return env;
     }
 
+    /**
+     * Find an environnement with its path, with a single query and without any call to Vault. The token and the properties are not filled.
+     *
+     * @param nKey
+     *            the n key
+     * @return the optional
+     */
+    public static Optional<Environnement> findByPrimaryKeyWithoutSecrets( int nKey )
+    {
+        return getEnvironnementsListByIds( Collections.singletonList( nKey ) ).stream( ).findFirst( );
+    }
+
+    /**
+     * Find an environnement with its path from the codes of its application and of itself, with a single query and without any call to Vault. The token
+     * and the properties are not filled.
+     *
+     * @param strApplicationCode
+     *            the code of the application
+     * @param strCode
+     *            the code of the environnement
+     * @return the optional
+     */
+    public static Optional<Environnement> findByCodesWithoutSecrets( String strApplicationCode, String strCode )
+    {
+        Optional<Environnement> env = _dao.loadWithApplicationByCodes( strApplicationCode, strCode, _plugin );
+        env.ifPresent( x -> x.setPath( EnvironnementUtil.getEnvironmentPath( x.getApplicationCode( ), x.getCode( ) ) ) );
+        return env;
+    }
+
     /**
      * Gets environnements list.
      *
@@ -134,15 +261,12 @@ public final class EnvironnementHome
      */
     public static List<Environnement> getEnvironnementsList( )
     {
-        List<Environnement> envs = _dao.selectEnvironnementsList( _plugin );
-        if ( !envs.isEmpty( ) )
+        List<Environnement> envs = _dao.selectEnvironnementsWithApplicationList( _plugin );
+        for ( Environnement env : envs )
         {
-            envs.forEach( x -> x.setToken( VaultService.getInstance( ).getEnvAccessor( x.getId( ) ) ) );
-            envs.forEach( x -> x.setPath(
-                    EnvironnementUtil.getEnvironmentPath( ApplicationHome.findByPrimaryKey( x.getIdapplication( ) ).get( ).getCode( ), x.getCode( ) ) ) );
-            envs.forEach( x -> x
-                    .setListProperties( VaultService.getInstance( ).getSecretsByEnv( ApplicationHome.findByPrimaryKey( x.getIdapplication( ) ).get( ), x ) ) );
-
+            env.setToken( VaultService.getInstance( ).getEnvAccessor( env.getId( ) ) );
+            env.setPath( EnvironnementUtil.getEnvironmentPath( env.getApplicationCode( ), env.getCode( ) ) );
+            env.setListPropertiesSupplier( ( ) -> VaultService.getInstance( ).getSecretsByEnv( getApplication( env ), env ) );
         }
         return envs;
     }
@@ -168,7 +292,7 @@ public final class EnvironnementHome
     }
 
     /**
-     * Gets environnements list by ids.
+     * Gets environnements list by ids, in the order of the ids.
      *
      * @param listIds
      *            the list ids
@@ -176,16 +300,60 @@ public final class EnvironnementHome
      */
     public static List<Environnement> getEnvironnementsListByIds( List<Integer> listIds )
     {
-        List<Environnement> listEnvs = _dao.selectEnvironnementsListByIds( _plugin, listIds );
-        if ( !listEnvs.isEmpty( ) )
+        Map<Integer, Environnement> mapEnvs = new HashMap<>( );
+        for ( Environnement env : _dao.selectEnvironnementsWithApplicationListByIds( _plugin, listIds ) )
+        {
+            env.setPath( EnvironnementUtil.getEnvironmentPath( env.getApplicationCode( ), env.getCode( ) ) );
+            mapEnvs.put( env.getId( ), env );
+        }
+        List<Environnement> listEnvs = new ArrayList<>( mapEnvs.size( ) );
+        for ( Integer nId : listIds )
+        {
+            Environnement env = mapEnvs.get( nId );
+            if ( env != null )
+            {
+                listEnvs.add( env );
+            }
+        }
+        return listEnvs;
+    }
+
+    /**
+     * Gets a page of the environnements of an application, without their secrets, in ascending order of id.
+     *
+     * @param idApp
+     *            the id app
+     * @param nIdFrom
+     *            the id the page starts after, or ends before, excluded
+     * @param bForward
+     *            true for the page after nIdFrom, false for the page before it
+     * @param nLimit
+     *            the maximum number of environnements
+     * @return the environnements of the page
+     */
+    public static List<Environnement> getEnvironnementsPageByApp( int idApp, int nIdFrom, boolean bForward, int nLimit )
+    {
+        List<Environnement> listEnvs = _dao.selectEnvironnementsPageByApp( idApp, nIdFrom, bForward, nLimit, _plugin );
+        listEnvs.forEach( x -> x.setPath( EnvironnementUtil.getEnvironmentPath( x.getApplicationCode( ), x.getCode( ) ) ) );
+        if ( !bForward )
         {
-            listEnvs.forEach( x -> {
-                x.setPath( EnvironnementUtil.getEnvironmentPath( ApplicationHome.findByPrimaryKey( x.getIdapplication( ) ).get( ).getCode( ), x.getCode( ) ) );
-            } );
+            Collections.reverse( listEnvs );
         }
         return listEnvs;
     }
 
+    /**
+     * Gets the environnements of an application, without their secrets.
+     *
+     * @param idApp
+     *            the id app
+     * @return the environnements list by app
+     */
+    public static List<Environnement> getEnvironnementsListByApp( Integer idApp )
+    {
+        return getEnvironnementsListByIds( getIdEnvironnementsListByApp( idApp ) );
+    }
+
     /**
      * Gets id environnements list by app.
      *
@@ -207,9 +375,8 @@ public final class EnvironnementHome
      */
     public static List<Properties> getPropertiesList( Integer nIdEnv )
     {
-        Environnement env = EnvironnementHome.findByPrimaryKey( nIdEnv ).get( );
-        Application app = ApplicationHome.findByPrimaryKey( env.getIdapplication( ) ).get( );
-        return VaultService.getInstance( ).getSecretsByEnv( app, env );
+        Environnement env = EnvironnementHome.findByPrimaryKeyWithoutSecrets( nIdEnv ).get( );
+        return VaultService.getInstance( ).getSecretsByEnv( getApplication( env ), env );
     }
 
     /**
@@ -224,4 +391,19 @@ public final class EnvironnementHome
         return _dao.selectEnvironnementByType( type, _plugin );
     }
 
+    /**
+     * Builds the application of an environnement loaded with its application code, without querying it.
+     *
+     * @param environnement
+     *            the environnement
+     * @return the application
+     */
+    static Application getApplication( Environnement environnement )
+    {
+        Application application = new Application( );
+        application.setId( environnement.getIdapplication( ) );
+        application.setCode( environnement.getApplicationCode( ) );
+        return application;
+    }
+
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * The accessor of the Vault token generated for an environnement.
+ */
+public class EnvironnementToken implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    // Variables declarations
+    private int _nIdEnvironnement;
+
+    private String _strAccessor;
+
+    private Timestamp _dateExpiration;
+
+    private Timestamp _dateRenewal;
+
+    /**
+     * Gets id environnement.
+     *
+     * @return the id environnement
+     */
+    public int getIdEnvironnement( )
+    {
+        return _nIdEnvironnement;
+    }
+
+    /**
+     * Sets id environnement.
+     *
+     * @param nIdEnvironnement
+     *            the n id environnement
+     */
+    public void setIdEnvironnement( int nIdEnvironnement )
+    {
+        _nIdEnvironnement = nIdEnvironnement;
+    }
+
+    /**
+     * Gets accessor.
+     *
+     * @return the accessor
+     */
+    public String getAccessor( )
+    {
+        return _strAccessor;
+    }
+
+    /**
+     * Sets accessor.
+     *
+     * @param strAccessor
+     *            the str accessor
+     */
+    public void setAccessor( String strAccessor )
+    {
+        _strAccessor = strAccessor;
+    }
+
+    /**
+     * Gets the date the token expires if it is not renewed.
+     *
+     * @return the expiration date, null if the token does not expire or the date is unknown
+     */
+    public Timestamp getDateExpiration( )
+    {
+        return _dateExpiration;
+    }
+
+    /**
+     * Sets the date the token expires if it is not renewed.
+     *
+     * @param dateExpiration
+     *            the expiration date
+     */
+    public void setDateExpiration( Timestamp dateExpiration )
+    {
+        _dateExpiration = dateExpiration;
+    }
+
+    /**
+     * Gets the date the token is due for renewal.
+     *
+     * @return the renewal date, null if it is unknown and the token is renewed at once
+     */
+    public Timestamp getDateRenewal( )
+    {
+        return _dateRenewal;
+    }
+
+    /**
+     * Sets the date the token is due for renewal.
+     *
+     * @param dateRenewal
+     *            the renewal date
+     */
+    public void setDateRenewal( Timestamp dateRenewal )
+    {
+        _dateRenewal = dateRenewal;
+    }
+
+}
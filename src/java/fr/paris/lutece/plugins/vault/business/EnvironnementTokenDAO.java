@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The type Environnement token dao.
+ */
+public final class EnvironnementTokenDAO implements IEnvironnementTokenDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT = "SELECT id_environnement, accessor, date_expiration, date_renewal FROM vault_environnement_token WHERE id_environnement = ?";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO vault_environnement_token ( id_environnement, accessor, date_expiration, date_renewal ) VALUES ( ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_DELETE = "DELETE FROM vault_environnement_token WHERE id_environnement = ? ";
+    private static final String SQL_QUERY_DELETE_ACCESSOR = "DELETE FROM vault_environnement_token WHERE id_environnement = ? AND accessor = ? ";
+    private static final String SQL_QUERY_UPDATE = "UPDATE vault_environnement_token SET accessor = ?, date_expiration = ?, date_renewal = ? WHERE id_environnement = ?";
+    private static final String SQL_QUERY_UPDATE_DATES = "UPDATE vault_environnement_token SET date_expiration = ?, date_renewal = ? WHERE id_environnement = ? AND accessor = ?";
+    private static final String SQL_QUERY_SELECTALL = "SELECT id_environnement, accessor, date_expiration, date_renewal FROM vault_environnement_token";
+    private static final String SQL_QUERY_SELECT_TO_RENEW = SQL_QUERY_SELECTALL + " WHERE date_renewal IS NULL OR date_renewal <= ? ORDER BY date_renewal LIMIT ?";
+    private static final String SQL_QUERY_CLAIM_TO_RENEW = "UPDATE vault_environnement_token SET renewal_claim = ?, date_renewal = ? WHERE date_renewal IS NULL OR date_renewal <= ? ORDER BY date_renewal LIMIT ?";
+    private static final String SQL_QUERY_SELECT_CLAIMED = SQL_QUERY_SELECTALL + " WHERE renewal_claim = ?";
+
+    @Override
+    public void insert( EnvironnementToken environnementToken, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setInt( nIndex++, environnementToken.getIdEnvironnement( ) );
+            daoUtil.setString( nIndex++, environnementToken.getAccessor( ) );
+            daoUtil.setTimestamp( nIndex++, environnementToken.getDateExpiration( ) );
+            daoUtil.setTimestamp( nIndex, environnementToken.getDateRenewal( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public Optional<EnvironnementToken> load( int nIdEnvironnement, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdEnvironnement );
+            daoUtil.executeQuery( );
+            EnvironnementToken environnementToken = null;
+
+            if ( daoUtil.next( ) )
+            {
+                environnementToken = dataToEnvironnementToken( daoUtil );
+            }
+
+            return Optional.ofNullable( environnementToken );
+        }
+    }
+
+    @Override
+    public void delete( int nIdEnvironnement, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdEnvironnement );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void delete( int nIdEnvironnement, String strAccessor, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_ACCESSOR, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdEnvironnement );
+            daoUtil.setString( 2, strAccessor );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void store( EnvironnementToken environnementToken, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE, plugin ) )
+        {
+            int nIndex = 1;
+
+            daoUtil.setString( nIndex++, environnementToken.getAccessor( ) );
+            daoUtil.setTimestamp( nIndex++, environnementToken.getDateExpiration( ) );
+            daoUtil.setTimestamp( nIndex++, environnementToken.getDateRenewal( ) );
+            daoUtil.setInt( nIndex, environnementToken.getIdEnvironnement( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void storeDates( EnvironnementToken environnementToken, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_DATES, plugin ) )
+        {
+            int nIndex = 1;
+
+            daoUtil.setTimestamp( nIndex++, environnementToken.getDateExpiration( ) );
+            daoUtil.setTimestamp( nIndex++, environnementToken.getDateRenewal( ) );
+            daoUtil.setInt( nIndex++, environnementToken.getIdEnvironnement( ) );
+            daoUtil.setString( nIndex, environnementToken.getAccessor( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public List<EnvironnementToken> selectEnvironnementTokensList( Plugin plugin )
+    {
+        List<EnvironnementToken> environnementTokenList = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECTALL, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                environnementTokenList.add( dataToEnvironnementToken( daoUtil ) );
+            }
+
+            return environnementTokenList;
+        }
+    }
+
+    @Override
+    public List<EnvironnementToken> selectEnvironnementTokensToRenew( Timestamp dateNow, int nLimit, Plugin plugin )
+    {
+        List<EnvironnementToken> environnementTokenList = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_TO_RENEW, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, dateNow );
+            daoUtil.setInt( 2, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                environnementTokenList.add( dataToEnvironnementToken( daoUtil ) );
+            }
+
+            return environnementTokenList;
+        }
+    }
+
+    @Override
+    public List<EnvironnementToken> claimEnvironnementTokensToRenew( String strClaim, Timestamp dateNow, Timestamp dateClaimEnd, int nLimit, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_CLAIM_TO_RENEW, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++, strClaim );
+            daoUtil.setTimestamp( nIndex++, dateClaimEnd );
+            daoUtil.setTimestamp( nIndex++, dateNow );
+            daoUtil.setInt( nIndex, nLimit );
+            daoUtil.executeUpdate( );
+        }
+
+        List<EnvironnementToken> environnementTokenList = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CLAIMED, plugin ) )
+        {
+            daoUtil.setString( 1, strClaim );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                environnementTokenList.add( dataToEnvironnementToken( daoUtil ) );
+            }
+
+            return environnementTokenList;
+        }
+    }
+
+    private EnvironnementToken dataToEnvironnementToken( DAOUtil daoUtil )
+    {
+        EnvironnementToken environnementToken = new EnvironnementToken( );
+        int nIndex = 1;
+
+        environnementToken.setIdEnvironnement( daoUtil.getInt( nIndex++ ) );
+        environnementToken.setAccessor( daoUtil.getString( nIndex++ ) );
+        environnementToken.setDateExpiration( daoUtil.getTimestamp( nIndex++ ) );
+        environnementToken.setDateRenewal( daoUtil.getTimestamp( nIndex ) );
+
+        return environnementToken;
+    }
+
+}
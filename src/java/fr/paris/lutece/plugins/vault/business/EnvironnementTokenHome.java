@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The type Environnement token home.
+ */
+public final class EnvironnementTokenHome
+{
+    // Static variable pointed at the DAO instance
+    private static IEnvironnementTokenDAO _dao = SpringContextService.getBean( "vault.environnementTokenDAO" );
+    private static Plugin _plugin = PluginService.getPlugin( "vault" );
+
+    private EnvironnementTokenHome( )
+    {
+    }
+
+    /**
+     * Save the accessor of an environnement, creating or replacing it.
+     *
+     * @param environnementToken
+     *            the environnement token
+     * @return the environnement token
+     */
+    public static EnvironnementToken save( EnvironnementToken environnementToken )
+    {
+        if ( _dao.load( environnementToken.getIdEnvironnement( ), _plugin ).isPresent( ) )
+        {
+            _dao.store( environnementToken, _plugin );
+        }
+        else
+        {
+            _dao.insert( environnementToken, _plugin );
+        }
+
+        return environnementToken;
+    }
+
+    /**
+     * Remove the accessor of an environnement.
+     *
+     * @param nIdEnvironnement
+     *            the id environnement
+     */
+    public static void remove( int nIdEnvironnement )
+    {
+        _dao.delete( nIdEnvironnement, _plugin );
+    }
+
+    /**
+     * Remove the accessor of an environnement if it has not been replaced in the meantime.
+     *
+     * @param nIdEnvironnement
+     *            the id environnement
+     * @param strAccessor
+     *            the accessor
+     */
+    public static void remove( int nIdEnvironnement, String strAccessor )
+    {
+        _dao.delete( nIdEnvironnement, strAccessor, _plugin );
+    }
+
+    /**
+     * Update the expiration and renewal dates of a token, if the environnement still holds its accessor.
+     *
+     * @param environnementToken
+     *            the environnement token
+     */
+    public static void updateDates( EnvironnementToken environnementToken )
+    {
+        _dao.storeDates( environnementToken, _plugin );
+    }
+
+    /**
+     * Find by environnement optional.
+     *
+     * @param nIdEnvironnement
+     *            the id environnement
+     * @return the optional
+     */
+    public static Optional<EnvironnementToken> findByEnvironnement( int nIdEnvironnement )
+    {
+        return _dao.load( nIdEnvironnement, _plugin );
+    }
+
+    /**
+     * Gets environnement tokens list.
+     *
+     * @return the environnement tokens list
+     */
+    public static List<EnvironnementToken> getEnvironnementTokensList( )
+    {
+        return _dao.selectEnvironnementTokensList( _plugin );
+    }
+
+    /**
+     * Gets the tokens due for renewal.
+     *
+     * @param dateNow
+     *            the current date
+     * @param nLimit
+     *            the maximum number of tokens
+     * @return the tokens, the ones whose renewal date is unknown first
+     */
+    public static List<EnvironnementToken> getEnvironnementTokensToRenew( Timestamp dateNow, int nLimit )
+    {
+        return _dao.selectEnvironnementTokensToRenew( dateNow, nLimit, _plugin );
+    }
+
+    /**
+     * Claims the tokens due for renewal, so that no other node renews them until the end of the claim.
+     *
+     * @param strClaim
+     *            the unique identifier of this claim
+     * @param dateNow
+     *            the current date
+     * @param dateClaimEnd
+     *            the date at which the claimed tokens are due again if they were not renewed meanwhile
+     * @param nLimit
+     *            the maximum number of tokens
+     * @return the claimed tokens
+     */
+    public static List<EnvironnementToken> claimEnvironnementTokensToRenew( String strClaim, Timestamp dateNow, Timestamp dateClaimEnd, int nLimit )
+    {
+        return _dao.claimEnvironnementTokensToRenew( strClaim, dateNow, dateClaimEnd, nLimit, _plugin );
+    }
+
+}
@@ -126,4 +126,19 @@ public interface IApplicationDAO
      * @return The list which contains the data of all the avant objects
      */
     List<Application> selectApplicationsListByIds( Plugin _plugin, List<Integer> listIds );
+
+    /**
+     * Load a page of applications from an id, without loading the ids of the other pages
+     *
+     * @param nIdFrom
+     *            the id the page starts after (or ends before), excluded
+     * @param bForward
+     *            true for the applications after nIdFrom in ascending order, false for the ones before it in descending order
+     * @param nLimit
+     *            the maximum number of applications
+     * @param plugin
+     *            the Plugin
+     * @return The list which contains the data of the applications of the page
+     */
+    List<Application> selectApplicationsPage( int nIdFrom, boolean bForward, int nLimit, Plugin plugin );
 }
@@ -54,6 +54,18 @@ public interface IEnvironnementDAO
      */
     void insert( Environnement environnement, Plugin plugin );
 
+    /**
+     * Insert new records in the table with one batch, and set the generated id of each one.
+     * 
+     * @param listEnvironnements
+     *            the Environnement objects to insert
+     * @param plugin
+     *            the Plugin
+     * @throws fr.paris.lutece.portal.service.util.AppException
+     *             if a row could not be inserted, or its id was not returned
+     */
+    void insertBatch( List<Environnement> listEnvironnements, Plugin plugin );
+
     /**
      * Update the record in the table
      * 
@@ -126,7 +138,71 @@ public interface IEnvironnementDAO
      */
     List<Environnement> selectEnvironnementsListByIds( Plugin _plugin, List<Integer> listIds );
 
+    /**
+     * Load the data of all the environnement objects together with the code of their application, in one query
+     * 
+     * @param plugin
+     *            the Plugin
+     * @return The list which contains the data of all the environnement objects
+     */
+    List<Environnement> selectEnvironnementsWithApplicationList( Plugin plugin );
+
+    /**
+     * Load the data of the environnement objects together with the code of their application, in one query
+     * 
+     * @param plugin
+     *            the Plugin
+     * @param listIds
+     *            liste of ids
+     * @return The list which contains the data of the environnement objects
+     */
+    List<Environnement> selectEnvironnementsWithApplicationListByIds( Plugin plugin, List<Integer> listIds );
+
+    /**
+     * Load the data of an environnement together with the code of its application, from the codes of both
+     * 
+     * @param strApplicationCode
+     *            the code of the application
+     * @param strCode
+     *            the code of the environnement
+     * @param plugin
+     *            the Plugin
+     * @return The instance of the environnement
+     */
+    Optional<Environnement> loadWithApplicationByCodes( String strApplicationCode, String strCode, Plugin plugin );
+
+    /**
+     * Load a page of the environnements of an application, together with the code of the application, without loading the ids of the other pages
+     * 
+     * @param nIdApplication
+     *            the id of the application
+     * @param nIdFrom
+     *            the id the page starts after (or ends before), excluded
+     * @param bForward
+     *            true for the environnements after nIdFrom in ascending order, false for the ones before it in descending order
+     * @param nLimit
+     *            the maximum number of environnements
+     * @param plugin
+     *            the Plugin
+     * @return The list which contains the data of the environnements of the page
+     */
+    List<Environnement> selectEnvironnementsPageByApp( int nIdApplication, int nIdFrom, boolean bForward, int nLimit, Plugin plugin );
+
     List<Integer> selectIdEnvironnementByIdApp( int nKey, Plugin plugin );
 
     List<Environnement> selectEnvironnementByType( String nKey, Plugin plugin );
+
+    /**
+     * Load the codes of the environnements of an application with a given type, locking them until the end of the current transaction so that
+     * concurrent creations of environnements in the application wait for each other.
+     * 
+     * @param nIdApplication
+     *            the id of the application
+     * @param strType
+     *            the type
+     * @param plugin
+     *            the Plugin
+     * @return The list of the codes
+     */
+    List<String> selectCodesByAppAndTypeForUpdate( int nIdApplication, String strType, Plugin plugin );
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * IEnvironnementTokenDAO Interface
+ */
+public interface IEnvironnementTokenDAO
+{
+    /**
+     * Insert a new record in the table.
+     * 
+     * @param environnementToken
+     *            instance of the EnvironnementToken object to insert
+     * @param plugin
+     *            the Plugin
+     */
+    void insert( EnvironnementToken environnementToken, Plugin plugin );
+
+    /**
+     * Update the record in the table
+     * 
+     * @param environnementToken
+     *            the reference of the EnvironnementToken
+     * @param plugin
+     *            the Plugin
+     */
+    void store( EnvironnementToken environnementToken, Plugin plugin );
+
+    /**
+     * Delete the record of an environnement
+     * 
+     * @param nIdEnvironnement
+     *            The identifier of the Environnement
+     * @param plugin
+     *            the Plugin
+     */
+    void delete( int nIdEnvironnement, Plugin plugin );
+
+    /**
+     * Delete the record of an environnement only if it still holds the given accessor
+     * 
+     * @param nIdEnvironnement
+     *            The identifier of the Environnement
+     * @param strAccessor
+     *            The accessor
+     * @param plugin
+     *            the Plugin
+     */
+    void delete( int nIdEnvironnement, String strAccessor, Plugin plugin );
+
+    /**
+     * Update the expiration and renewal dates of an environnement token only if it still holds the given accessor
+     * 
+     * @param environnementToken
+     *            the reference of the EnvironnementToken
+     * @param plugin
+     *            the Plugin
+     */
+    void storeDates( EnvironnementToken environnementToken, Plugin plugin );
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Finders
+
+    /**
+     * Load the data from the table
+     * 
+     * @param nIdEnvironnement
+     *            The identifier of the environnement
+     * @param plugin
+     *            the Plugin
+     * @return The instance of the environnementToken
+     */
+    Optional<EnvironnementToken> load( int nIdEnvironnement, Plugin plugin );
+
+    /**
+     * Load the data of all the environnementToken objects and returns them as a list
+     * 
+     * @param plugin
+     *            the Plugin
+     * @return The list which contains the data of all the environnementToken objects
+     */
+    List<EnvironnementToken> selectEnvironnementTokensList( Plugin plugin );
+
+    /**
+     * Load the environnement tokens due for renewal, the ones whose renewal date is unknown first
+     * 
+     * @param dateNow
+     *            the current date
+     * @param nLimit
+     *            the maximum number of tokens
+     * @param plugin
+     *            the Plugin
+     * @return The list of the environnementToken objects due for renewal
+     */
+    List<EnvironnementToken> selectEnvironnementTokensToRenew( Timestamp dateNow, int nLimit, Plugin plugin );
+
+    /**
+     * Claim the environnement tokens due for renewal with a single conditional update, the ones whose renewal date is unknown first, and load them. A
+     * claimed token is no longer due until the end of the claim, so that another node does not renew it too.
+     * 
+     * @param strClaim
+     *            the unique identifier of this claim
+     * @param dateNow
+     *            the current date
+     * @param dateClaimEnd
+     *            the renewal date of the claimed tokens, at which they are due again if they were not renewed meanwhile
+     * @param nLimit
+     *            the maximum number of tokens
+     * @param plugin
+     *            the Plugin
+     * @return The list of the environnementToken objects claimed
+     */
+    List<EnvironnementToken> claimEnvironnementTokensToRenew( String strClaim, Timestamp dateNow, Timestamp dateClaimEnd, int nLimit, Plugin plugin );
+}
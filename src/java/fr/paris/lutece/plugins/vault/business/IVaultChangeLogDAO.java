@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * IVaultChangeLogDAO Interface
+ */
+public interface IVaultChangeLogDAO
+{
+    /**
+     * Insert a new record in the table.
+     * 
+     * @param vaultChangeLog
+     *            instance of the VaultChangeLog object to insert
+     * @param plugin
+     *            the Plugin
+     */
+    void insert( VaultChangeLog vaultChangeLog, Plugin plugin );
+
+    /**
+     * Delete the changes made before a date
+     * 
+     * @param dateLimit
+     *            the date
+     * @param plugin
+     *            the Plugin
+     */
+    void deleteBefore( Timestamp dateLimit, Plugin plugin );
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Finders
+
+    /**
+     * Load the changes following a change, in ascending order of id
+     * 
+     * @param nIdFrom
+     *            the id of the change, excluded
+     * @param nLimit
+     *            the maximum number of changes
+     * @param plugin
+     *            the Plugin
+     * @return The list of the changes
+     */
+    List<VaultChangeLog> selectChangesAfter( int nIdFrom, int nLimit, Plugin plugin );
+
+    /**
+     * Load the changes of the given ids
+     * 
+     * @param listIds
+     *            the ids
+     * @param plugin
+     *            the Plugin
+     * @return The list of the changes found
+     */
+    List<VaultChangeLog> selectChangesByIds( List<Integer> listIds, Plugin plugin );
+
+    /**
+     * Load the id of the last change
+     * 
+     * @param plugin
+     *            the Plugin
+     * @return The id, 0 if there is no change
+     */
+    int selectLastId( Plugin plugin );
+}
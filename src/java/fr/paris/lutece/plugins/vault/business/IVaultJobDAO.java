@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * IVaultJobDAO Interface
+ */
+public interface IVaultJobDAO
+{
+    /**
+     * Insert a new record in the table.
+     * 
+     * @param vaultJob
+     *            instance of the VaultJob object to insert
+     * @param plugin
+     *            the Plugin
+     */
+    void insert( VaultJob vaultJob, Plugin plugin );
+
+    /**
+     * Update the status, progress and message of a job, as long as it is running on the node of the VaultJob object
+     * 
+     * @param vaultJob
+     *            the reference of the VaultJob
+     * @param plugin
+     *            the Plugin
+     */
+    void store( VaultJob vaultJob, Plugin plugin );
+
+    /**
+     * Mark a pending job as running on a node. Nothing is changed if the job is no longer pending.
+     * 
+     * @param nKey
+     *            The identifier of the VaultJob
+     * @param strNode
+     *            the node
+     * @param plugin
+     *            the Plugin
+     */
+    void claim( int nKey, String strNode, Plugin plugin );
+
+    /**
+     * Put back the jobs a node was running in the pending state
+     * 
+     * @param strNode
+     *            the node
+     * @param plugin
+     *            the Plugin
+     */
+    void resetRunning( String strNode, Plugin plugin );
+
+    /**
+     * Extend the lease of the jobs a node is running
+     * 
+     * @param strNode
+     *            the node
+     * @param date
+     *            the date of the lease renewal
+     * @param plugin
+     *            the Plugin
+     */
+    void renewLeases( String strNode, Timestamp date, Plugin plugin );
+
+    /**
+     * Put back in the pending state the running jobs whose lease was last renewed before a date, their node having stopped, except the jobs generating a
+     * token
+     * 
+     * @param dateLimit
+     *            the date
+     * @param plugin
+     *            the Plugin
+     */
+    void resetExpired( Timestamp dateLimit, Plugin plugin );
+
+    /**
+     * Put in error the running jobs generating a token whose lease was last renewed before a date : their token was lost with their node
+     * 
+     * @param dateLimit
+     *            the date
+     * @param strMessage
+     *            the error message
+     * @param plugin
+     *            the Plugin
+     */
+    void failExpired( Timestamp dateLimit, String strMessage, Plugin plugin );
+
+    /**
+     * Delete the finished jobs last updated before a date
+     * 
+     * @param dateLimit
+     *            the date
+     * @param plugin
+     *            the Plugin
+     */
+    void deleteFinishedBefore( Timestamp dateLimit, Plugin plugin );
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Finders
+
+    /**
+     * Load the data from the table
+     * 
+     * @param nKey
+     *            The identifier of the vaultJob
+     * @param plugin
+     *            the Plugin
+     * @return The instance of the vaultJob
+     */
+    Optional<VaultJob> load( int nKey, Plugin plugin );
+
+    /**
+     * Load the ids of the pending jobs, oldest first
+     * 
+     * @param plugin
+     *            the Plugin
+     * @return The list of ids
+     */
+    List<Integer> selectIdPendingJobsList( Plugin plugin );
+
+    /**
+     * Load the pending and running jobs of an application
+     * 
+     * @param nIdApplication
+     *            The identifier of the application
+     * @param plugin
+     *            the Plugin
+     * @return The list of jobs
+     */
+    List<VaultJob> selectActiveJobsListByApplication( int nIdApplication, Plugin plugin );
+}
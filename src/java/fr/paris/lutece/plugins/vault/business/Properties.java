@@ -56,6 +56,8 @@ public class Properties implements Serializable
 
     private int _nIdenvironnement;
 
+    private long _lVersion = -1;
+
     /**
      * Gets key.
      *
@@ -119,4 +121,25 @@ public class Properties implements Serializable
         _nIdenvironnement = nIdenvironnement;
     }
 
+    /**
+     * Gets the version of the environment document the value was read from.
+     *
+     * @return the version, -1 if unknown
+     */
+    public long getVersion( )
+    {
+        return _lVersion;
+    }
+
+    /**
+     * Sets the version of the environment document the value was read from.
+     *
+     * @param lVersion
+     *            the version, -1 if unknown
+     */
+    public void setVersion( long lVersion )
+    {
+        _lVersion = lVersion;
+    }
+
 }
@@ -69,27 +69,27 @@ public final class PropertiesHome
      */
     public static Properties create( Properties properties ) throws VaultException
     {
-        Environnement env = EnvironnementHome.findByPrimaryKey( properties.getIdenvironnement( ) ).get( );
-        Application app = ApplicationHome.findByPrimaryKey( env.getIdapplication( ) ).get( );
+        Environnement env = EnvironnementHome.findByPrimaryKeyWithoutSecrets( properties.getIdenvironnement( ) ).get( );
+        Application app = EnvironnementHome.getApplication( env );
         VaultService.getInstance( ).writeSecret( properties.getKey( ), properties.getValue( ), app, env );
 
         return properties;
     }
 
     /**
-     * Update properties.
+     * Update properties. The update is refused if the environment was modified since the version of the properties, when it is known.
      *
      * @param properties
      *            the properties
      * @return the properties
      * @throws VaultException
-     *             the vault exception
+     *             the vault exception, a VaultConflictException if the environment was modified since the version of the properties
      */
     public static Properties update( Properties properties ) throws VaultException
     {
-        Environnement env = EnvironnementHome.findByPrimaryKey( properties.getIdenvironnement( ) ).get( );
-        Application app = ApplicationHome.findByPrimaryKey( env.getIdapplication( ) ).get( );
-        VaultService.getInstance( ).updateSecret( properties.getKey( ), properties.getValue( ), app, env );
+        Environnement env = EnvironnementHome.findByPrimaryKeyWithoutSecrets( properties.getIdenvironnement( ) ).get( );
+        Application app = EnvironnementHome.getApplication( env );
+        VaultService.getInstance( ).updateSecret( properties.getKey( ), properties.getValue( ), app, env, properties.getVersion( ) );
 
         return properties;
     }
@@ -104,8 +104,8 @@ public final class PropertiesHome
      */
     public static void remove( Properties properties ) throws VaultException
     {
-        Environnement env = EnvironnementHome.findByPrimaryKey( properties.getIdenvironnement( ) ).get( );
-        Application app = ApplicationHome.findByPrimaryKey( env.getIdapplication( ) ).get( );
+        Environnement env = EnvironnementHome.findByPrimaryKeyWithoutSecrets( properties.getIdenvironnement( ) ).get( );
+        Application app = EnvironnementHome.getApplication( env );
         VaultService.getInstance( ).deleteSecret( properties.getKey( ), app, env );
     }
 
@@ -120,8 +120,8 @@ public final class PropertiesHome
      */
     public static Properties getPropertiesByEnvIdAndCode( Integer idEnv, String key )
     {
-        Environnement env = EnvironnementHome.findByPrimaryKey( idEnv ).get( );
-        Application app = ApplicationHome.findByPrimaryKey( env.getIdapplication( ) ).get( );
+        Environnement env = EnvironnementHome.findByPrimaryKeyWithoutSecrets( idEnv ).get( );
+        Application app = EnvironnementHome.getApplication( env );
         return VaultService.getInstance( ).getSecret( key, app, env );
     }
 
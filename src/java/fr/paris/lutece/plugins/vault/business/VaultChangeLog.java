@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * A change made by a node to the state the nodes keep in memory, read by the other nodes from the vault_change_log table to invalidate their
+ * copy.
+ */
+public class VaultChangeLog implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    // Variables declarations
+    private int _nId;
+
+    private String _strType;
+
+    private String _strKey;
+
+    private long _lVersion;
+
+    private String _strNode;
+
+    private Timestamp _dateChange;
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public int getId( )
+    {
+        return _nId;
+    }
+
+    /**
+     * Sets id.
+     *
+     * @param nId
+     *            the n id
+     */
+    public void setId( int nId )
+    {
+        _nId = nId;
+    }
+
+    /**
+     * Gets the type of change.
+     *
+     * @return the type
+     */
+    public String getType( )
+    {
+        return _strType;
+    }
+
+    /**
+     * Sets the type of change.
+     *
+     * @param strType
+     *            the type
+     */
+    public void setType( String strType )
+    {
+        _strType = strType;
+    }
+
+    /**
+     * Gets the key of the changed item : an environment path, an environment id or a policy name, depending on the type.
+     *
+     * @return the key
+     */
+    public String getKey( )
+    {
+        return _strKey;
+    }
+
+    /**
+     * Sets the key of the changed item.
+     *
+     * @param strKey
+     *            the key
+     */
+    public void setKey( String strKey )
+    {
+        _strKey = strKey;
+    }
+
+    /**
+     * Gets the version of the item after the change.
+     *
+     * @return the version, negative when unknown
+     */
+    public long getVersion( )
+    {
+        return _lVersion;
+    }
+
+    /**
+     * Sets the version of the item after the change.
+     *
+     * @param lVersion
+     *            the version
+     */
+    public void setVersion( long lVersion )
+    {
+        _lVersion = lVersion;
+    }
+
+    /**
+     * Gets the node which made the change.
+     *
+     * @return the node
+     */
+    public String getNode( )
+    {
+        return _strNode;
+    }
+
+    /**
+     * Sets the node which made the change.
+     *
+     * @param strNode
+     *            the node
+     */
+    public void setNode( String strNode )
+    {
+        _strNode = strNode;
+    }
+
+    /**
+     * Gets the date of the change.
+     *
+     * @return the date
+     */
+    public Timestamp getDateChange( )
+    {
+        return _dateChange;
+    }
+
+    /**
+     * Sets the date of the change.
+     *
+     * @param dateChange
+     *            the date
+     */
+    public void setDateChange( Timestamp dateChange )
+    {
+        _dateChange = dateChange;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The type Vault change log dao.
+ */
+public final class VaultChangeLogDAO implements IVaultChangeLogDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT_COLUMNS = "SELECT id_change, change_type, change_key, version, node, date_change FROM vault_change_log ";
+    private static final String SQL_QUERY_SELECT_AFTER = SQL_QUERY_SELECT_COLUMNS + "WHERE id_change > ? ORDER BY id_change LIMIT ?";
+    private static final String SQL_QUERY_SELECT_BY_IDS = SQL_QUERY_SELECT_COLUMNS + "WHERE id_change IN ( ";
+    private static final String SQL_QUERY_SELECT_LAST_ID = "SELECT MAX( id_change ) FROM vault_change_log";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO vault_change_log ( change_type, change_key, version, node, date_change ) VALUES ( ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_DELETE_BEFORE = "DELETE FROM vault_change_log WHERE date_change < ?";
+
+    @Override
+    public void insert( VaultChangeLog vaultChangeLog, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++, vaultChangeLog.getType( ) );
+            daoUtil.setString( nIndex++, vaultChangeLog.getKey( ) );
+            daoUtil.setLong( nIndex++, vaultChangeLog.getVersion( ) );
+            daoUtil.setString( nIndex++, vaultChangeLog.getNode( ) );
+            daoUtil.setTimestamp( nIndex, vaultChangeLog.getDateChange( ) );
+
+            daoUtil.executeUpdate( );
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                vaultChangeLog.setId( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+        }
+    }
+
+    @Override
+    public void deleteBefore( Timestamp dateLimit, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_BEFORE, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, dateLimit );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public List<VaultChangeLog> selectChangesAfter( int nIdFrom, int nLimit, Plugin plugin )
+    {
+        List<VaultChangeLog> listChanges = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_AFTER, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdFrom );
+            daoUtil.setInt( 2, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listChanges.add( dataToObject( daoUtil ) );
+            }
+
+            return listChanges;
+        }
+    }
+
+    @Override
+    public List<VaultChangeLog> selectChangesByIds( List<Integer> listIds, Plugin plugin )
+    {
+        List<VaultChangeLog> listChanges = new ArrayList<>( );
+        if ( listIds.isEmpty( ) )
+        {
+            return listChanges;
+        }
+
+        StringBuilder builder = new StringBuilder( SQL_QUERY_SELECT_BY_IDS );
+        for ( int i = 0; i < listIds.size( ); i++ )
+        {
+            builder.append( i == 0 ? "?" : ", ?" );
+        }
+        builder.append( " )" );
+
+        try ( DAOUtil daoUtil = new DAOUtil( builder.toString( ), plugin ) )
+        {
+            int nIndex = 1;
+            for ( Integer nId : listIds )
+            {
+                daoUtil.setInt( nIndex++, nId );
+            }
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listChanges.add( dataToObject( daoUtil ) );
+            }
+
+            return listChanges;
+        }
+    }
+
+    @Override
+    public int selectLastId( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_LAST_ID, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? daoUtil.getInt( 1 ) : 0;
+        }
+    }
+
+    private VaultChangeLog dataToObject( DAOUtil daoUtil )
+    {
+        VaultChangeLog vaultChangeLog = new VaultChangeLog( );
+        int nIndex = 1;
+
+        vaultChangeLog.setId( daoUtil.getInt( nIndex++ ) );
+        vaultChangeLog.setType( daoUtil.getString( nIndex++ ) );
+        vaultChangeLog.setKey( daoUtil.getString( nIndex++ ) );
+        vaultChangeLog.setVersion( daoUtil.getLong( nIndex++ ) );
+        vaultChangeLog.setNode( daoUtil.getString( nIndex++ ) );
+        vaultChangeLog.setDateChange( daoUtil.getTimestamp( nIndex ) );
+
+        return vaultChangeLog;
+    }
+}
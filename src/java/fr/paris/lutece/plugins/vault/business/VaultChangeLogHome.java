@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * The type Vault change log home.
+ */
+public final class VaultChangeLogHome
+{
+    // Static variable pointed at the DAO instance
+    private static IVaultChangeLogDAO _dao = SpringContextService.getBean( "vault.vaultChangeLogDAO" );
+    private static Plugin _plugin = PluginService.getPlugin( "vault" );
+
+    private VaultChangeLogHome( )
+    {
+    }
+
+    /**
+     * Create vault change log, dated now.
+     *
+     * @param vaultChangeLog
+     *            the vault change log
+     * @return the vault change log
+     */
+    public static VaultChangeLog create( VaultChangeLog vaultChangeLog )
+    {
+        vaultChangeLog.setDateChange( new Timestamp( System.currentTimeMillis( ) ) );
+        _dao.insert( vaultChangeLog, _plugin );
+
+        return vaultChangeLog;
+    }
+
+    /**
+     * Remove the changes made before a date.
+     *
+     * @param dateLimit
+     *            the date
+     */
+    public static void removeBefore( Timestamp dateLimit )
+    {
+        _dao.deleteBefore( dateLimit, _plugin );
+    }
+
+    /**
+     * Gets the changes following a change, in ascending order of id.
+     *
+     * @param nIdFrom
+     *            the id of the change, excluded
+     * @param nLimit
+     *            the maximum number of changes
+     * @return the changes
+     */
+    public static List<VaultChangeLog> getChangesAfter( int nIdFrom, int nLimit )
+    {
+        return _dao.selectChangesAfter( nIdFrom, nLimit, _plugin );
+    }
+
+    /**
+     * Gets the changes of the given ids.
+     *
+     * @param listIds
+     *            the ids
+     * @return the changes found
+     */
+    public static List<VaultChangeLog> getChangesByIds( List<Integer> listIds )
+    {
+        return _dao.selectChangesByIds( listIds, _plugin );
+    }
+
+    /**
+     * Gets the id of the last change.
+     *
+     * @return the id, 0 if there is no change
+     */
+    public static int getLastId( )
+    {
+        return _dao.selectLastId( _plugin );
+    }
+}
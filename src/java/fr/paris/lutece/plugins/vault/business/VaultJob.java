@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * A long-running operation on an environnement, run in background.
+ */
+public class VaultJob implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Renaming of an environnement
+     */
+    public static final String TYPE_RENAME = "RENAME";
+
+    /**
+     * Removal of an environnement
+     */
+    public static final String TYPE_REMOVE = "REMOVE";
+
+    /**
+     * Regeneration of the token of an environnement
+     */
+    public static final String TYPE_REGENERATE_TOKEN = "REGENERATE_TOKEN";
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_ERROR = "ERROR";
+
+    // Variables declarations
+    private int _nId;
+
+    private String _strType;
+
+    private int _nIdEnvironnement;
+
+    private int _nIdApplication;
+
+    private String _strParameters;
+
+    private String _strStatus;
+
+    private int _nProgress;
+
+    private String _strMessage;
+
+    private String _strNode;
+
+    private int _nIdUser;
+
+    private Timestamp _dateUpdate;
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public int getId( )
+    {
+        return _nId;
+    }
+
+    /**
+     * Sets id.
+     *
+     * @param nId
+     *            the n id
+     */
+    public void setId( int nId )
+    {
+        _nId = nId;
+    }
+
+    /**
+     * Gets type.
+     *
+     * @return the type
+     */
+    public String getType( )
+    {
+        return _strType;
+    }
+
+    /**
+     * Sets type.
+     *
+     * @param strType
+     *            the str type
+     */
+    public void setType( String strType )
+    {
+        _strType = strType;
+    }
+
+    /**
+     * Gets id environnement.
+     *
+     * @return the id environnement
+     */
+    public int getIdEnvironnement( )
+    {
+        return _nIdEnvironnement;
+    }
+
+    /**
+     * Sets id environnement.
+     *
+     * @param nIdEnvironnement
+     *            the n id environnement
+     */
+    public void setIdEnvironnement( int nIdEnvironnement )
+    {
+        _nIdEnvironnement = nIdEnvironnement;
+    }
+
+    /**
+     * Gets id application.
+     *
+     * @return the id application
+     */
+    public int getIdApplication( )
+    {
+        return _nIdApplication;
+    }
+
+    /**
+     * Sets id application.
+     *
+     * @param nIdApplication
+     *            the n id application
+     */
+    public void setIdApplication( int nIdApplication )
+    {
+        _nIdApplication = nIdApplication;
+    }
+
+    /**
+     * Gets parameters.
+     *
+     * @return the parameters, as JSON
+     */
+    public String getParameters( )
+    {
+        return _strParameters;
+    }
+
+    /**
+     * Sets parameters.
+     *
+     * @param strParameters
+     *            the parameters, as JSON
+     */
+    public void setParameters( String strParameters )
+    {
+        _strParameters = strParameters;
+    }
+
+    /**
+     * Gets status.
+     *
+     * @return the status
+     */
+    public String getStatus( )
+    {
+        return _strStatus;
+    }
+
+    /**
+     * Sets status.
+     *
+     * @param strStatus
+     *            the str status
+     */
+    public void setStatus( String strStatus )
+    {
+        _strStatus = strStatus;
+    }
+
+    /**
+     * Gets progress.
+     *
+     * @return the progress, in percent
+     */
+    public int getProgress( )
+    {
+        return _nProgress;
+    }
+
+    /**
+     * Sets progress.
+     *
+     * @param nProgress
+     *            the progress, in percent
+     */
+    public void setProgress( int nProgress )
+    {
+        _nProgress = nProgress;
+    }
+
+    /**
+     * Gets message.
+     *
+     * @return the message
+     */
+    public String getMessage( )
+    {
+        return _strMessage;
+    }
+
+    /**
+     * Sets message.
+     *
+     * @param strMessage
+     *            the str message
+     */
+    public void setMessage( String strMessage )
+    {
+        _strMessage = strMessage;
+    }
+
+    /**
+     * Gets the node running the job.
+     *
+     * @return the node
+     */
+    public String getNode( )
+    {
+        return _strNode;
+    }
+
+    /**
+     * Sets the node running the job.
+     *
+     * @param strNode
+     *            the str node
+     */
+    public void setNode( String strNode )
+    {
+        _strNode = strNode;
+    }
+
+    /**
+     * Gets the id of the admin user who asked for the job.
+     *
+     * @return the id user
+     */
+    public int getIdUser( )
+    {
+        return _nIdUser;
+    }
+
+    /**
+     * Sets the id of the admin user who asked for the job.
+     *
+     * @param nIdUser
+     *            the n id user
+     */
+    public void setIdUser( int nIdUser )
+    {
+        _nIdUser = nIdUser;
+    }
+
+    /**
+     * Gets date update.
+     *
+     * @return the date update
+     */
+    public Timestamp getDateUpdate( )
+    {
+        return _dateUpdate;
+    }
+
+    /**
+     * Sets date update.
+     *
+     * @param dateUpdate
+     *            the date update
+     */
+    public void setDateUpdate( Timestamp dateUpdate )
+    {
+        _dateUpdate = dateUpdate;
+    }
+
+    /**
+     * Tells if the job generates a token, which is only kept in the memory of its node : such a job runs on the node which enqueued it only.
+     *
+     * @return true for a rename or a token regeneration
+     */
+    public boolean isProducingToken( )
+    {
+        return TYPE_RENAME.equals( _strType ) || TYPE_REGENERATE_TOKEN.equals( _strType );
+    }
+
+    /**
+     * Tells if the job is finished.
+     *
+     * @return true if done or in error
+     */
+    public boolean isFinished( )
+    {
+        return STATUS_DONE.equals( _strStatus ) || STATUS_ERROR.equals( _strStatus );
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The type Vault job dao.
+ */
+public final class VaultJobDAO implements IVaultJobDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT_COLUMNS = "SELECT id_job, job_type, id_environnement, id_application, parameters, status, progress, message, node, id_user, date_update FROM vault_job ";
+    private static final String SQL_QUERY_SELECT = SQL_QUERY_SELECT_COLUMNS + "WHERE id_job = ?";
+    private static final String SQL_QUERY_SELECT_ACTIVE_BY_APPLICATION = SQL_QUERY_SELECT_COLUMNS
+            + "WHERE id_application = ? AND status IN ( 'PENDING', 'RUNNING' ) ORDER BY id_job";
+    private static final String SQL_QUERY_SELECT_ID_PENDING = "SELECT id_job FROM vault_job WHERE status = 'PENDING' ORDER BY id_job";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO vault_job ( job_type, id_environnement, id_application, parameters, status, progress, message, node, id_user, date_update ) VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_UPDATE = "UPDATE vault_job SET status = ?, progress = ?, message = ?, date_update = ? WHERE id_job = ? AND node = ? AND status = 'RUNNING'";
+    // The jobs generating a token run on the node which enqueued them only, the token being kept in its memory
+    private static final String SQL_TOKEN_JOB_TYPES = "( '" + VaultJob.TYPE_RENAME + "', '" + VaultJob.TYPE_REGENERATE_TOKEN + "' )";
+    private static final String SQL_QUERY_CLAIM = "UPDATE vault_job SET status = 'RUNNING', node = ?, date_update = ? WHERE id_job = ? AND status = 'PENDING'"
+            + " AND ( job_type NOT IN " + SQL_TOKEN_JOB_TYPES + " OR node = ? )";
+    private static final String SQL_QUERY_RESET_RUNNING = "UPDATE vault_job SET status = 'PENDING' WHERE status = 'RUNNING' AND node = ?";
+    private static final String SQL_QUERY_RENEW_LEASES = "UPDATE vault_job SET date_update = ? WHERE status = 'RUNNING' AND node = ?";
+    private static final String SQL_QUERY_RESET_EXPIRED = "UPDATE vault_job SET status = 'PENDING' WHERE status = 'RUNNING' AND date_update < ? AND job_type NOT IN "
+            + SQL_TOKEN_JOB_TYPES;
+    private static final String SQL_QUERY_FAIL_EXPIRED = "UPDATE vault_job SET status = 'ERROR', progress = 100, message = ?, date_update = ? WHERE status = 'RUNNING'"
+            + " AND date_update < ? AND job_type IN " + SQL_TOKEN_JOB_TYPES;
+    private static final String SQL_QUERY_DELETE_FINISHED = "DELETE FROM vault_job WHERE status IN ( 'DONE', 'ERROR' ) AND date_update < ?";
+
+    @Override
+    public void insert( VaultJob vaultJob, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++, vaultJob.getType( ) );
+            daoUtil.setInt( nIndex++, vaultJob.getIdEnvironnement( ) );
+            daoUtil.setInt( nIndex++, vaultJob.getIdApplication( ) );
+            daoUtil.setString( nIndex++, vaultJob.getParameters( ) );
+            daoUtil.setString( nIndex++, vaultJob.getStatus( ) );
+            daoUtil.setInt( nIndex++, vaultJob.getProgress( ) );
+            daoUtil.setString( nIndex++, vaultJob.getMessage( ) );
+            daoUtil.setString( nIndex++, vaultJob.getNode( ) );
+            daoUtil.setInt( nIndex++, vaultJob.getIdUser( ) );
+            daoUtil.setTimestamp( nIndex, vaultJob.getDateUpdate( ) );
+
+            daoUtil.executeUpdate( );
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                vaultJob.setId( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+        }
+    }
+
+    @Override
+    public Optional<VaultJob> load( int nKey, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, plugin ) )
+        {
+            daoUtil.setInt( 1, nKey );
+            daoUtil.executeQuery( );
+            VaultJob vaultJob = null;
+
+            if ( daoUtil.next( ) )
+            {
+                vaultJob = dataToObject( daoUtil );
+            }
+
+            return Optional.ofNullable( vaultJob );
+        }
+    }
+
+    @Override
+    public void store( VaultJob vaultJob, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE, plugin ) )
+        {
+            int nIndex = 1;
+
+            daoUtil.setString( nIndex++, vaultJob.getStatus( ) );
+            daoUtil.setInt( nIndex++, vaultJob.getProgress( ) );
+            daoUtil.setString( nIndex++, vaultJob.getMessage( ) );
+            daoUtil.setTimestamp( nIndex++, vaultJob.getDateUpdate( ) );
+            daoUtil.setInt( nIndex++, vaultJob.getId( ) );
+            daoUtil.setString( nIndex, vaultJob.getNode( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void claim( int nKey, String strNode, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_CLAIM, plugin ) )
+        {
+            daoUtil.setString( 1, strNode );
+            daoUtil.setTimestamp( 2, new Timestamp( System.currentTimeMillis( ) ) );
+            daoUtil.setInt( 3, nKey );
+            daoUtil.setString( 4, strNode );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void resetRunning( String strNode, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RESET_RUNNING, plugin ) )
+        {
+            daoUtil.setString( 1, strNode );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void renewLeases( String strNode, Timestamp date, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RENEW_LEASES, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, date );
+            daoUtil.setString( 2, strNode );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void resetExpired( Timestamp dateLimit, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RESET_EXPIRED, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, dateLimit );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void failExpired( Timestamp dateLimit, String strMessage, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_FAIL_EXPIRED, plugin ) )
+        {
+            daoUtil.setString( 1, strMessage );
+            daoUtil.setTimestamp( 2, new Timestamp( System.currentTimeMillis( ) ) );
+            daoUtil.setTimestamp( 3, dateLimit );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void deleteFinishedBefore( Timestamp dateLimit, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_FINISHED, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, dateLimit );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public List<Integer> selectIdPendingJobsList( Plugin plugin )
+    {
+        List<Integer> listIds = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ID_PENDING, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listIds.add( daoUtil.getInt( 1 ) );
+            }
+
+            return listIds;
+        }
+    }
+
+    @Override
+    public List<VaultJob> selectActiveJobsListByApplication( int nIdApplication, Plugin plugin )
+    {
+        List<VaultJob> listJobs = new ArrayList<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ACTIVE_BY_APPLICATION, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdApplication );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listJobs.add( dataToObject( daoUtil ) );
+            }
+
+            return listJobs;
+        }
+    }
+
+    private VaultJob dataToObject( DAOUtil daoUtil )
+    {
+        VaultJob vaultJob = new VaultJob( );
+        int nIndex = 1;
+
+        vaultJob.setId( daoUtil.getInt( nIndex++ ) );
+        vaultJob.setType( daoUtil.getString( nIndex++ ) );
+        vaultJob.setIdEnvironnement( daoUtil.getInt( nIndex++ ) );
+        vaultJob.setIdApplication( daoUtil.getInt( nIndex++ ) );
+        vaultJob.setParameters( daoUtil.getString( nIndex++ ) );
+        vaultJob.setStatus( daoUtil.getString( nIndex++ ) );
+        vaultJob.setProgress( daoUtil.getInt( nIndex++ ) );
+        vaultJob.setMessage( daoUtil.getString( nIndex++ ) );
+        vaultJob.setNode( daoUtil.getString( nIndex++ ) );
+        vaultJob.setIdUser( daoUtil.getInt( nIndex++ ) );
+        vaultJob.setDateUpdate( daoUtil.getTimestamp( nIndex ) );
+
+        return vaultJob;
+    }
+
+}
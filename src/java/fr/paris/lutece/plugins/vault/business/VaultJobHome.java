@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The type Vault job home.
+ */
+public final class VaultJobHome
+{
+    // Static variable pointed at the DAO instance
+    private static IVaultJobDAO _dao = SpringContextService.getBean( "vault.vaultJobDAO" );
+    private static Plugin _plugin = PluginService.getPlugin( "vault" );
+
+    private VaultJobHome( )
+    {
+    }
+
+    /**
+     * Create vault job.
+     *
+     * @param vaultJob
+     *            the vault job
+     * @return the vault job
+     */
+    public static VaultJob create( VaultJob vaultJob )
+    {
+        vaultJob.setDateUpdate( new Timestamp( System.currentTimeMillis( ) ) );
+        _dao.insert( vaultJob, _plugin );
+
+        return vaultJob;
+    }
+
+    /**
+     * Update the status, progress and message of a vault job, as long as it is still running on its node : once its lease expired, another node may have
+     * taken it over or put it in error.
+     *
+     * @param vaultJob
+     *            the vault job, with the node running it
+     * @return true if the job was updated, false if its node no longer owns it
+     */
+    public static boolean update( VaultJob vaultJob )
+    {
+        vaultJob.setDateUpdate( new Timestamp( System.currentTimeMillis( ) ) );
+        _dao.store( vaultJob, _plugin );
+
+        return _dao.load( vaultJob.getId( ), _plugin )
+                .filter( job -> vaultJob.getStatus( ).equals( job.getStatus( ) ) && vaultJob.getNode( ).equals( job.getNode( ) )
+                        && vaultJob.getProgress( ) == job.getProgress( ) )
+                .isPresent( );
+    }
+
+    /**
+     * Claim a pending job for a node. A job generating a token can only be claimed by the node which enqueued it.
+     *
+     * @param nKey
+     *            the n key
+     * @param strNode
+     *            the node
+     * @return the job if this node got it
+     */
+    public static Optional<VaultJob> claim( int nKey, String strNode )
+    {
+        _dao.claim( nKey, strNode, _plugin );
+        return _dao.load( nKey, _plugin ).filter( job -> VaultJob.STATUS_RUNNING.equals( job.getStatus( ) ) && strNode.equals( job.getNode( ) ) );
+    }
+
+    /**
+     * Put back the jobs of a node in the pending state.
+     *
+     * @param strNode
+     *            the node
+     */
+    public static void resetRunning( String strNode )
+    {
+        _dao.resetRunning( strNode, _plugin );
+    }
+
+    /**
+     * Extend the lease of the jobs a node is running, so that the other nodes do not take them over.
+     *
+     * @param strNode
+     *            the node
+     */
+    public static void renewLeases( String strNode )
+    {
+        _dao.renewLeases( strNode, new Timestamp( System.currentTimeMillis( ) ), _plugin );
+    }
+
+    /**
+     * Put back in the pending state the running jobs whose lease was last renewed before a date, and put in error the ones generating a token.
+     *
+     * @param dateLimit
+     *            the date
+     * @param strTokenLostMessage
+     *            the error message of the jobs generating a token
+     */
+    public static void resetExpired( Timestamp dateLimit, String strTokenLostMessage )
+    {
+        _dao.failExpired( dateLimit, strTokenLostMessage, _plugin );
+        _dao.resetExpired( dateLimit, _plugin );
+    }
+
+    /**
+     * Remove the finished jobs last updated before a date.
+     *
+     * @param dateLimit
+     *            the date
+     */
+    public static void removeFinishedBefore( Timestamp dateLimit )
+    {
+        _dao.deleteFinishedBefore( dateLimit, _plugin );
+    }
+
+    /**
+     * Find by primary key optional.
+     *
+     * @param nKey
+     *            the n key
+     * @return the optional
+     */
+    public static Optional<VaultJob> findByPrimaryKey( int nKey )
+    {
+        return _dao.load( nKey, _plugin );
+    }
+
+    /**
+     * Gets id pending jobs list.
+     *
+     * @return the id pending jobs list
+     */
+    public static List<Integer> getIdPendingJobsList( )
+    {
+        return _dao.selectIdPendingJobsList( _plugin );
+    }
+
+    /**
+     * Gets active jobs list by application.
+     *
+     * @param nIdApplication
+     *            the id application
+     * @return the pending and running jobs
+     */
+    public static List<VaultJob> getActiveJobsListByApplication( int nIdApplication )
+    {
+        return _dao.selectActiveJobsListByApplication( nIdApplication, _plugin );
+    }
+
+}
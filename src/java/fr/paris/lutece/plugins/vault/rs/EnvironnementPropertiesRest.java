@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.rs;
+
+import com.bettercloud.vault.VaultException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import fr.paris.lutece.plugins.rest.service.RestConstants;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.business.EnvironnementHome;
+import fr.paris.lutece.plugins.vault.service.VaultService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * REST resource giving the consuming applications all the properties of their environment in one response. The application authenticates with the token
+ * created for the environment. The response carries an ETag built from the version of the environment document, and a conditional request whose
+ * If-None-Match still matches is answered 304 from the secret cache, without reading or sending the secrets.
+ */
+@Path( RestConstants.BASE_PATH + "vault/api/v1" )
+public class EnvironnementPropertiesRest
+{
+    /**
+     * Header carrying the token of the environment
+     */
+    public static final String HEADER_TOKEN = "X-Vault-Token";
+
+    private static final String CACHE_CONTROL = "private, no-cache";
+    private static final String ETAG_ANY = "*";
+    private static final String ETAG_WEAK_PREFIX = "W/";
+
+    /**
+     * Gets the properties of an environment.
+     *
+     * @param strApplicationCode
+     *            the code of the application
+     * @param strEnvironnementCode
+     *            the code of the environnement
+     * @param strToken
+     *            the token of the environnement
+     * @param strIfNoneMatch
+     *            the ETag of the properties the application already has, if any
+     * @return the properties as a JSON object, or 304 if they did not change
+     */
+    @GET
+    @Path( "/applications/{applicationCode}/environnements/{environnementCode}/properties" )
+    @Produces( MediaType.APPLICATION_JSON )
+    public Response getProperties( @PathParam( "applicationCode" ) String strApplicationCode, @PathParam( "environnementCode" ) String strEnvironnementCode,
+            @HeaderParam( HEADER_TOKEN ) String strToken, @HeaderParam( HttpHeaders.IF_NONE_MATCH ) String strIfNoneMatch )
+    {
+        if ( strToken == null || strToken.isEmpty( ) )
+        {
+            return Response.status( Response.Status.UNAUTHORIZED ).build( );
+        }
+
+        try
+        {
+            Optional<Environnement> env = EnvironnementHome.findByCodesWithoutSecrets( strApplicationCode, strEnvironnementCode );
+            // An unknown environment is answered like a wrong token, so that the codes cannot be probed
+            if ( !env.isPresent( ) || !VaultService.getInstance( ).isEnvironnementToken( env.get( ), strToken ) )
+            {
+                return Response.status( Response.Status.FORBIDDEN ).build( );
+            }
+            Environnement environnement = env.get( );
+
+            // The version is read before the secrets : a write made in between sends newer secrets with the older ETag, and they are sent again on the
+            // next request, rather than older secrets with the newer ETag
+            String strETag = getETag( environnement, VaultService.getInstance( ).getSecretsVersion( environnement ) );
+            if ( matches( strIfNoneMatch, strETag ) )
+            {
+                return Response.notModified( ).header( HttpHeaders.ETAG, strETag ).header( HttpHeaders.CACHE_CONTROL, CACHE_CONTROL ).build( );
+            }
+
+            Map<String, String> mapSecrets = VaultService.getInstance( ).readSecrets( environnement );
+            String strJson = VaultHttpClient.getObjectMapper( ).writeValueAsString( mapSecrets );
+            return Response.ok( strJson, MediaType.APPLICATION_JSON_TYPE ).header( HttpHeaders.ETAG, strETag )
+                    .header( HttpHeaders.CACHE_CONTROL, CACHE_CONTROL ).build( );
+        }
+        catch( VaultException | JsonProcessingException e )
+        {
+            AppLogService.error( "Unable to read the properties of " + strApplicationCode + "/" + strEnvironnementCode, e );
+            return Response.status( Response.Status.SERVICE_UNAVAILABLE ).build( );
+        }
+    }
+
+    /**
+     * Gets the ETag of the properties of an environment. The id of the environment is part of it, so that an environment removed and created again with
+     * the same codes does not match the ETags of the former one.
+     *
+     * @param environnement
+     *            the environnement
+     * @param lVersion
+     *            the version of the environment document
+     * @return the quoted ETag
+     */
+    public static String getETag( Environnement environnement, long lVersion )
+    {
+        return "\"" + environnement.getId( ) + "-" + lVersion + "\"";
+    }
+
+    /**
+     * Tells if an If-None-Match header matches an ETag, with the weak comparison of RFC 7232.
+     *
+     * @param strIfNoneMatch
+     *            the header, a list of ETags or *, may be null
+     * @param strETag
+     *            the quoted ETag
+     * @return true if the header matches
+     */
+    public static boolean matches( String strIfNoneMatch, String strETag )
+    {
+        if ( strIfNoneMatch == null )
+        {
+            return false;
+        }
+        for ( String strCandidate : strIfNoneMatch.split( "," ) )
+        {
+            String strTag = strCandidate.trim( );
+            if ( strTag.startsWith( ETAG_WEAK_PREFIX ) )
+            {
+                strTag = strTag.substring( ETAG_WEAK_PREFIX.length( ) );
+            }
+            if ( strTag.equals( ETAG_ANY ) || strTag.equals( strETag ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
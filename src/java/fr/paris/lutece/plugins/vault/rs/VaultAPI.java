@@ -33,138 +33,457 @@
  */
 package fr.paris.lutece.plugins.vault.rs;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.bettercloud.vault.VaultException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.service.VaultCircuitBreaker;
+import fr.paris.lutece.plugins.vault.service.VaultConflictException;
+import fr.paris.lutece.plugins.vault.service.VaultMetrics;
+import fr.paris.lutece.plugins.vault.service.VaultRetryPolicy;
+import fr.paris.lutece.plugins.vault.service.VaultUtil;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
+import java.io.IOException;
+import java.util.Map;
 
 public class VaultAPI
 {
+    private static final int HTTP_ERROR = 400;
+    private static final int HTTP_FORBIDDEN = 403;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final String PATH_LOOKUP_SELF = "/v1/auth/token/lookup-self";
+    private static final String PATH_RENEW_ACCESSOR = "/v1/auth/token/renew-accessor";
+    private static final String ERROR_CHECK_AND_SET = "check-and-set";
 
-    public static void createPolicy( String appCode, Environnement environnement )
+    /**
+     * Writes an ACL policy, replacing the policy of the same name.
+     *
+     * @param appCode
+     *            the application code, for the metrics
+     * @param strName
+     *            the policy name
+     * @param strPolicy
+     *            the policy, in HCL
+     * @throws VaultException
+     *             if the write failed
+     */
+    public static void writePolicy( String appCode, String strName, String strPolicy ) throws VaultException
     {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_CREATE_POLICY, appCode );
+        ObjectNode json = VaultHttpClient.getObjectMapper( ).createObjectNode( );
+        json.put( "policy", strPolicy );
+
+        String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
+        String policyPath = AppPropertiesService.getProperty( "vault.addPolicyPath" );
+        HttpPost httpPost = new HttpPost( baseUrl + policyPath + strName );
+        try
+        {
+            httpPost.setEntity( jsonEntity( json ) );
+            if ( executeChecked( VaultMetrics.OPERATION_CREATE_POLICY, httpPost ) == null )
+            {
+                throw new VaultException( "Vault responded with HTTP status code: " + HTTP_NOT_FOUND + " writing the policy " + strName, HTTP_NOT_FOUND );
+            }
+        }
+        catch( IOException e )
+        {
+            sample.error( );
+            throw new VaultException( e );
+        }
+        catch( VaultException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
+
+    /**
+     * Reads an ACL policy.
+     *
+     * @param appCode
+     *            the application code, for the metrics
+     * @param strName
+     *            the policy name
+     * @return the policy, in HCL, or null if there is no policy of this name
+     * @throws VaultException
+     *             if the read failed
+     */
+    public static String readPolicy( String appCode, String strName ) throws VaultException
+    {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_READ_POLICY, appCode );
+        String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
+        String policyPath = AppPropertiesService.getProperty( "vault.addPolicyPath" );
+        HttpGet httpGet = new HttpGet( baseUrl + policyPath + strName );
         try
         {
-            ObjectMapper objectMapper = new ObjectMapper();
-            ObjectNode json = objectMapper.createObjectNode();
-            json.put("policy","# Manage auth methods broadly across Vault\npath \"secret/data/" + appCode + "/" + environnement.getCode( ) + "/*"
-                    + "\"\n{\n  capabilities = [\"read\"]\n}\n\n# Create, update, and delete auth methods\npath \"secret/metadata/" + appCode + "/" + environnement.getCode( ) + "/*\"\n{\n  capabilities = [\"list\"]\n}");
+            String responseString = executeChecked( VaultMetrics.OPERATION_READ_POLICY, httpGet );
+            if ( responseString == null )
+            {
+                return null;
+            }
+            JsonNode policy = VaultHttpClient.getObjectMapper( ).readTree( responseString ).path( "data" ).path( "policy" );
+            return policy.isMissingNode( ) ? null : policy.asText( );
+        }
+        catch( IOException e )
+        {
+            sample.error( );
+            throw new VaultException( e );
+        }
+        catch( VaultException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
 
+    public static void removePolicy( String appCode, String policy )
+    {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_REMOVE_POLICY, appCode );
+        try
+        {
             String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
             String policyPath = AppPropertiesService.getProperty( "vault.addPolicyPath" );
-            String policyName = appCode + environnement.getCode( );
-            String strUrl = baseUrl + policyPath + policyName;
-            HttpPost httpPost = new HttpPost(strUrl);
+            HttpDelete httpDelete = new HttpDelete( baseUrl + policyPath + policy );
 
-            httpPost.setHeader("X-Vault-Token", AppPropertiesService.getProperty( "vault.rootToken" ));
-            httpPost.setHeader(HttpHeaders.ACCEPT, "application/json");
-            httpPost.setHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-            httpPost.setEntity(new StringEntity(json.toString()));
+            execute( VaultMetrics.OPERATION_REMOVE_POLICY, httpDelete, "Vault removing policy status : ", sample );
+        }
+        catch( Exception e )
+        {
+            sample.error( );
+            AppLogService.error( "Error removing policy", e );
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
 
-            CloseableHttpClient httpClient = HttpClients.createDefault();
-            CloseableHttpResponse response = httpClient.execute(httpPost);
+    public static void removeTokenJackson( String appCode, String accessor )
+    {
+        if ( accessor != null )
+        {
+            VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_REMOVE_TOKEN, appCode );
+            try
+            {
+                ObjectNode json = VaultHttpClient.getObjectMapper( ).createObjectNode( );
+                json.put( "accessor", accessor );
 
-            HttpEntity httpEntity = response.getEntity();
-            if (httpEntity!=null) {
-                String responseString = EntityUtils.toString(httpEntity);
-                AppLogService.info("Vault removing token status : " + responseString);
+                String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
+                String tokenPath = AppPropertiesService.getProperty( "vault.addTokenPath" );
+                HttpPost httpPost = new HttpPost( baseUrl + tokenPath );
+                httpPost.setEntity( jsonEntity( json ) );
 
+                execute( VaultMetrics.OPERATION_REMOVE_TOKEN, httpPost, "Vault removing token status : ", sample );
+            }
+            catch( Exception e )
+            {
+                sample.error( );
+                AppLogService.error( "Error removing token", e );
+            }
+            finally
+            {
+                sample.close( );
             }
+        }
+    }
+
+    /**
+     * Writes the whole document of an environment with a KV v2 check-and-set : Vault refuses the write if the document is no longer at the expected
+     * version. The driver cannot send the options of a write, so the request is made directly.
+     *
+     * @param strPath
+     *            the environment path, starting with the secret engine mount
+     * @param mapSecrets
+     *            the secrets of the environment
+     * @param lVersion
+     *            the version the document must be at, 0 if it must not exist yet
+     * @return the version of the written document
+     * @throws VaultException
+     *             if the write failed, or a {@link VaultConflictException} if the document was modified since the expected version
+     */
+    public static long writeSecrets( String strPath, Map<String, String> mapSecrets, long lVersion ) throws VaultException
+    {
+        ObjectNode json = VaultHttpClient.getObjectMapper( ).createObjectNode( );
+        json.putObject( "options" ).put( "cas", lVersion );
+        ObjectNode data = json.putObject( "data" );
+        mapSecrets.forEach( data::put );
 
-            response.close();
-            httpClient.close();
+        String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
+        HttpPost httpPost = new HttpPost( baseUrl + "/v1/" + getDataPath( strPath ) );
+        httpPost.setHeader( "X-Vault-Token", AppPropertiesService.getProperty( "vault.rootToken" ) );
+        httpPost.setHeader( HttpHeaders.ACCEPT, "application/json" );
 
+        try
+        {
+            httpPost.setEntity( jsonEntity( json ) );
+            VaultResponse response = send( VaultMetrics.OPERATION_WRITE_SECRET, httpPost );
+            if ( response._nStatus >= HTTP_ERROR )
+            {
+                if ( response._strBody.contains( ERROR_CHECK_AND_SET ) )
+                {
+                    throw new VaultConflictException( strPath, lVersion );
+                }
+                throw response.toException( );
+            }
+            JsonNode version = VaultHttpClient.getObjectMapper( ).readTree( response._strBody ).path( "data" ).path( "version" );
+            return version.asLong( lVersion + 1 );
         }
-        catch( Exception e )
+        catch( IOException e )
         {
-            AppLogService.error( "Error creating policy", e );
+            throw new VaultException( e );
         }
     }
 
-    public static void removePolicy( String policy )
+    /**
+     * Deletes a KV v2 path with all its versions and its metadata. A delete of the data path only marks the latest version as deleted : the key would
+     * still be listed. The driver cannot delete the metadata, so the request is made directly.
+     *
+     * @param strPath
+     *            the path, starting with the secret engine mount
+     * @throws VaultException
+     *             if the delete failed, a path which does not exist being ignored
+     */
+    public static void deleteSecrets( String strPath ) throws VaultException
     {
-        try
-        {
+        String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
+        HttpDelete httpDelete = new HttpDelete( baseUrl + "/v1/" + getEnginePath( strPath, "metadata" ) );
+        httpDelete.setHeader( "X-Vault-Token", AppPropertiesService.getProperty( "vault.rootToken" ) );
 
-            String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
-            String policyPath = AppPropertiesService.getProperty( "vault.addPolicyPath" );
-            String strUrl = baseUrl + policyPath + policy;
-            HttpDelete httpDelete = new HttpDelete(strUrl);
-
-            httpDelete.setHeader("X-Vault-Token", AppPropertiesService.getProperty( "vault.rootToken" ));
+        VaultResponse response = send( VaultMetrics.OPERATION_DELETE_SECRET, httpDelete );
+        if ( response._nStatus >= HTTP_ERROR && response._nStatus != HTTP_NOT_FOUND )
+        {
+            throw response.toException( );
+        }
+    }
 
-            CloseableHttpClient httpClient = HttpClients.createDefault();
-            CloseableHttpResponse response = httpClient.execute(httpDelete);
+    /**
+     * Renews a token from its accessor, the plugin never keeping the tokens themselves.
+     *
+     * @param appCode
+     *            the application code, for the metrics
+     * @param strAccessor
+     *            the accessor of the token
+     * @param strIncrement
+     *            the requested lease duration (for instance 768h), or null for the TTL the token was created with
+     * @return the lease duration of the renewed token in seconds, 0 if it does not expire
+     * @throws VaultException
+     *             if the renewal failed, for instance because the token was revoked or is not renewable
+     */
+    public static long renewTokenAccessor( String appCode, String strAccessor, String strIncrement ) throws VaultException
+    {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_RENEW_TOKEN, appCode );
+        ObjectNode json = VaultHttpClient.getObjectMapper( ).createObjectNode( );
+        json.put( "accessor", strAccessor );
+        if ( strIncrement != null && !strIncrement.isEmpty( ) )
+        {
+            json.put( "increment", strIncrement );
+        }
 
-            HttpEntity httpEntity = response.getEntity();
-            if (httpEntity!=null) {
-                String responseString = EntityUtils.toString(httpEntity);
-                AppLogService.info("Vault removing policy status : " + responseString);
+        String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
+        HttpPost httpPost = new HttpPost( baseUrl + PATH_RENEW_ACCESSOR );
+        httpPost.setHeader( "X-Vault-Token", AppPropertiesService.getProperty( "vault.rootToken" ) );
+        httpPost.setHeader( HttpHeaders.ACCEPT, "application/json" );
 
+        try
+        {
+            httpPost.setEntity( jsonEntity( json ) );
+            VaultResponse response = send( VaultMetrics.OPERATION_RENEW_TOKEN, httpPost );
+            if ( response._nStatus >= HTTP_ERROR )
+            {
+                throw response.toException( );
             }
+            return VaultHttpClient.getObjectMapper( ).readTree( response._strBody ).path( "auth" ).path( "lease_duration" ).asLong( );
+        }
+        catch( IOException e )
+        {
+            sample.error( );
+            throw new VaultException( e );
+        }
+        catch( VaultException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
 
-            response.close();
-            httpClient.close();
+    /**
+     * Looks up a token with its own credentials, to find out which environment it was created for.
+     *
+     * @param strToken
+     *            the token
+     * @return the accessor of the token, or null if Vault does not know the token
+     * @throws VaultException
+     *             if the lookup failed
+     */
+    public static String lookupTokenAccessor( String strToken ) throws VaultException
+    {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_LOOKUP_TOKEN, null );
+        String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
+        HttpGet httpGet = new HttpGet( baseUrl + PATH_LOOKUP_SELF );
+        httpGet.setHeader( "X-Vault-Token", strToken );
+        httpGet.setHeader( HttpHeaders.ACCEPT, "application/json" );
 
+        try
+        {
+            VaultResponse response = send( VaultMetrics.OPERATION_LOOKUP_TOKEN, httpGet );
+            if ( response._nStatus == HTTP_FORBIDDEN )
+            {
+                return null;
+            }
+            if ( response._nStatus >= HTTP_ERROR )
+            {
+                throw response.toException( );
+            }
+            String strAccessor = VaultHttpClient.getObjectMapper( ).readTree( response._strBody ).path( "data" ).path( "accessor" ).asText( );
+            return strAccessor.isEmpty( ) ? null : strAccessor;
         }
-        catch( Exception e )
+        catch( IOException e )
         {
-            AppLogService.error( "Error removing policy", e );
+            sample.error( );
+            throw new VaultException( e );
+        }
+        catch( VaultException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
         }
     }
 
-    public static void removeTokenJackson( String accessor )
+    /**
+     * Gets the path of the data of a KV v2 secret : /secret/app/env becomes secret/data/app/env.
+     */
+    private static String getDataPath( String strPath )
     {
-        if (accessor != null) {
-            try
-            {
-                // Créez l'objet que vous souhaitez envoyer en tant que JSON
+        return getEnginePath( strPath, "data" );
+    }
 
-                // Créez un objet ObjectMapper pour mapper l'objet Java en JSON
-                ObjectMapper objectMapper = new ObjectMapper();
-                ObjectNode json = objectMapper.createObjectNode();
-                json.put("accessor",accessor);
+    private static String getEnginePath( String strPath, String strPrefix )
+    {
+        String strRelative = strPath.replaceAll( "^/+", "" );
+        int nSlash = strRelative.indexOf( '/' );
+        if ( nSlash < 0 )
+        {
+            return strRelative + "/" + strPrefix;
+        }
+        return strRelative.substring( 0, nSlash ) + "/" + strPrefix + strRelative.substring( nSlash );
+    }
 
-                // First open URL connection (using JDK; similar with other libs)
-                String baseUrl = AppPropertiesService.getProperty( "vault.vaultServerAdress" );
-                String tokenPath = AppPropertiesService.getProperty( "vault.addTokenPath" );
-                String completeUrl = baseUrl + tokenPath;
-                HttpPost httpPost = new HttpPost(completeUrl);
+    private static StringEntity jsonEntity( ObjectNode json ) throws IOException
+    {
+        return new StringEntity( VaultHttpClient.getObjectWriter( ).writeValueAsString( json ), ContentType.APPLICATION_JSON );
+    }
 
-                httpPost.setHeader("X-Vault-Token", AppPropertiesService.getProperty( "vault.rootToken" ));
-                httpPost.setHeader(HttpHeaders.ACCEPT, "application/json");
-                httpPost.setHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-                httpPost.setEntity(new StringEntity(json.toString()));
+    /**
+     * Send a request with the shared client and fails on an error status.
+     *
+     * @return the response body, or null if Vault responded 404
+     */
+    private static String executeChecked( String strOperation, HttpRequestBase request ) throws VaultException
+    {
+        request.setHeader( "X-Vault-Token", AppPropertiesService.getProperty( "vault.rootToken" ) );
+        request.setHeader( HttpHeaders.ACCEPT, "application/json" );
 
-                CloseableHttpClient httpClient = HttpClients.createDefault();
-                CloseableHttpResponse response = httpClient.execute(httpPost);
+        VaultResponse response = send( strOperation, request );
+        if ( response._nStatus == HTTP_NOT_FOUND )
+        {
+            return null;
+        }
+        if ( response._nStatus >= HTTP_ERROR )
+        {
+            throw response.toException( );
+        }
+        return response._strBody;
+    }
 
-                HttpEntity httpEntity = response.getEntity();
-                if (httpEntity!=null) {
-                    String responseString = EntityUtils.toString(httpEntity);
-                    AppLogService.info("Vault removing token status : " + responseString);
+    /**
+     * Send a request with the shared client. An error status marks the sample in error.
+     */
+    private static void execute( String strOperation, HttpRequestBase request, String strLogPrefix, VaultMetrics.Sample sample ) throws VaultException
+    {
+        request.setHeader( "X-Vault-Token", AppPropertiesService.getProperty( "vault.rootToken" ) );
+        request.setHeader( HttpHeaders.ACCEPT, "application/json" );
 
-                }
+        VaultResponse response = send( strOperation, request );
+        if ( response._nStatus >= HTTP_ERROR )
+        {
+            sample.error( );
+        }
+        AppLogService.info( strLogPrefix + response._strBody );
+    }
 
-                response.close();
-                httpClient.close();
+    /**
+     * Send a request with the shared client, with the read timeout of the operation and through the circuit breaker, and retries it while it fails
+     * transiently. The response body is always consumed so the connection goes back to the pool. A server error or a rate limit is thrown, so that the
+     * circuit breaker and the retry policy see it.
+     */
+    private static VaultResponse send( String strOperation, HttpRequestBase request ) throws VaultException
+    {
+        request.setConfig( VaultHttpClient.getRequestConfig( VaultUtil.getTimeout( strOperation ) ) );
 
+        return VaultRetryPolicy.getInstance( ).call( strOperation, ( ) -> VaultCircuitBreaker.getInstance( ).call( ( ) -> {
+            try ( CloseableHttpResponse httpResponse = VaultHttpClient.getHttpClient( ).execute( request ) )
+            {
+                HttpEntity httpEntity = httpResponse.getEntity( );
+                VaultResponse response = new VaultResponse( httpResponse.getStatusLine( ).getStatusCode( ),
+                        httpEntity == null ? "" : EntityUtils.toString( httpEntity ) );
+                if ( response._nStatus >= HTTP_SERVER_ERROR || response._nStatus == HTTP_TOO_MANY_REQUESTS )
+                {
+                    throw response.toException( );
+                }
+                return response;
             }
-            catch( Exception e )
+            catch( IOException e )
             {
-                AppLogService.error( "Error removing token", e );
+                throw new VaultException( e );
             }
+        } ) );
+    }
+
+    /**
+     * The status and body of a response
+     */
+    private static final class VaultResponse
+    {
+        private final int _nStatus;
+        private final String _strBody;
+
+        VaultResponse( int nStatus, String strBody )
+        {
+            _nStatus = nStatus;
+            _strBody = strBody;
+        }
+
+        VaultException toException( )
+        {
+            return new VaultException( "Vault responded with HTTP status code: " + _nStatus + "\nResponse body: " + _strBody, _nStatus );
         }
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.rs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived, pooled HTTP client shared by the calls made directly to the Vault HTTP API.
+ */
+public final class VaultHttpClient
+{
+    // Properties
+    private static final String PROPERTY_MAX_CONNECTIONS = "vault.http.maxConnections";
+    private static final String PROPERTY_MAX_CONNECTIONS_PER_ROUTE = "vault.http.maxConnectionsPerRoute";
+    private static final String PROPERTY_CONNECT_TIMEOUT = "vault.http.connectTimeout";
+    private static final String PROPERTY_READ_TIMEOUT = "vault.http.readTimeout";
+    private static final String PROPERTY_KEEP_ALIVE = "vault.http.keepAlive";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+    private static final ObjectWriter WRITER = MAPPER.writer( );
+
+    private static CloseableHttpClient _httpClient;
+    private static RequestConfig _requestConfig;
+
+    private VaultHttpClient( )
+    {
+    }
+
+    /**
+     * Gets the shared http client, creating the connection pool on first use.
+     *
+     * @return the http client
+     */
+    public static synchronized CloseableHttpClient getHttpClient( )
+    {
+        if ( _httpClient == null )
+        {
+            _httpClient = createHttpClient( );
+        }
+        return _httpClient;
+    }
+
+    /**
+     * Gets the configuration of a request having its own read timeout, the other timeouts being those of the shared client.
+     *
+     * @param nReadTimeout
+     *            the read timeout in milliseconds
+     * @return the request configuration
+     */
+    public static synchronized RequestConfig getRequestConfig( int nReadTimeout )
+    {
+        if ( _requestConfig == null )
+        {
+            int nConnectTimeout = AppPropertiesService.getPropertyInt( PROPERTY_CONNECT_TIMEOUT, 5000 );
+            _requestConfig = RequestConfig.custom( ).setConnectTimeout( nConnectTimeout ).setConnectionRequestTimeout( nConnectTimeout )
+                    .setSocketTimeout( AppPropertiesService.getPropertyInt( PROPERTY_READ_TIMEOUT, 10000 ) ).build( );
+        }
+        return RequestConfig.copy( _requestConfig ).setSocketTimeout( nReadTimeout ).build( );
+    }
+
+    /**
+     * Gets the shared object mapper. It is thread-safe once configured.
+     *
+     * @return the object mapper
+     */
+    public static ObjectMapper getObjectMapper( )
+    {
+        return MAPPER;
+    }
+
+    /**
+     * Gets the shared object writer.
+     *
+     * @return the object writer
+     */
+    public static ObjectWriter getObjectWriter( )
+    {
+        return WRITER;
+    }
+
+    /**
+     * Close the pooled connections. A new pool is created if the client is used again afterwards.
+     */
+    public static synchronized void shutdown( )
+    {
+        if ( _httpClient != null )
+        {
+            try
+            {
+                _httpClient.close( );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "Error closing the Vault http client", e );
+            }
+            _httpClient = null;
+        }
+    }
+
+    private static CloseableHttpClient createHttpClient( )
+    {
+        int nKeepAlive = AppPropertiesService.getPropertyInt( PROPERTY_KEEP_ALIVE, 30000 );
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager( nKeepAlive, TimeUnit.MILLISECONDS );
+        connectionManager.setMaxTotal( AppPropertiesService.getPropertyInt( PROPERTY_MAX_CONNECTIONS, 20 ) );
+        connectionManager.setDefaultMaxPerRoute( AppPropertiesService.getPropertyInt( PROPERTY_MAX_CONNECTIONS_PER_ROUTE, 10 ) );
+
+        RequestConfig requestConfig = getRequestConfig( AppPropertiesService.getPropertyInt( PROPERTY_READ_TIMEOUT, 10000 ) );
+
+        // Keep connections alive as long as the server allows it, bounded by the configured duration
+        return HttpClients.custom( ).setConnectionManager( connectionManager ).setDefaultRequestConfig( requestConfig )
+                .setKeepAliveStrategy( ( response, context ) -> {
+                    long lServerKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration( response, context );
+                    return ( lServerKeepAlive > 0 ) ? Math.min( lServerKeepAlive, nKeepAlive ) : nKeepAlive;
+                } ).evictExpiredConnections( ).evictIdleConnections( (long) nKeepAlive, TimeUnit.MILLISECONDS ).build( );
+    }
+}
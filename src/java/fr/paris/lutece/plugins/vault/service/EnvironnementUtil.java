@@ -40,6 +40,7 @@ import fr.paris.lutece.util.ErrorMessage;
 import fr.paris.lutece.util.ReferenceList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -59,20 +60,27 @@ public class EnvironnementUtil
     public static ReferenceList getEnvironnementNames( Locale locale )
     {
 
-        String listEnv = AppPropertiesService.getProperty( "vault.environnement.list" );
-
-        String [ ] envs = listEnv.split( "," );
         ReferenceList _listNamesEnvironnements = new ReferenceList( );
 
-        for ( int i = 0; i < envs.length; i++ )
+        for ( String strType : getEnvironnementTypes( ) )
         {
-            _listNamesEnvironnements.addItem( envs [i], I18nService.getLocalizedString( "vault.manage_environnement.examples." + envs [i], locale ) );
+            _listNamesEnvironnements.addItem( strType, I18nService.getLocalizedString( "vault.manage_environnement.examples." + strType, locale ) );
         }
 
         return _listNamesEnvironnements;
 
     }
 
+    /**
+     * Gets the standard environnement types, from vault.environnement.list.
+     *
+     * @return the environnement types
+     */
+    public static List<String> getEnvironnementTypes( )
+    {
+        return Arrays.asList( AppPropertiesService.getProperty( "vault.environnement.list" ).split( "," ) );
+    }
+
     public static String getEnvironmentPath( String appCode, String envCode )
     {
         return AppPropertiesService.getProperty( "vault.secretPath" ) + "/" + appCode + "/" + envCode;
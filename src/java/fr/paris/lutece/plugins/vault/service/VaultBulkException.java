@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reports together the keys that failed during a bulk operation on an environment.
+ */
+public class VaultBulkException extends VaultException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Exception> _mapFailures;
+    private final Map<String, ?> _mapResults;
+
+    /**
+     * Instantiates a new bulk exception.
+     *
+     * @param strOperation
+     *            the name of the operation
+     * @param mapFailures
+     *            the error of each failed key
+     */
+    public VaultBulkException( String strOperation, Map<String, Exception> mapFailures )
+    {
+        this( strOperation, mapFailures, Collections.emptyMap( ) );
+    }
+
+    /**
+     * Instantiates a new bulk exception, keeping the result of the keys that succeeded.
+     *
+     * @param strOperation
+     *            the name of the operation
+     * @param mapFailures
+     *            the error of each failed key
+     * @param mapResults
+     *            the result of each key that succeeded
+     */
+    public VaultBulkException( String strOperation, Map<String, Exception> mapFailures, Map<String, ?> mapResults )
+    {
+        super( strOperation + " failed for " + mapFailures.size( ) + " key(s) : " + String.join( ", ", new TreeMap<>( mapFailures ).keySet( ) ) );
+        _mapFailures = Collections.unmodifiableMap( new TreeMap<>( mapFailures ) );
+        _mapResults = Collections.unmodifiableMap( mapResults );
+        mapFailures.values( ).forEach( this::addSuppressed );
+    }
+
+    /**
+     * Gets the error of each failed key.
+     *
+     * @return the failures sorted by key
+     */
+    public Map<String, Exception> getFailures( )
+    {
+        return _mapFailures;
+    }
+
+    /**
+     * Gets the result of each key that succeeded, such as the tokens created for the other environments.
+     *
+     * @param <T>
+     *            the result type of the operation
+     * @return the results in the order of the keys
+     */
+    @SuppressWarnings( "unchecked" )
+    public <T> Map<String, T> getResults( )
+    {
+        return (Map<String, T>) _mapResults;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the per-key Vault calls of a bulk operation concurrently. Virtual threads are used when the JVM provides them, otherwise a fixed pool of daemon
+ * threads. In both cases no more than vault.bulk.concurrency calls are in flight. A bulk operation started from a task of another one runs inline on
+ * the calling thread, which already holds a permit: waiting for new permits there could deadlock once every permit is held by an outer task.
+ */
+public final class VaultBulkExecutor
+{
+    private static final String PROPERTY_CONCURRENCY = "vault.bulk.concurrency";
+    private static final int DEFAULT_CONCURRENCY = 8;
+
+    private static final ThreadLocal<Boolean> IN_TASK = ThreadLocal.withInitial( ( ) -> Boolean.FALSE );
+
+    private static ExecutorService _executor;
+    private static Semaphore _semaphore;
+
+    /**
+     * A Vault call on one key
+     *
+     * @param <T>
+     *            the result type
+     */
+    @FunctionalInterface
+    public interface KeyTask<T>
+    {
+        /**
+         * Apply the call to a key.
+         *
+         * @param strKey
+         *            the key
+         * @return the result
+         * @throws VaultException
+         *             the vault exception
+         */
+        T apply( String strKey ) throws VaultException;
+    }
+
+    private VaultBulkExecutor( )
+    {
+    }
+
+    /**
+     * Runs a task for each key and waits for all of them.
+     *
+     * @param <T>
+     *            the result type
+     * @param strOperation
+     *            the name of the operation, used in the error message
+     * @param keys
+     *            the keys
+     * @param task
+     *            the task
+     * @return the result of each key, in the order of the keys
+     * @throws VaultBulkException
+     *             if at least one key failed, with the error of each failed key and the result of the others
+     */
+    public static <T> Map<String, T> run( String strOperation, Collection<String> keys, KeyTask<T> task ) throws VaultBulkException
+    {
+        if ( IN_TASK.get( ) )
+        {
+            return runInline( strOperation, keys, task );
+        }
+
+        Map<String, Future<T>> mapFutures = new LinkedHashMap<>( );
+        ExecutorService executor;
+        Semaphore semaphore;
+        synchronized( VaultBulkExecutor.class )
+        {
+            executor = getExecutor( );
+            semaphore = _semaphore;
+        }
+        for ( String strKey : keys )
+        {
+            mapFutures.put( strKey, executor.submit( ( ) -> {
+                semaphore.acquire( );
+                IN_TASK.set( Boolean.TRUE );
+                try
+                {
+                    return task.apply( strKey );
+                }
+                finally
+                {
+                    IN_TASK.remove( );
+                    semaphore.release( );
+                }
+            } ) );
+        }
+
+        Map<String, T> mapResults = new LinkedHashMap<>( );
+        Map<String, Exception> mapFailures = new HashMap<>( );
+        for ( Map.Entry<String, Future<T>> future : mapFutures.entrySet( ) )
+        {
+            try
+            {
+                mapResults.put( future.getKey( ), future.getValue( ).get( ) );
+            }
+            catch( ExecutionException e )
+            {
+                mapFailures.put( future.getKey( ), e.getCause( ) instanceof Exception ? (Exception) e.getCause( ) : e );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                mapFailures.put( future.getKey( ), e );
+            }
+        }
+
+        if ( !mapFailures.isEmpty( ) )
+        {
+            throw new VaultBulkException( strOperation, mapFailures, mapResults );
+        }
+        return mapResults;
+    }
+
+    /**
+     * Runs a task for each key, one after the other, on the calling thread.
+     *
+     * @param <T>
+     *            the result type
+     * @param strOperation
+     *            the name of the operation, used in the error message
+     * @param keys
+     *            the keys
+     * @param task
+     *            the task
+     * @return the result of each key, in the order of the keys
+     * @throws VaultBulkException
+     *             if at least one key failed, with the error of each failed key and the result of the others
+     */
+    private static <T> Map<String, T> runInline( String strOperation, Collection<String> keys, KeyTask<T> task ) throws VaultBulkException
+    {
+        Map<String, T> mapResults = new LinkedHashMap<>( );
+        Map<String, Exception> mapFailures = new HashMap<>( );
+        for ( String strKey : keys )
+        {
+            try
+            {
+                mapResults.put( strKey, task.apply( strKey ) );
+            }
+            catch( Exception e )
+            {
+                mapFailures.put( strKey, e );
+            }
+        }
+
+        if ( !mapFailures.isEmpty( ) )
+        {
+            throw new VaultBulkException( strOperation, mapFailures, mapResults );
+        }
+        return mapResults;
+    }
+
+    /**
+     * Stops the executor. It is created again on next use.
+     */
+    public static synchronized void shutdown( )
+    {
+        if ( _executor != null )
+        {
+            _executor.shutdownNow( );
+            _executor = null;
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor( )
+    {
+        if ( _executor == null )
+        {
+            int nConcurrency = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_CONCURRENCY, DEFAULT_CONCURRENCY ) );
+            _semaphore = new Semaphore( nConcurrency );
+            _executor = createVirtualThreadExecutor( );
+            if ( _executor == null )
+            {
+                _executor = Executors.newFixedThreadPool( nConcurrency, new BulkThreadFactory( ) );
+            }
+        }
+        return _executor;
+    }
+
+    private static ExecutorService createVirtualThreadExecutor( )
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        }
+        catch( ReflectiveOperationException e )
+        {
+            AppLogService.debug( "Virtual threads not available, using a fixed thread pool for Vault bulk operations" );
+            return null;
+        }
+    }
+
+    /**
+     * Names the pool threads and does not prevent the JVM from stopping
+     */
+    private static final class BulkThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger _nCount = new AtomicInteger( );
+
+        @Override
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "vault-bulk-" + _nCount.incrementAndGet( ) );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
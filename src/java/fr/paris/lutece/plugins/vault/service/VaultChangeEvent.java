@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+/**
+ * A change of the secrets of an environment. The event tells which environment changed and its new version, never the secrets themselves.
+ */
+public final class VaultChangeEvent
+{
+    public static final String TYPE_MODIFIED = "modified";
+    public static final String TYPE_REMOVED = "removed";
+
+    private final String _strPath;
+    private final String _strType;
+    private final long _lVersion;
+
+    /**
+     * Instantiates a new change event.
+     *
+     * @param strPath
+     *            the environment path
+     * @param strType
+     *            the type of change, {@link #TYPE_MODIFIED} or {@link #TYPE_REMOVED}
+     * @param lVersion
+     *            the version of the environment document after the change
+     */
+    public VaultChangeEvent( String strPath, String strType, long lVersion )
+    {
+        _strPath = strPath;
+        _strType = strType;
+        _lVersion = lVersion;
+    }
+
+    /**
+     * Gets the environment path.
+     *
+     * @return the path
+     */
+    public String getPath( )
+    {
+        return _strPath;
+    }
+
+    /**
+     * Gets the type of change.
+     *
+     * @return the type
+     */
+    public String getType( )
+    {
+        return _strType;
+    }
+
+    /**
+     * Gets the version of the environment document after the change.
+     *
+     * @return the version
+     */
+    public long getVersion( )
+    {
+        return _lVersion;
+    }
+}
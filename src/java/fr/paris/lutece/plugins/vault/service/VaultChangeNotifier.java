@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the changes of the environment secrets to the subscribers of each environment. Subscribers hold no thread : events and heartbeats are
+ * delivered by a single dispatch thread, so the writes of secrets never wait for them.
+ */
+public final class VaultChangeNotifier
+{
+    private static final String PROPERTY_HEARTBEAT = "vault.changes.heartbeat";
+    private static final String PROPERTY_MAX_SUBSCRIBERS = "vault.changes.maxSubscribers";
+
+    private static VaultChangeNotifier _instance;
+
+    private final Map<String, Set<VaultChangeListener>> _mapListeners = new ConcurrentHashMap<>( );
+    private final AtomicInteger _nSubscribers = new AtomicInteger( );
+    private final int _nMaxSubscribers;
+    private final ScheduledExecutorService _executor;
+
+    private VaultChangeNotifier( )
+    {
+        _nMaxSubscribers = AppPropertiesService.getPropertyInt( PROPERTY_MAX_SUBSCRIBERS, 10000 );
+        _executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "vault-changes" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        long lHeartbeat = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_HEARTBEAT, 30 ) );
+        _executor.scheduleWithFixedDelay( this::heartbeat, lHeartbeat, lHeartbeat, TimeUnit.SECONDS );
+    }
+
+    /**
+     * Gets instance.
+     *
+     * @return the instance
+     */
+    public static synchronized VaultChangeNotifier getInstance( )
+    {
+        if ( _instance == null )
+        {
+            _instance = new VaultChangeNotifier( );
+        }
+        return _instance;
+    }
+
+    /**
+     * Subscribes to the changes of an environment.
+     *
+     * @param strPath
+     *            the environment path
+     * @param listener
+     *            the listener
+     * @return false if the maximum number of subscribers is reached
+     */
+    public boolean subscribe( String strPath, VaultChangeListener listener )
+    {
+        if ( _nSubscribers.incrementAndGet( ) > _nMaxSubscribers )
+        {
+            _nSubscribers.decrementAndGet( );
+            return false;
+        }
+        _mapListeners.computeIfAbsent( strPath, k -> ConcurrentHashMap.newKeySet( ) ).add( listener );
+        return true;
+    }
+
+    /**
+     * Unsubscribes from the changes of an environment. Unsubscribing twice has no effect.
+     *
+     * @param strPath
+     *            the environment path
+     * @param listener
+     *            the listener
+     */
+    public void unsubscribe( String strPath, VaultChangeListener listener )
+    {
+        _mapListeners.computeIfPresent( strPath, ( k, setListeners ) -> {
+            if ( setListeners.remove( listener ) )
+            {
+                _nSubscribers.decrementAndGet( );
+            }
+            return setListeners.isEmpty( ) ? null : setListeners;
+        } );
+    }
+
+    /**
+     * Publishes a change to the subscribers of the environment. The subscribers are notified asynchronously.
+     *
+     * @param event
+     *            the change
+     */
+    public void publish( VaultChangeEvent event )
+    {
+        if ( !_mapListeners.containsKey( event.getPath( ) ) )
+        {
+            return;
+        }
+        try
+        {
+            _executor.execute( ( ) -> dispatch( event ) );
+        }
+        catch( RejectedExecutionException e )
+        {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Gets the number of subscribers.
+     *
+     * @return the subscriber count
+     */
+    public int getSubscriberCount( )
+    {
+        return _nSubscribers.get( );
+    }
+
+    /**
+     * Stops the dispatch thread.
+     */
+    public void shutdown( )
+    {
+        _executor.shutdownNow( );
+    }
+
+    private void dispatch( VaultChangeEvent event )
+    {
+        Set<VaultChangeListener> setListeners = _mapListeners.get( event.getPath( ) );
+        if ( setListeners != null )
+        {
+            for ( VaultChangeListener listener : setListeners )
+            {
+                try
+                {
+                    listener.onChange( event );
+                }
+                catch( RuntimeException e )
+                {
+                    AppLogService.error( "Error notifying a change of " + event.getPath( ), e );
+                    unsubscribe( event.getPath( ), listener );
+                }
+            }
+        }
+    }
+
+    private void heartbeat( )
+    {
+        for ( Map.Entry<String, Set<VaultChangeListener>> entry : _mapListeners.entrySet( ) )
+        {
+            for ( VaultChangeListener listener : entry.getValue( ) )
+            {
+                try
+                {
+                    listener.onHeartbeat( );
+                }
+                catch( RuntimeException e )
+                {
+                    unsubscribe( entry.getKey( ), listener );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guards the Vault calls with a circuit breaker and a bulkhead. After vault.resilience.failureThreshold consecutive failures (no response, timeout or
+ * 5xx status) the circuit opens and the calls fail at once for vault.resilience.openDuration milliseconds. A single call is then let through as a
+ * probe : the circuit closes if it succeeds and opens again otherwise. No more than vault.resilience.maxConcurrentCalls calls are in flight, a call
+ * waiting at most vault.resilience.maxWait milliseconds for its turn.
+ */
+public class VaultCircuitBreaker
+{
+    // Properties
+    private static final String PROPERTY_FAILURE_THRESHOLD = "vault.resilience.failureThreshold";
+    private static final String PROPERTY_OPEN_DURATION = "vault.resilience.openDuration";
+    private static final String PROPERTY_MAX_CONCURRENT_CALLS = "vault.resilience.maxConcurrentCalls";
+    private static final String PROPERTY_MAX_WAIT = "vault.resilience.maxWait";
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final int DEFAULT_OPEN_DURATION = 30000;
+    private static final int DEFAULT_MAX_CONCURRENT_CALLS = 20;
+    private static final int DEFAULT_MAX_WAIT = 1000;
+
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    /**
+     * The states of the circuit
+     */
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * A guarded Vault call
+     *
+     * @param <T>
+     *            the result type
+     */
+    @FunctionalInterface
+    public interface VaultCall<T>
+    {
+        /**
+         * Makes the call.
+         *
+         * @return the result
+         * @throws VaultException
+         *             the vault exception
+         */
+        T call( ) throws VaultException;
+    }
+
+    private final int _nFailureThreshold;
+    private final long _lOpenDurationMillis;
+    private final int _nMaxConcurrentCalls;
+    private final long _lMaxWaitMillis;
+    private final Semaphore _bulkhead;
+    private final AtomicInteger _nConsecutiveFailures = new AtomicInteger( );
+    private final LongAdder _lOpenedCount = new LongAdder( );
+    private final LongAdder _lRejectedOpenCount = new LongAdder( );
+    private final LongAdder _lRejectedBulkheadCount = new LongAdder( );
+
+    // The state is read without locking on the closed path, and changed under the lock of the instance
+    private volatile State _state = State.CLOSED;
+    private long _lOpenedAt;
+    private boolean _bProbeInFlight;
+
+    /**
+     * Instantiates a new circuit breaker.
+     *
+     * @param nFailureThreshold
+     *            the number of consecutive failures opening the circuit
+     * @param lOpenDurationMillis
+     *            the duration the circuit stays open before a probe, in milliseconds
+     * @param nMaxConcurrentCalls
+     *            the maximum number of calls in flight
+     * @param lMaxWaitMillis
+     *            the maximum wait of a call for its turn, in milliseconds
+     */
+    public VaultCircuitBreaker( int nFailureThreshold, long lOpenDurationMillis, int nMaxConcurrentCalls, long lMaxWaitMillis )
+    {
+        _nFailureThreshold = Math.max( 1, nFailureThreshold );
+        _lOpenDurationMillis = lOpenDurationMillis;
+        _nMaxConcurrentCalls = Math.max( 1, nMaxConcurrentCalls );
+        _lMaxWaitMillis = lMaxWaitMillis;
+        _bulkhead = new Semaphore( _nMaxConcurrentCalls );
+    }
+
+    /**
+     * Gets the instance guarding the calls of the plugin, configured by the properties.
+     *
+     * @return the instance
+     */
+    public static VaultCircuitBreaker getInstance( )
+    {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Makes a call when the circuit allows it and a place is free in the bulkhead.
+     *
+     * @param <T>
+     *            the result type
+     * @param call
+     *            the call
+     * @return the result of the call
+     * @throws VaultException
+     *             the exception of the call, or a {@link VaultUnavailableException} if the call was refused without being made
+     */
+    public <T> T call( VaultCall<T> call ) throws VaultException
+    {
+        boolean bProbe = acquirePermission( );
+        if ( !acquireBulkhead( ) )
+        {
+            if ( bProbe )
+            {
+                releaseProbe( );
+            }
+            _lRejectedBulkheadCount.increment( );
+            throw new VaultUnavailableException( "Too many Vault calls in flight (" + _nMaxConcurrentCalls + ")" );
+        }
+
+        boolean bFailure = false;
+        try
+        {
+            return call.call( );
+        }
+        catch( VaultException e )
+        {
+            bFailure = isFailure( e );
+            throw e;
+        }
+        finally
+        {
+            _bulkhead.release( );
+            record( bProbe, bFailure );
+        }
+    }
+
+    /**
+     * Gets the state of the circuit. An open circuit whose duration is over is reported half-open, its next call being the probe.
+     *
+     * @return the state
+     */
+    public synchronized State getState( )
+    {
+        if ( _state == State.OPEN && isOpenDurationOver( ) )
+        {
+            return State.HALF_OPEN;
+        }
+        return _state;
+    }
+
+    /**
+     * Gets the number of times the circuit opened.
+     *
+     * @return the count
+     */
+    public long getOpenedCount( )
+    {
+        return _lOpenedCount.sum( );
+    }
+
+    /**
+     * Gets the number of calls refused because the circuit was open.
+     *
+     * @return the count
+     */
+    public long getRejectedOpenCount( )
+    {
+        return _lRejectedOpenCount.sum( );
+    }
+
+    /**
+     * Gets the number of calls refused because the bulkhead was full.
+     *
+     * @return the count
+     */
+    public long getRejectedBulkheadCount( )
+    {
+        return _lRejectedBulkheadCount.sum( );
+    }
+
+    /**
+     * Gets the number of calls in flight.
+     *
+     * @return the count
+     */
+    public int getCallsInFlight( )
+    {
+        return _nMaxConcurrentCalls - _bulkhead.availablePermits( );
+    }
+
+    /**
+     * Gets the maximum number of calls in flight.
+     *
+     * @return the maximum
+     */
+    public int getMaxConcurrentCalls( )
+    {
+        return _nMaxConcurrentCalls;
+    }
+
+    /**
+     * Closes the circuit and forgets the failures.
+     */
+    public synchronized void reset( )
+    {
+        _state = State.CLOSED;
+        _bProbeInFlight = false;
+        _nConsecutiveFailures.set( 0 );
+    }
+
+    /**
+     * Lets the call through when the circuit is closed, or as the probe when it is half-open.
+     *
+     * @return true if the call is the probe
+     * @throws VaultUnavailableException
+     *             if the circuit is open, or half-open with the probe in flight
+     */
+    private boolean acquirePermission( ) throws VaultUnavailableException
+    {
+        if ( _state == State.CLOSED )
+        {
+            return false;
+        }
+        synchronized( this )
+        {
+            if ( _state == State.OPEN && isOpenDurationOver( ) )
+            {
+                _state = State.HALF_OPEN;
+            }
+            if ( _state == State.CLOSED )
+            {
+                return false;
+            }
+            if ( _state == State.HALF_OPEN && !_bProbeInFlight )
+            {
+                _bProbeInFlight = true;
+                return true;
+            }
+        }
+        _lRejectedOpenCount.increment( );
+        throw new VaultUnavailableException( "Vault circuit breaker is open" );
+    }
+
+    private boolean acquireBulkhead( )
+    {
+        try
+        {
+            return _bulkhead.tryAcquire( _lMaxWaitMillis, TimeUnit.MILLISECONDS );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            return false;
+        }
+    }
+
+    private synchronized void releaseProbe( )
+    {
+        _bProbeInFlight = false;
+    }
+
+    private void record( boolean bProbe, boolean bFailure )
+    {
+        if ( !bFailure )
+        {
+            if ( _nConsecutiveFailures.get( ) != 0 )
+            {
+                _nConsecutiveFailures.set( 0 );
+            }
+            if ( bProbe )
+            {
+                synchronized( this )
+                {
+                    _bProbeInFlight = false;
+                    _state = State.CLOSED;
+                }
+                AppLogService.info( "Vault circuit breaker closed" );
+            }
+            return;
+        }
+
+        int nFailures = _nConsecutiveFailures.incrementAndGet( );
+        if ( bProbe || nFailures >= _nFailureThreshold )
+        {
+            synchronized( this )
+            {
+                if ( bProbe || _state == State.CLOSED )
+                {
+                    _bProbeInFlight = false;
+                    _state = State.OPEN;
+                    _lOpenedAt = System.currentTimeMillis( );
+                    _lOpenedCount.increment( );
+                    AppLogService.error( "Vault circuit breaker opened after " + nFailures + " consecutive failures" );
+                }
+            }
+        }
+    }
+
+    private boolean isOpenDurationOver( )
+    {
+        return System.currentTimeMillis( ) - _lOpenedAt >= _lOpenDurationMillis;
+    }
+
+    /**
+     * Tells whether an exception shows Vault is unhealthy : no response (status 0, for instance a timeout) or a server error. Other statuses are
+     * answers of a healthy Vault.
+     */
+    static boolean isFailure( VaultException e )
+    {
+        int nStatus = e.getHttpStatusCode( );
+        return nStatus == 0 || nStatus >= HTTP_SERVER_ERROR;
+    }
+
+    /**
+     * Holds the instance, created when the class is first initialized by {@link #getInstance()}.
+     */
+    private static final class InstanceHolder
+    {
+        private static final VaultCircuitBreaker INSTANCE = new VaultCircuitBreaker(
+                AppPropertiesService.getPropertyInt( PROPERTY_FAILURE_THRESHOLD, DEFAULT_FAILURE_THRESHOLD ),
+                AppPropertiesService.getPropertyInt( PROPERTY_OPEN_DURATION, DEFAULT_OPEN_DURATION ),
+                AppPropertiesService.getPropertyInt( PROPERTY_MAX_CONCURRENT_CALLS, DEFAULT_MAX_CONCURRENT_CALLS ),
+                AppPropertiesService.getPropertyInt( PROPERTY_MAX_WAIT, DEFAULT_MAX_WAIT ) );
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+
+/**
+ * Reports a check-and-set write refused because the environment document was modified since the version it was read at.
+ */
+public class VaultConflictException extends VaultException
+{
+    private static final long serialVersionUID = 1L;
+    private static final int HTTP_BAD_REQUEST = 400;
+
+    private final long _lExpectedVersion;
+
+    /**
+     * Instantiates a new conflict exception.
+     *
+     * @param strPath
+     *            the environment path
+     * @param lExpectedVersion
+     *            the version the document was expected at
+     */
+    public VaultConflictException( String strPath, long lExpectedVersion )
+    {
+        super( "Environnement " + strPath + " was modified since version " + lExpectedVersion, HTTP_BAD_REQUEST );
+        _lExpectedVersion = lExpectedVersion;
+    }
+
+    /**
+     * Gets the version the document was expected at.
+     *
+     * @return the expected version
+     */
+    public long getExpectedVersion( )
+    {
+        return _lExpectedVersion;
+    }
+}
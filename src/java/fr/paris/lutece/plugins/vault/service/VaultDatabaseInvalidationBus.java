@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import fr.paris.lutece.plugins.vault.business.VaultChangeLog;
+import fr.paris.lutece.plugins.vault.business.VaultChangeLogHome;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Invalidation bus over the vault_change_log table of the shared database, needing no other infrastructure. Each change is inserted in the table,
+ * and every node reads the changes inserted by the others after the last one it read, every vault.invalidation.pollInterval milliseconds. An id
+ * skipped may belong to an insert not committed yet, so it is looked for again for a while. The changes older than vault.invalidation.retention
+ * seconds are purged.
+ */
+public class VaultDatabaseInvalidationBus implements VaultInvalidationBus
+{
+    // Properties
+    private static final String PROPERTY_POLL_INTERVAL = "vault.invalidation.pollInterval";
+    private static final String PROPERTY_RETENTION = "vault.invalidation.retention";
+    private static final int DEFAULT_POLL_INTERVAL = 1000;
+    private static final int DEFAULT_RETENTION = 3600;
+
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_GAPS = 100;
+    private static final long GAP_TIMEOUT_MILLIS = 30000;
+    private static final long PURGE_INTERVAL_MILLIS = 60000;
+
+    // Tells the changes of this node from the ones of the other nodes, even when they run on the same host
+    private final String _strNode = UUID.randomUUID( ).toString( );
+    private final long _lPollIntervalMillis;
+    private final long _lRetentionMillis;
+
+    // Ids skipped by the last reads, with the time until which they are looked for
+    private final Map<Integer, Long> _mapGaps = new LinkedHashMap<>( );
+    private int _nLastId;
+    private long _lLastPurge;
+    private Consumer<VaultInvalidation> _listener;
+    private ScheduledExecutorService _executor;
+
+    /**
+     * Instantiates a new bus configured by the properties.
+     */
+    public VaultDatabaseInvalidationBus( )
+    {
+        this( AppPropertiesService.getPropertyInt( PROPERTY_POLL_INTERVAL, DEFAULT_POLL_INTERVAL ),
+                AppPropertiesService.getPropertyInt( PROPERTY_RETENTION, DEFAULT_RETENTION ) * 1000L );
+    }
+
+    /**
+     * Instantiates a new bus.
+     *
+     * @param lPollIntervalMillis
+     *            the delay between two reads of the changes, in milliseconds, 0 to read them only when {@link #poll()} is called
+     * @param lRetentionMillis
+     *            the time the changes are kept, in milliseconds
+     */
+    public VaultDatabaseInvalidationBus( long lPollIntervalMillis, long lRetentionMillis )
+    {
+        _lPollIntervalMillis = lPollIntervalMillis;
+        _lRetentionMillis = lRetentionMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish( VaultInvalidation invalidation )
+    {
+        VaultChangeLog change = new VaultChangeLog( );
+        change.setType( invalidation.getType( ) );
+        change.setKey( invalidation.getKey( ) );
+        change.setVersion( invalidation.getVersion( ) );
+        change.setNode( _strNode );
+        VaultChangeLogHome.create( change );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void start( Consumer<VaultInvalidation> listener )
+    {
+        _listener = listener;
+        // The changes made before this node started are already in the state it loads
+        _nLastId = VaultChangeLogHome.getLastId( );
+        _lLastPurge = System.currentTimeMillis( );
+        if ( _lPollIntervalMillis > 0 && _executor == null )
+        {
+            _executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+                Thread thread = new Thread( runnable, "vault-invalidation" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+            _executor.scheduleWithFixedDelay( this::pollQuietly, _lPollIntervalMillis, _lPollIntervalMillis, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void shutdown( )
+    {
+        if ( _executor != null )
+        {
+            _executor.shutdownNow( );
+            _executor = null;
+        }
+    }
+
+    /**
+     * Reads the changes made by the other nodes since the last read, and gives them to the listener.
+     *
+     * @return the number of changes read
+     */
+    public synchronized int poll( )
+    {
+        if ( _listener == null )
+        {
+            return 0;
+        }
+
+        long lNow = System.currentTimeMillis( );
+        List<VaultChangeLog> listChanges = new ArrayList<>( );
+        if ( !_mapGaps.isEmpty( ) )
+        {
+            for ( VaultChangeLog change : VaultChangeLogHome.getChangesByIds( new ArrayList<>( _mapGaps.keySet( ) ) ) )
+            {
+                _mapGaps.remove( change.getId( ) );
+                listChanges.add( change );
+            }
+            _mapGaps.values( ).removeIf( lUntil -> lUntil <= lNow );
+        }
+        for ( VaultChangeLog change : VaultChangeLogHome.getChangesAfter( _nLastId, BATCH_SIZE ) )
+        {
+            for ( int nId = _nLastId + 1; nId < change.getId( ) && _mapGaps.size( ) < MAX_GAPS; nId++ )
+            {
+                _mapGaps.put( nId, lNow + GAP_TIMEOUT_MILLIS );
+            }
+            _nLastId = change.getId( );
+            listChanges.add( change );
+        }
+
+        int nRead = 0;
+        for ( VaultChangeLog change : listChanges )
+        {
+            if ( !_strNode.equals( change.getNode( ) ) )
+            {
+                try
+                {
+                    _listener.accept( new VaultInvalidation( change.getType( ), change.getKey( ), change.getVersion( ) ) );
+                }
+                catch( RuntimeException e )
+                {
+                    AppLogService.error( "Unable to apply the change " + change.getId( ) + " of another node", e );
+                }
+                nRead++;
+            }
+        }
+
+        if ( lNow - _lLastPurge >= PURGE_INTERVAL_MILLIS )
+        {
+            _lLastPurge = lNow;
+            VaultChangeLogHome.removeBefore( new Timestamp( lNow - _lRetentionMillis ) );
+        }
+        return nRead;
+    }
+
+    private void pollQuietly( )
+    {
+        try
+        {
+            poll( );
+        }
+        catch( RuntimeException e )
+        {
+            // Read again from the last change read on next poll
+            AppLogService.error( "Unable to read the changes of the other nodes", e );
+        }
+    }
+}
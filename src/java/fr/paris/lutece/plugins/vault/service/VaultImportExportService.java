@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import fr.paris.lutece.plugins.vault.business.Application;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * Imports and exports the secrets of environments as JSON, YAML or properties files.
+ * <ul>
+ * <li>A file of an environment holds its key/value pairs. Nested JSON or YAML objects are flattened, their keys joined with dots.</li>
+ * <li>A file of an application holds the key/value pairs of each environment under its code, for instance {"dev": {"key": "value"}} or
+ * dev.key=value.</li>
+ * </ul>
+ * Files are parsed and written as streams. An import writes each environment with a single request, the environments in parallel.
+ */
+public final class VaultImportExportService
+{
+    private static final char SEPARATOR = '.';
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory( );
+    private static final JsonFactory YAML_FACTORY = new YAMLFactory( );
+
+    private VaultImportExportService( )
+    {
+    }
+
+    /**
+     * Reads the file of an environment.
+     *
+     * @param inputStream
+     *            the file content
+     * @param format
+     *            the file format
+     * @param strEnvironnementCode
+     *            the code of the environment
+     * @return the secrets, by environment code
+     * @throws IOException
+     *             if the file cannot be read or is invalid
+     */
+    public static Map<String, Map<String, String>> readEnvironnement( InputStream inputStream, VaultSecretsFormat format, String strEnvironnementCode )
+            throws IOException
+    {
+        Map<String, String> mapSecrets = new TreeMap<>( );
+        read( inputStream, format, ( path, strValue ) -> mapSecrets.put( String.join( String.valueOf( SEPARATOR ), path ), strValue ) );
+
+        Map<String, Map<String, String>> mapImported = new TreeMap<>( );
+        mapImported.put( strEnvironnementCode, mapSecrets );
+        return mapImported;
+    }
+
+    /**
+     * Reads the file of an application.
+     *
+     * @param inputStream
+     *            the file content
+     * @param format
+     *            the file format
+     * @return the secrets, by environment code
+     * @throws IOException
+     *             if the file cannot be read or is invalid
+     */
+    public static Map<String, Map<String, String>> readApplication( InputStream inputStream, VaultSecretsFormat format ) throws IOException
+    {
+        Map<String, Map<String, String>> mapImported = new TreeMap<>( );
+        read( inputStream, format, ( path, strValue ) -> {
+            if ( path.size( ) < 2 )
+            {
+                throw new IllegalArgumentException( "The key " + String.join( String.valueOf( SEPARATOR ), path ) + " is not in an environnement" );
+            }
+            String strKey = String.join( String.valueOf( SEPARATOR ), path.subList( 1, path.size( ) ) );
+            mapImported.computeIfAbsent( path.get( 0 ), k -> new TreeMap<>( ) ).put( strKey, strValue );
+        } );
+        return mapImported;
+    }
+
+    /**
+     * Gets the codes of the imported environments the application does not have.
+     *
+     * @param listEnvironnements
+     *            the environments of the application
+     * @param mapImported
+     *            the secrets, by environment code
+     * @return the unknown codes, sorted
+     */
+    public static Set<String> getUnknownEnvironnements( List<Environnement> listEnvironnements, Map<String, Map<String, String>> mapImported )
+    {
+        Set<String> setUnknown = new TreeSet<>( mapImported.keySet( ) );
+        for ( Environnement environnement : listEnvironnements )
+        {
+            setUnknown.remove( environnement.getCode( ) );
+        }
+        return setUnknown;
+    }
+
+    /**
+     * Compares the imported secrets with the environments, without writing anything (dry run). Each diff keeps the version of the environment it was
+     * computed from, so that the import can be refused if the environment was modified since.
+     *
+     * @param listEnvironnements
+     *            the environments of the application
+     * @param mapImported
+     *            the secrets, by environment code
+     * @param bReplace
+     *            true if the keys missing from the import are removed
+     * @return the changes of each imported environment
+     * @throws VaultException
+     *             if an environment cannot be read
+     */
+    public static List<VaultSecretsDiff> preview( List<Environnement> listEnvironnements, Map<String, Map<String, String>> mapImported, boolean bReplace )
+            throws VaultException
+    {
+        List<VaultSecretsDiff> listDiffs = new ArrayList<>( );
+        for ( Environnement environnement : getImportedEnvironnements( listEnvironnements, mapImported ).values( ) )
+        {
+            // The version is read first : secrets written meanwhile make the import fail instead of overwriting changes not previewed
+            long lVersion = VaultService.getInstance( ).getSecretsVersion( environnement );
+            Map<String, String> mapCurrent = VaultService.getInstance( ).readSecrets( environnement );
+            listDiffs.add( new VaultSecretsDiff( environnement.getCode( ), mapCurrent, lVersion, mapImported.get( environnement.getCode( ) ), bReplace ) );
+        }
+        return listDiffs;
+    }
+
+    /**
+     * Imports the secrets. Each environment is written with a single request, and the environments are written in parallel.
+     *
+     * @param application
+     *            the application
+     * @param listEnvironnements
+     *            the environments of the application
+     * @param mapImported
+     *            the secrets, by environment code
+     * @param bReplace
+     *            true if the keys missing from the import are removed
+     * @return the changes made in each imported environment
+     * @throws VaultBulkException
+     *             with the codes of the environments which could not be written, the others being imported
+     */
+    public static List<VaultSecretsDiff> importSecrets( Application application, List<Environnement> listEnvironnements,
+            Map<String, Map<String, String>> mapImported, boolean bReplace ) throws VaultBulkException
+    {
+        return importSecrets( application, listEnvironnements, mapImported, bReplace, Collections.emptyList( ) );
+    }
+
+    /**
+     * Imports the previewed secrets. Each environment is written with a single check-and-set request on the version it was previewed at, and the
+     * environments are written in parallel.
+     *
+     * @param application
+     *            the application
+     * @param listEnvironnements
+     *            the environments of the application
+     * @param mapImported
+     *            the secrets, by environment code
+     * @param bReplace
+     *            true if the keys missing from the import are removed
+     * @param listPreviewDiffs
+     *            the changes previewed, an environment without preview being written whatever its version
+     * @return the changes made in each imported environment
+     * @throws VaultBulkException
+     *             with the codes of the environments which could not be written, the others being imported. The environments modified since the preview
+     *             fail with a {@link VaultConflictException}
+     */
+    public static List<VaultSecretsDiff> importSecrets( Application application, List<Environnement> listEnvironnements,
+            Map<String, Map<String, String>> mapImported, boolean bReplace, List<VaultSecretsDiff> listPreviewDiffs ) throws VaultBulkException
+    {
+        Map<String, Environnement> mapEnvironnements = getImportedEnvironnements( listEnvironnements, mapImported );
+        Map<String, Long> mapVersions = new HashMap<>( );
+        for ( VaultSecretsDiff diff : listPreviewDiffs )
+        {
+            mapVersions.put( diff.getEnvironnementCode( ), diff.getVersion( ) );
+        }
+        Map<String, VaultSecretsDiff> mapDiffs = VaultBulkExecutor.run( "Importing secrets of " + application.getCode( ), mapEnvironnements.keySet( ),
+                strCode -> VaultService.getInstance( ).importSecrets( application, mapEnvironnements.get( strCode ), mapImported.get( strCode ), bReplace,
+                        mapVersions.getOrDefault( strCode, VaultSecretsDiff.VERSION_UNKNOWN ) ) );
+        return new ArrayList<>( mapDiffs.values( ) );
+    }
+
+    /**
+     * Writes the secrets of an environment.
+     *
+     * @param environnement
+     *            the environnement
+     * @param format
+     *            the file format
+     * @param outputStream
+     *            the output stream, left open
+     * @throws VaultException
+     *             if the environment cannot be read
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void exportEnvironnement( Environnement environnement, VaultSecretsFormat format, OutputStream outputStream )
+            throws VaultException, IOException
+    {
+        Map<String, String> mapSecrets = VaultService.getInstance( ).readSecrets( environnement );
+        if ( format == VaultSecretsFormat.PROPERTIES )
+        {
+            Writer writer = newWriter( outputStream );
+            writeProperties( writer, "", mapSecrets );
+            writer.flush( );
+            return;
+        }
+
+        try ( JsonGenerator generator = newGenerator( format, outputStream ) )
+        {
+            generator.writeStartObject( );
+            writeFields( generator, mapSecrets );
+            generator.writeEndObject( );
+        }
+    }
+
+    /**
+     * Writes the secrets of the environments of an application. The environments are read and written one after another, so only one of them is held in
+     * memory.
+     *
+     * @param listEnvironnements
+     *            the environments of the application
+     * @param format
+     *            the file format
+     * @param outputStream
+     *            the output stream, left open
+     * @throws VaultException
+     *             if an environment cannot be read
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void exportApplication( List<Environnement> listEnvironnements, VaultSecretsFormat format, OutputStream outputStream )
+            throws VaultException, IOException
+    {
+        if ( format == VaultSecretsFormat.PROPERTIES )
+        {
+            Writer writer = newWriter( outputStream );
+            for ( Environnement environnement : listEnvironnements )
+            {
+                writeProperties( writer, environnement.getCode( ) + SEPARATOR, VaultService.getInstance( ).readSecrets( environnement ) );
+                writer.flush( );
+            }
+            return;
+        }
+
+        try ( JsonGenerator generator = newGenerator( format, outputStream ) )
+        {
+            generator.writeStartObject( );
+            for ( Environnement environnement : listEnvironnements )
+            {
+                generator.writeObjectFieldStart( environnement.getCode( ) );
+                writeFields( generator, VaultService.getInstance( ).readSecrets( environnement ) );
+                generator.writeEndObject( );
+                generator.flush( );
+            }
+            generator.writeEndObject( );
+        }
+    }
+
+    private static Map<String, Environnement> getImportedEnvironnements( List<Environnement> listEnvironnements,
+            Map<String, Map<String, String>> mapImported )
+    {
+        Map<String, Environnement> mapEnvironnements = new LinkedHashMap<>( );
+        for ( Environnement environnement : listEnvironnements )
+        {
+            if ( mapImported.containsKey( environnement.getCode( ) ) )
+            {
+                mapEnvironnements.put( environnement.getCode( ), environnement );
+            }
+        }
+        return mapEnvironnements;
+    }
+
+    /**
+     * Reads a file token by token, and gives each value with the path of its keys.
+     */
+    private static void read( InputStream inputStream, VaultSecretsFormat format, BiConsumer<List<String>, String> consumer ) throws IOException
+    {
+        if ( format == VaultSecretsFormat.PROPERTIES )
+        {
+            Properties properties = new Properties( );
+            properties.load( new InputStreamReader( inputStream, StandardCharsets.UTF_8 ) );
+            for ( String strKey : properties.stringPropertyNames( ) )
+            {
+                List<String> path = new ArrayList<>( 2 );
+                int nSeparator = strKey.indexOf( SEPARATOR );
+                if ( nSeparator > 0 )
+                {
+                    path.add( strKey.substring( 0, nSeparator ) );
+                }
+                path.add( nSeparator > 0 ? strKey.substring( nSeparator + 1 ) : strKey );
+                consumer.accept( path, properties.getProperty( strKey ) );
+            }
+            return;
+        }
+
+        JsonFactory factory = format == VaultSecretsFormat.YAML ? YAML_FACTORY : JSON_FACTORY;
+        try ( JsonParser parser = factory.createParser( inputStream ) )
+        {
+            if ( parser.nextToken( ) != JsonToken.START_OBJECT )
+            {
+                throw new IllegalArgumentException( "The file must hold an object of keys and values" );
+            }
+            Deque<String> path = new ArrayDeque<>( );
+            JsonToken token;
+            while ( ( token = parser.nextToken( ) ) != null )
+            {
+                if ( token == JsonToken.FIELD_NAME )
+                {
+                    path.addLast( parser.getCurrentName( ) );
+                }
+                else
+                    if ( token == JsonToken.END_OBJECT )
+                    {
+                        path.pollLast( );
+                    }
+                    else
+                        if ( token.isScalarValue( ) && token != JsonToken.VALUE_NULL )
+                        {
+                            consumer.accept( new ArrayList<>( path ), parser.getValueAsString( ) );
+                            path.removeLast( );
+                        }
+                        else
+                            if ( token != JsonToken.START_OBJECT )
+                            {
+                                throw new IllegalArgumentException( "Unsupported value for the key " + String.join( String.valueOf( SEPARATOR ), path ) );
+                            }
+            }
+        }
+    }
+
+    private static JsonGenerator newGenerator( VaultSecretsFormat format, OutputStream outputStream ) throws IOException
+    {
+        JsonFactory factory = format == VaultSecretsFormat.YAML ? YAML_FACTORY : JSON_FACTORY;
+        JsonGenerator generator = factory.createGenerator( outputStream, JsonEncoding.UTF8 );
+        generator.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+        return format == VaultSecretsFormat.JSON ? generator.useDefaultPrettyPrinter( ) : generator;
+    }
+
+    private static void writeFields( JsonGenerator generator, Map<String, String> mapSecrets ) throws IOException
+    {
+        for ( Map.Entry<String, String> secret : mapSecrets.entrySet( ) )
+        {
+            generator.writeStringField( secret.getKey( ), secret.getValue( ) );
+        }
+    }
+
+    private static Writer newWriter( OutputStream outputStream )
+    {
+        return new BufferedWriter( new OutputStreamWriter( outputStream, StandardCharsets.UTF_8 ) );
+    }
+
+    private static void writeProperties( Writer writer, String strPrefix, Map<String, String> mapSecrets ) throws IOException
+    {
+        for ( Map.Entry<String, String> secret : mapSecrets.entrySet( ) )
+        {
+            writer.write( escape( strPrefix + secret.getKey( ), true ) );
+            writer.write( '=' );
+            writer.write( escape( secret.getValue( ) == null ? "" : secret.getValue( ), false ) );
+            writer.write( '\n' );
+        }
+    }
+
+    /**
+     * Escapes a key or a value as {@link Properties#load(java.io.Reader)} expects it.
+     */
+    private static String escape( String strText, boolean bKey )
+    {
+        StringBuilder sbEscaped = new StringBuilder( strText.length( ) );
+        for ( int i = 0; i < strText.length( ); i++ )
+        {
+            char c = strText.charAt( i );
+            switch( c )
+            {
+                case '\\':
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                    sbEscaped.append( '\\' ).append( c );
+                    break;
+                case ' ':
+                    sbEscaped.append( bKey || i == 0 ? "\\ " : " " );
+                    break;
+                case '\t':
+                    sbEscaped.append( "\\t" );
+                    break;
+                case '\n':
+                    sbEscaped.append( "\\n" );
+                    break;
+                case '\r':
+                    sbEscaped.append( "\\r" );
+                    break;
+                case '\f':
+                    sbEscaped.append( "\\f" );
+                    break;
+                default:
+                    sbEscaped.append( c );
+            }
+        }
+        return sbEscaped.toString( );
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+/**
+ * A change of the state the nodes keep in memory, sent to the other nodes so that they invalidate their copy. The changes of the secrets of an
+ * environment have the types of {@link VaultChangeEvent}.
+ */
+public final class VaultInvalidation
+{
+    /**
+     * The secrets of an environment were written, the key being its path
+     */
+    public static final String TYPE_SECRETS_MODIFIED = VaultChangeEvent.TYPE_MODIFIED;
+
+    /**
+     * The secrets of an environment were removed, the key being its path
+     */
+    public static final String TYPE_SECRETS_REMOVED = VaultChangeEvent.TYPE_REMOVED;
+
+    /**
+     * The token accessor of an environment was created, replaced or removed, the key being the environment id
+     */
+    public static final String TYPE_ACCESSOR = "accessor";
+
+    /**
+     * The policy of an environment was removed, the key being the policy name
+     */
+    public static final String TYPE_POLICY = "policy";
+
+    private final String _strType;
+    private final String _strKey;
+    private final long _lVersion;
+
+    /**
+     * Instantiates a new invalidation.
+     *
+     * @param strType
+     *            the type of change
+     * @param strKey
+     *            the key of the changed item
+     * @param lVersion
+     *            the version of the item after the change, negative when unknown
+     */
+    public VaultInvalidation( String strType, String strKey, long lVersion )
+    {
+        _strType = strType;
+        _strKey = strKey;
+        _lVersion = lVersion;
+    }
+
+    /**
+     * Gets the type of change.
+     *
+     * @return the type
+     */
+    public String getType( )
+    {
+        return _strType;
+    }
+
+    /**
+     * Gets the key of the changed item : an environment path, an environment id or a policy name, depending on the type.
+     *
+     * @return the key
+     */
+    public String getKey( )
+    {
+        return _strKey;
+    }
+
+    /**
+     * Gets the version of the item after the change.
+     *
+     * @return the version, negative when unknown
+     */
+    public long getVersion( )
+    {
+        return _lVersion;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the in-memory state of the nodes of a cluster consistent : the secret cache, the index of token accessors and the policies known to be
+ * deployed. A node changing them publishes an invalidation on the vault.invalidationBus bean, and applies the invalidations published by the other
+ * nodes.
+ */
+public final class VaultInvalidationService
+{
+    private static final String BEAN_INVALIDATION_BUS = "vault.invalidationBus";
+
+    private final VaultInvalidationBus _bus;
+    private final LongAdder _lPublishedCount = new LongAdder( );
+    private final LongAdder _lReceivedCount = new LongAdder( );
+
+    private VaultInvalidationService( VaultInvalidationBus bus )
+    {
+        _bus = bus;
+    }
+
+    /**
+     * Gets instance. It is created on first call, once, without locking the later calls.
+     *
+     * @return the instance
+     */
+    public static VaultInvalidationService getInstance( )
+    {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Starts applying the invalidations published by the other nodes.
+     */
+    public void start( )
+    {
+        _bus.start( this::apply );
+    }
+
+    /**
+     * Stops applying the invalidations published by the other nodes.
+     */
+    public void shutdown( )
+    {
+        _bus.shutdown( );
+    }
+
+    /**
+     * Publishes a change of the secrets of an environment.
+     *
+     * @param event
+     *            the change
+     */
+    public void publish( VaultChangeEvent event )
+    {
+        publish( new VaultInvalidation( event.getType( ), event.getPath( ), event.getVersion( ) ) );
+    }
+
+    /**
+     * Publishes a change of the token accessor of an environment.
+     *
+     * @param nIdEnvironnement
+     *            the environment id
+     */
+    public void publishAccessor( int nIdEnvironnement )
+    {
+        publish( new VaultInvalidation( VaultInvalidation.TYPE_ACCESSOR, String.valueOf( nIdEnvironnement ), VaultSecretCache.VERSION_UNKNOWN ) );
+    }
+
+    /**
+     * Publishes the removal of a policy.
+     *
+     * @param strPolicyName
+     *            the policy name
+     */
+    public void publishPolicy( String strPolicyName )
+    {
+        publish( new VaultInvalidation( VaultInvalidation.TYPE_POLICY, strPolicyName, VaultSecretCache.VERSION_UNKNOWN ) );
+    }
+
+    /**
+     * Applies an invalidation published by another node. The state is invalidated without publishing anything.
+     *
+     * @param invalidation
+     *            the invalidation
+     */
+    public void apply( VaultInvalidation invalidation )
+    {
+        _lReceivedCount.increment( );
+        switch( invalidation.getType( ) )
+        {
+            case VaultInvalidation.TYPE_SECRETS_MODIFIED:
+            case VaultInvalidation.TYPE_SECRETS_REMOVED:
+                String strPath = invalidation.getKey( );
+                VaultService.getInstance( ).getSecretCache( ).invalidate( strPath );
+                // The replicas may not have the change yet
+                VaultReplicaRouter.getInstance( ).markWritten( strPath );
+                // The subscribers connected to this node are notified as well, when the new version is known
+                if ( VaultInvalidation.TYPE_SECRETS_REMOVED.equals( invalidation.getType( ) ) || invalidation.getVersion( ) >= 0 )
+                {
+                    VaultChangeNotifier.getInstance( )
+                            .publish( new VaultChangeEvent( strPath, invalidation.getType( ), invalidation.getVersion( ) ) );
+                }
+                break;
+            case VaultInvalidation.TYPE_ACCESSOR:
+                VaultService.getInstance( ).reloadEnvAccessor( Integer.parseInt( invalidation.getKey( ) ) );
+                break;
+            case VaultInvalidation.TYPE_POLICY:
+                VaultPolicyService.getInstance( ).forget( invalidation.getKey( ) );
+                break;
+            default:
+                AppLogService.error( "Unknown invalidation type " + invalidation.getType( ) );
+        }
+    }
+
+    /**
+     * Gets the number of invalidations published by this node.
+     *
+     * @return the published count
+     */
+    public long getPublishedCount( )
+    {
+        return _lPublishedCount.sum( );
+    }
+
+    /**
+     * Gets the number of invalidations received from the other nodes.
+     *
+     * @return the received count
+     */
+    public long getReceivedCount( )
+    {
+        return _lReceivedCount.sum( );
+    }
+
+    private void publish( VaultInvalidation invalidation )
+    {
+        try
+        {
+            _bus.publish( invalidation );
+            _lPublishedCount.increment( );
+        }
+        catch( RuntimeException e )
+        {
+            // The change is made anyway : the other nodes keep their copy until it expires or is reloaded
+            AppLogService.error( "Unable to publish the change of " + invalidation.getKey( ) + " to the other nodes", e );
+        }
+    }
+
+    /**
+     * Holds the instance, created when the class is first initialized by {@link #getInstance()}.
+     */
+    private static final class InstanceHolder
+    {
+        private static final VaultInvalidationService INSTANCE = new VaultInvalidationService(
+                SpringContextService.getBean( BEAN_INVALIDATION_BUS ) );
+    }
+}
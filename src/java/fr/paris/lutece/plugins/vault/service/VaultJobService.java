@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import fr.paris.lutece.plugins.vault.business.Application;
+import fr.paris.lutece.plugins.vault.business.ApplicationHome;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.business.EnvironnementHome;
+import fr.paris.lutece.plugins.vault.business.VaultJob;
+import fr.paris.lutece.plugins.vault.business.VaultJobHome;
+import fr.paris.lutece.plugins.vault.rs.VaultAPI;
+import fr.paris.lutece.plugins.vault.rs.VaultHttpClient;
+import fr.paris.lutece.portal.service.i18n.I18nService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the long-running operations on environnements (rename, removal, token regeneration) in background. Jobs are stored in the vault_job table so any
+ * node can pick up a pending removal. A node renews the lease of the jobs it runs every third of vault.jobs.lease : the removals of a node which stopped
+ * are taken over by any node once their lease expired, or by the node itself when it starts again. The tokens generated by the other jobs are only kept
+ * in the memory of their node, so these jobs run on the node which enqueued them only : they are resumed by this node when it starts again, and put in
+ * error once their lease expired instead of being taken over.
+ */
+public final class VaultJobService
+{
+    public static final String PARAMETER_CODE = "code";
+    public static final String PARAMETER_OLD_CODE = "oldCode";
+    public static final String PARAMETER_OLD_TOKEN = "oldToken";
+
+    private static final String PROPERTY_WORKERS = "vault.jobs.workers";
+    private static final String PROPERTY_NODE = "vault.jobs.node";
+    private static final String PROPERTY_RETENTION_DAYS = "vault.jobs.retentionDays";
+    private static final String PROPERTY_LEASE = "vault.jobs.lease";
+    private static final String ERROR_BULK_OPERATION = "vault.error.bulkOperation";
+    private static final String ERROR_TOKEN_LOST = "vault.error.job.tokenLost";
+    private static final int MESSAGE_MAX_LENGTH = 255;
+
+    private static VaultJobService _instance;
+
+    private final String _strNode;
+    private final long _lStartTime = System.currentTimeMillis( );
+    private final long _lLease;
+    private final ExecutorService _executor;
+    private final ScheduledExecutorService _leaseExecutor;
+    private final AtomicInteger _nRunningJobs = new AtomicInteger( );
+    private final Set<Integer> _setQueuedJobs = ConcurrentHashMap.newKeySet( );
+    private final Map<Integer, String> _mapTokens = new ConcurrentHashMap<>( );
+
+    private VaultJobService( )
+    {
+        _strNode = AppPropertiesService.getProperty( PROPERTY_NODE, getHostName( ) );
+        _executor = Executors.newFixedThreadPool( Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_WORKERS, 2 ) ), runnable -> {
+            Thread thread = new Thread( runnable, "vault-job" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        _lLease = TimeUnit.SECONDS.toMillis( Math.max( 3, AppPropertiesService.getPropertyInt( PROPERTY_LEASE, 300 ) ) );
+        _leaseExecutor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "vault-job-lease" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        _leaseExecutor.scheduleWithFixedDelay( this::renewLeases, _lLease / 3, _lLease / 3, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Gets instance.
+     *
+     * @return the instance
+     */
+    public static synchronized VaultJobService getInstance( )
+    {
+        if ( _instance == null )
+        {
+            _instance = new VaultJobService( );
+        }
+        return _instance;
+    }
+
+    /**
+     * Stores a job and starts it as soon as a worker is free.
+     *
+     * @param strType
+     *            the job type
+     * @param environnement
+     *            the environnement
+     * @param mapParameters
+     *            the parameters of the job
+     * @param nIdUser
+     *            the admin user asking for the job
+     * @return the job
+     */
+    public VaultJob enqueue( String strType, Environnement environnement, Map<String, String> mapParameters, int nIdUser )
+    {
+        VaultJob job = new VaultJob( );
+        job.setType( strType );
+        job.setIdEnvironnement( environnement.getId( ) );
+        job.setIdApplication( environnement.getIdapplication( ) );
+        job.setParameters( writeParameters( mapParameters ) );
+        job.setStatus( VaultJob.STATUS_PENDING );
+        job.setIdUser( nIdUser );
+        if ( job.isProducingToken( ) )
+        {
+            job.setNode( _strNode );
+        }
+        VaultJobHome.create( job );
+
+        submit( job.getId( ) );
+        return job;
+    }
+
+    /**
+     * Puts back the jobs this node was running before it stopped and starts the pending jobs.
+     */
+    public void resume( )
+    {
+        VaultJobHome.resetRunning( _strNode );
+        processPendingJobs( );
+    }
+
+    /**
+     * Starts the pending jobs, including the removals enqueued on a node which stopped before running them, and the running ones whose node stopped
+     * renewing their lease. The running jobs generating a token whose node stopped renewing their lease are put in error.
+     */
+    public void processPendingJobs( )
+    {
+        VaultJobHome.resetExpired( new Timestamp( System.currentTimeMillis( ) - _lLease ),
+                I18nService.getLocalizedString( ERROR_TOKEN_LOST, I18nService.getDefaultLocale( ) ) );
+        for ( Integer nIdJob : VaultJobHome.getIdPendingJobsList( ) )
+        {
+            submit( nIdJob );
+        }
+    }
+
+    /**
+     * Removes the finished jobs older than vault.jobs.retentionDays.
+     */
+    public void purgeFinishedJobs( )
+    {
+        long lRetention = TimeUnit.DAYS.toMillis( AppPropertiesService.getPropertyInt( PROPERTY_RETENTION_DAYS, 7 ) );
+        VaultJobHome.removeFinishedBefore( new Timestamp( System.currentTimeMillis( ) - lRetention ) );
+    }
+
+    /**
+     * Tells whether the token generated by a job can no longer be given, because it was generated by another node or before this node restarted.
+     *
+     * @param job
+     *            the job
+     * @return true if the token is not in the memory of this node
+     */
+    public boolean isTokenElsewhere( VaultJob job )
+    {
+        return !_strNode.equals( job.getNode( ) ) || job.getDateUpdate( ) == null || job.getDateUpdate( ).getTime( ) < _lStartTime;
+    }
+
+    /**
+     * Gets the token generated by a job. It is given only once, to the user who asked for the job, and only by the node which ran it.
+     *
+     * @param job
+     *            the job
+     * @param nIdUser
+     *            the current admin user
+     * @return the token, or null
+     */
+    public String takeToken( VaultJob job, int nIdUser )
+    {
+        if ( job.getIdUser( ) != nIdUser )
+        {
+            return null;
+        }
+        return _mapTokens.remove( job.getId( ) );
+    }
+
+    /**
+     * Stops the workers. Running jobs are resumed when the node starts again.
+     */
+    public void shutdown( )
+    {
+        _leaseExecutor.shutdownNow( );
+        _executor.shutdownNow( );
+    }
+
+    private void submit( int nIdJob )
+    {
+        if ( _setQueuedJobs.add( nIdJob ) )
+        {
+            _executor.execute( ( ) -> {
+                try
+                {
+                    VaultJobHome.claim( nIdJob, _strNode ).ifPresent( this::run );
+                }
+                finally
+                {
+                    _setQueuedJobs.remove( nIdJob );
+                }
+            } );
+        }
+    }
+
+    private void run( VaultJob job )
+    {
+        _nRunningJobs.incrementAndGet( );
+        try
+        {
+            Map<String, String> mapParameters = readParameters( job.getParameters( ) );
+            Environnement environnement = loadEnvironnement( job.getIdEnvironnement( ) );
+            if ( environnement != null )
+            {
+                Application application = ApplicationHome.findByPrimaryKey( job.getIdApplication( ) ).get( );
+                switch( job.getType( ) )
+                {
+                    case VaultJob.TYPE_RENAME:
+                        rename( job, application, environnement, mapParameters );
+                        break;
+                    case VaultJob.TYPE_REMOVE:
+                        remove( job, application, environnement );
+                        break;
+                    case VaultJob.TYPE_REGENERATE_TOKEN:
+                        progress( job, 10 );
+                        _mapTokens.put( job.getId( ), VaultService.getInstance( ).regenerateToken( application.getCode( ), environnement ) );
+                        break;
+                    default:
+                        throw new IllegalArgumentException( "Unknown job type " + job.getType( ) );
+                }
+            }
+            finish( job, VaultJob.STATUS_DONE, null );
+        }
+        catch( JobLostException e )
+        {
+            AppLogService.error( "Vault job " + job.getId( ) + " stopped : " + e.getMessage( ) );
+        }
+        catch( VaultBulkException e )
+        {
+            AppLogService.error( "Vault job " + job.getId( ) + " failed", e );
+            finish( job, VaultJob.STATUS_ERROR, I18nService.getLocalizedString( ERROR_BULK_OPERATION, new Object [ ] {
+                    String.join( ", ", e.getFailures( ).keySet( ) )
+            }, I18nService.getDefaultLocale( ) ) );
+        }
+        catch( Exception e )
+        {
+            AppLogService.error( "Vault job " + job.getId( ) + " failed", e );
+            finish( job, VaultJob.STATUS_ERROR, e.getMessage( ) );
+        }
+        finally
+        {
+            _nRunningJobs.decrementAndGet( );
+        }
+    }
+
+    private void renewLeases( )
+    {
+        if ( _nRunningJobs.get( ) == 0 )
+        {
+            return;
+        }
+        try
+        {
+            VaultJobHome.renewLeases( _strNode );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Unable to renew the lease of the Vault jobs of " + _strNode, e );
+        }
+    }
+
+    private void rename( VaultJob job, Application application, Environnement environnement, Map<String, String> mapParameters ) throws Exception
+    {
+        String strOldToken = mapParameters.get( PARAMETER_OLD_TOKEN );
+        progress( job, 10 );
+
+        // A run interrupted after the token creation left a token nobody has seen
+        String strCurrentToken = VaultService.getInstance( ).getEnvAccessor( environnement.getId( ) );
+        if ( strCurrentToken != null && !strCurrentToken.equals( strOldToken ) )
+        {
+            VaultAPI.removeTokenJackson( application.getCode( ), strCurrentToken );
+        }
+
+        environnement.setCode( mapParameters.get( PARAMETER_CODE ) );
+        _mapTokens.put( job.getId( ), VaultService.getInstance( ).createEnvironnementToken( application.getCode( ), environnement ) );
+        progress( job, 30 );
+
+        EnvironnementHome.update( environnement, mapParameters.get( PARAMETER_OLD_CODE ), strOldToken );
+    }
+
+    private void remove( VaultJob job, Application application, Environnement environnement ) throws Exception
+    {
+        VaultService.getInstance( ).removeEnv( environnement.getToken( ), application.getCode( ), environnement );
+        progress( job, 80 );
+
+        EnvironnementHome.remove( environnement.getId( ) );
+    }
+
+    private Environnement loadEnvironnement( int nIdEnvironnement )
+    {
+        List<Environnement> listEnvironnements = EnvironnementHome.getEnvironnementsListByIds( Collections.singletonList( nIdEnvironnement ) );
+        if ( listEnvironnements.isEmpty( ) )
+        {
+            return null;
+        }
+        Environnement environnement = listEnvironnements.get( 0 );
+        environnement.setToken( VaultService.getInstance( ).getEnvAccessor( nIdEnvironnement ) );
+        return environnement;
+    }
+
+    private void progress( VaultJob job, int nProgress )
+    {
+        job.setProgress( nProgress );
+        if ( !VaultJobHome.update( job ) )
+        {
+            throw new JobLostException( "its lease expired and it is no longer owned by " + _strNode );
+        }
+    }
+
+    private void finish( VaultJob job, String strStatus, String strMessage )
+    {
+        job.setStatus( strStatus );
+        job.setProgress( 100 );
+        job.setMessage( ( strMessage != null && strMessage.length( ) > MESSAGE_MAX_LENGTH ) ? strMessage.substring( 0, MESSAGE_MAX_LENGTH ) : strMessage );
+        if ( !VaultJobHome.update( job ) )
+        {
+            AppLogService.error( "Vault job " + job.getId( ) + " finished with status " + strStatus + " after its lease expired, its status was not updated" );
+        }
+    }
+
+    private static String writeParameters( Map<String, String> mapParameters )
+    {
+        try
+        {
+            return VaultHttpClient.getObjectMapper( ).writeValueAsString( mapParameters );
+        }
+        catch( JsonProcessingException e )
+        {
+            throw new IllegalArgumentException( e );
+        }
+    }
+
+    private static Map<String, String> readParameters( String strParameters ) throws JsonProcessingException
+    {
+        if ( strParameters == null )
+        {
+            return Collections.emptyMap( );
+        }
+        return VaultHttpClient.getObjectMapper( ).readValue( strParameters, new TypeReference<Map<String, String>>( )
+        {
+        } );
+    }
+
+    /**
+     * Thrown when the node running a job no longer owns it, to stop the job before its next step.
+     */
+    private static final class JobLostException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private JobLostException( String strMessage )
+        {
+            super( strMessage );
+        }
+    }
+
+    private static String getHostName( )
+    {
+        try
+        {
+            return InetAddress.getLocalHost( ).getHostName( );
+        }
+        catch( UnknownHostException e )
+        {
+            return "localhost";
+        }
+    }
+}
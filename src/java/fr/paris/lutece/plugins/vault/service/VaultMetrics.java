@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the Vault round-trips, tagged by operation and application code : a timer (histogram of the durations), an error counter and a gauge of
+ * the calls in flight. They are written in the Prometheus text format by {@link #scrape()}.
+ */
+public final class VaultMetrics
+{
+    public static final String OPERATION_GET_SECRETS_BY_ENV = "getSecretsByEnv";
+    public static final String OPERATION_GET_DETAILS_SECRET = "getDetailsSecret";
+    public static final String OPERATION_WRITE_SECRET = "writeSecret";
+    public static final String OPERATION_UPDATE_SECRET = "updateSecret";
+    public static final String OPERATION_DELETE_SECRET = "deleteSecret";
+    public static final String OPERATION_CREATE_TOKEN = "createEnvironnementToken";
+    public static final String OPERATION_REGENERATE_TOKEN = "regenerateToken";
+    public static final String OPERATION_CREATE_POLICY = "createPolicy";
+    public static final String OPERATION_REMOVE_POLICY = "removePolicy";
+    public static final String OPERATION_READ_POLICY = "readPolicy";
+    public static final String OPERATION_REMOVE_TOKEN = "removeToken";
+    public static final String OPERATION_READ_SECRETS = "readSecrets";
+    public static final String OPERATION_LIST_SECRETS = "listSecrets";
+    public static final String OPERATION_IMPORT_SECRETS = "importSecrets";
+    public static final String OPERATION_LOOKUP_TOKEN = "lookupToken";
+    public static final String OPERATION_RENEW_TOKEN = "renewToken";
+    public static final String OPERATION_GET_SECRETS_VERSION = "getSecretsVersion";
+    public static final String OPERATION_GET_SECRET_KEYS = "getSecretKeys";
+
+    private static final String METRIC_DURATION = "vault_request_seconds";
+    private static final String METRIC_ERRORS = "vault_request_errors_total";
+    private static final String METRIC_IN_FLIGHT = "vault_requests_in_flight";
+    private static final String METRIC_CIRCUIT_BREAKER_STATE = "vault_circuit_breaker_state";
+    private static final String METRIC_REPLICA_UP = "vault_replica_up";
+    private static final String METRIC_REPLICA_LATENCY = "vault_replica_latency_seconds";
+    private static final String METRIC_REPLICA_READS = "vault_replica_reads_total";
+
+    // Upper bounds of the histogram buckets, in seconds
+    private static final double [ ] BUCKETS = {
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private static final Map<String, OperationMetrics> _mapMetrics = new ConcurrentSkipListMap<>( );
+
+    private VaultMetrics( )
+    {
+    }
+
+    /**
+     * Starts timing a call. The returned sample must be closed when the call ends, and marked in error if it failed.
+     *
+     * @param strOperation
+     *            the operation
+     * @param strApplicationCode
+     *            the application code
+     * @return the sample
+     */
+    public static Sample start( String strOperation, String strApplicationCode )
+    {
+        String strApplication = strApplicationCode == null ? "" : strApplicationCode;
+        OperationMetrics metrics = _mapMetrics.computeIfAbsent( strOperation + '\n' + strApplication, k -> new OperationMetrics( strOperation, strApplication ) );
+        metrics._nInFlight.incrementAndGet( );
+        return new Sample( metrics );
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text format.
+     *
+     * @return the metrics
+     */
+    public static String scrape( )
+    {
+        StringBuilder sbDuration = new StringBuilder( );
+        StringBuilder sbErrors = new StringBuilder( );
+        StringBuilder sbInFlight = new StringBuilder( );
+        sbDuration.append( "# HELP " ).append( METRIC_DURATION ).append( " Duration of the Vault calls\n" );
+        sbDuration.append( "# TYPE " ).append( METRIC_DURATION ).append( " histogram\n" );
+        sbErrors.append( "# HELP " ).append( METRIC_ERRORS ).append( " Vault calls which failed\n" );
+        sbErrors.append( "# TYPE " ).append( METRIC_ERRORS ).append( " counter\n" );
+        sbInFlight.append( "# HELP " ).append( METRIC_IN_FLIGHT ).append( " Vault calls in progress\n" );
+        sbInFlight.append( "# TYPE " ).append( METRIC_IN_FLIGHT ).append( " gauge\n" );
+
+        for ( OperationMetrics metrics : _mapMetrics.values( ) )
+        {
+            String strTags = "operation=\"" + escape( metrics._strOperation ) + "\",application=\"" + escape( metrics._strApplication ) + "\"";
+            long lCumulated = 0;
+            for ( int i = 0; i < BUCKETS.length; i++ )
+            {
+                lCumulated += metrics._buckets [i].sum( );
+                sbDuration.append( METRIC_DURATION ).append( "_bucket{" ).append( strTags ).append( ",le=\"" ).append( BUCKETS [i] ).append( "\"} " )
+                        .append( lCumulated ).append( '\n' );
+            }
+            long lCount = metrics._lCount.sum( );
+            sbDuration.append( METRIC_DURATION ).append( "_bucket{" ).append( strTags ).append( ",le=\"+Inf\"} " ).append( lCount ).append( '\n' );
+            sbDuration.append( METRIC_DURATION ).append( "_count{" ).append( strTags ).append( "} " ).append( lCount ).append( '\n' );
+            sbDuration.append( METRIC_DURATION ).append( "_sum{" ).append( strTags ).append( "} " )
+                    .append( metrics._lSumNanos.sum( ) / (double) TimeUnit.SECONDS.toNanos( 1 ) ).append( '\n' );
+            sbErrors.append( METRIC_ERRORS ).append( '{' ).append( strTags ).append( "} " ).append( metrics._lErrors.sum( ) ).append( '\n' );
+            sbInFlight.append( METRIC_IN_FLIGHT ).append( '{' ).append( strTags ).append( "} " ).append( metrics._nInFlight.get( ) ).append( '\n' );
+        }
+        return sbDuration.append( sbErrors ).append( sbInFlight ).toString( );
+    }
+
+    /**
+     * Writes the counters of the secret cache in the Prometheus text format.
+     *
+     * @param cache
+     *            the secret cache
+     * @return the metrics
+     */
+    public static String scrape( VaultSecretCache cache )
+    {
+        StringBuilder sbMetrics = new StringBuilder( );
+        appendCacheMetric( sbMetrics, "vault_cache_hits_total", "counter", "Reads of environment secrets served by the cache", cache.getHitCount( ) );
+        appendCacheMetric( sbMetrics, "vault_cache_misses_total", "counter", "Reads of environment secrets not found in the cache", cache.getMissCount( ) );
+        appendCacheMetric( sbMetrics, "vault_cache_entries", "gauge", "Environments in the cache", cache.getEntryCount( ) );
+        appendCacheMetric( sbMetrics, "vault_cache_size", "gauge", "Characters of values in the cache", cache.getSize( ) );
+        return sbMetrics.toString( );
+    }
+
+    /**
+     * Writes the state of the circuit breaker and of the bulkhead in the Prometheus text format.
+     *
+     * @param circuitBreaker
+     *            the circuit breaker
+     * @return the metrics
+     */
+    public static String scrape( VaultCircuitBreaker circuitBreaker )
+    {
+        StringBuilder sbMetrics = new StringBuilder( );
+        VaultCircuitBreaker.State state = circuitBreaker.getState( );
+        sbMetrics.append( "# HELP " ).append( METRIC_CIRCUIT_BREAKER_STATE ).append( " State of the circuit breaker of the Vault calls\n" );
+        sbMetrics.append( "# TYPE " ).append( METRIC_CIRCUIT_BREAKER_STATE ).append( " gauge\n" );
+        for ( VaultCircuitBreaker.State value : VaultCircuitBreaker.State.values( ) )
+        {
+            sbMetrics.append( METRIC_CIRCUIT_BREAKER_STATE ).append( "{state=\"" ).append( value.name( ).toLowerCase( ) ).append( "\"} " )
+                    .append( value == state ? 1 : 0 ).append( '\n' );
+        }
+        appendCacheMetric( sbMetrics, "vault_circuit_breaker_opened_total", "counter", "Times the circuit breaker opened",
+                circuitBreaker.getOpenedCount( ) );
+        appendCacheMetric( sbMetrics, "vault_circuit_breaker_rejected_total", "counter", "Vault calls refused because the circuit was open",
+                circuitBreaker.getRejectedOpenCount( ) );
+        appendCacheMetric( sbMetrics, "vault_bulkhead_rejected_total", "counter", "Vault calls refused because too many calls were in flight",
+                circuitBreaker.getRejectedBulkheadCount( ) );
+        appendCacheMetric( sbMetrics, "vault_bulkhead_calls_in_flight", "gauge", "Vault calls in flight", circuitBreaker.getCallsInFlight( ) );
+        appendCacheMetric( sbMetrics, "vault_bulkhead_max_calls", "gauge", "Maximum number of Vault calls in flight",
+                circuitBreaker.getMaxConcurrentCalls( ) );
+        return sbMetrics.toString( );
+    }
+
+    /**
+     * Writes the counter of the retries in the Prometheus text format.
+     *
+     * @param retryPolicy
+     *            the retry policy
+     * @return the metrics
+     */
+    public static String scrape( VaultRetryPolicy retryPolicy )
+    {
+        StringBuilder sbMetrics = new StringBuilder( );
+        appendCacheMetric( sbMetrics, "vault_retries_total", "counter", "Vault calls made again after a transient failure",
+                retryPolicy.getRetryCount( ) );
+        return sbMetrics.toString( );
+    }
+
+    /**
+     * Writes the health, average latency and reads of the read replicas in the Prometheus text format.
+     *
+     * @param router
+     *            the replica router
+     * @return the metrics
+     */
+    public static String scrape( VaultReplicaRouter router )
+    {
+        StringBuilder sbUp = new StringBuilder( );
+        StringBuilder sbLatency = new StringBuilder( );
+        StringBuilder sbReads = new StringBuilder( );
+        sbUp.append( "# HELP " ).append( METRIC_REPLICA_UP ).append( " Vault read replicas in service\n" );
+        sbUp.append( "# TYPE " ).append( METRIC_REPLICA_UP ).append( " gauge\n" );
+        sbLatency.append( "# HELP " ).append( METRIC_REPLICA_LATENCY ).append( " Average latency of the Vault read replicas\n" );
+        sbLatency.append( "# TYPE " ).append( METRIC_REPLICA_LATENCY ).append( " gauge\n" );
+        sbReads.append( "# HELP " ).append( METRIC_REPLICA_READS ).append( " Reads of secrets sent to the Vault read replicas\n" );
+        sbReads.append( "# TYPE " ).append( METRIC_REPLICA_READS ).append( " counter\n" );
+
+        for ( String strAdress : router.getReplicaAdresses( ) )
+        {
+            String strTags = "{replica=\"" + escape( strAdress ) + "\"} ";
+            sbUp.append( METRIC_REPLICA_UP ).append( strTags ).append( router.isHealthy( strAdress ) ? 1 : 0 ).append( '\n' );
+            sbLatency.append( METRIC_REPLICA_LATENCY ).append( strTags )
+                    .append( router.getLatencyNanos( strAdress ) / TimeUnit.SECONDS.toNanos( 1 ) ).append( '\n' );
+            sbReads.append( METRIC_REPLICA_READS ).append( strTags ).append( router.getReadCount( strAdress ) ).append( '\n' );
+        }
+        sbUp.append( sbLatency ).append( sbReads );
+        appendCacheMetric( sbUp, "vault_replica_primary_reads_total", "counter",
+                "Reads of secrets sent to the primary because no replica was healthy or the environment was just written",
+                router.getPrimaryReadCount( ) );
+        return sbUp.toString( );
+    }
+
+    /**
+     * Writes the counters of the invalidations exchanged with the other nodes in the Prometheus text format.
+     *
+     * @param invalidationService
+     *            the invalidation service
+     * @return the metrics
+     */
+    public static String scrape( VaultInvalidationService invalidationService )
+    {
+        StringBuilder sbMetrics = new StringBuilder( );
+        appendCacheMetric( sbMetrics, "vault_invalidations_published_total", "counter", "Changes of the in-memory state published to the other nodes",
+                invalidationService.getPublishedCount( ) );
+        appendCacheMetric( sbMetrics, "vault_invalidations_received_total", "counter", "Changes of the in-memory state received from the other nodes",
+                invalidationService.getReceivedCount( ) );
+        return sbMetrics.toString( );
+    }
+
+    /**
+     * Clears all the metrics.
+     */
+    public static void reset( )
+    {
+        _mapMetrics.clear( );
+    }
+
+    private static void appendCacheMetric( StringBuilder sbMetrics, String strName, String strType, String strHelp, long lValue )
+    {
+        sbMetrics.append( "# HELP " ).append( strName ).append( ' ' ).append( strHelp ).append( '\n' );
+        sbMetrics.append( "# TYPE " ).append( strName ).append( ' ' ).append( strType ).append( '\n' );
+        sbMetrics.append( strName ).append( ' ' ).append( lValue ).append( '\n' );
+    }
+
+    private static String escape( String strValue )
+    {
+        return strValue.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ).replace( "\n", "\\n" );
+    }
+
+    /**
+     * A call being timed.
+     */
+    public static final class Sample implements AutoCloseable
+    {
+        private final OperationMetrics _metrics;
+        private final long _lStart = System.nanoTime( );
+        private boolean _bError;
+        private boolean _bClosed;
+
+        private Sample( OperationMetrics metrics )
+        {
+            _metrics = metrics;
+        }
+
+        /**
+         * Marks the call as failed.
+         */
+        public void error( )
+        {
+            _bError = true;
+        }
+
+        /**
+         * Records the call.
+         */
+        @Override
+        public void close( )
+        {
+            if ( _bClosed )
+            {
+                return;
+            }
+            _bClosed = true;
+
+            long lDuration = System.nanoTime( ) - _lStart;
+            double dSeconds = lDuration / (double) TimeUnit.SECONDS.toNanos( 1 );
+            for ( int i = 0; i < BUCKETS.length; i++ )
+            {
+                if ( dSeconds <= BUCKETS [i] )
+                {
+                    _metrics._buckets [i].increment( );
+                    break;
+                }
+            }
+            _metrics._lCount.increment( );
+            _metrics._lSumNanos.add( lDuration );
+            if ( _bError )
+            {
+                _metrics._lErrors.increment( );
+            }
+            _metrics._nInFlight.decrementAndGet( );
+        }
+    }
+
+    /**
+     * The metrics of an operation for an application.
+     */
+    private static final class OperationMetrics
+    {
+        private final String _strOperation;
+        private final String _strApplication;
+        private final LongAdder [ ] _buckets = new LongAdder [ BUCKETS.length];
+        private final LongAdder _lCount = new LongAdder( );
+        private final LongAdder _lSumNanos = new LongAdder( );
+        private final LongAdder _lErrors = new LongAdder( );
+        private final AtomicInteger _nInFlight = new AtomicInteger( );
+
+        OperationMetrics( String strOperation, String strApplication )
+        {
+            _strOperation = strOperation;
+            _strApplication = strApplication;
+            for ( int i = 0; i < _buckets.length; i++ )
+            {
+                _buckets [i] = new LongAdder( );
+            }
+        }
+    }
+}
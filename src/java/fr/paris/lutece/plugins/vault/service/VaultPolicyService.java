@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.business.EnvironnementHome;
+import fr.paris.lutece.plugins.vault.rs.VaultAPI;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ACL policies of the environments. Policies are rendered from a template compiled once, and a digest of each policy this node deployed is kept for
+ * vault.policy.cacheTtl seconds so that deploying an unchanged policy again does not write it to Vault. The reconciliation compares the policies
+ * deployed in Vault with the ones of all the environments and writes only the ones that differ.
+ */
+public final class VaultPolicyService
+{
+    private static final String PROPERTY_CACHE_TTL = "vault.policy.cacheTtl";
+    private static final long DEFAULT_CACHE_TTL = 3600;
+    private static final String VARIABLE_APPLICATION = "application";
+    private static final String VARIABLE_ENVIRONNEMENT = "environnement";
+    private static final VaultPolicyTemplate TEMPLATE = new VaultPolicyTemplate( "# Environment document holding all the key/value pairs\n"
+            + "path \"secret/data/${application}/${environnement}\"\n{\n  capabilities = [\"read\"]\n}\n\n"
+            + "# Manage auth methods broadly across Vault\n"
+            + "path \"secret/data/${application}/${environnement}/*\"\n{\n  capabilities = [\"read\"]\n}\n\n"
+            + "# Create, update, and delete auth methods\n"
+            + "path \"secret/metadata/${application}/${environnement}/*\"\n{\n  capabilities = [\"list\"]\n}" );
+
+    private final Map<String, DeployedPolicy> _mapDeployed = new ConcurrentHashMap<>( );
+    private final long _lCacheTtlMillis;
+
+    private VaultPolicyService( )
+    {
+        _lCacheTtlMillis = TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_CACHE_TTL, DEFAULT_CACHE_TTL ) );
+    }
+
+    /**
+     * Gets the instance.
+     *
+     * @return the instance
+     */
+    public static VaultPolicyService getInstance( )
+    {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Gets the name of the policy of an environment.
+     *
+     * @param appCode
+     *            the application code
+     * @param strEnvironnementCode
+     *            the environment code
+     * @return the policy name
+     */
+    public static String getPolicyName( String appCode, String strEnvironnementCode )
+    {
+        return appCode.toLowerCase( ) + strEnvironnementCode.toLowerCase( );
+    }
+
+    /**
+     * Renders the policy of an environment : read access to its document and list access to its keys.
+     *
+     * @param appCode
+     *            the application code
+     * @param strEnvironnementCode
+     *            the environment code
+     * @return the policy, in HCL
+     */
+    public static String renderPolicy( String appCode, String strEnvironnementCode )
+    {
+        Map<String, String> mapValues = new HashMap<>( );
+        mapValues.put( VARIABLE_APPLICATION, appCode );
+        mapValues.put( VARIABLE_ENVIRONNEMENT, strEnvironnementCode );
+        return TEMPLATE.render( mapValues );
+    }
+
+    /**
+     * Deploys the policy of an environment, unless this node deployed the same policy less than vault.policy.cacheTtl seconds ago.
+     *
+     * @param appCode
+     *            the application code
+     * @param environnement
+     *            the environnement
+     * @return true if the policy was written to Vault
+     * @throws VaultException
+     *             if the write failed
+     */
+    public boolean deployPolicy( String appCode, Environnement environnement ) throws VaultException
+    {
+        String strName = getPolicyName( appCode, environnement.getCode( ) );
+        String strPolicy = renderPolicy( appCode, environnement.getCode( ) );
+        String strDigest = digest( strPolicy );
+        long lNow = System.currentTimeMillis( );
+        DeployedPolicy deployed = _mapDeployed.get( strName );
+        if ( deployed != null && deployed._lExpiresAt > lNow && deployed._strDigest.equals( strDigest ) )
+        {
+            return false;
+        }
+
+        VaultAPI.writePolicy( appCode, strName, strPolicy );
+        remember( strName, strDigest, lNow );
+        return true;
+    }
+
+    /**
+     * Removes the policy of an environment.
+     *
+     * @param appCode
+     *            the application code
+     * @param environnement
+     *            the environnement
+     */
+    public void removePolicy( String appCode, Environnement environnement )
+    {
+        String strName = getPolicyName( appCode, environnement.getCode( ) );
+        _mapDeployed.remove( strName );
+        VaultAPI.removePolicy( appCode, strName );
+        // The other nodes would otherwise skip deploying it again for an environment of the same code
+        VaultInvalidationService.getInstance( ).publishPolicy( strName );
+    }
+
+    /**
+     * Forgets a policy removed by another node, so that it is written again on next deployment.
+     *
+     * @param strName
+     *            the policy name
+     */
+    public void forget( String strName )
+    {
+        _mapDeployed.remove( strName );
+    }
+
+    /**
+     * Reconciles the policies of all the environments with the ones deployed in Vault. The policies are read and, when missing or different, written
+     * concurrently, with no more than vault.bulk.concurrency calls in flight.
+     *
+     * @return the number of policies written
+     * @throws VaultBulkException
+     *             if the policies of some environments could not be reconciled, the others being reconciled anyway
+     */
+    public int reconcilePolicies( ) throws VaultBulkException
+    {
+        List<Integer> listIds = EnvironnementHome.getIdEnvironnementsList( );
+        if ( listIds.isEmpty( ) )
+        {
+            return 0;
+        }
+        Map<String, Environnement> mapEnvironnements = new LinkedHashMap<>( );
+        for ( Environnement environnement : EnvironnementHome.getEnvironnementsListByIds( listIds ) )
+        {
+            mapEnvironnements.put( getPolicyName( environnement.getApplicationCode( ), environnement.getCode( ) ), environnement );
+        }
+
+        Map<String, Boolean> mapWritten = VaultBulkExecutor.run( "Reconciling the policies", mapEnvironnements.keySet( ),
+                strName -> reconcilePolicy( strName, mapEnvironnements.get( strName ) ) );
+        return (int) mapWritten.values( ).stream( ).filter( Boolean::booleanValue ).count( );
+    }
+
+    /**
+     * Forgets the policies deployed by this node, so that they are all written again on next deployment.
+     */
+    public void clear( )
+    {
+        _mapDeployed.clear( );
+    }
+
+    /**
+     * Gets the number of policies this node remembers having deployed.
+     *
+     * @return the number of policies
+     */
+    public int getDeployedCount( )
+    {
+        return _mapDeployed.size( );
+    }
+
+    private boolean reconcilePolicy( String strName, Environnement environnement ) throws VaultException
+    {
+        String appCode = environnement.getApplicationCode( );
+        String strPolicy = renderPolicy( appCode, environnement.getCode( ) );
+        boolean bWrite = !strPolicy.equals( VaultAPI.readPolicy( appCode, strName ) );
+        if ( bWrite )
+        {
+            VaultAPI.writePolicy( appCode, strName, strPolicy );
+        }
+        remember( strName, digest( strPolicy ), System.currentTimeMillis( ) );
+        return bWrite;
+    }
+
+    private void remember( String strName, String strDigest, long lNow )
+    {
+        if ( _lCacheTtlMillis > 0 )
+        {
+            _mapDeployed.put( strName, new DeployedPolicy( strDigest, lNow + _lCacheTtlMillis ) );
+        }
+    }
+
+    private static String digest( String strPolicy )
+    {
+        try
+        {
+            byte [ ] hash = MessageDigest.getInstance( "SHA-256" ).digest( strPolicy.getBytes( StandardCharsets.UTF_8 ) );
+            return Base64.getEncoder( ).encodeToString( hash );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static final class InstanceHolder
+    {
+        private static final VaultPolicyService INSTANCE = new VaultPolicyService( );
+    }
+
+    /**
+     * The digest of a policy deployed by this node
+     */
+    private static final class DeployedPolicy
+    {
+        private final String _strDigest;
+        private final long _lExpiresAt;
+
+        private DeployedPolicy( String strDigest, long lExpiresAt )
+        {
+            _strDigest = strDigest;
+            _lExpiresAt = lExpiresAt;
+        }
+    }
+}
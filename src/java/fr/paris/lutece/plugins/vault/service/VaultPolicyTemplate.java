@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A policy template compiled once into its literal parts and its ${name} variables, so that rendering a policy is a single pass over the parts into a
+ * buffer of the right size.
+ */
+public final class VaultPolicyTemplate
+{
+    private static final String VARIABLE_START = "${";
+    private static final String VARIABLE_END = "}";
+
+    private final List<String> _listLiterals = new ArrayList<>( );
+    private final List<String> _listVariables = new ArrayList<>( );
+    private final int _nLiteralLength;
+
+    /**
+     * Compiles a template.
+     *
+     * @param strTemplate
+     *            the template text, with ${name} variables
+     * @throws IllegalArgumentException
+     *             if a variable is not closed
+     */
+    public VaultPolicyTemplate( String strTemplate )
+    {
+        int nLength = 0;
+        int nStart = 0;
+        int nVariable = strTemplate.indexOf( VARIABLE_START );
+        while ( nVariable >= 0 )
+        {
+            int nEnd = strTemplate.indexOf( VARIABLE_END, nVariable + VARIABLE_START.length( ) );
+            if ( nEnd < 0 )
+            {
+                throw new IllegalArgumentException( "Unclosed variable at " + nVariable + " in policy template" );
+            }
+            String strLiteral = strTemplate.substring( nStart, nVariable );
+            _listLiterals.add( strLiteral );
+            _listVariables.add( strTemplate.substring( nVariable + VARIABLE_START.length( ), nEnd ) );
+            nLength += strLiteral.length( );
+            nStart = nEnd + VARIABLE_END.length( );
+            nVariable = strTemplate.indexOf( VARIABLE_START, nStart );
+        }
+        String strLast = strTemplate.substring( nStart );
+        _listLiterals.add( strLast );
+        _nLiteralLength = nLength + strLast.length( );
+    }
+
+    /**
+     * Renders the template.
+     *
+     * @param mapValues
+     *            the value of each variable
+     * @return the rendered text
+     * @throws IllegalArgumentException
+     *             if a variable has no value
+     */
+    public String render( Map<String, String> mapValues )
+    {
+        int nLength = _nLiteralLength;
+        String [ ] values = new String [ _listVariables.size( )];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            values [i] = mapValues.get( _listVariables.get( i ) );
+            if ( values [i] == null )
+            {
+                throw new IllegalArgumentException( "No value for the variable " + _listVariables.get( i ) + " of the policy template" );
+            }
+            nLength += values [i].length( );
+        }
+
+        StringBuilder sbPolicy = new StringBuilder( nLength );
+        for ( int i = 0; i < values.length; i++ )
+        {
+            sbPolicy.append( _listLiterals.get( i ) ).append( values [i] );
+        }
+        return sbPolicy.append( _listLiterals.get( values.length ) ).toString( );
+    }
+
+    /**
+     * Gets the names of the variables, in the order they appear.
+     *
+     * @return the variable names
+     */
+    public List<String> getVariables( )
+    {
+        return Collections.unmodifiableList( _listVariables );
+    }
+}
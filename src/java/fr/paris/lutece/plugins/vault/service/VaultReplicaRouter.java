@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.rs.VaultHttpClient;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes the reads of secrets to the read replicas of Vault (performance standbys) listed by vault.replicaAdresses, the writes, policies and tokens
+ * going to the primary vault.vaultServerAdress. A read goes to the healthy replica with the lowest average latency, an exponentially weighted moving
+ * average of its calls and health checks. A replica failing a call is left aside until a health check finds it healthy again. The reads of an
+ * environment written by this node less than vault.replica.readAfterWrite milliseconds ago go to the primary, the replicas being possibly behind.
+ */
+public class VaultReplicaRouter
+{
+    // Properties
+    private static final String PROPERTY_REPLICA_ADRESSES = "vault.replicaAdresses";
+    private static final String PROPERTY_LATENCY_WEIGHT = "vault.replica.latencyWeight";
+    private static final String PROPERTY_READ_AFTER_WRITE = "vault.replica.readAfterWrite";
+    private static final String PROPERTY_CONNECT_TIMEOUT = "vault.http.connectTimeout";
+    private static final String DEFAULT_LATENCY_WEIGHT = "0.2";
+    private static final int DEFAULT_READ_AFTER_WRITE = 2000;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    // A performance standby answers 200 to this check, a sealed, uninitialized or unreachable node does not
+    private static final String PATH_HEALTH = "/v1/sys/health?standbyok=true&perfstandbyok=true";
+    private static final int HTTP_OK = 200;
+
+    private final List<Replica> _listReplicas;
+    private final double _dLatencyWeight;
+    private final long _lReadAfterWriteMillis;
+    private final Map<String, Long> _mapPrimaryReadsUntil = new ConcurrentHashMap<>( );
+    private final LongAdder _lPrimaryReadCount = new LongAdder( );
+
+    /**
+     * Instantiates a new router.
+     *
+     * @param listReplicaAdresses
+     *            the addresses of the read replicas, empty to read from the primary
+     * @param dLatencyWeight
+     *            the weight of the last latency in the average latency of a replica, between 0 and 1
+     * @param lReadAfterWriteMillis
+     *            the time during which the reads of an environment written by this node go to the primary, in milliseconds
+     */
+    public VaultReplicaRouter( List<String> listReplicaAdresses, double dLatencyWeight, long lReadAfterWriteMillis )
+    {
+        List<Replica> listReplicas = new ArrayList<>( );
+        for ( String strAdress : listReplicaAdresses )
+        {
+            listReplicas.add( new Replica( strAdress ) );
+        }
+        _listReplicas = Collections.unmodifiableList( listReplicas );
+        _dLatencyWeight = Math.min( 1, Math.max( 0, dLatencyWeight ) );
+        _lReadAfterWriteMillis = lReadAfterWriteMillis;
+    }
+
+    /**
+     * Gets the instance routing the calls of the plugin, configured by the properties.
+     *
+     * @return the instance
+     */
+    public static VaultReplicaRouter getInstance( )
+    {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Gets the address to read an environment from : the healthy replica with the lowest average latency.
+     *
+     * @param strPath
+     *            the environment path
+     * @return the address of the replica, or null to read from the primary
+     */
+    public String getReadAdress( String strPath )
+    {
+        if ( _listReplicas.isEmpty( ) )
+        {
+            return null;
+        }
+
+        Long lPrimaryUntil = _mapPrimaryReadsUntil.get( strPath );
+        if ( lPrimaryUntil != null )
+        {
+            if ( System.currentTimeMillis( ) < lPrimaryUntil )
+            {
+                _lPrimaryReadCount.increment( );
+                return null;
+            }
+            _mapPrimaryReadsUntil.remove( strPath, lPrimaryUntil );
+        }
+
+        Replica selected = null;
+        for ( Replica replica : _listReplicas )
+        {
+            // A replica not called yet has no latency, and is tried first
+            if ( replica._bHealthy && ( selected == null || replica._dLatencyNanos < selected._dLatencyNanos ) )
+            {
+                selected = replica;
+            }
+        }
+        if ( selected == null )
+        {
+            _lPrimaryReadCount.increment( );
+            return null;
+        }
+        selected._lReadCount.increment( );
+        return selected._strAdress;
+    }
+
+    /**
+     * Sends the next reads of an environment to the primary, since it has just been written.
+     *
+     * @param strPath
+     *            the environment path
+     */
+    public void markWritten( String strPath )
+    {
+        if ( !_listReplicas.isEmpty( ) && _lReadAfterWriteMillis > 0 )
+        {
+            _mapPrimaryReadsUntil.put( strPath, System.currentTimeMillis( ) + _lReadAfterWriteMillis );
+        }
+    }
+
+    /**
+     * Records a call made to a replica.
+     *
+     * @param strAdress
+     *            the address of the replica
+     * @param lDurationNanos
+     *            the duration of the call, in nanoseconds
+     */
+    public void recordSuccess( String strAdress, long lDurationNanos )
+    {
+        Replica replica = getReplica( strAdress );
+        if ( replica != null )
+        {
+            replica.recordLatency( lDurationNanos, _dLatencyWeight );
+        }
+    }
+
+    /**
+     * Records a failed call to a replica, which is left aside until a health check finds it healthy again.
+     *
+     * @param strAdress
+     *            the address of the replica
+     * @param e
+     *            the exception of the call
+     */
+    public void recordFailure( String strAdress, VaultException e )
+    {
+        Replica replica = getReplica( strAdress );
+        if ( replica != null && VaultCircuitBreaker.isFailure( e ) && replica._bHealthy )
+        {
+            replica._bHealthy = false;
+            AppLogService.error( "Vault replica " + strAdress + " left aside after a failed call : " + e.getMessage( ) );
+        }
+    }
+
+    /**
+     * Checks the health of every replica, and forgets the environments written long enough ago.
+     *
+     * @return the number of healthy replicas
+     */
+    public int checkHealth( )
+    {
+        long lNow = System.currentTimeMillis( );
+        _mapPrimaryReadsUntil.values( ).removeIf( lUntil -> lUntil <= lNow );
+
+        int nHealthy = 0;
+        for ( Replica replica : _listReplicas )
+        {
+            boolean bHealthy = checkHealth( replica );
+            if ( bHealthy != replica._bHealthy )
+            {
+                AppLogService.info(
+                        "Vault replica " + replica._strAdress + ( bHealthy ? " back in service" : " left aside after its health check" ) );
+            }
+            replica._bHealthy = bHealthy;
+            if ( bHealthy )
+            {
+                nHealthy++;
+            }
+        }
+        return nHealthy;
+    }
+
+    /**
+     * Gets the addresses of the replicas.
+     *
+     * @return the addresses
+     */
+    public List<String> getReplicaAdresses( )
+    {
+        List<String> listAdresses = new ArrayList<>( );
+        for ( Replica replica : _listReplicas )
+        {
+            listAdresses.add( replica._strAdress );
+        }
+        return listAdresses;
+    }
+
+    /**
+     * Tells if a replica is in service.
+     *
+     * @param strAdress
+     *            the address of the replica
+     * @return true if the replica is healthy
+     */
+    public boolean isHealthy( String strAdress )
+    {
+        Replica replica = getReplica( strAdress );
+        return replica != null && replica._bHealthy;
+    }
+
+    /**
+     * Gets the average latency of a replica.
+     *
+     * @param strAdress
+     *            the address of the replica
+     * @return the latency in nanoseconds, 0 if the replica was never called
+     */
+    public double getLatencyNanos( String strAdress )
+    {
+        Replica replica = getReplica( strAdress );
+        return replica == null ? 0 : replica._dLatencyNanos;
+    }
+
+    /**
+     * Gets the number of reads sent to a replica.
+     *
+     * @param strAdress
+     *            the address of the replica
+     * @return the read count
+     */
+    public long getReadCount( String strAdress )
+    {
+        Replica replica = getReplica( strAdress );
+        return replica == null ? 0 : replica._lReadCount.sum( );
+    }
+
+    /**
+     * Gets the number of reads sent to the primary while replicas are configured, because no replica was healthy or the environment was just written.
+     *
+     * @return the read count
+     */
+    public long getPrimaryReadCount( )
+    {
+        return _lPrimaryReadCount.sum( );
+    }
+
+    private boolean checkHealth( Replica replica )
+    {
+        HttpGet httpGet = new HttpGet( replica._strAdress + PATH_HEALTH );
+        // The connect timeout bounds the whole check : a replica too slow to answer it is not fit for reads
+        int nTimeout = AppPropertiesService.getPropertyInt( PROPERTY_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT );
+        httpGet.setConfig( VaultHttpClient.getRequestConfig( nTimeout ) );
+        long lStart = System.nanoTime( );
+        try ( CloseableHttpResponse response = VaultHttpClient.getHttpClient( ).execute( httpGet ) )
+        {
+            EntityUtils.consumeQuietly( response.getEntity( ) );
+            if ( response.getStatusLine( ).getStatusCode( ) != HTTP_OK )
+            {
+                return false;
+            }
+            replica.recordLatency( System.nanoTime( ) - lStart, _dLatencyWeight );
+            return true;
+        }
+        catch( IOException e )
+        {
+            return false;
+        }
+    }
+
+    private Replica getReplica( String strAdress )
+    {
+        for ( Replica replica : _listReplicas )
+        {
+            if ( replica._strAdress.equals( strAdress ) )
+            {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> parseAdresses( String strAdresses )
+    {
+        List<String> listAdresses = new ArrayList<>( );
+        if ( strAdresses != null )
+        {
+            for ( String strAdress : strAdresses.split( "," ) )
+            {
+                if ( !strAdress.trim( ).isEmpty( ) )
+                {
+                    listAdresses.add( strAdress.trim( ) );
+                }
+            }
+        }
+        return listAdresses;
+    }
+
+    /**
+     * A read replica, with its health and average latency
+     */
+    private static final class Replica
+    {
+        private final String _strAdress;
+        private final LongAdder _lReadCount = new LongAdder( );
+        private volatile boolean _bHealthy = true;
+        private volatile double _dLatencyNanos;
+
+        Replica( String strAdress )
+        {
+            _strAdress = strAdress;
+        }
+
+        synchronized void recordLatency( long lDurationNanos, double dWeight )
+        {
+            _dLatencyNanos = _dLatencyNanos == 0 ? lDurationNanos : dWeight * lDurationNanos + ( 1 - dWeight ) * _dLatencyNanos;
+        }
+    }
+
+    /**
+     * Holds the instance, created when the class is first initialized by {@link #getInstance()}.
+     */
+    private static final class InstanceHolder
+    {
+        private static final VaultReplicaRouter INSTANCE = new VaultReplicaRouter(
+                parseAdresses( AppPropertiesService.getProperty( PROPERTY_REPLICA_ADRESSES ) ),
+                Double.parseDouble( AppPropertiesService.getProperty( PROPERTY_LATENCY_WEIGHT, DEFAULT_LATENCY_WEIGHT ) ),
+                AppPropertiesService.getPropertyInt( PROPERTY_READ_AFTER_WRITE, DEFAULT_READ_AFTER_WRITE ) );
+    }
+}
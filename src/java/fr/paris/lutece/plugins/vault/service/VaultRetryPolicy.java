@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retries the Vault calls failing transiently, for instance during a leader election, with a capped exponential backoff and full jitter : the n-th
+ * retry waits a random duration between 0 and min( vault.retry.maxBackoff, vault.retry.initialBackoff * 2^(n-1) ). An idempotent call is retried on
+ * no response, a timeout, a 5xx or a 429 status. A call which must not be applied twice, such as a token creation, is only retried when Vault
+ * certainly did not process it : connection refused, 429, or 503 (sealed or standby Vault).
+ */
+public class VaultRetryPolicy
+{
+    // Properties
+    private static final String PROPERTY_MAX_ATTEMPTS = "vault.retry.maxAttempts";
+    private static final String PROPERTY_INITIAL_BACKOFF = "vault.retry.initialBackoff";
+    private static final String PROPERTY_MAX_BACKOFF = "vault.retry.maxBackoff";
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final int DEFAULT_INITIAL_BACKOFF = 100;
+    private static final int DEFAULT_MAX_BACKOFF = 2000;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    // Operations applied twice if they are retried after Vault processed them
+    private static final Set<String> NOT_IDEMPOTENT_OPERATIONS = Collections
+            .unmodifiableSet( new HashSet<>( Arrays.asList( VaultMetrics.OPERATION_CREATE_TOKEN, VaultMetrics.OPERATION_WRITE_SECRET ) ) );
+
+    private final int _nMaxAttempts;
+    private final long _lInitialBackoffMillis;
+    private final long _lMaxBackoffMillis;
+    private final LongAdder _lRetryCount = new LongAdder( );
+
+    /**
+     * Instantiates a new retry policy.
+     *
+     * @param nMaxAttempts
+     *            the maximum number of attempts of a call, 1 to disable the retries
+     * @param lInitialBackoffMillis
+     *            the maximum wait before the first retry, in milliseconds
+     * @param lMaxBackoffMillis
+     *            the maximum wait before any retry, in milliseconds
+     */
+    public VaultRetryPolicy( int nMaxAttempts, long lInitialBackoffMillis, long lMaxBackoffMillis )
+    {
+        _nMaxAttempts = Math.max( 1, nMaxAttempts );
+        _lInitialBackoffMillis = Math.max( 0, lInitialBackoffMillis );
+        _lMaxBackoffMillis = Math.max( _lInitialBackoffMillis, lMaxBackoffMillis );
+    }
+
+    /**
+     * Gets the instance used by the calls of the plugin, configured by the properties.
+     *
+     * @return the instance
+     */
+    public static VaultRetryPolicy getInstance( )
+    {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Makes a call, and retries it while it fails transiently.
+     *
+     * @param <T>
+     *            the result type
+     * @param strOperation
+     *            the operation, telling whether the call is idempotent
+     * @param call
+     *            the call
+     * @return the result of the call
+     * @throws VaultException
+     *             the exception of the last attempt
+     */
+    public <T> T call( String strOperation, VaultCircuitBreaker.VaultCall<T> call ) throws VaultException
+    {
+        boolean bIdempotent = !NOT_IDEMPOTENT_OPERATIONS.contains( strOperation );
+        for ( int nAttempt = 1;; nAttempt++ )
+        {
+            try
+            {
+                return call.call( );
+            }
+            catch( VaultException e )
+            {
+                if ( nAttempt >= _nMaxAttempts || !isRetryable( e, bIdempotent ) )
+                {
+                    throw e;
+                }
+                _lRetryCount.increment( );
+                AppLogService.debug( "Retrying the Vault operation " + strOperation + " after a transient failure : " + e.getMessage( ) );
+                if ( !sleep( getBackoff( nAttempt ) ) )
+                {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets a random wait before a retry, with full jitter.
+     *
+     * @param nRetry
+     *            the number of the retry, starting at 1
+     * @return the wait in milliseconds
+     */
+    public long getBackoff( int nRetry )
+    {
+        long lCap = _lInitialBackoffMillis << Math.min( nRetry - 1, 30 );
+        if ( lCap <= 0 || lCap > _lMaxBackoffMillis )
+        {
+            lCap = _lMaxBackoffMillis;
+        }
+        return lCap == 0 ? 0 : ThreadLocalRandom.current( ).nextLong( lCap + 1 );
+    }
+
+    /**
+     * Gets the number of retries made.
+     *
+     * @return the count
+     */
+    public long getRetryCount( )
+    {
+        return _lRetryCount.sum( );
+    }
+
+    /**
+     * Tells whether a failed call may be made again.
+     *
+     * @param e
+     *            the exception of the call
+     * @param bIdempotent
+     *            true if the call may be applied twice
+     * @return true if the call may be retried
+     */
+    static boolean isRetryable( VaultException e, boolean bIdempotent )
+    {
+        if ( e instanceof VaultUnavailableException )
+        {
+            // Refused by the circuit breaker or the bulkhead : retrying would only add load
+            return false;
+        }
+        int nStatus = e.getHttpStatusCode( );
+        if ( nStatus == HTTP_TOO_MANY_REQUESTS || nStatus == HTTP_SERVICE_UNAVAILABLE || isConnectionFailure( e ) )
+        {
+            return true;
+        }
+        return bIdempotent && ( nStatus == 0 || nStatus >= HTTP_SERVER_ERROR );
+    }
+
+    private static boolean isConnectionFailure( Throwable e )
+    {
+        for ( Throwable cause = e; cause != null; cause = cause.getCause( ) )
+        {
+            if ( cause instanceof ConnectException || cause instanceof ConnectTimeoutException )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sleep( long lMillis )
+    {
+        try
+        {
+            Thread.sleep( lMillis );
+            return true;
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            return false;
+        }
+    }
+
+    /**
+     * Holds the instance, created when the class is first initialized by {@link #getInstance()}.
+     */
+    private static final class InstanceHolder
+    {
+        private static final VaultRetryPolicy INSTANCE = new VaultRetryPolicy(
+                AppPropertiesService.getPropertyInt( PROPERTY_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS ),
+                AppPropertiesService.getPropertyInt( PROPERTY_INITIAL_BACKOFF, DEFAULT_INITIAL_BACKOFF ),
+                AppPropertiesService.getPropertyInt( PROPERTY_MAX_BACKOFF, DEFAULT_MAX_BACKOFF ) );
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of the secrets of an environment, keyed by environment path. Entries expire after a TTL and the least recently used ones are evicted
+ * once the maximum number of entries or the maximum size (total number of value characters) is reached. Values are held as char arrays which are wiped
+ * whenever an entry leaves the cache : evicted, invalidated, cleared, or expired, the expired entries being purged by the daemon vaultCacheDaemon. A
+ * string is only built for each value returned by {@link #get(String)}.
+ */
+public class VaultSecretCache
+{
+    /**
+     * Version of an entry stored without the version of its document
+     */
+    public static final long VERSION_UNKNOWN = -1;
+
+    private final long _lTtlMillis;
+    private final int _nMaxEntries;
+    private final long _lMaxSize;
+    private final LinkedHashMap<String, CacheEntry> _mapEntries = new LinkedHashMap<>( 16, 0.75f, true );
+    private final AtomicLong _lHits = new AtomicLong( );
+    private final AtomicLong _lMisses = new AtomicLong( );
+    private long _lSize;
+    private long _lInvalidations;
+
+    /**
+     * Instantiates a new secret cache.
+     *
+     * @param lTtlMillis
+     *            the time to live of an entry in milliseconds, 0 disables the cache
+     * @param nMaxEntries
+     *            the maximum number of environments kept
+     * @param lMaxSize
+     *            the maximum number of value characters kept
+     */
+    public VaultSecretCache( long lTtlMillis, int nMaxEntries, long lMaxSize )
+    {
+        _lTtlMillis = lTtlMillis;
+        _nMaxEntries = nMaxEntries;
+        _lMaxSize = lMaxSize;
+    }
+
+    /**
+     * Tells if the cache keeps anything.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled( )
+    {
+        return _lTtlMillis > 0 && _nMaxEntries > 0 && _lMaxSize > 0;
+    }
+
+    /**
+     * Gets the secrets of an environment.
+     *
+     * @param strPath
+     *            the environment path
+     * @return a copy of the secrets sorted by key, or null if not cached or expired
+     */
+    public synchronized Map<String, String> get( String strPath )
+    {
+        CacheEntry entry = getEntry( strPath );
+        if ( entry == null )
+        {
+            return null;
+        }
+
+        Map<String, String> mapSecrets = new TreeMap<>( );
+        for ( Map.Entry<String, char [ ]> secret : entry._mapValues.entrySet( ) )
+        {
+            mapSecrets.put( secret.getKey( ), secret.getValue( ) == null ? null : new String( secret.getValue( ) ) );
+        }
+        return mapSecrets;
+    }
+
+    /**
+     * Gets the version of the document of an environment, without copying its secrets.
+     *
+     * @param strPath
+     *            the environment path
+     * @return the version, or {@link #VERSION_UNKNOWN} if not cached, expired or stored without its version
+     */
+    public synchronized long getVersion( String strPath )
+    {
+        CacheEntry entry = getEntry( strPath );
+        return entry == null ? VERSION_UNKNOWN : entry._lVersion;
+    }
+
+    /**
+     * Stores the secrets of an environment.
+     *
+     * @param strPath
+     *            the environment path
+     * @param mapSecrets
+     *            the secrets
+     */
+    public synchronized void put( String strPath, Map<String, String> mapSecrets )
+    {
+        put( strPath, mapSecrets, _lInvalidations );
+    }
+
+    /**
+     * Stores the secrets of an environment read from Vault, unless an entry was invalidated since the read started : the secrets may then be older than
+     * a write made meanwhile.
+     *
+     * @param strPath
+     *            the environment path
+     * @param mapSecrets
+     *            the secrets
+     * @param lStamp
+     *            the stamp taken with {@link #getInvalidationStamp()} before the read
+     */
+    public synchronized void put( String strPath, Map<String, String> mapSecrets, long lStamp )
+    {
+        put( strPath, mapSecrets, VERSION_UNKNOWN, lStamp );
+    }
+
+    /**
+     * Stores the secrets of an environment read from Vault with the version of their document, unless an entry was invalidated since the read started.
+     *
+     * @param strPath
+     *            the environment path
+     * @param mapSecrets
+     *            the secrets
+     * @param lVersion
+     *            the version of the document
+     * @param lStamp
+     *            the stamp taken with {@link #getInvalidationStamp()} before the read
+     */
+    public synchronized void put( String strPath, Map<String, String> mapSecrets, long lVersion, long lStamp )
+    {
+        if ( !isEnabled( ) || lStamp != _lInvalidations )
+        {
+            return;
+        }
+        remove( strPath );
+
+        CacheEntry entry = new CacheEntry( System.currentTimeMillis( ) + _lTtlMillis, lVersion );
+        for ( Map.Entry<String, String> secret : mapSecrets.entrySet( ) )
+        {
+            char [ ] value = secret.getValue( ) == null ? null : secret.getValue( ).toCharArray( );
+            entry._mapValues.put( secret.getKey( ), value );
+            entry._lSize += value == null ? 0 : value.length;
+        }
+        if ( entry._lSize > _lMaxSize )
+        {
+            entry.wipe( );
+            return;
+        }
+
+        _mapEntries.put( strPath, entry );
+        _lSize += entry._lSize;
+        evict( );
+    }
+
+    /**
+     * Removes the secrets of an environment.
+     *
+     * @param strPath
+     *            the environment path
+     */
+    public synchronized void invalidate( String strPath )
+    {
+        _lInvalidations++;
+        remove( strPath );
+    }
+
+    /**
+     * Gets the invalidation stamp, to take before reading secrets that will be stored.
+     *
+     * @return the stamp
+     */
+    public synchronized long getInvalidationStamp( )
+    {
+        return _lInvalidations;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear( )
+    {
+        _lInvalidations++;
+        for ( CacheEntry entry : _mapEntries.values( ) )
+        {
+            entry.wipe( );
+        }
+        _mapEntries.clear( );
+        _lSize = 0;
+    }
+
+    /**
+     * Removes the expired entries, wiping their values.
+     *
+     * @return the number of entries removed
+     */
+    public synchronized int purgeExpired( )
+    {
+        long lNow = System.currentTimeMillis( );
+        int nPurged = 0;
+        Iterator<CacheEntry> iterator = _mapEntries.values( ).iterator( );
+        while ( iterator.hasNext( ) )
+        {
+            CacheEntry entry = iterator.next( );
+            if ( entry._lExpiresAt <= lNow )
+            {
+                iterator.remove( );
+                _lSize -= entry._lSize;
+                entry.wipe( );
+                nPurged++;
+            }
+        }
+        return nPurged;
+    }
+
+    /**
+     * Gets the number of cached environments.
+     *
+     * @return the number of entries
+     */
+    public synchronized int getEntryCount( )
+    {
+        return _mapEntries.size( );
+    }
+
+    /**
+     * Gets the number of value characters kept.
+     *
+     * @return the size
+     */
+    public synchronized long getSize( )
+    {
+        return _lSize;
+    }
+
+    /**
+     * Gets the hit count.
+     *
+     * @return the hit count
+     */
+    public long getHitCount( )
+    {
+        return _lHits.get( );
+    }
+
+    /**
+     * Gets the miss count.
+     *
+     * @return the miss count
+     */
+    public long getMissCount( )
+    {
+        return _lMisses.get( );
+    }
+
+    private CacheEntry getEntry( String strPath )
+    {
+        CacheEntry entry = _mapEntries.get( strPath );
+        if ( entry != null && entry._lExpiresAt <= System.currentTimeMillis( ) )
+        {
+            remove( strPath );
+            entry = null;
+        }
+        if ( entry == null )
+        {
+            _lMisses.incrementAndGet( );
+            return null;
+        }
+        _lHits.incrementAndGet( );
+        return entry;
+    }
+
+    private void remove( String strPath )
+    {
+        CacheEntry entry = _mapEntries.remove( strPath );
+        if ( entry != null )
+        {
+            _lSize -= entry._lSize;
+            entry.wipe( );
+        }
+    }
+
+    private void evict( )
+    {
+        Iterator<CacheEntry> iterator = _mapEntries.values( ).iterator( );
+        while ( iterator.hasNext( ) && ( _mapEntries.size( ) > _nMaxEntries || _lSize > _lMaxSize ) )
+        {
+            CacheEntry entry = iterator.next( );
+            iterator.remove( );
+            _lSize -= entry._lSize;
+            entry.wipe( );
+        }
+    }
+
+    /**
+     * The secrets of one environment
+     */
+    private static final class CacheEntry
+    {
+        private final Map<String, char [ ]> _mapValues = new TreeMap<>( );
+        private final long _lExpiresAt;
+        private final long _lVersion;
+        private long _lSize;
+
+        private CacheEntry( long lExpiresAt, long lVersion )
+        {
+            _lExpiresAt = lExpiresAt;
+            _lVersion = lVersion;
+        }
+
+        private void wipe( )
+        {
+            for ( char [ ] value : _mapValues.values( ) )
+            {
+                if ( value != null )
+                {
+                    Arrays.fill( value, '\0' );
+                }
+            }
+            _mapValues.clear( );
+        }
+    }
+}
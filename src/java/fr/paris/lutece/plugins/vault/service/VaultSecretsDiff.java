@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The keys an import adds, modifies or removes in an environment, with the version of the environment they were compared with. Values are not kept, so
+ * that a preview never displays them.
+ */
+public class VaultSecretsDiff
+{
+    /** Version of a diff not compared with a known version of the environment */
+    public static final long VERSION_UNKNOWN = -1;
+
+    private final String _strEnvironnementCode;
+    private final long _lVersion;
+    private final Set<String> _setAdded = new TreeSet<>( );
+    private final Set<String> _setModified = new TreeSet<>( );
+    private final Set<String> _setRemoved = new TreeSet<>( );
+    private int _nUnchanged;
+
+    /**
+     * Compares the secrets of an environment with the imported ones.
+     *
+     * @param strEnvironnementCode
+     *            the environment code
+     * @param mapCurrent
+     *            the secrets of the environment
+     * @param mapImported
+     *            the imported secrets
+     * @param bReplace
+     *            true if the keys missing from the import are removed
+     */
+    public VaultSecretsDiff( String strEnvironnementCode, Map<String, String> mapCurrent, Map<String, String> mapImported, boolean bReplace )
+    {
+        this( strEnvironnementCode, mapCurrent, VERSION_UNKNOWN, mapImported, bReplace );
+    }
+
+    /**
+     * Compares the secrets of an environment, read at a given version, with the imported ones.
+     *
+     * @param strEnvironnementCode
+     *            the environment code
+     * @param mapCurrent
+     *            the secrets of the environment
+     * @param lVersion
+     *            the version of the environment document the secrets were read from
+     * @param mapImported
+     *            the imported secrets
+     * @param bReplace
+     *            true if the keys missing from the import are removed
+     */
+    public VaultSecretsDiff( String strEnvironnementCode, Map<String, String> mapCurrent, long lVersion, Map<String, String> mapImported, boolean bReplace )
+    {
+        _strEnvironnementCode = strEnvironnementCode;
+        _lVersion = lVersion;
+        for ( Map.Entry<String, String> secret : mapImported.entrySet( ) )
+        {
+            if ( !mapCurrent.containsKey( secret.getKey( ) ) )
+            {
+                _setAdded.add( secret.getKey( ) );
+            }
+            else
+                if ( Objects.equals( mapCurrent.get( secret.getKey( ) ), secret.getValue( ) ) )
+                {
+                    _nUnchanged++;
+                }
+                else
+                {
+                    _setModified.add( secret.getKey( ) );
+                }
+        }
+        if ( bReplace )
+        {
+            for ( String strKey : mapCurrent.keySet( ) )
+            {
+                if ( !mapImported.containsKey( strKey ) )
+                {
+                    _setRemoved.add( strKey );
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the environment code.
+     *
+     * @return the environment code
+     */
+    public String getEnvironnementCode( )
+    {
+        return _strEnvironnementCode;
+    }
+
+    /**
+     * Gets the version of the environment document the changes were computed from.
+     *
+     * @return the version, or VERSION_UNKNOWN
+     */
+    public long getVersion( )
+    {
+        return _lVersion;
+    }
+
+    /**
+     * Gets the added keys.
+     *
+     * @return the keys, sorted
+     */
+    public Set<String> getAdded( )
+    {
+        return Collections.unmodifiableSet( _setAdded );
+    }
+
+    /**
+     * Gets the keys whose value changes.
+     *
+     * @return the keys, sorted
+     */
+    public Set<String> getModified( )
+    {
+        return Collections.unmodifiableSet( _setModified );
+    }
+
+    /**
+     * Gets the removed keys.
+     *
+     * @return the keys, sorted
+     */
+    public Set<String> getRemoved( )
+    {
+        return Collections.unmodifiableSet( _setRemoved );
+    }
+
+    /**
+     * Gets the number of imported keys whose value is unchanged.
+     *
+     * @return the number of unchanged keys
+     */
+    public int getUnchanged( )
+    {
+        return _nUnchanged;
+    }
+
+    /**
+     * Tells whether the import changes the environment.
+     *
+     * @return true if a key is added, modified or removed
+     */
+    public boolean hasChanges( )
+    {
+        return !_setAdded.isEmpty( ) || !_setModified.isEmpty( ) || !_setRemoved.isEmpty( );
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import java.util.Locale;
+
+/**
+ * The file formats of the secrets import and export.
+ */
+public enum VaultSecretsFormat
+{
+    JSON( "json", "application/json" ),
+    YAML( "yaml", "application/yaml" ),
+    PROPERTIES( "properties", "text/plain" );
+
+    private final String _strExtension;
+    private final String _strContentType;
+
+    VaultSecretsFormat( String strExtension, String strContentType )
+    {
+        _strExtension = strExtension;
+        _strContentType = strContentType;
+    }
+
+    /**
+     * Gets the file extension.
+     *
+     * @return the extension
+     */
+    public String getExtension( )
+    {
+        return _strExtension;
+    }
+
+    /**
+     * Gets the content type of the exported files.
+     *
+     * @return the content type
+     */
+    public String getContentType( )
+    {
+        return _strContentType + "; charset=UTF-8";
+    }
+
+    /**
+     * Gets the format of a file from its name.
+     *
+     * @param strFileName
+     *            the file name
+     * @return the format
+     * @throws IllegalArgumentException
+     *             if the extension is not supported
+     */
+    public static VaultSecretsFormat fromFileName( String strFileName )
+    {
+        String strExtension = strFileName == null ? "" : strFileName.substring( strFileName.lastIndexOf( '.' ) + 1 ).toLowerCase( Locale.ROOT );
+        if ( "yml".equals( strExtension ) )
+        {
+            return YAML;
+        }
+        return fromExtension( strExtension );
+    }
+
+    /**
+     * Gets a format from its extension.
+     *
+     * @param strExtension
+     *            the extension, json, yaml or properties
+     * @return the format
+     * @throws IllegalArgumentException
+     *             if the extension is not supported
+     */
+    public static VaultSecretsFormat fromExtension( String strExtension )
+    {
+        for ( VaultSecretsFormat format : values( ) )
+        {
+            if ( format._strExtension.equalsIgnoreCase( strExtension ) )
+            {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException( "Unsupported secrets format : " + strExtension );
+    }
+}
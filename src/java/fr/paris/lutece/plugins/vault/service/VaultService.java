@@ -37,15 +37,20 @@ import com.bettercloud.vault.Vault;
 import com.bettercloud.vault.VaultException;
 import com.bettercloud.vault.api.Auth;
 import com.bettercloud.vault.response.AuthResponse;
+import com.bettercloud.vault.response.LogicalResponse;
+import com.bettercloud.vault.response.VaultResponse;
+import com.fasterxml.jackson.databind.JsonNode;
 import fr.paris.lutece.plugins.vault.business.*;
 import fr.paris.lutece.plugins.vault.business.Properties;
 import fr.paris.lutece.plugins.vault.rs.VaultAPI;
+import fr.paris.lutece.plugins.vault.rs.VaultHttpClient;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
-import fr.paris.lutece.util.ReferenceItem;
-import fr.paris.lutece.util.ReferenceList;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 /**
  * The type Vault service.
@@ -53,11 +58,24 @@ import java.util.*;
 public class VaultService
 {
 
-    private ReferenceList _listEnvAccessor = new ReferenceList( );
-    private List<Properties> _listEnvSecrets;
-
-    private static VaultService _instance = null;
-    private Vault _vault;
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final String PROPERTY_CACHE_TTL = "vault.cache.ttl";
+    private static final String PROPERTY_CACHE_MAX_ENTRIES = "vault.cache.maxEntries";
+    private static final String PROPERTY_CACHE_MAX_SIZE = "vault.cache.maxSize";
+    private static final String PROPERTY_TOKEN_CACHE_TTL = "vault.rest.tokenCacheTtl";
+    private static final String PROPERTY_TOKEN_CACHE_REFUSED_TTL = "vault.rest.tokenCacheRefusedTtl";
+    private static final String PROPERTY_TOKEN_CACHE_MAX_ENTRIES = "vault.rest.tokenCacheMaxEntries";
+    private static final long VERSION_ANY = -1;
+    private static final long VERSION_NONE = 0;
+    private static final int CHECK_AND_SET_ATTEMPTS = 3;
+
+    // Index of the token accessors by environnement id, backed by the vault_environnement_token table
+    private final Map<Integer, String> _mapEnvAccessor = new ConcurrentHashMap<>( );
+
+    private final VaultSecretCache _secretCache;
+    private final VaultTokenCache _tokenCache;
 
     /**
      * Instantiates a new Vault service.
@@ -69,31 +87,24 @@ public class VaultService
      */
     public VaultService( String strAdress, String strVaultToken )
     {
-        init( strAdress, strVaultToken );
-
+        VaultUtil.initDriver( strAdress, strVaultToken );
+        _secretCache = new VaultSecretCache( AppPropertiesService.getPropertyInt( PROPERTY_CACHE_TTL, 60 ) * 1000L,
+                AppPropertiesService.getPropertyInt( PROPERTY_CACHE_MAX_ENTRIES, 500 ),
+                AppPropertiesService.getPropertyInt( PROPERTY_CACHE_MAX_SIZE, 1000000 ) );
+        _tokenCache = new VaultTokenCache( AppPropertiesService.getPropertyInt( PROPERTY_TOKEN_CACHE_TTL, 60 ) * 1000L,
+                AppPropertiesService.getPropertyInt( PROPERTY_TOKEN_CACHE_REFUSED_TTL, 5 ) * 1000L,
+                AppPropertiesService.getPropertyInt( PROPERTY_TOKEN_CACHE_MAX_ENTRIES, 10000 ) );
+        loadEnvAccessors( );
     }
 
     /**
-     * Gets instance.
+     * Gets instance. It is created on first call, once, without locking the later calls.
      *
      * @return the instance
      */
     public static VaultService getInstance( )
     {
-        if ( _instance == null )
-        {
-
-            _instance = new VaultService( AppPropertiesService.getProperty( "vault.vaultServerAdress" ),
-                    AppPropertiesService.getProperty( "vault.rootToken" ) );
-        }
-        return _instance;
-    }
-
-    private void init( String strAdress, String strVaultToken )
-    {
-
-        this._vault = VaultUtil.initDriver( strAdress, strVaultToken );
-
+        return InstanceHolder.INSTANCE;
     }
 
     /**
@@ -109,25 +120,94 @@ public class VaultService
      */
     public String createEnvironnementToken( String appCode, Environnement env ) throws VaultException
     {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_CREATE_TOKEN, appCode );
+        try
+        {
+            // Creation of the policy; combination of appCode and envCode to form the name
+            VaultPolicyService.getInstance( ).deployPolicy( appCode, env );
+
+            // Auth.TokenRequest is asking for a list of policies so we create it
+            List<String> policies = new ArrayList<>( );
+            policies.add( VaultPolicyService.getPolicyName( appCode, env.getCode( ) ) );
+
+            // Create the tokenRequest and adding the list of policies to it
+            Auth.TokenRequest tokenRequest = new Auth.TokenRequest( );
+            tokenRequest.polices( policies );
+            tokenRequest.displayName( appCode + env.getCode( ) );
+            VaultTokenRenewalService.applyLeaseOptions( tokenRequest );
+
+            // Token creation with the tokenRequest composed of the policy
+            AuthResponse vaultToken = callDriver( VaultMetrics.OPERATION_CREATE_TOKEN, vault -> vault.auth( ).createToken( tokenRequest ) );
+            // Saving the token accessor of the environnement : can revoke token using accessor
+            storeEnvAccessor( env.getId( ), vaultToken.getTokenAccessor( ), vaultToken.getAuthLeaseDuration( ) );
+            return vaultToken.getAuthClientToken( );
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
 
-        // Creation of the policy; combination of appCode and envCode to form the name
-        VaultAPI.createPolicy( appCode, env );
-
-        // Auth.TokenRequest is asking for a list of policies so we create it
-        List<String> policies = new ArrayList<>( );
-        policies.add( appCode.toLowerCase( ) + env.getCode( ).toLowerCase( ) );
+    /**
+     * Provisions an application with one environnement of each type of vault.environnement.list it does not have yet. The environnements are
+     * inserted with one batch, then their policies and tokens are created concurrently.
+     *
+     * @param application
+     *            the application
+     * @return the token of each environnement created, by environnement code
+     * @throws VaultBulkException
+     *             if the token of at least one environnement could not be created, with the tokens created for the others
+     */
+    public Map<String, String> provisionApplication( Application application ) throws VaultBulkException
+    {
+        Set<String> setTypes = new LinkedHashSet<>( EnvironnementUtil.getEnvironnementTypes( ) );
+        for ( Environnement environnement : EnvironnementHome.getEnvironnementsListByApp( application.getId( ) ) )
+        {
+            setTypes.remove( environnement.getType( ) );
+        }
 
-        // Create the tokenRequest and adding the list of policies to it
-        Auth.TokenRequest tokenRequest = new Auth.TokenRequest( );
-        tokenRequest.polices( policies );
-        tokenRequest.displayName( appCode + env.getCode( ) );
+        List<Environnement> listEnvironnements = new ArrayList<>( );
+        for ( String strType : setTypes )
+        {
+            Environnement environnement = new Environnement( );
+            environnement.setType( strType );
+            environnement.setIdapplication( application.getId( ) );
+            listEnvironnements.add( environnement );
+        }
+        if ( listEnvironnements.isEmpty( ) )
+        {
+            return Collections.emptyMap( );
+        }
 
-        // Token creation with the tokenRequest composed of the policy
-        AuthResponse vaultToken = _vault.auth( ).createToken( tokenRequest );
-        // Adding token accessor to the Environnement Object : can revoke token using accessor
-        _listEnvAccessor.addItem( env.getId( ), vaultToken.getTokenAccessor( ) );
-        return vaultToken.getAuthClientToken( );
+        EnvironnementHome.createAll( listEnvironnements );
+        return createEnvironnementTokens( application.getCode( ), listEnvironnements );
+    }
 
+    /**
+     * Creates the policies and tokens of environnements concurrently, each environnement deploying its policy then creating its token.
+     *
+     * @param appCode
+     *            the app code
+     * @param listEnvironnements
+     *            the environnements
+     * @return the token of each environnement, by environnement code
+     * @throws VaultBulkException
+     *             if the token of at least one environnement could not be created, with the tokens created for the others
+     */
+    public Map<String, String> createEnvironnementTokens( String appCode, List<Environnement> listEnvironnements ) throws VaultBulkException
+    {
+        Map<String, Environnement> mapEnvironnements = new LinkedHashMap<>( );
+        for ( Environnement environnement : listEnvironnements )
+        {
+            mapEnvironnements.put( environnement.getCode( ), environnement );
+        }
+        return VaultBulkExecutor.run( "Provisioning application " + appCode, mapEnvironnements.keySet( ),
+                strCode -> createEnvironnementToken( appCode, mapEnvironnements.get( strCode ) ) );
     }
 
     /**
@@ -143,57 +223,74 @@ public class VaultService
      */
     public String regenerateToken( String appCode, Environnement environnement ) throws VaultException
     {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_REGENERATE_TOKEN, appCode );
+        try
+        {
+            VaultAPI.removeTokenJackson( appCode, environnement.getToken( ) );
+            if ( environnement.getToken( ) != null )
+            {
+                _tokenCache.invalidate( environnement.getToken( ) );
+            }
 
-        VaultAPI.removeTokenJackson( environnement.getToken( ) );
-        _listEnvAccessor.remove( VaultService.getInstance( ).getEnvAccessorObject( environnement.getId( ) ) );
-
-        List<String> policies = new ArrayList<>( );
-        policies.add( appCode.toLowerCase( ) + environnement.getCode( ).toLowerCase( ) );
-
-        // Create the tokenRequest and adding the list of policies to it
-        Auth.TokenRequest tokenRequest = new Auth.TokenRequest( );
-        tokenRequest.polices( policies );
-        tokenRequest.displayName( appCode + environnement.getCode( ) );
+            // The policy is deployed again in case it was lost, which writes nothing when it is known to be deployed
+            VaultPolicyService.getInstance( ).deployPolicy( appCode, environnement );
+            List<String> policies = new ArrayList<>( );
+            policies.add( VaultPolicyService.getPolicyName( appCode, environnement.getCode( ) ) );
 
-        // Token creation with the tokenRequest composed of the policy
-        AuthResponse vaultToken = _vault.auth( ).createToken( tokenRequest );
+            // Create the tokenRequest and adding the list of policies to it
+            Auth.TokenRequest tokenRequest = new Auth.TokenRequest( );
+            tokenRequest.polices( policies );
+            tokenRequest.displayName( appCode + environnement.getCode( ) );
+            VaultTokenRenewalService.applyLeaseOptions( tokenRequest );
 
-        // Adding token accessor to the Environnement Object : can revoke token using accessor
-        _listEnvAccessor.addItem( environnement.getId( ), vaultToken.getTokenAccessor( ) );
-        return vaultToken.getAuthClientToken( );
+            // Token creation with the tokenRequest composed of the policy
+            AuthResponse vaultToken = callDriver( VaultMetrics.OPERATION_CREATE_TOKEN, vault -> vault.auth( ).createToken( tokenRequest ) );
 
+            // Replacing the token accessor of the environnement : can revoke token using accessor
+            storeEnvAccessor( environnement.getId( ), vaultToken.getTokenAccessor( ), vaultToken.getAuthLeaseDuration( ) );
+            return vaultToken.getAuthClientToken( );
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
     }
 
     public void renameEnvironnement(Application application, Environnement environnement, String strOldCode, String strOldToken) throws VaultException {
 
-        String currentCode = environnement.getCode();
-        String currentToken = environnement.getToken();
-
-        List<String> secretList = _vault.logical( ).list( AppPropertiesService.getProperty("vault.secretPath")+"/"+application.getCode()+"/"+strOldCode ).getListData( );
-        if ( !secretList.isEmpty( ) )
+        // The whole environment is copied with one read and one write. A rename resumed after the old path was removed has nothing left to copy
+        String strOldPath = EnvironnementUtil.getEnvironmentPath( application.getCode( ), strOldCode );
+        if ( strOldPath.equals( environnement.getPath( ) ) )
         {
-            secretList.forEach( x -> {
-                try
-                {
-                    final String secretV = _vault.logical( ).read( AppPropertiesService.getProperty("vault.secretPath")+"/"+application.getCode()+"/"+strOldCode + "/" + x ).getData( ).get( x );
-                    VaultService.getInstance().writeSecret(x,secretV,application,environnement);
-                }
-                catch( VaultException e )
-                {
-                    AppLogService.error( "Erreur pour supprimer l'environnement", e );
-                }
-            } );
+            // Code unchanged : only the previous token is revoked
+            VaultAPI.removeTokenJackson( application.getCode( ), strOldToken );
+            removeEnvAccessor( environnement.getId( ), strOldToken );
+            return;
+        }
+        if ( environnementExists( strOldPath ) )
+        {
+            Map<String, String> mapSecrets = loadEnvironnementSecrets( strOldPath );
+            writeEnvironnementSecrets( environnement.getPath( ), mapSecrets );
         }
-        environnement.setCode(strOldCode);
-        environnement.setPath(EnvironnementUtil.getEnvironmentPath(application.getCode(),strOldCode));
-        environnement.setToken(strOldToken);
-        VaultService.getInstance().removeEnv(environnement.getToken(),application.getCode(),environnement);
-        environnement.setCode(currentCode);
-        environnement.setToken(currentToken);
+
+        // The old environnement is removed through a copy : the environnement given may be read by other requests meanwhile
+        Environnement oldEnvironnement = new Environnement( );
+        oldEnvironnement.setId( environnement.getId( ) );
+        oldEnvironnement.setIdapplication( environnement.getIdapplication( ) );
+        oldEnvironnement.setCode( strOldCode );
+        oldEnvironnement.setPath( strOldPath );
+        oldEnvironnement.setToken( strOldToken );
+        removeEnv( strOldToken, application.getCode( ), oldEnvironnement );
     }
 
     /**
-     * Gets env accessor.
+     * Gets env accessor. The in-memory index is used first; an environnement missing from it (token created by another node) is looked up in the
+     * database.
      *
      * @param idEnv
      *            the id env
@@ -201,39 +298,67 @@ public class VaultService
      */
     public String getEnvAccessor( Integer idEnv )
     {
-        if ( !_listEnvAccessor.isEmpty( ) )
+        String strAccessor = _mapEnvAccessor.get( idEnv );
+        if ( strAccessor == null )
         {
-            for ( ReferenceItem env : _listEnvAccessor )
+            Optional<EnvironnementToken> token = EnvironnementTokenHome.findByEnvironnement( idEnv );
+            if ( token.isPresent( ) )
             {
-                if ( Objects.equals( env.getCode( ), idEnv.toString( ) ) )
-                {
-                    return env.getName( );
-                }
+                strAccessor = token.get( ).getAccessor( );
+                _mapEnvAccessor.put( idEnv, strAccessor );
             }
         }
-        return null;
+        return strAccessor;
+    }
+
+    /**
+     * Reloads the index of token accessors from the database.
+     */
+    public void loadEnvAccessors( )
+    {
+        Map<Integer, String> mapAccessors = new HashMap<>( );
+        for ( EnvironnementToken token : EnvironnementTokenHome.getEnvironnementTokensList( ) )
+        {
+            mapAccessors.put( token.getIdEnvironnement( ), token.getAccessor( ) );
+        }
+        _mapEnvAccessor.keySet( ).retainAll( mapAccessors.keySet( ) );
+        _mapEnvAccessor.putAll( mapAccessors );
     }
 
     /**
-     * Gets env accessor object.
+     * Reloads the token accessor of an environnement from the database, after another node changed it. The tokens of the previous accessor are
+     * forgotten.
      *
-     * @param idEnv
+     * @param nIdEnv
      *            the id env
-     * @return the env accessor object
      */
-    public ReferenceItem getEnvAccessorObject( Integer idEnv )
+    public void reloadEnvAccessor( int nIdEnv )
     {
-        if ( !_listEnvAccessor.isEmpty( ) )
+        String strAccessor = EnvironnementTokenHome.findByEnvironnement( nIdEnv ).map( EnvironnementToken::getAccessor ).orElse( null );
+        String strPreviousAccessor = strAccessor == null ? _mapEnvAccessor.remove( nIdEnv ) : _mapEnvAccessor.put( nIdEnv, strAccessor );
+        if ( strPreviousAccessor != null && !strPreviousAccessor.equals( strAccessor ) )
         {
-            for ( ReferenceItem env : _listEnvAccessor )
-            {
-                if ( Objects.equals( env.getCode( ), idEnv.toString( ) ) )
-                {
-                    return env;
-                }
-            }
+            _tokenCache.invalidate( strPreviousAccessor );
+        }
+    }
+
+    private void storeEnvAccessor( int nIdEnv, String strAccessor, long lLeaseDuration )
+    {
+        EnvironnementTokenHome.save( VaultTokenRenewalService.newEnvironnementToken( nIdEnv, strAccessor, lLeaseDuration ) );
+        _mapEnvAccessor.put( nIdEnv, strAccessor );
+        VaultInvalidationService.getInstance( ).publishAccessor( nIdEnv );
+    }
+
+    private void removeEnvAccessor( int nIdEnv, String strAccessor )
+    {
+        if ( strAccessor != null )
+        {
+            // A token regenerated since (environnement renamed) keeps its accessor
+            EnvironnementTokenHome.remove( nIdEnv, strAccessor );
+            _mapEnvAccessor.remove( nIdEnv, strAccessor );
+            _tokenCache.invalidate( strAccessor );
+            VaultInvalidationService.getInstance( ).publishAccessor( nIdEnv );
         }
-        return null;
     }
 
     /**
@@ -251,28 +376,23 @@ public class VaultService
     public void removeEnv( String token, String appCode, Environnement environnement ) throws VaultException
     {
 
-        List<String> secretList = _vault.logical( ).list( environnement.getPath( ) ).getListData( );
+        // The metadata are deleted with the data, otherwise the paths would still be listed and the environment taken as existing
+        VaultAPI.deleteSecrets( environnement.getPath( ) );
+        invalidateSecrets( environnement.getPath( ) );
+
+        // Environments not migrated yet may still hold one path per key; the policy and token are kept if one of them fails so the removal can be retried
+        List<String> secretList = listLegacyKeys( environnement.getPath( ) );
         if ( !secretList.isEmpty( ) )
         {
-            secretList.forEach( x -> {
-                try
-                {
-                    _vault.logical( ).delete( environnement.getPath( ) + "/" + x );
-                }
-                catch( VaultException e )
-                {
-                    AppLogService.error( "Erreur pour supprimer l'environnement", e );
-                }
-            } );
+            VaultBulkExecutor.run( "Removing environnement " + environnement.getPath( ), secretList, x -> deleteLegacyKey( environnement.getPath( ), x ) );
         }
-        VaultAPI.removePolicy( appCode.toLowerCase( ) + environnement.getCode( ).toLowerCase( ) );
+        VaultPolicyService.getInstance( ).removePolicy( appCode, environnement );
 //        VaultAPI.removeToken( token );
-        VaultAPI.removeTokenJackson(token);
-        _listEnvAccessor.remove( VaultService.getInstance( ).getEnvAccessorObject( environnement.getId( ) ) );
-
+        VaultAPI.removeTokenJackson( appCode, token );
+        removeEnvAccessor( environnement.getId( ), token );
+        publishChange( new VaultChangeEvent( environnement.getPath( ), VaultChangeEvent.TYPE_REMOVED, VaultSecretCache.VERSION_UNKNOWN ) );
     }
 
-
     /**
      * Write secret.
      *
@@ -295,11 +415,20 @@ public class VaultService
             throw new VaultException( "Paramètres incorrects" );
         }
 
-        final Map<String, Object> secrets = new HashMap<String, Object>( );
-        secrets.put( secret, value );
-
-        // Write operation
-        _vault.logical( ).write( environnement.getPath( ) + "/" + secret, secrets );
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_WRITE_SECRET, application.getCode( ) );
+        try
+        {
+            modifyEnvironnementSecrets( environnement.getPath( ), VERSION_ANY, mapSecrets -> !value.equals( mapSecrets.put( secret, value ) ) );
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
 
     }
 
@@ -323,7 +452,20 @@ public class VaultService
             throw new VaultException( "Paramètres incorrects" );
         }
 
-        _vault.logical( ).delete( environnement.getPath( ) + "/" + secret );
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_DELETE_SECRET, application.getCode( ) );
+        try
+        {
+            modifyEnvironnementSecrets( environnement.getPath( ), VERSION_ANY, mapSecrets -> mapSecrets.remove( secret ) != null );
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
 
     }
 
@@ -342,14 +484,236 @@ public class VaultService
      *             the vault exception
      */
     public void updateSecret( String secret, String value, Application application, Environnement environnement ) throws VaultException
+    {
+        updateSecret( secret, value, application, environnement, VERSION_ANY );
+    }
+
+    /**
+     * Update secret, provided the environment was not modified since the given version. The value is replaced with a single check-and-set write of the
+     * environment document, so the key never disappears for readers and concurrent edits are detected.
+     *
+     * @param secret
+     *            the secret
+     * @param value
+     *            the value
+     * @param application
+     *            the application
+     * @param environnement
+     *            the environnement
+     * @param lVersion
+     *            the version of the environment document the value was read from, or a negative value to update whatever the version
+     * @throws VaultConflictException
+     *             if the environment was modified since the version
+     * @throws VaultException
+     *             the vault exception
+     */
+    public void updateSecret( String secret, String value, Application application, Environnement environnement, long lVersion ) throws VaultException
     {
         if ( secret == null || value == null || application.getCode( ) == null || environnement.getCode( ) == null )
         {
             throw new VaultException( "Paramètres incorrects" );
         }
 
-        VaultService.getInstance( ).deleteSecret( secret, application, environnement );
-        VaultService.getInstance( ).writeSecret( secret, value, application, environnement );
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_UPDATE_SECRET, application.getCode( ) );
+        try
+        {
+            modifyEnvironnementSecrets( environnement.getPath( ), lVersion, mapSecrets -> {
+                mapSecrets.put( secret, value );
+                return true;
+            } );
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
+
+    /**
+     * Reads all the secrets of an environment, from the cache when possible. Unlike {@link #getSecretsByEnv(Application, Environnement)}, an error is
+     * thrown rather than logged.
+     *
+     * @param environnement
+     *            the environnement
+     * @return the secrets sorted by key
+     * @throws VaultException
+     *             the vault exception
+     */
+    public Map<String, String> readSecrets( Environnement environnement ) throws VaultException
+    {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_READ_SECRETS, environnement.getApplicationCode( ) );
+        try
+        {
+            return readEnvironnementSecrets( environnement.getPath( ) );
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
+
+    /**
+     * Gets the keys of the secrets of an environment, sorted, without their values. The properties listing pages over these keys and fetches a value
+     * only when it is revealed.
+     *
+     * @param environnement
+     *            the environnement
+     * @return the sorted keys
+     * @throws VaultException
+     *             the vault exception
+     */
+    public List<String> getSecretKeys( Environnement environnement ) throws VaultException
+    {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_GET_SECRET_KEYS, environnement.getApplicationCode( ) );
+        try
+        {
+            return new ArrayList<>( readEnvironnementSecrets( environnement.getPath( ) ).keySet( ) );
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
+
+    /**
+     * Gets the version of the document of an environment, from the cache when possible, without copying the secrets. The version changes with every write
+     * of the environment.
+     *
+     * @param environnement
+     *            the environnement
+     * @return the version
+     * @throws VaultException
+     *             the vault exception
+     */
+    public long getSecretsVersion( Environnement environnement ) throws VaultException
+    {
+        long lVersion = _secretCache.getVersion( environnement.getPath( ) );
+        if ( lVersion != VaultSecretCache.VERSION_UNKNOWN )
+        {
+            return lVersion;
+        }
+
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_GET_SECRETS_VERSION, environnement.getApplicationCode( ) );
+        try
+        {
+            long lStamp = _secretCache.getInvalidationStamp( );
+            VaultDocument document = loadEnvironnementDocument( environnement.getPath( ), true );
+            _secretCache.put( environnement.getPath( ), document.getSecrets( ), document.getVersion( ), lStamp );
+            return document.getVersion( );
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
+    }
+
+    /**
+     * Tells if a token is the current token of an environment. The token is looked up in Vault at most once per TTL of the token cache.
+     *
+     * @param environnement
+     *            the environnement
+     * @param strToken
+     *            the token presented by the consuming application
+     * @return true if the token was created for the environment and is still valid
+     * @throws VaultException
+     *             the vault exception
+     */
+    public boolean isEnvironnementToken( Environnement environnement, String strToken ) throws VaultException
+    {
+        String strExpectedAccessor = getEnvAccessor( environnement.getId( ) );
+        if ( strExpectedAccessor == null || strToken == null || strToken.isEmpty( ) )
+        {
+            return false;
+        }
+        return strExpectedAccessor.equals( _tokenCache.getAccessor( strToken ) );
+    }
+
+    /**
+     * Imports secrets in an environment with a single check-and-set write.
+     *
+     * @param application
+     *            the application
+     * @param environnement
+     *            the environnement
+     * @param mapImported
+     *            the imported secrets
+     * @param bReplace
+     *            true if the keys missing from the import are removed, false if they are kept
+     * @return the changes made
+     * @throws VaultException
+     *             the vault exception
+     */
+    public VaultSecretsDiff importSecrets( Application application, Environnement environnement, Map<String, String> mapImported, boolean bReplace )
+            throws VaultException
+    {
+        return importSecrets( application, environnement, mapImported, bReplace, VERSION_ANY );
+    }
+
+    /**
+     * Imports secrets in an environment with a single check-and-set write, provided the environment was not modified since the given version.
+     *
+     * @param application
+     *            the application
+     * @param environnement
+     *            the environnement
+     * @param mapImported
+     *            the imported secrets
+     * @param bReplace
+     *            true if the keys missing from the import are removed, false if they are kept
+     * @param lVersion
+     *            the version of the environment document the import was previewed from, or a negative value to import whatever the version
+     * @return the changes made
+     * @throws VaultConflictException
+     *             if the environment was modified since the version
+     * @throws VaultException
+     *             the vault exception
+     */
+    public VaultSecretsDiff importSecrets( Application application, Environnement environnement, Map<String, String> mapImported, boolean bReplace,
+            long lVersion ) throws VaultException
+    {
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_IMPORT_SECRETS, application.getCode( ) );
+        try
+        {
+            VaultSecretsDiff [ ] diff = new VaultSecretsDiff [ 1];
+            modifyEnvironnementSecrets( environnement.getPath( ), lVersion, mapSecrets -> {
+                diff [0] = new VaultSecretsDiff( environnement.getCode( ), mapSecrets, mapImported, bReplace );
+                if ( bReplace )
+                {
+                    mapSecrets.keySet( ).retainAll( mapImported.keySet( ) );
+                }
+                mapSecrets.putAll( mapImported );
+                return diff [0].hasChanges( );
+            } );
+            return diff [0];
+        }
+        catch( VaultException | RuntimeException e )
+        {
+            sample.error( );
+            throw e;
+        }
+        finally
+        {
+            sample.close( );
+        }
     }
 
     /**
@@ -363,7 +727,8 @@ public class VaultService
         try
         {
 
-            List<String> listAllSecrets = _vault.logical( ).list( AppPropertiesService.getProperty( "vault.secretPath" ) + "/" ).getListData( );
+            List<String> listAllSecrets = callDriver( VaultMetrics.OPERATION_LIST_SECRETS,
+                    vault -> vault.logical( ).list( AppPropertiesService.getProperty( "vault.secretPath" ) + "/" ) ).getListData( );
             return listAllSecrets;
 
         }
@@ -388,31 +753,32 @@ public class VaultService
      */
     public List<Properties> getSecretsByEnv( Application application, Environnement environnement )
     {
-
-        _listEnvSecrets = new ArrayList<>( );
-
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_GET_SECRETS_BY_ENV, application.getCode( ) );
         try
         {
-            final List<String> secretList = _vault.logical( ).list( environnement.getPath( ) ).getListData( );
-            for ( int i = 0; i < secretList.size( ); i++ )
+            final Map<String, String> mapSecrets = readEnvironnementSecrets( environnement.getPath( ) );
+            List<Properties> listEnvSecrets = new ArrayList<>( mapSecrets.size( ) );
+            for ( Map.Entry<String, String> secret : mapSecrets.entrySet( ) )
             {
-                int appId = application.getId( );
-                int envId = environnement.getId( );
-                Properties _properties = new Properties( );
-                _properties.setKey( secretList.get( i ) );
-                _properties.setIdenvironnement( envId );
-                _properties.setValue( VaultService.getInstance( ).getDetailsSecret( secretList.get( i ), environnement ) );
-                _listEnvSecrets.add( _properties );
+                Properties properties = new Properties( );
+                properties.setKey( secret.getKey( ) );
+                properties.setIdenvironnement( environnement.getId( ) );
+                properties.setValue( secret.getValue( ) );
+                listEnvSecrets.add( properties );
             }
-            return _listEnvSecrets;
+            return listEnvSecrets;
 
         }
-        catch( VaultException e )
+        catch( VaultException | RuntimeException e )
         {
-
+            sample.error( );
             AppLogService.error( "Erreur pour récupérer la liste des secretst", e );
 
         }
+        finally
+        {
+            sample.close( );
+        }
 
         return null;
     }
@@ -428,27 +794,30 @@ public class VaultService
      */
     public String getDetailsSecret( String secretKey, Environnement environnement )
     {
-
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_GET_DETAILS_SECRET, environnement.getApplicationCode( ) );
         try
         {
 
-            final String secretKV = _vault.logical( ).read( environnement.getPath( ) + "/" + secretKey ).getData( ).get( secretKey );
+            final String secretKV = readEnvironnementSecrets( environnement.getPath( ) ).get( secretKey );
             return secretKV;
 
         }
-        catch( VaultException e )
+        catch( VaultException | RuntimeException e )
         {
-
-           AppLogService.error( "Erreur pour récupérer la valeur du secret",e);
-            e.printStackTrace( );
+            sample.error( );
+            AppLogService.error( "Erreur pour récupérer la valeur du secret",e);
 
         }
+        finally
+        {
+            sample.close( );
+        }
 
         return secretKey;
     }
 
     /**
-     * Gets secret.
+     * Gets secret. The environment is read from Vault rather than from the cache, so the version of the returned secret is the current one.
      *
      * @param secretKey
      *            the secret key
@@ -464,24 +833,453 @@ public class VaultService
         try
         {
 
-            final String secretValue = _vault.logical( ).read( environnement.getPath( ) + "/" + secretKey ).getData( ).get( secretKey );
+            final VaultDocument document = loadEnvironnementDocument( environnement.getPath( ), false );
+            final String secretValue = document.getSecrets( ).get( secretKey );
+            if ( secretValue == null )
+            {
+                return null;
+            }
 
             Properties secret = new Properties( );
             secret.setIdenvironnement( environnement.getId( ) );
             secret.setKey( secretKey );
             secret.setValue( secretValue );
+            secret.setVersion( document.getVersion( ) );
             return secret;
 
         }
         catch( VaultException e )
         {
 
-            AppLogService.error( "Erreur pour récupérer la valeur du secret" );
-            e.printStackTrace( );
+            AppLogService.error( "Erreur pour récupérer la valeur du secret", e );
 
         }
 
         return null;
     }
 
+    /**
+     * Migrate an environment stored with one Vault path per key into a single document under its path. Keys already present in the document are kept, and
+     * the per-key paths are deleted once the document is written. Nothing is written when no per-key path is left.
+     *
+     * @param strPath
+     *            the environment path
+     * @return the secrets of the environment
+     * @throws VaultException
+     *             the vault exception
+     */
+    public Map<String, String> migrateEnvironnement( String strPath ) throws VaultException
+    {
+        VaultDocument document = readDocument( strPath, false );
+        Map<String, String> mapSecrets = document != null ? document.getSecrets( ) : new TreeMap<>( );
+
+        List<String> listLegacyKeys = listLegacyKeys( strPath );
+        if ( listLegacyKeys.isEmpty( ) )
+        {
+            return mapSecrets;
+        }
+
+        List<String> listMissingKeys = new ArrayList<>( );
+        for ( String strKey : listLegacyKeys )
+        {
+            if ( !mapSecrets.containsKey( strKey ) )
+            {
+                listMissingKeys.add( strKey );
+            }
+        }
+        if ( !listMissingKeys.isEmpty( ) )
+        {
+            mapSecrets.putAll( VaultBulkExecutor.run( "Migrating environnement " + strPath, listMissingKeys,
+                    x -> callDriver( VaultMetrics.OPERATION_READ_SECRETS, vault -> vault.logical( ).read( strPath + "/" + x ) ).getData( )
+                            .get( x ) ) );
+        }
+
+        writeEnvironnementSecrets( strPath, mapSecrets );
+        VaultBulkExecutor.run( "Migrating environnement " + strPath, listLegacyKeys, x -> deleteLegacyKey( strPath, x ) );
+        AppLogService.info( "Environnement " + strPath + " migrated to a single document (" + listLegacyKeys.size( ) + " keys)" );
+
+        return mapSecrets;
+    }
+
+    /**
+     * Gets the cache of the environment secrets.
+     *
+     * @return the secret cache
+     */
+    public VaultSecretCache getSecretCache( )
+    {
+        return _secretCache;
+    }
+
+    /**
+     * Gets the cache of the accessors of the tokens presented by the consuming applications.
+     *
+     * @return the token cache
+     */
+    public VaultTokenCache getTokenCache( )
+    {
+        return _tokenCache;
+    }
+
+    /**
+     * Reads all the secrets of an environment, from the cache when possible.
+     *
+     * @param strPath
+     *            the environment path
+     * @return the secrets sorted by key
+     * @throws VaultException
+     *             the vault exception
+     */
+    private Map<String, String> readEnvironnementSecrets( String strPath ) throws VaultException
+    {
+        Map<String, String> mapSecrets = _secretCache.get( strPath );
+        if ( mapSecrets == null )
+        {
+            long lStamp = _secretCache.getInvalidationStamp( );
+            VaultDocument document = loadEnvironnementDocument( strPath, true );
+            mapSecrets = document.getSecrets( );
+            _secretCache.put( strPath, mapSecrets, document.getVersion( ), lStamp );
+        }
+        return mapSecrets;
+    }
+
+    /**
+     * Reads all the secrets of an environment with a single Vault request, bypassing the cache. An environment still stored with one path per key is
+     * migrated first.
+     *
+     * @param strPath
+     *            the environment path
+     * @return the secrets sorted by key
+     * @throws VaultException
+     *             the vault exception
+     */
+    private Map<String, String> loadEnvironnementSecrets( String strPath ) throws VaultException
+    {
+        return loadEnvironnementDocument( strPath, false ).getSecrets( );
+    }
+
+    /**
+     * Reads the document of an environment with its version, bypassing the cache. An environment still stored with one path per key is migrated first.
+     * An environment without document nor per-key path is read as empty, at version 0 : nothing is written, and the first check-and-set write creates the
+     * document. A read racing the removal of the environment thus cannot bring it back.
+     *
+     * @param strPath
+     *            the environment path
+     * @param bFromReplica
+     *            true to read from a replica, when the document is not modified from its version
+     * @return the document
+     * @throws VaultException
+     *             the vault exception
+     */
+    private VaultDocument loadEnvironnementDocument( String strPath, boolean bFromReplica ) throws VaultException
+    {
+        VaultDocument document = readDocument( strPath, bFromReplica );
+        if ( document == null )
+        {
+            if ( listLegacyKeys( strPath ).isEmpty( ) )
+            {
+                return new VaultDocument( new TreeMap<>( ), VERSION_NONE );
+            }
+            migrateEnvironnement( strPath );
+            document = readDocument( strPath, false );
+        }
+        if ( document == null )
+        {
+            throw new VaultException( "Environnement " + strPath + " could not be read after its migration" );
+        }
+        return document;
+    }
+
+    /**
+     * Applies a modification to the secrets of an environment and writes them back with a check-and-set on the version read. When no version is expected
+     * by the caller, a write refused because another key was written meanwhile is applied again on the new version. The subscribers to the environment
+     * are notified of the write.
+     *
+     * @param strPath
+     *            the environment path
+     * @param lExpectedVersion
+     *            the version the environment must be at, or a negative value for the version read
+     * @param modification
+     *            modifies the secrets, and returns false if they are unchanged and need not be written
+     * @throws VaultException
+     *             the vault exception
+     */
+    private void modifyEnvironnementSecrets( String strPath, long lExpectedVersion, Predicate<Map<String, String>> modification ) throws VaultException
+    {
+        for ( int nAttempt = 1;; nAttempt++ )
+        {
+            VaultDocument document = loadEnvironnementDocument( strPath, false );
+            long lVersion = lExpectedVersion < 0 ? document.getVersion( ) : lExpectedVersion;
+            if ( document.getVersion( ) != lVersion )
+            {
+                throw new VaultConflictException( strPath, lVersion );
+            }
+            if ( !modification.test( document.getSecrets( ) ) )
+            {
+                return;
+            }
+
+            long lNewVersion;
+            try
+            {
+                lNewVersion = VaultAPI.writeSecrets( strPath, document.getSecrets( ), lVersion );
+            }
+            catch( VaultConflictException e )
+            {
+                if ( lExpectedVersion >= 0 || nAttempt >= CHECK_AND_SET_ATTEMPTS )
+                {
+                    throw e;
+                }
+                continue;
+            }
+            finally
+            {
+                invalidateSecrets( strPath );
+            }
+
+            // Published once the cache is invalidated, so that a subscriber reading the secrets on the event gets the new version
+            publishChange( new VaultChangeEvent( strPath, VaultChangeEvent.TYPE_MODIFIED, lNewVersion ) );
+            return;
+        }
+    }
+
+    /**
+     * Deletes a key stored at its own path, with its metadata so that it is no longer listed.
+     *
+     * @param strPath
+     *            the environment path
+     * @param strKey
+     *            the key
+     * @return the key
+     * @throws VaultException
+     *             the vault exception
+     */
+    private static String deleteLegacyKey( String strPath, String strKey ) throws VaultException
+    {
+        VaultAPI.deleteSecrets( strPath + "/" + strKey );
+        return strKey;
+    }
+
+    private boolean environnementExists( String strPath ) throws VaultException
+    {
+        return readDocument( strPath, false ) != null || !listLegacyKeys( strPath ).isEmpty( );
+    }
+
+    /**
+     * Lists the keys of an environment still stored with one path per key.
+     *
+     * @param strPath
+     *            the environment path
+     * @return the keys, empty once the environment is migrated
+     * @throws VaultException
+     *             the vault exception
+     */
+    private List<String> listLegacyKeys( String strPath ) throws VaultException
+    {
+        return callDriver( VaultMetrics.OPERATION_LIST_SECRETS, vault -> vault.logical( ).list( strPath ) ).getListData( );
+    }
+
+    private VaultDocument readDocument( String strPath, boolean bFromReplica ) throws VaultException
+    {
+        // The driver returns 4xx responses instead of throwing : a denied read must not be taken for an empty environment
+        LogicalResponse response = callDriver( VaultMetrics.OPERATION_READ_SECRETS, bFromReplica ? strPath : null,
+                vault -> vault.logical( ).read( strPath ) );
+        int nStatus = response.getRestResponse( ).getStatus( );
+        if ( nStatus == HTTP_NOT_FOUND )
+        {
+            return null;
+        }
+        if ( nStatus != HTTP_OK )
+        {
+            throw new VaultException( "Vault responded with HTTP status code: " + nStatus, nStatus );
+        }
+        return new VaultDocument( new TreeMap<>( response.getData( ) ), readVersion( response ) );
+    }
+
+    private static long readVersion( LogicalResponse response )
+    {
+        try
+        {
+            JsonNode root = VaultHttpClient.getObjectMapper( ).readTree( response.getRestResponse( ).getBody( ) );
+            return root.path( "data" ).path( "metadata" ).path( "version" ).asLong( VERSION_ANY );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to read the version of a Vault document", e );
+            return VERSION_ANY;
+        }
+    }
+
+    private void writeEnvironnementSecrets( String strPath, Map<String, String> mapSecrets ) throws VaultException
+    {
+        try
+        {
+            callDriver( VaultMetrics.OPERATION_WRITE_SECRET, vault -> vault.logical( ).write( strPath, new HashMap<String, Object>( mapSecrets ) ) );
+        }
+        finally
+        {
+            invalidateSecrets( strPath );
+        }
+        // The version written is not read back : the other nodes only forget the secrets
+        VaultInvalidationService.getInstance( )
+                .publish( new VaultChangeEvent( strPath, VaultChangeEvent.TYPE_MODIFIED, VaultSecretCache.VERSION_UNKNOWN ) );
+    }
+
+    /**
+     * Notifies the subscribers of this node and the other nodes of a change of the secrets of an environment.
+     *
+     * @param event
+     *            the change
+     */
+    private static void publishChange( VaultChangeEvent event )
+    {
+        VaultChangeNotifier.getInstance( ).publish( event );
+        VaultInvalidationService.getInstance( ).publish( event );
+    }
+
+    /**
+     * Forgets the cached secrets of an environment just written, and reads them from the primary until the replicas have caught up.
+     *
+     * @param strPath
+     *            the environment path
+     */
+    private void invalidateSecrets( String strPath )
+    {
+        _secretCache.invalidate( strPath );
+        VaultReplicaRouter.getInstance( ).markWritten( strPath );
+    }
+
+    /**
+     * Makes a call to the primary with the driver having the timeout of the operation, through the circuit breaker, and retries it while it fails
+     * transiently.
+     *
+     * @param <T>
+     *            the result type
+     * @param strOperation
+     *            the operation
+     * @param call
+     *            the call
+     * @return the result of the call
+     * @throws VaultException
+     *             the vault exception
+     */
+    private static <T> T callDriver( String strOperation, DriverCall<T> call ) throws VaultException
+    {
+        return callDriver( strOperation, null, call );
+    }
+
+    /**
+     * Makes a call like {@link #callDriver(String, DriverCall)}, reading from a replica when the path is given. Each attempt reads from the replica
+     * selected at that time, so that a retry goes to another replica when the first one failed. A read from a replica does not go through the circuit
+     * breaker, which only counts the failures of the primary : the health of the replicas is tracked by the router.
+     *
+     * @param <T>
+     *            the result type
+     * @param strOperation
+     *            the operation
+     * @param strReadPath
+     *            the environment path read from a replica, or null to call the primary
+     * @param call
+     *            the call
+     * @return the result of the call
+     * @throws VaultException
+     *             the vault exception
+     */
+    private static <T> T callDriver( String strOperation, String strReadPath, DriverCall<T> call ) throws VaultException
+    {
+        return VaultRetryPolicy.getInstance( ).call( strOperation, ( ) -> {
+            String strReplica = strReadPath == null ? null : VaultReplicaRouter.getInstance( ).getReadAdress( strReadPath );
+            if ( strReplica != null )
+            {
+                return callDriverOnce( strOperation, strReplica, call );
+            }
+            return VaultCircuitBreaker.getInstance( ).call( ( ) -> callDriverOnce( strOperation, null, call ) );
+        } );
+    }
+
+    /**
+     * Makes one attempt of a call, and records its outcome in the router.
+     *
+     * @param <T>
+     *            the result type
+     * @param strOperation
+     *            the operation
+     * @param strReplica
+     *            the adress of the replica to read from, or null to call the primary
+     * @param call
+     *            the call
+     * @return the result of the call
+     * @throws VaultException
+     *             the vault exception
+     */
+    private static <T> T callDriverOnce( String strOperation, String strReplica, DriverCall<T> call ) throws VaultException
+    {
+        VaultReplicaRouter router = VaultReplicaRouter.getInstance( );
+        Vault vault = strReplica == null ? VaultUtil.getDriver( strOperation ) : VaultUtil.getDriver( strOperation, strReplica );
+        long lStart = System.nanoTime( );
+        T result;
+        try
+        {
+            result = call.apply( vault );
+        }
+        catch( VaultException e )
+        {
+            router.recordFailure( strReplica, e );
+            throw e;
+        }
+        router.recordSuccess( strReplica, System.nanoTime( ) - lStart );
+        // The driver returns 4xx responses instead of throwing : a rate limited one is thrown so that it is retried
+        if ( result instanceof VaultResponse && ( (VaultResponse) result ).getRestResponse( ).getStatus( ) == HTTP_TOO_MANY_REQUESTS )
+        {
+            throw new VaultException( "Vault responded with HTTP status code: " + HTTP_TOO_MANY_REQUESTS, HTTP_TOO_MANY_REQUESTS );
+        }
+        return result;
+    }
+
+    /**
+     * A call made with the driver
+     *
+     * @param <T>
+     *            the result type
+     */
+    @FunctionalInterface
+    private interface DriverCall<T>
+    {
+        T apply( Vault vault ) throws VaultException;
+    }
+
+    /**
+     * Holds the instance, created when the class is first initialized by {@link #getInstance()}.
+     */
+    private static final class InstanceHolder
+    {
+        private static final VaultService INSTANCE = new VaultService( AppPropertiesService.getProperty( "vault.vaultServerAdress" ),
+                AppPropertiesService.getProperty( "vault.rootToken" ) );
+    }
+
+    /**
+     * The secrets of an environment with the KV v2 version of their document.
+     */
+    private static final class VaultDocument
+    {
+        private final Map<String, String> _mapSecrets;
+        private final long _lVersion;
+
+        VaultDocument( Map<String, String> mapSecrets, long lVersion )
+        {
+            _mapSecrets = mapSecrets;
+            _lVersion = lVersion;
+        }
+
+        Map<String, String> getSecrets( )
+        {
+            return _mapSecrets;
+        }
+
+        long getVersion( )
+        {
+            return _lVersion;
+        }
+    }
+
 }
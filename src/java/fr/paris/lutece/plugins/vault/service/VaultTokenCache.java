@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.rs.VaultAPI;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process cache of the accessors of the tokens presented by the consuming applications, so that polling their secrets does not look the token up in
+ * Vault on every request. Tokens are kept under a digest of the token : a token Vault accepted is refused at the latest when its entry expires if it is
+ * revoked elsewhere, and a token Vault refused is refused again without a lookup for a shorter time. The least recently used entries are evicted beyond
+ * the maximum number of entries, and the expired ones are purged by the cache daemon.
+ */
+public class VaultTokenCache
+{
+    private final long _lTtlMillis;
+    private final long _lRefusedTtlMillis;
+    private final int _nMaxEntries;
+    private final LinkedHashMap<String, TokenEntry> _mapEntries = new LinkedHashMap<String, TokenEntry>( 16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, TokenEntry> eldest )
+        {
+            return size( ) > _nMaxEntries;
+        }
+    };
+
+    /**
+     * Instantiates a new token cache.
+     *
+     * @param lTtlMillis
+     *            the time to live of an accepted token in milliseconds, 0 looks it up on every request
+     * @param lRefusedTtlMillis
+     *            the time to live of a refused token in milliseconds, 0 looks it up on every request
+     * @param nMaxEntries
+     *            the maximum number of tokens kept
+     */
+    public VaultTokenCache( long lTtlMillis, long lRefusedTtlMillis, int nMaxEntries )
+    {
+        _lTtlMillis = lTtlMillis;
+        _lRefusedTtlMillis = lRefusedTtlMillis;
+        _nMaxEntries = nMaxEntries;
+    }
+
+    /**
+     * Gets the accessor of a token, looking it up in Vault when it is not cached.
+     *
+     * @param strToken
+     *            the token
+     * @return the accessor, or null if Vault does not know the token
+     * @throws VaultException
+     *             if the lookup failed
+     */
+    public String getAccessor( String strToken ) throws VaultException
+    {
+        String strDigest = digest( strToken );
+        TokenEntry entry = getEntry( strDigest );
+        if ( entry != null )
+        {
+            return entry._strAccessor;
+        }
+
+        // Looked up outside the lock : a failed lookup is not cached, so that an unavailable Vault does not refuse the tokens
+        String strAccessor = VaultAPI.lookupTokenAccessor( strToken );
+        long lTtlMillis = strAccessor != null ? _lTtlMillis : _lRefusedTtlMillis;
+        if ( lTtlMillis > 0 && _nMaxEntries > 0 )
+        {
+            synchronized( this )
+            {
+                _mapEntries.put( strDigest, new TokenEntry( strAccessor, System.currentTimeMillis( ) + lTtlMillis ) );
+            }
+        }
+        return strAccessor;
+    }
+
+    /**
+     * Removes the token of an accessor, once it is revoked.
+     *
+     * @param strAccessor
+     *            the accessor
+     */
+    public synchronized void invalidate( String strAccessor )
+    {
+        _mapEntries.values( ).removeIf( e -> strAccessor.equals( e._strAccessor ) );
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear( )
+    {
+        _mapEntries.clear( );
+    }
+
+    /**
+     * Removes the expired entries.
+     *
+     * @return the number of entries removed
+     */
+    public synchronized int purgeExpired( )
+    {
+        long lNow = System.currentTimeMillis( );
+        int nPurged = 0;
+        for ( Iterator<TokenEntry> iterator = _mapEntries.values( ).iterator( ); iterator.hasNext( ); )
+        {
+            if ( iterator.next( )._lExpiresAt <= lNow )
+            {
+                iterator.remove( );
+                nPurged++;
+            }
+        }
+        return nPurged;
+    }
+
+    /**
+     * Gets the number of cached tokens.
+     *
+     * @return the number of entries
+     */
+    public synchronized int getEntryCount( )
+    {
+        return _mapEntries.size( );
+    }
+
+    private synchronized TokenEntry getEntry( String strDigest )
+    {
+        TokenEntry entry = _mapEntries.get( strDigest );
+        if ( entry != null && entry._lExpiresAt <= System.currentTimeMillis( ) )
+        {
+            _mapEntries.remove( strDigest );
+            return null;
+        }
+        return entry;
+    }
+
+    private static String digest( String strToken )
+    {
+        try
+        {
+            byte [ ] hash = MessageDigest.getInstance( "SHA-256" ).digest( strToken.getBytes( StandardCharsets.UTF_8 ) );
+            return Base64.getEncoder( ).encodeToString( hash );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * The accessor of one token, null if Vault refused it
+     */
+    private static final class TokenEntry
+    {
+        private final String _strAccessor;
+        private final long _lExpiresAt;
+
+        private TokenEntry( String strAccessor, long lExpiresAt )
+        {
+            _strAccessor = strAccessor;
+            _lExpiresAt = lExpiresAt;
+        }
+    }
+}
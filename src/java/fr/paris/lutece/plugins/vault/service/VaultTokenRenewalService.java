@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import com.bettercloud.vault.api.Auth;
+import fr.paris.lutece.plugins.vault.business.EnvironnementToken;
+import fr.paris.lutece.plugins.vault.business.EnvironnementTokenHome;
+import fr.paris.lutece.plugins.vault.rs.VaultAPI;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lease of the environment tokens : the TTL they are created with, and their renewal before they expire. Each token gets a renewal date once a given
+ * share of its lease has elapsed, moved by a random jitter so that tokens created together are not all renewed at once. The daemon renews the tokens
+ * due, in batches, from the accessors stored in the vault_environnement_token table. Each batch is claimed with a conditional update before being
+ * renewed, so that the nodes of a cluster share the tokens due instead of all renewing the same ones.
+ */
+public final class VaultTokenRenewalService
+{
+    private static final String PROPERTY_TTL = "vault.token.ttl";
+    private static final String PROPERTY_PERIOD = "vault.token.period";
+    private static final String PROPERTY_EXPLICIT_MAX_TTL = "vault.token.explicitMaxTtl";
+    private static final String PROPERTY_RENEW_AT = "vault.token.renewAt";
+    private static final String PROPERTY_RENEW_JITTER = "vault.token.renewJitter";
+    private static final String PROPERTY_BATCH_SIZE = "vault.token.renewBatchSize";
+    private static final String PROPERTY_RECHECK_DELAY = "vault.token.recheckDelay";
+    private static final long RENEWAL_FAILED = -1;
+
+    private VaultTokenRenewalService( )
+    {
+    }
+
+    /**
+     * Sets the TTL, period and maximum TTL configured for the environment tokens on a token request.
+     *
+     * @param tokenRequest
+     *            the token request
+     */
+    public static void applyLeaseOptions( Auth.TokenRequest tokenRequest )
+    {
+        String strTtl = AppPropertiesService.getProperty( PROPERTY_TTL, "" );
+        String strPeriod = AppPropertiesService.getProperty( PROPERTY_PERIOD, "" );
+        String strExplicitMaxTtl = AppPropertiesService.getProperty( PROPERTY_EXPLICIT_MAX_TTL, "" );
+        if ( !strTtl.isEmpty( ) )
+        {
+            tokenRequest.ttl( strTtl );
+        }
+        if ( !strPeriod.isEmpty( ) )
+        {
+            tokenRequest.period( strPeriod );
+        }
+        if ( !strExplicitMaxTtl.isEmpty( ) )
+        {
+            tokenRequest.explicitMaxTtl( strExplicitMaxTtl );
+        }
+        tokenRequest.renewable( Boolean.TRUE );
+    }
+
+    /**
+     * Creates the stored token of an environment, with its expiration and renewal dates.
+     *
+     * @param nIdEnvironnement
+     *            the id of the environnement
+     * @param strAccessor
+     *            the accessor of the token
+     * @param lLeaseDuration
+     *            the lease duration of the token in seconds, 0 if it does not expire
+     * @return the environnement token
+     */
+    public static EnvironnementToken newEnvironnementToken( int nIdEnvironnement, String strAccessor, long lLeaseDuration )
+    {
+        EnvironnementToken token = new EnvironnementToken( );
+        token.setIdEnvironnement( nIdEnvironnement );
+        token.setAccessor( strAccessor );
+        setDates( token, System.currentTimeMillis( ), lLeaseDuration );
+        return token;
+    }
+
+    /**
+     * Claims then renews a batch of the tokens due for renewal. A token that cannot be renewed is tried again later until it expires, and a token
+     * claimed by a node stopped before renewing it is due again once the claim ends.
+     *
+     * @return the number of renewed tokens
+     */
+    public static int renewDueTokens( )
+    {
+        long lNow = System.currentTimeMillis( );
+        int nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_BATCH_SIZE, 100 ) );
+        List<EnvironnementToken> listTokens = EnvironnementTokenHome.claimEnvironnementTokensToRenew( UUID.randomUUID( ).toString( ),
+                new Timestamp( lNow ), new Timestamp( lNow + getRetryDelay( ) ), nBatchSize );
+        if ( listTokens.isEmpty( ) )
+        {
+            return 0;
+        }
+
+        Map<String, EnvironnementToken> mapTokens = new HashMap<>( );
+        listTokens.forEach( token -> mapTokens.put( token.getAccessor( ), token ) );
+        String strIncrement = getIncrement( );
+        Map<String, Long> mapLeases;
+        try
+        {
+            mapLeases = VaultBulkExecutor.run( "Renewing tokens", mapTokens.keySet( ), strAccessor -> {
+                try
+                {
+                    return VaultAPI.renewTokenAccessor( null, strAccessor, strIncrement );
+                }
+                catch( VaultException e )
+                {
+                    AppLogService.error( "Unable to renew the token of environnement " + mapTokens.get( strAccessor ).getIdEnvironnement( ) + " : "
+                            + e.getMessage( ) );
+                    return RENEWAL_FAILED;
+                }
+            } );
+        }
+        catch( VaultBulkException e )
+        {
+            // The task reports its own failures
+            AppLogService.error( "Unable to renew the tokens", e );
+            return 0;
+        }
+
+        int nRenewed = 0;
+        for ( Map.Entry<String, Long> lease : mapLeases.entrySet( ) )
+        {
+            EnvironnementToken token = mapTokens.get( lease.getKey( ) );
+            if ( lease.getValue( ) == RENEWAL_FAILED )
+            {
+                setRetryDates( token, lNow );
+            }
+            else
+            {
+                setDates( token, lNow, lease.getValue( ) );
+                nRenewed++;
+            }
+            EnvironnementTokenHome.updateDates( token );
+        }
+        return nRenewed;
+    }
+
+    /**
+     * Gets the renewal date of a lease : once the configured share of it has elapsed, moved by a random jitter, and before it ends.
+     *
+     * @param lNow
+     *            the start of the lease in milliseconds
+     * @param lLeaseDuration
+     *            the lease duration in seconds, 0 if it does not expire
+     * @return the renewal date in milliseconds
+     */
+    public static long getRenewalTime( long lNow, long lLeaseDuration )
+    {
+        long lLeaseMillis = lLeaseDuration > 0 ? TimeUnit.SECONDS.toMillis( lLeaseDuration ) : getRecheckDelay( );
+        double dRenewAt = getDoubleProperty( PROPERTY_RENEW_AT, 0.66 );
+        double dJitter = getDoubleProperty( PROPERTY_RENEW_JITTER, 0.1 );
+        double dShare = dRenewAt + ( dJitter > 0 ? ThreadLocalRandom.current( ).nextDouble( -dJitter, dJitter ) : 0 );
+        dShare = Math.min( 0.95, Math.max( 0.05, dShare ) );
+        return lNow + (long) ( lLeaseMillis * dShare );
+    }
+
+    private static void setDates( EnvironnementToken token, long lNow, long lLeaseDuration )
+    {
+        token.setDateExpiration( lLeaseDuration > 0 ? new Timestamp( lNow + TimeUnit.SECONDS.toMillis( lLeaseDuration ) ) : null );
+        token.setDateRenewal( new Timestamp( getRenewalTime( lNow, lLeaseDuration ) ) );
+    }
+
+    private static void setRetryDates( EnvironnementToken token, long lNow )
+    {
+        Timestamp dateExpiration = token.getDateExpiration( );
+        if ( dateExpiration != null && dateExpiration.getTime( ) <= lNow )
+        {
+            // Expired or revoked outside the plugin : nothing left to renew
+            AppLogService.error( "The token of environnement " + token.getIdEnvironnement( ) + " expired, it must be regenerated" );
+            token.setDateRenewal( new Timestamp( getRenewalTime( lNow, 0 ) ) );
+            return;
+        }
+        long lRetry = getRetryDelay( );
+        long lRenewal = lNow + lRetry + ThreadLocalRandom.current( ).nextLong( lRetry );
+        if ( dateExpiration != null )
+        {
+            lRenewal = Math.min( lRenewal, Math.max( lNow, dateExpiration.getTime( ) - lRetry ) );
+        }
+        token.setDateRenewal( new Timestamp( lRenewal ) );
+    }
+
+    private static long getRetryDelay( )
+    {
+        return Math.max( 1, AppPropertiesService.getPropertyInt( "daemon.vaultTokenRenewalDaemon.interval", 300 ) ) * 1000L;
+    }
+
+    private static String getIncrement( )
+    {
+        String strPeriod = AppPropertiesService.getProperty( PROPERTY_PERIOD, "" );
+        return strPeriod.isEmpty( ) ? AppPropertiesService.getProperty( PROPERTY_TTL, "" ) : strPeriod;
+    }
+
+    private static long getRecheckDelay( )
+    {
+        return TimeUnit.SECONDS.toMillis( Math.max( 60, AppPropertiesService.getPropertyInt( PROPERTY_RECHECK_DELAY, 86400 ) ) );
+    }
+
+    private static double getDoubleProperty( String strProperty, double dDefault )
+    {
+        String strValue = AppPropertiesService.getProperty( strProperty );
+        if ( strValue == null || strValue.trim( ).isEmpty( ) )
+        {
+            return dDefault;
+        }
+        try
+        {
+            return Double.parseDouble( strValue.trim( ) );
+        }
+        catch( NumberFormatException e )
+        {
+            AppLogService.error( "Invalid value of " + strProperty + " : " + strValue );
+            return dDefault;
+        }
+    }
+}
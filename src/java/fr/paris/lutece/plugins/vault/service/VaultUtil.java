@@ -34,17 +34,31 @@
 package fr.paris.lutece.plugins.vault.service;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.bettercloud.vault.Vault;
 import com.bettercloud.vault.VaultConfig;
 import com.bettercloud.vault.VaultException;
 import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
 /**
  * The type Vault util.
  */
 public class VaultUtil implements Serializable
 {
+    // Properties
+    private static final String PROPERTY_CONNECT_TIMEOUT = "vault.http.connectTimeout";
+    private static final String PROPERTY_READ_TIMEOUT = "vault.http.readTimeout";
+    private static final String PROPERTY_TIMEOUT_PREFIX = "vault.resilience.timeout.";
+
     private static Vault _vault = null;
+    private static String _strAdress;
+    private static String _strRootToken;
+
+    // Drivers by address and read timeout in seconds, the driver having no per-request timeout
+    private static final Map<String, Vault> _mapDrivers = new ConcurrentHashMap<>( );
 
     /**
      * Init driver vault.
@@ -57,12 +71,63 @@ public class VaultUtil implements Serializable
      */
     public static Vault initDriver( String strAdress, String strRootToken )
     {
+        _strAdress = strAdress;
+        _strRootToken = strRootToken;
+        _mapDrivers.clear( );
+        _vault = createDriver( strAdress, toSeconds( AppPropertiesService.getPropertyInt( PROPERTY_READ_TIMEOUT, 10000 ) ) );
+
+        return _vault;
+    }
+
+    /**
+     * Gets the driver with the timeout of an operation.
+     *
+     * @param strOperation
+     *            the operation
+     * @return the driver
+     */
+    public static Vault getDriver( String strOperation )
+    {
+        return getDriver( strOperation, _strAdress );
+    }
+
+    /**
+     * Gets the driver of a Vault server with the timeout of an operation.
+     *
+     * @param strOperation
+     *            the operation
+     * @param strAdress
+     *            the address of the server, the primary or a read replica
+     * @return the driver
+     */
+    public static Vault getDriver( String strOperation, String strAdress )
+    {
+        int nReadTimeoutSeconds = toSeconds( getTimeout( strOperation ) );
+        return _mapDrivers.computeIfAbsent( strAdress + "#" + nReadTimeoutSeconds, k -> createDriver( strAdress, nReadTimeoutSeconds ) );
+    }
 
+    /**
+     * Gets the read timeout of an operation : the property vault.resilience.timeout.{operation}, or else vault.http.readTimeout.
+     *
+     * @param strOperation
+     *            the operation
+     * @return the timeout in milliseconds
+     */
+    public static int getTimeout( String strOperation )
+    {
+        return AppPropertiesService.getPropertyInt( PROPERTY_TIMEOUT_PREFIX + strOperation,
+                AppPropertiesService.getPropertyInt( PROPERTY_READ_TIMEOUT, 10000 ) );
+    }
+
+    private static Vault createDriver( String strAdress, int nReadTimeoutSeconds )
+    {
         try
         {
-            VaultConfig config = new VaultConfig( ).address( strAdress ).token( strRootToken ).build( );
+            int nOpenTimeoutSeconds = toSeconds( AppPropertiesService.getPropertyInt( PROPERTY_CONNECT_TIMEOUT, 5000 ) );
+            VaultConfig config = new VaultConfig( ).address( strAdress ).token( _strRootToken ).openTimeout( nOpenTimeoutSeconds )
+                    .readTimeout( nReadTimeoutSeconds ).build( );
 
-            _vault = new Vault( config );
+            return new Vault( config );
 
         }
         catch( VaultException e )
@@ -72,7 +137,12 @@ public class VaultUtil implements Serializable
 
         }
 
-        return _vault;
+        return null;
+    }
+
+    private static int toSeconds( int nMillis )
+    {
+        return Math.max( 1, ( nMillis + 999 ) / 1000 );
     }
 
 }
@@ -42,6 +42,7 @@ import fr.paris.lutece.util.url.UrlItem;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.ToIntFunction;
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -100,6 +101,39 @@ public abstract class AbstractManageApplicationJspBean<S, T> extends MVCAdminJsp
         return model;
     }
 
+    /**
+     * Return a model that contains a page of the list loaded from the last id seen, and its paginator. Only the items of the page are loaded, and
+     * nothing is kept in session.
+     *
+     * @param request
+     *            The HTTP request
+     * @param strBookmark
+     *            The bookmark
+     * @param loader
+     *            The loader of a page of items
+     * @param id
+     *            The id of an item
+     * @param url
+     *            The url of the list
+     * @return The model
+     */
+    protected Map<String, Object> getKeysetListModel( HttpServletRequest request, String strBookmark, KeysetPaginator.PageLoader<T> loader,
+            ToIntFunction<T> id, UrlItem url )
+    {
+        int nDefaultItemsPerPage = AppPropertiesService.getPropertyInt( PROPERTY_DEFAULT_LIST_ITEM_PER_PAGE, 50 );
+        _nItemsPerPage = AbstractPaginator.getItemsPerPage( request, AbstractPaginator.PARAMETER_ITEMS_PER_PAGE, _nItemsPerPage, nDefaultItemsPerPage );
+
+        KeysetPaginator<T> paginator = new KeysetPaginator<>( request, loader, id, _nItemsPerPage, url );
+
+        Map<String, Object> model = getModel( );
+
+        model.put( MARK_NB_ITEMS_PER_PAGE, String.valueOf( _nItemsPerPage ) );
+        model.put( MARK_PAGINATOR, paginator );
+        model.put( strBookmark, paginator.getPageItems( ) );
+
+        return model;
+    }
+
     /**
      * Get Items from Ids list
      * 
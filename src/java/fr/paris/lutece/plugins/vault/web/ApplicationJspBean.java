@@ -43,14 +43,10 @@ import fr.paris.lutece.portal.util.mvc.admin.annotations.Controller;
 import fr.paris.lutece.portal.util.mvc.commons.annotations.Action;
 import fr.paris.lutece.portal.util.mvc.commons.annotations.View;
 import fr.paris.lutece.util.url.UrlItem;
-import fr.paris.lutece.util.html.AbstractPaginator;
 
-import java.util.Comparator;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 import fr.paris.lutece.plugins.vault.business.Application;
 import fr.paris.lutece.plugins.vault.business.ApplicationHome;
@@ -110,7 +106,6 @@ public class ApplicationJspBean extends AbstractManageApplicationJspBean<Integer
 
     // Session variable to store working values
     private Application _application;
-    private List<Integer> _listIdApplications;
 
     /**
      * Gets manage applications.
@@ -124,12 +119,8 @@ public class ApplicationJspBean extends AbstractManageApplicationJspBean<Integer
     {
         _application = null;
 
-        if ( request.getParameter( AbstractPaginator.PARAMETER_PAGE_INDEX ) == null || _listIdApplications.isEmpty( ) )
-        {
-            _listIdApplications = ApplicationHome.getIdApplicationsList( );
-        }
-
-        Map<String, Object> model = getPaginatedListModel( request, MARK_APPLICATION_LIST, _listIdApplications, JSP_MANAGE_APPLICATIONS );
+        Map<String, Object> model = getKeysetListModel( request, MARK_APPLICATION_LIST, ApplicationHome::getApplicationsPage, Application::getId,
+                new UrlItem( JSP_MANAGE_APPLICATIONS ) );
 
         return getPage( PROPERTY_PAGE_TITLE_MANAGE_APPLICATIONS, TEMPLATE_MANAGE_APPLICATIONS, model );
     }
@@ -137,18 +128,7 @@ public class ApplicationJspBean extends AbstractManageApplicationJspBean<Integer
     @Override
     List<Application> getItemsFromIds( List<Integer> listIds )
     {
-        List<Application> listApplication = ApplicationHome.getApplicationsListByIds( listIds );
-
-        // keep original order
-        return listApplication.stream( ).sorted( Comparator.comparingInt( notif -> listIds.indexOf( notif.getId( ) ) ) ).collect( Collectors.toList( ) );
-    }
-
-    /**
-     * Reset list id.
-     */
-    public void resetListId( )
-    {
-        _listIdApplications = new ArrayList<>( );
+        return ApplicationHome.getApplicationsListByIds( listIds );
     }
 
     /**
@@ -197,7 +177,6 @@ public class ApplicationJspBean extends AbstractManageApplicationJspBean<Integer
 
         ApplicationHome.create( _application );
         addInfo( INFO_APPLICATION_CREATED, getLocale( ) );
-        resetListId( );
 
         return redirectView( request, VIEW_MANAGE_APPLICATIONS );
     }
@@ -235,7 +214,6 @@ public class ApplicationJspBean extends AbstractManageApplicationJspBean<Integer
 
         ApplicationHome.remove( nId );
         addInfo( INFO_APPLICATION_REMOVED, getLocale( ) );
-        resetListId( );
 
         return redirectView( request, VIEW_MANAGE_APPLICATIONS );
     }
@@ -292,7 +270,6 @@ public class ApplicationJspBean extends AbstractManageApplicationJspBean<Integer
 
         ApplicationHome.update( _application );
         addInfo( INFO_APPLICATION_UPDATED, getLocale( ) );
-        resetListId( );
 
         return redirectView( request, VIEW_MANAGE_APPLICATIONS );
     }
@@ -36,8 +36,15 @@ package fr.paris.lutece.plugins.vault.web;
 
 import com.bettercloud.vault.VaultException;
 import com.bettercloud.vault.rest.RestException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fr.paris.lutece.plugins.vault.business.Application;
 import fr.paris.lutece.plugins.vault.business.ApplicationHome;
+import fr.paris.lutece.plugins.vault.business.VaultJob;
+import fr.paris.lutece.plugins.vault.business.VaultJobHome;
+import fr.paris.lutece.plugins.vault.rs.VaultHttpClient;
 import fr.paris.lutece.plugins.vault.service.EnvironnementUtil;
+import fr.paris.lutece.plugins.vault.service.VaultBulkException;
+import fr.paris.lutece.plugins.vault.service.VaultJobService;
 import fr.paris.lutece.plugins.vault.service.VaultService;
 import fr.paris.lutece.plugins.vault.service.VaultUtil;
 import fr.paris.lutece.portal.service.i18n.I18nService;
@@ -54,7 +61,6 @@ import fr.paris.lutece.util.url.UrlItem;
 import fr.paris.lutece.util.html.AbstractPaginator;
 
 import java.util.*;
-import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 import fr.paris.lutece.plugins.vault.business.Environnement;
 import fr.paris.lutece.plugins.vault.business.EnvironnementHome;
@@ -74,6 +80,7 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
     private static final String PARAMETER_ID_ENVIRONNEMENT = "id";
 
     private static final String PARAMETER_ID_APPLICATION = "idApp";
+    private static final String PARAMETER_ID_JOB = "idJob";
 
     // Properties for page titles
     private static final String PROPERTY_PAGE_TITLE_MANAGE_ENVIRONNEMENTS = "vault.manage_environnements.pageTitle";
@@ -83,6 +90,8 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
     // Markers
     private static final String MARK_ENVIRONNEMENT_LIST = "environnement_list";
     private static final String MARK_ENVIRONNEMENT_NAMES_EXAMPLE = "environnement_names_example";
+    private static final String MARK_JOB_LIST = "job_list";
+    private static final String MARK_PROVISION_TOKEN = "provision_token";
 
     /**
      * The constant MARK_ENVIRONNEMENT.
@@ -108,6 +117,7 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
     private static final String ACTION_REMOVE_ENVIRONNEMENT = "removeEnvironnement";
     private static final String ACTION_CONFIRM_REMOVE_ENVIRONNEMENT = "confirmRemoveEnvironnement";
     private static final String ACTION_REGENERATE_TOKEN = "regenerateToken";
+    private static final String ACTION_PROVISION_APPLICATION = "provisionApplication";
 
     // Infos
     private static final String INFO_ENVIRONNEMENT_CREATED = "vault.info.environnement.created";
@@ -115,14 +125,22 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
 
     private static final String INFO_ENVIRONNEMENT_UPDATED = "vault.info.environnement.updated";
     private static final String INFO_ENVIRONNEMENT_REMOVED = "vault.info.environnement.removed";
+    private static final String INFO_JOB_QUEUED = "vault.info.job.queued";
+    private static final String INFO_APPLICATION_PROVISIONED = "vault.info.application.provisioned";
+    private static final String INFO_APPLICATION_PROVISIONED_NONE = "vault.info.application.provisioned.none";
+
+    // Warnings
+    private static final String WARNING_PROVISION_TOKEN = "vault.manage_environnement.provision_token";
 
     // Errors
     private static final String ERROR_RESOURCE_NOT_FOUND = "Resource not found";
+    private static final String ERROR_PROVISION = "vault.error.provision";
+    private static final String ERROR_PROVISION_INSERT = "vault.error.provision.insert";
+    private static final String ERROR_CREATE_CONFLICT = "vault.error.environnement.create.conflict";
 
     // Session variable to store working values
     private Environnement _environnement;
 
-    private List<Integer> _listIdEnvironnements;
     private ReferenceList _listNamesEnvironnements;
 
     /**
@@ -141,21 +159,21 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
 
         int nId = Integer.parseInt( request.getParameter( PARAMETER_ID_APPLICATION ) );
 
-        if ( request.getParameter( AbstractPaginator.PARAMETER_PAGE_INDEX ) == null || _listIdEnvironnements.isEmpty( ) )
-        {
-            _listIdEnvironnements = EnvironnementHome.getIdEnvironnementsListByApp( nId );
-        }
-
         if ( request.getParameter( AbstractPaginator.PARAMETER_PAGE_INDEX ) == null || _listNamesEnvironnements.isEmpty( ) )
         {
             _listNamesEnvironnements = EnvironnementUtil.getEnvironnementNames( getLocale( ) );
         }
 
-        Map<String, Object> model = getPaginatedListModel( request, MARK_ENVIRONNEMENT_LIST, _listIdEnvironnements, JSP_MANAGE_ENVIRONNEMENTS );
+        UrlItem url = new UrlItem( JSP_MANAGE_ENVIRONNEMENTS );
+        url.addParameter( PARAMETER_ID_APPLICATION, nId );
+        Map<String, Object> model = getKeysetListModel( request, MARK_ENVIRONNEMENT_LIST,
+                ( nIdFrom, bForward, nLimit ) -> EnvironnementHome.getEnvironnementsPageByApp( nId, nIdFrom, bForward, nLimit ), Environnement::getId, url );
         model.put( ApplicationJspBean.MARK_APPLICATION, ApplicationHome.findByPrimaryKey( nId ).get( ) );
         model.put( MARK_ENVIRONNEMENT_NAMES_EXAMPLE, _listNamesEnvironnements );
         model.put( MARK_ENVIRONNEMENT, _environnement );
+        model.put( MARK_JOB_LIST, VaultJobHome.getActiveJobsListByApplication( nId ) );
         model.put( SecurityTokenService.MARK_TOKEN, SecurityTokenService.getInstance( ).getToken( request, ACTION_CREATE_ENVIRONNEMENT ) );
+        model.put( MARK_PROVISION_TOKEN, SecurityTokenService.getInstance( ).getToken( request, ACTION_PROVISION_APPLICATION ) );
 
         return getPage( PROPERTY_PAGE_TITLE_MANAGE_ENVIRONNEMENTS, TEMPLATE_MANAGE_ENVIRONNEMENTS, model );
     }
@@ -163,18 +181,7 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
     @Override
     List<Environnement> getItemsFromIds( List<Integer> listIds )
     {
-        List<Environnement> listEnvironnement = EnvironnementHome.getEnvironnementsListByIds( listIds );
-
-        // keep original order
-        return listEnvironnement.stream( ).sorted( Comparator.comparingInt( notif -> listIds.indexOf( notif.getId( ) ) ) ).collect( Collectors.toList( ) );
-    }
-
-    /**
-     * Reset list id.
-     */
-    public void resetListId( )
-    {
-        _listIdEnvironnements = new ArrayList<>( );
+        return EnvironnementHome.getEnvironnementsListByIds( listIds );
     }
 
     /**
@@ -234,9 +241,19 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
             return redirectView( request, VIEW_CREATE_ENVIRONNEMENT );
         }
 
-        List<Environnement> listEnv = EnvironnementHome.getEnvironnementListByType( _environnement.getType( ) );
-        _environnement.setCode( _environnement.getType( ) + listEnv.size( ) );
-        EnvironnementHome.create( _environnement );
+        try
+        {
+            EnvironnementHome.create( _environnement );
+        }
+        catch( AppException e )
+        {
+            if ( !EnvironnementHome.isConcurrentCreation( e ) )
+            {
+                throw e;
+            }
+            addError( ERROR_CREATE_CONFLICT, getLocale( ) );
+            return redirectView( request, VIEW_CREATE_ENVIRONNEMENT );
+        }
         addInfo( INFO_ENVIRONNEMENT_CREATED, getLocale( ) );
         String strToken = VaultService.getInstance( )
                 .createEnvironnementToken( ApplicationHome.findByPrimaryKey( _environnement.getIdapplication( ) ).get( ).getCode( ), _environnement );
@@ -245,10 +262,72 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
         };
         addWarning( I18nService.getLocalizedString( "vault.manage_environnement.create_token", tabObj, getLocale( ) ) );
 
-        resetListId( );
         return redirect( request, VIEW_MANAGE_ENVIRONNEMENTS, PARAMETER_ID_APPLICATION, _environnement.getIdapplication( ) );
     }
 
+    /**
+     * Creates at once an environnement of each standard type the application does not have yet, and shows the token of each one.
+     *
+     * @param request
+     *            the request
+     * @return the string
+     * @throws AccessDeniedException
+     *             the access denied exception
+     */
+    @Action( ACTION_PROVISION_APPLICATION )
+    public String doProvisionApplication( HttpServletRequest request ) throws AccessDeniedException
+    {
+        if ( !SecurityTokenService.getInstance( ).validate( request, ACTION_PROVISION_APPLICATION ) )
+        {
+            throw new AccessDeniedException( "Invalid security token" );
+        }
+
+        int nIdApp = Integer.parseInt( request.getParameter( PARAMETER_ID_APPLICATION ) );
+        Application application = ApplicationHome.findByPrimaryKey( nIdApp ).orElseThrow( ( ) -> new AppException( ERROR_RESOURCE_NOT_FOUND ) );
+        Map<String, String> mapTokens;
+        try
+        {
+            mapTokens = VaultService.getInstance( ).provisionApplication( application );
+            if ( mapTokens.isEmpty( ) )
+            {
+                addInfo( INFO_APPLICATION_PROVISIONED_NONE, getLocale( ) );
+            }
+        }
+        catch( VaultBulkException e )
+        {
+            // The environnements are created : the ones without a token get a new one with the regenerate action
+            mapTokens = e.getResults( );
+            addError( I18nService.getLocalizedString( ERROR_PROVISION, new Object [ ] {
+                    String.join( ", ", e.getFailures( ).keySet( ) )
+            }, getLocale( ) ) );
+        }
+        catch( AppException e )
+        {
+            // Nothing was created, for instance when a double submit created the same environnements meanwhile
+            if ( !EnvironnementHome.isConcurrentCreation( e ) )
+            {
+                throw e;
+            }
+            addError( ERROR_PROVISION_INSERT, getLocale( ) );
+            return redirect( request, VIEW_MANAGE_ENVIRONNEMENTS, PARAMETER_ID_APPLICATION, nIdApp );
+        }
+
+        if ( !mapTokens.isEmpty( ) )
+        {
+            addInfo( I18nService.getLocalizedString( INFO_APPLICATION_PROVISIONED, new Object [ ] {
+                    String.join( ", ", mapTokens.keySet( ) )
+            }, getLocale( ) ) );
+        }
+        for ( Map.Entry<String, String> token : mapTokens.entrySet( ) )
+        {
+            addWarning( I18nService.getLocalizedString( WARNING_PROVISION_TOKEN, new Object [ ] {
+                    token.getKey( ), token.getValue( )
+            }, getLocale( ) ) );
+        }
+
+        return redirect( request, VIEW_MANAGE_ENVIRONNEMENTS, PARAMETER_ID_APPLICATION, nIdApp );
+    }
+
     /**
      * Do regenerate token string.
      *
@@ -270,13 +349,8 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
             _environnement = optEnvironnement.orElseThrow( ( ) -> new AppException( ERROR_RESOURCE_NOT_FOUND ) );
         }
 
-        addInfo( INFO_TOKEN_REGENERATE, getLocale( ) );
-        String strToken = VaultService.getInstance( ).regenerateToken( ApplicationHome.findByPrimaryKey( _environnement.getIdapplication( ) ).get( ).getCode( ),
-                _environnement );
-        Object [ ] tabObj = {
-                strToken
-        };
-        addWarning( I18nService.getLocalizedString( "vault.manage_environnement.create_token", tabObj, getLocale( ) ) );
+        VaultJobService.getInstance( ).enqueue( VaultJob.TYPE_REGENERATE_TOKEN, _environnement, Collections.emptyMap( ), getUser( ).getUserId( ) );
+        addInfo( INFO_JOB_QUEUED, getLocale( ) );
         return redirect( request, VIEW_MANAGE_ENVIRONNEMENTS, PARAMETER_ID_APPLICATION, _environnement.getIdapplication( ) );
     }
 
@@ -313,13 +387,11 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
     public String doRemoveEnvironnement( HttpServletRequest request ) throws VaultException
     {
         int nId = Integer.parseInt( request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) );
-        int nIdApp = EnvironnementHome.findByPrimaryKey( nId ).get( ).getIdapplication( );
+        Environnement environnement = EnvironnementHome.findByPrimaryKey( nId ).orElseThrow( ( ) -> new AppException( ERROR_RESOURCE_NOT_FOUND ) );
+        int nIdApp = environnement.getIdapplication( );
 
-        VaultService.getInstance( ).removeEnv( EnvironnementHome.findByPrimaryKey( nId ).get( ).getToken( ),
-                ApplicationHome.findByPrimaryKey( nIdApp ).get( ).getCode( ), EnvironnementHome.findByPrimaryKey( nId ).get( ) );
-        EnvironnementHome.remove( nId );
-        addInfo( INFO_ENVIRONNEMENT_REMOVED, getLocale( ) );
-        resetListId( );
+        VaultJobService.getInstance( ).enqueue( VaultJob.TYPE_REMOVE, environnement, Collections.emptyMap( ), getUser( ).getUserId( ) );
+        addInfo( INFO_JOB_QUEUED, getLocale( ) );
 
         return redirect( request, VIEW_MANAGE_ENVIRONNEMENTS, PARAMETER_ID_APPLICATION, nIdApp );
     }
@@ -374,7 +446,7 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
         String strOldToken = request.getParameter( "oldToken" );
 
         int nId = Integer.parseInt( request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) );
-        int nIdApp = EnvironnementHome.findByPrimaryKey( nId ).get( ).getIdapplication( );
+        int nIdApp = EnvironnementHome.findByPrimaryKeyWithoutSecrets( nId ).get( ).getIdapplication( );
 
         populate( _environnement, request, getLocale( ) );
 
@@ -389,21 +461,75 @@ public class EnvironnementJspBean extends AbstractManageApplicationJspBean<Integ
             return redirect( request, VIEW_MODIFY_ENVIRONNEMENT, PARAMETER_ID_ENVIRONNEMENT, _environnement.getId( ) );
         }
 
-        addInfo( INFO_ENVIRONNEMENT_UPDATED, getLocale( ) );
-
-
-        String strToken = VaultService.getInstance( )
-                .createEnvironnementToken( ApplicationHome.findByPrimaryKey( _environnement.getIdapplication( ) ).get( ).getCode( ), _environnement );
-        Object [ ] tabObj = {
-                strToken
-        };
-        addWarning( I18nService.getLocalizedString( "vault.manage_environnement.create_token", tabObj, getLocale( ) ) );
+        Map<String, String> mapParameters = new HashMap<>( );
+        mapParameters.put( VaultJobService.PARAMETER_CODE, _environnement.getCode( ) );
+        mapParameters.put( VaultJobService.PARAMETER_OLD_CODE, strOldCode );
+        mapParameters.put( VaultJobService.PARAMETER_OLD_TOKEN, strOldToken );
+        VaultJobService.getInstance( ).enqueue( VaultJob.TYPE_RENAME, _environnement, mapParameters, getUser( ).getUserId( ) );
+        addInfo( INFO_JOB_QUEUED, getLocale( ) );
 
-        EnvironnementHome.update( _environnement, strOldCode, strOldToken );
+        return redirect( request, VIEW_MANAGE_ENVIRONNEMENTS, PARAMETER_ID_APPLICATION, _environnement.getIdapplication( ) );
 
-        resetListId( );
+    }
 
-        return redirect( request, VIEW_MANAGE_ENVIRONNEMENTS, PARAMETER_ID_APPLICATION, _environnement.getIdapplication( ) );
+    /**
+     * Gets the status of a job as JSON, polled by the environnements page. The token generated by the job is given once to the user who asked for it.
+     *
+     * @param request
+     *            the request
+     * @return the job status
+     */
+    public String getJobStatusJson( HttpServletRequest request )
+    {
+        ObjectNode json = VaultHttpClient.getObjectMapper( ).createObjectNode( );
+        Optional<VaultJob> optJob = VaultJobHome.findByPrimaryKey( Integer.parseInt( request.getParameter( PARAMETER_ID_JOB ) ) );
+        if ( optJob.isPresent( ) )
+        {
+            VaultJob job = optJob.get( );
+            json.put( "id", job.getId( ) );
+            json.put( "type", job.getType( ) );
+            json.put( "status", job.getStatus( ) );
+            json.put( "progress", job.getProgress( ) );
+            json.put( "message", job.getMessage( ) );
+            if ( VaultJob.STATUS_DONE.equals( job.getStatus( ) ) )
+            {
+                json.put( "message", I18nService.getLocalizedString( getJobDoneMessage( job ), getLocale( ) ) );
+                String strToken = VaultJobService.getInstance( ).takeToken( job, getUser( ).getUserId( ) );
+                if ( strToken != null )
+                {
+                    json.put( "token", I18nService.getLocalizedString( "vault.manage_environnement.create_token", new Object [ ] {
+                            strToken
+                    }, getLocale( ) ) );
+                }
+                else
+                    if ( !VaultJob.TYPE_REMOVE.equals( job.getType( ) ) && job.getIdUser( ) == getUser( ).getUserId( )
+                            && VaultJobService.getInstance( ).isTokenElsewhere( job ) )
+                    {
+                        // The token is only kept in the memory of the node which ran the job
+                        json.put( "token", I18nService.getLocalizedString( "vault.manage_environnement.token_unavailable", new Object [ ] {
+                                job.getNode( )
+                        }, getLocale( ) ) );
+                    }
+            }
+        }
+        else
+        {
+            json.put( "status", VaultJob.STATUS_DONE );
+            json.put( "progress", 100 );
+        }
+        return json.toString( );
+    }
 
+    private static String getJobDoneMessage( VaultJob job )
+    {
+        switch( job.getType( ) )
+        {
+            case VaultJob.TYPE_REMOVE:
+                return INFO_ENVIRONNEMENT_REMOVED;
+            case VaultJob.TYPE_REGENERATE_TOKEN:
+                return INFO_TOKEN_REGENERATE;
+            default:
+                return INFO_ENVIRONNEMENT_UPDATED;
+        }
     }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.web;
+
+import fr.paris.lutece.util.html.AbstractPaginator;
+import fr.paris.lutece.util.url.UrlItem;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Paginator seeking its page from the last id seen, instead of keeping the ids of the whole list and paging them in memory : each page is one query
+ * limited to the page size, whatever the size of the list. Pages are walked with previous and next links, the list having no page numbers.
+ *
+ * @param <T>
+ *            the type of the items
+ */
+public class KeysetPaginator<T>
+{
+    public static final String PARAMETER_AFTER = "after";
+    public static final String PARAMETER_BEFORE = "before";
+
+    private final List<T> _listPageItems;
+    private final boolean _bPreviousPage;
+    private final boolean _bNextPage;
+    private final int _nFirstId;
+    private final int _nLastId;
+    private final int _nItemsPerPage;
+    private final String _strBaseUrl;
+
+    /**
+     * Loads a page of items
+     *
+     * @param <T>
+     *            the type of the items
+     */
+    @FunctionalInterface
+    public interface PageLoader<T>
+    {
+        /**
+         * Loads the items after or before an id, in ascending order of id.
+         *
+         * @param nIdFrom
+         *            the id the page starts after, or ends before, excluded
+         * @param bForward
+         *            true for the items after nIdFrom, false for the items before it
+         * @param nLimit
+         *            the maximum number of items
+         * @return the items
+         */
+        List<T> load( int nIdFrom, boolean bForward, int nLimit );
+    }
+
+    /**
+     * Loads the page asked by the request : the one after the id of the after parameter, or before the id of the before parameter, or the first page.
+     *
+     * @param request
+     *            the request
+     * @param loader
+     *            the loader of a page
+     * @param id
+     *            the id of an item
+     * @param nItemsPerPage
+     *            the number of items per page
+     * @param url
+     *            the url of the list, without pagination parameters
+     */
+    public KeysetPaginator( HttpServletRequest request, PageLoader<T> loader, ToIntFunction<T> id, int nItemsPerPage, UrlItem url )
+    {
+        _nItemsPerPage = nItemsPerPage;
+        url.addParameter( AbstractPaginator.PARAMETER_ITEMS_PER_PAGE, nItemsPerPage );
+        _strBaseUrl = url.getUrl( );
+
+        // One more item is loaded to know whether there is a page after this one
+        int nBefore = getId( request, PARAMETER_BEFORE );
+        if ( nBefore > 0 )
+        {
+            List<T> listItems = loader.load( nBefore, false, nItemsPerPage + 1 );
+            _bPreviousPage = listItems.size( ) > nItemsPerPage;
+            _listPageItems = _bPreviousPage ? listItems.subList( 1, listItems.size( ) ) : listItems;
+            _bNextPage = true;
+            _nFirstId = _listPageItems.isEmpty( ) ? nBefore : id.applyAsInt( _listPageItems.get( 0 ) );
+            _nLastId = _listPageItems.isEmpty( ) ? nBefore - 1 : id.applyAsInt( _listPageItems.get( _listPageItems.size( ) - 1 ) );
+        }
+        else
+        {
+            int nAfter = Math.max( 0, getId( request, PARAMETER_AFTER ) );
+            List<T> listItems = loader.load( nAfter, true, nItemsPerPage + 1 );
+            _bNextPage = listItems.size( ) > nItemsPerPage;
+            _listPageItems = _bNextPage ? listItems.subList( 0, nItemsPerPage ) : listItems;
+            _bPreviousPage = nAfter > 0;
+            _nFirstId = _listPageItems.isEmpty( ) ? nAfter + 1 : id.applyAsInt( _listPageItems.get( 0 ) );
+            _nLastId = _listPageItems.isEmpty( ) ? nAfter : id.applyAsInt( _listPageItems.get( _listPageItems.size( ) - 1 ) );
+        }
+    }
+
+    /**
+     * Gets the items of the page.
+     *
+     * @return the items
+     */
+    public List<T> getPageItems( )
+    {
+        return _listPageItems;
+    }
+
+    /**
+     * Tells whether there is a page before this one.
+     *
+     * @return true if there is a previous page
+     */
+    public boolean isPreviousPage( )
+    {
+        return _bPreviousPage;
+    }
+
+    /**
+     * Tells whether there is a page after this one.
+     *
+     * @return true if there is a next page
+     */
+    public boolean isNextPage( )
+    {
+        return _bNextPage;
+    }
+
+    /**
+     * Gets the url of the previous page.
+     *
+     * @return the url
+     */
+    public String getPreviousPageUrl( )
+    {
+        return _strBaseUrl + "&" + PARAMETER_BEFORE + "=" + _nFirstId;
+    }
+
+    /**
+     * Gets the url of the next page.
+     *
+     * @return the url
+     */
+    public String getNextPageUrl( )
+    {
+        return _strBaseUrl + "&" + PARAMETER_AFTER + "=" + _nLastId;
+    }
+
+    /**
+     * Gets the number of items per page.
+     *
+     * @return the number of items per page
+     */
+    public int getItemsPerPage( )
+    {
+        return _nItemsPerPage;
+    }
+
+    private static int getId( HttpServletRequest request, String strParameter )
+    {
+        String strId = request.getParameter( strParameter );
+        try
+        {
+            return strId == null ? 0 : Integer.parseInt( strId );
+        }
+        catch( NumberFormatException e )
+        {
+            return 0;
+        }
+    }
+}
@@ -36,51 +36,87 @@ package fr.paris.lutece.plugins.vault.web;
 
 import com.bettercloud.vault.VaultException;
 import fr.paris.lutece.plugins.vault.business.*;
+import fr.paris.lutece.plugins.vault.service.VaultBulkException;
+import fr.paris.lutece.plugins.vault.service.VaultConflictException;
+import fr.paris.lutece.plugins.vault.service.VaultImportExportService;
+import fr.paris.lutece.plugins.vault.service.VaultSecretsDiff;
+import fr.paris.lutece.plugins.vault.service.VaultSecretsFormat;
 import fr.paris.lutece.plugins.vault.service.VaultService;
 import fr.paris.lutece.plugins.vault.service.VaultUtil;
+import fr.paris.lutece.plugins.vault.rs.VaultHttpClient;
+import fr.paris.lutece.portal.service.i18n.I18nService;
 import fr.paris.lutece.portal.service.message.AdminMessage;
 import fr.paris.lutece.portal.service.message.AdminMessageService;
 import fr.paris.lutece.portal.service.security.SecurityTokenService;
 import fr.paris.lutece.portal.service.admin.AccessDeniedException;
 import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.util.mvc.admin.annotations.Controller;
 import fr.paris.lutece.portal.util.mvc.commons.annotations.Action;
 import fr.paris.lutece.portal.util.mvc.commons.annotations.View;
+import fr.paris.lutece.portal.web.upload.MultipartHttpServletRequest;
 import fr.paris.lutece.util.url.UrlItem;
 import fr.paris.lutece.util.html.AbstractPaginator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.fileupload.FileItem;
 
 /**
  * The type Properties jsp bean.
  */
 @Controller( controllerJsp = "ManageProperties.jsp", controllerPath = "jsp/admin/plugins/vault/", right = "VAULT_MANAGEMENT" )
-public class PropertiesJspBean extends AbstractManageApplicationJspBean<Integer, Properties>
+public class PropertiesJspBean extends AbstractManageApplicationJspBean<String, Properties>
 {
     // Templates
     private static final String TEMPLATE_MANAGE_PROPERTIES = "/admin/plugins/vault/manage_properties.html";
     private static final String TEMPLATE_CREATE_PROPERTIES = "/admin/plugins/vault/create_properties.html";
     private static final String TEMPLATE_MODIFY_PROPERTIES = "/admin/plugins/vault/modify_properties.html";
+    private static final String TEMPLATE_IMPORT_PROPERTIES = "/admin/plugins/vault/import_properties.html";
+
+    // Jsp
+    private static final String JSP_MANAGE_ENVIRONNEMENTS = "jsp/admin/plugins/vault/ManageEnvironnements.jsp";
+    private static final String JSP_MANAGE_PROPERTIES = "jsp/admin/plugins/vault/ManageProperties.jsp";
 
     // Parameters
     private static final String PARAMETER_KEY_PROPERTIES = "key";
 
     private static final String PARAMETER_ID_ENVIRONNEMENT = "idEnv";
+    private static final String PARAMETER_ID_APPLICATION = "idApp";
+    private static final String PARAMETER_FILE = "file";
+    private static final String PARAMETER_REPLACE = "replace";
+    private static final String PARAMETER_FORMAT = "format";
+    private static final String PARAMETER_PREVIEW = "preview";
 
     // Properties for page titles
     private static final String PROPERTY_PAGE_TITLE_MANAGE_PROPERTIES = "vault.manage_properties.pageTitle";
     private static final String PROPERTY_PAGE_TITLE_MODIFY_PROPERTIES = "vault.modify_properties.pageTitle";
     private static final String PROPERTY_PAGE_TITLE_CREATE_PROPERTIES = "vault.create_properties.pageTitle";
+    private static final String PROPERTY_PAGE_TITLE_IMPORT_PROPERTIES = "vault.import_properties.pageTitle";
 
     // Markers
     private static final String MARK_PROPERTIES_LIST = "properties_list";
     private static final String MARK_PROPERTIES = "properties";
+    private static final String MARK_IMPORT_DIFF_LIST = "import_diff_list";
+    private static final String MARK_IMPORT_REPLACE = "import_replace";
+    private static final String MARK_IMPORT_HAS_CHANGES = "import_has_changes";
+    private static final String MARK_CANCEL_URL = "cancel_url";
+    private static final String MARK_VALUE = "value";
 
     // Properties
     private static final String MESSAGE_CONFIRM_REMOVE_PROPERTIES = "vault.message.confirmRemoveProperties";
@@ -92,25 +128,36 @@ public class PropertiesJspBean extends AbstractManageApplicationJspBean<Integer,
     private static final String VIEW_MANAGE_PROPERTIES = "manageProperties";
     private static final String VIEW_CREATE_PROPERTIES = "createProperties";
     private static final String VIEW_MODIFY_PROPERTIES = "modifyProperties";
+    private static final String VIEW_IMPORT_PROPERTIES = "importProperties";
 
     // Actions
     private static final String ACTION_CREATE_PROPERTIES = "createProperties";
     private static final String ACTION_MODIFY_PROPERTIES = "modifyProperties";
     private static final String ACTION_REMOVE_PROPERTIES = "removeProperties";
     private static final String ACTION_CONFIRM_REMOVE_PROPERTIES = "confirmRemoveProperties";
+    private static final String ACTION_PREVIEW_IMPORT_PROPERTIES = "previewImportProperties";
+    private static final String ACTION_IMPORT_PROPERTIES = "importProperties";
 
     // Infos
     private static final String INFO_PROPERTIES_CREATED = "vault.info.properties.created";
     private static final String INFO_PROPERTIES_UPDATED = "vault.info.properties.updated";
     private static final String INFO_PROPERTIES_REMOVED = "vault.info.properties.removed";
+    private static final String INFO_PROPERTIES_IMPORTED = "vault.info.properties.imported";
 
     // Errors
     private static final String ERROR_RESOURCE_NOT_FOUND = "Resource not found";
+    private static final String ERROR_PROPERTIES_CONFLICT = "vault.error.properties.conflict";
+    private static final String ERROR_IMPORT_FILE = "vault.error.import.file";
+    private static final String ERROR_IMPORT_UNKNOWN_ENVIRONNEMENTS = "vault.error.import.unknownEnvironnements";
+    private static final String ERROR_IMPORT_CONFLICT = "vault.error.import.conflict";
+    private static final String ERROR_BULK_OPERATION = "vault.error.bulkOperation";
 
     // Session variable to store working values
     private Properties _properties;
-    private List<Integer> _listIdProperties;
-    private List<Properties> _listProperties;
+    private int _nIdEnvironnement;
+    private Map<String, Map<String, String>> _mapImport;
+    private List<VaultSecretsDiff> _listImportDiffs;
+    private boolean _bImportReplace;
 
     /**
      * Gets manage properties.
@@ -123,31 +170,55 @@ public class PropertiesJspBean extends AbstractManageApplicationJspBean<Integer,
     public String getManageProperties( HttpServletRequest request )
     {
         _properties = null;
-        _listProperties = new ArrayList<>( );
 
         int nId = Integer.parseInt( request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) );
-        Environnement _environnement = EnvironnementHome.findByPrimaryKey( nId ).get( );
+        Environnement environnement = EnvironnementHome.findByPrimaryKeyWithoutSecrets( nId ).orElseThrow( ( ) -> new AppException( ERROR_RESOURCE_NOT_FOUND ) );
+        _nIdEnvironnement = environnement.getId( );
 
-        if ( EnvironnementHome.getPropertiesList( _environnement.getId( ) ) != null )
+        List<String> listKeys = new ArrayList<>( );
+        try
         {
-            _listProperties = ( EnvironnementHome.getPropertiesList( _environnement.getId( ) ) );
+            listKeys = VaultService.getInstance( ).getSecretKeys( environnement );
         }
-        // Map<String, Object> model = getPaginatedListModel( request, MARK_PROPERTIES_LIST, _listIdProperties, JSP_MANAGE_PROPERTIES );
-        Map<String, Object> model = getModel( );
-        model.put( MARK_PROPERTIES_LIST, _listProperties );
-        model.put( EnvironnementJspBean.MARK_ENVIRONNEMENT, EnvironnementHome.findByPrimaryKey( nId ).get( ) );
+        catch( VaultException e )
+        {
+            AppLogService.error( "Unable to list the properties of the environnement " + environnement.getPath( ), e );
+        }
+
+        UrlItem url = new UrlItem( JSP_MANAGE_PROPERTIES );
+        url.addParameter( PARAMETER_ID_ENVIRONNEMENT, nId );
+        Map<String, Object> model = getPaginatedListModel( request, MARK_PROPERTIES_LIST, listKeys, url.getUrl( ) );
+        model.put( EnvironnementJspBean.MARK_ENVIRONNEMENT, environnement );
         return getPage( PROPERTY_PAGE_TITLE_MANAGE_PROPERTIES, TEMPLATE_MANAGE_PROPERTIES, model );
     }
 
     /**
-     * Get Items from Ids list
+     * Gets the value of a property as JSON, fetched by the properties page when the value is revealed.
      *
-     * @param listIds
-     * @return the populated list of items corresponding to the id List
+     * @param request
+     *            the request
+     * @return the value of the property
      */
-    public void resetListId( )
+    public String getPropertyValueJson( HttpServletRequest request )
     {
-        _listIdProperties = new ArrayList<>( );
+        ObjectNode json = VaultHttpClient.getObjectMapper( ).createObjectNode( );
+        String strKey = request.getParameter( PARAMETER_KEY_PROPERTIES );
+        json.put( PARAMETER_KEY_PROPERTIES, strKey );
+
+        Optional<Environnement> optEnvironnement = EnvironnementHome
+                .findByPrimaryKeyWithoutSecrets( Integer.parseInt( request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) ) );
+        if ( optEnvironnement.isPresent( ) && strKey != null )
+        {
+            try
+            {
+                json.put( MARK_VALUE, VaultService.getInstance( ).readSecrets( optEnvironnement.get( ) ).get( strKey ) );
+            }
+            catch( VaultException e )
+            {
+                AppLogService.error( "Unable to read the property " + strKey + " of the environnement " + optEnvironnement.get( ).getPath( ), e );
+            }
+        }
+        return json.toString( );
     }
 
     /**
@@ -189,7 +260,7 @@ public class PropertiesJspBean extends AbstractManageApplicationJspBean<Integer,
         populate( _properties, request, getLocale( ) );
 
         int nId = Integer.parseInt( request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) );
-        int nIdApp = EnvironnementHome.findByPrimaryKey( nId ).get( ).getIdapplication( );
+        int nIdApp = EnvironnementHome.findByPrimaryKeyWithoutSecrets( nId ).get( ).getIdapplication( );
         if ( !SecurityTokenService.getInstance( ).validate( request, ACTION_CREATE_PROPERTIES ) )
         {
             throw new AccessDeniedException( "Invalid security token" );
@@ -203,7 +274,6 @@ public class PropertiesJspBean extends AbstractManageApplicationJspBean<Integer,
 
         PropertiesHome.create( _properties );
         addInfo( INFO_PROPERTIES_CREATED, getLocale( ) );
-        resetListId( );
 
         return redirect( request, VIEW_MANAGE_PROPERTIES, PARAMETER_ID_ENVIRONNEMENT, _properties.getIdenvironnement( ) );
     }
@@ -252,7 +322,6 @@ public class PropertiesJspBean extends AbstractManageApplicationJspBean<Integer,
 
         PropertiesHome.remove( _properties );
         addInfo( INFO_PROPERTIES_REMOVED, getLocale( ) );
-        resetListId( );
 
         return redirect( request, VIEW_MANAGE_PROPERTIES, PARAMETER_ID_ENVIRONNEMENT, nIdEnv );
     }
@@ -309,16 +378,333 @@ public class PropertiesJspBean extends AbstractManageApplicationJspBean<Integer,
         if ( !validateBean( _properties, VALIDATION_ATTRIBUTES_PREFIX ) )
         {
         }
-        PropertiesHome.update( _properties );
+        try
+        {
+            PropertiesHome.update( _properties );
+        }
+        catch( VaultConflictException e )
+        {
+            // Another administrator modified the environment : the form is shown again with the current value
+            addError( ERROR_PROPERTIES_CONFLICT, getLocale( ) );
+            Map<String, String> mapParameters = new HashMap<>( );
+            mapParameters.put( PARAMETER_ID_ENVIRONNEMENT, String.valueOf( _properties.getIdenvironnement( ) ) );
+            mapParameters.put( PARAMETER_KEY_PROPERTIES, _properties.getKey( ) );
+            _properties = null;
+            return redirect( request, VIEW_MODIFY_PROPERTIES, mapParameters );
+        }
         addInfo( INFO_PROPERTIES_UPDATED, getLocale( ) );
-        resetListId( );
 
         return redirect( request, VIEW_MANAGE_PROPERTIES, PARAMETER_ID_ENVIRONNEMENT, _properties.getIdenvironnement( ) );
     }
 
+    /**
+     * Gets the import form of the properties of an environnement (idEnv parameter) or of all the environnements of an application (idApp parameter),
+     * with the changes of the file once previewed.
+     *
+     * @param request
+     *            the request
+     * @return the import properties
+     */
+    @View( VIEW_IMPORT_PROPERTIES )
+    public String getImportProperties( HttpServletRequest request )
+    {
+        if ( request.getParameter( PARAMETER_PREVIEW ) == null )
+        {
+            resetImport( );
+        }
+
+        Map<String, Object> model = getModel( );
+        putImportTarget( request, model );
+        model.put( MARK_IMPORT_DIFF_LIST, _listImportDiffs );
+        model.put( MARK_IMPORT_REPLACE, _bImportReplace );
+        model.put( MARK_IMPORT_HAS_CHANGES, _listImportDiffs != null && _listImportDiffs.stream( ).anyMatch( VaultSecretsDiff::hasChanges ) );
+        model.put( SecurityTokenService.MARK_TOKEN, SecurityTokenService.getInstance( ).getToken( request,
+                _listImportDiffs == null ? ACTION_PREVIEW_IMPORT_PROPERTIES : ACTION_IMPORT_PROPERTIES ) );
+
+        return getPage( PROPERTY_PAGE_TITLE_IMPORT_PROPERTIES, TEMPLATE_IMPORT_PROPERTIES, model );
+    }
+
+    /**
+     * Reads the uploaded file and shows the changes it would make, without writing anything.
+     *
+     * @param request
+     *            the request
+     * @return the string
+     * @throws AccessDeniedException
+     *             the access denied exception
+     */
+    @Action( ACTION_PREVIEW_IMPORT_PROPERTIES )
+    public String doPreviewImportProperties( HttpServletRequest request ) throws AccessDeniedException
+    {
+        if ( !SecurityTokenService.getInstance( ).validate( request, ACTION_PREVIEW_IMPORT_PROPERTIES ) )
+        {
+            throw new AccessDeniedException( "Invalid security token" );
+        }
+        resetImport( );
+
+        List<Environnement> listEnvironnements = getImportEnvironnements( request );
+        FileItem fileItem = request instanceof MultipartHttpServletRequest ? ( (MultipartHttpServletRequest) request ).getFile( PARAMETER_FILE ) : null;
+        boolean bReplace = request.getParameter( PARAMETER_REPLACE ) != null;
+        try ( InputStream inputStream = fileItem == null ? null : fileItem.getInputStream( ) )
+        {
+            if ( inputStream == null )
+            {
+                throw new IOException( "No file" );
+            }
+            VaultSecretsFormat format = VaultSecretsFormat.fromFileName( fileItem.getName( ) );
+            Map<String, Map<String, String>> mapImport = request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) != null
+                    ? VaultImportExportService.readEnvironnement( inputStream, format, listEnvironnements.get( 0 ).getCode( ) )
+                    : VaultImportExportService.readApplication( inputStream, format );
+
+            Set<String> setUnknown = VaultImportExportService.getUnknownEnvironnements( listEnvironnements, mapImport );
+            if ( !setUnknown.isEmpty( ) )
+            {
+                addError( I18nService.getLocalizedString( ERROR_IMPORT_UNKNOWN_ENVIRONNEMENTS, new Object [ ] {
+                        String.join( ", ", setUnknown )
+                }, getLocale( ) ) );
+            }
+            else
+            {
+                _listImportDiffs = VaultImportExportService.preview( listEnvironnements, mapImport, bReplace );
+                _mapImport = mapImport;
+                _bImportReplace = bReplace;
+
+                Map<String, String> mapParameters = getImportParameters( request );
+                mapParameters.put( PARAMETER_PREVIEW, Boolean.TRUE.toString( ) );
+                return redirect( request, VIEW_IMPORT_PROPERTIES, mapParameters );
+            }
+        }
+        catch( IOException | IllegalArgumentException | VaultException e )
+        {
+            addError( I18nService.getLocalizedString( ERROR_IMPORT_FILE, new Object [ ] {
+                    e.getMessage( )
+            }, getLocale( ) ) );
+        }
+
+        return redirect( request, VIEW_IMPORT_PROPERTIES, getImportParameters( request ) );
+    }
+
+    /**
+     * Imports the previewed file.
+     *
+     * @param request
+     *            the request
+     * @return the string
+     * @throws AccessDeniedException
+     *             the access denied exception
+     */
+    @Action( ACTION_IMPORT_PROPERTIES )
+    public String doImportProperties( HttpServletRequest request ) throws AccessDeniedException
+    {
+        if ( !SecurityTokenService.getInstance( ).validate( request, ACTION_IMPORT_PROPERTIES ) )
+        {
+            throw new AccessDeniedException( "Invalid security token" );
+        }
+        if ( _mapImport == null )
+        {
+            return redirect( request, VIEW_IMPORT_PROPERTIES, getImportParameters( request ) );
+        }
+
+        List<Environnement> listEnvironnements = getImportEnvironnements( request );
+        Application application = ApplicationHome.findByPrimaryKey( listEnvironnements.get( 0 ).getIdapplication( ) )
+                .orElseThrow( ( ) -> new AppException( ERROR_RESOURCE_NOT_FOUND ) );
+        try
+        {
+            List<VaultSecretsDiff> listDiffs = VaultImportExportService.importSecrets( application, listEnvironnements, _mapImport, _bImportReplace,
+                    _listImportDiffs );
+            addImportInfo( listDiffs );
+        }
+        catch( VaultBulkException e )
+        {
+            if ( e.getFailures( ).values( ).stream( ).allMatch( VaultConflictException.class::isInstance ) )
+            {
+                return previewImportAgain( request, listEnvironnements, e );
+            }
+            addError( I18nService.getLocalizedString( ERROR_BULK_OPERATION, new Object [ ] {
+                    String.join( ", ", e.getFailures( ).keySet( ) )
+            }, getLocale( ) ) );
+            resetImport( );
+            return redirect( request, VIEW_IMPORT_PROPERTIES, getImportParameters( request ) );
+        }
+        resetImport( );
+
+        if ( request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) != null )
+        {
+            return redirect( request, VIEW_MANAGE_PROPERTIES, PARAMETER_ID_ENVIRONNEMENT, listEnvironnements.get( 0 ).getId( ) );
+        }
+        UrlItem url = new UrlItem( JSP_MANAGE_ENVIRONNEMENTS );
+        url.addParameter( PARAMETER_ID_APPLICATION, application.getId( ) );
+        return redirect( request, url.getUrl( ) );
+    }
+
+    /**
+     * Writes the properties of an environnement (idEnv parameter) or of all the environnements of an application (idApp parameter) to the response, in
+     * the format given by the format parameter.
+     *
+     * @param request
+     *            the request
+     * @param response
+     *            the response
+     * @throws IOException
+     *             if the response cannot be written
+     * @throws VaultException
+     *             if an environnement cannot be read
+     */
+    public void doExportProperties( HttpServletRequest request, HttpServletResponse response ) throws IOException, VaultException
+    {
+        VaultSecretsFormat format = VaultSecretsFormat.fromExtension( Optional.ofNullable( request.getParameter( PARAMETER_FORMAT ) )
+                .orElse( VaultSecretsFormat.JSON.getExtension( ) ) );
+        List<Environnement> listEnvironnements = getImportEnvironnements( request );
+        boolean bEnvironnement = request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) != null;
+
+        String strFileName = listEnvironnements.isEmpty( ) ? "application"
+                : listEnvironnements.get( 0 ).getApplicationCode( ) + ( bEnvironnement ? "-" + listEnvironnements.get( 0 ).getCode( ) : "" );
+        response.setContentType( format.getContentType( ) );
+        response.setHeader( "Content-Disposition", "attachment; filename=\"" + strFileName + "." + format.getExtension( ) + "\"" );
+        response.setHeader( "Cache-Control", "no-store" );
+
+        OutputStream outputStream = response.getOutputStream( );
+        if ( bEnvironnement )
+        {
+            VaultImportExportService.exportEnvironnement( listEnvironnements.get( 0 ), format, outputStream );
+        }
+        else
+        {
+            VaultImportExportService.exportApplication( listEnvironnements, format, outputStream );
+        }
+        outputStream.flush( );
+    }
+
+    private List<Environnement> getImportEnvironnements( HttpServletRequest request )
+    {
+        String strIdEnvironnement = request.getParameter( PARAMETER_ID_ENVIRONNEMENT );
+        if ( strIdEnvironnement != null )
+        {
+            Environnement environnement = EnvironnementHome.getEnvironnementsListByIds( Collections.singletonList( Integer.parseInt( strIdEnvironnement ) ) )
+                    .stream( ).findFirst( ).orElseThrow( ( ) -> new AppException( ERROR_RESOURCE_NOT_FOUND ) );
+            return Collections.singletonList( environnement );
+        }
+        return EnvironnementHome.getEnvironnementsListByApp( Integer.parseInt( request.getParameter( PARAMETER_ID_APPLICATION ) ) );
+    }
+
+    private void putImportTarget( HttpServletRequest request, Map<String, Object> model )
+    {
+        String strIdEnvironnement = request.getParameter( PARAMETER_ID_ENVIRONNEMENT );
+        UrlItem urlCancel;
+        if ( strIdEnvironnement != null )
+        {
+            model.put( EnvironnementJspBean.MARK_ENVIRONNEMENT, EnvironnementHome.findByPrimaryKeyWithoutSecrets( Integer.parseInt( strIdEnvironnement ) )
+                    .orElseThrow( ( ) -> new AppException( ERROR_RESOURCE_NOT_FOUND ) ) );
+            urlCancel = new UrlItem( JSP_MANAGE_PROPERTIES );
+            urlCancel.addParameter( PARAMETER_ID_ENVIRONNEMENT, strIdEnvironnement );
+        }
+        else
+        {
+            String strIdApplication = request.getParameter( PARAMETER_ID_APPLICATION );
+            model.put( ApplicationJspBean.MARK_APPLICATION, ApplicationHome.findByPrimaryKey( Integer.parseInt( strIdApplication ) )
+                    .orElseThrow( ( ) -> new AppException( ERROR_RESOURCE_NOT_FOUND ) ) );
+            urlCancel = new UrlItem( JSP_MANAGE_ENVIRONNEMENTS );
+            urlCancel.addParameter( PARAMETER_ID_APPLICATION, strIdApplication );
+        }
+        model.put( MARK_CANCEL_URL, urlCancel.getUrl( ) );
+    }
+
+    /**
+     * Shows the preview again when environments were modified since the file was previewed, their import being refused. The changes of the other
+     * environments are imported.
+     *
+     * @param request
+     *            the request
+     * @param listEnvironnements
+     *            the environments of the import
+     * @param e
+     *            the exception, with the conflicting environments
+     * @return the string
+     */
+    private String previewImportAgain( HttpServletRequest request, List<Environnement> listEnvironnements, VaultBulkException e )
+    {
+        Map<String, VaultSecretsDiff> mapImported = e.getResults( );
+        if ( !mapImported.isEmpty( ) )
+        {
+            addImportInfo( new ArrayList<>( mapImported.values( ) ) );
+        }
+        addError( I18nService.getLocalizedString( ERROR_IMPORT_CONFLICT, new Object [ ] {
+                String.join( ", ", new TreeSet<>( e.getFailures( ).keySet( ) ) )
+        }, getLocale( ) ) );
+
+        try
+        {
+            _listImportDiffs = VaultImportExportService.preview( listEnvironnements, _mapImport, _bImportReplace );
+        }
+        catch( VaultException ex )
+        {
+            addError( I18nService.getLocalizedString( ERROR_IMPORT_FILE, new Object [ ] {
+                    ex.getMessage( )
+            }, getLocale( ) ) );
+            resetImport( );
+            return redirect( request, VIEW_IMPORT_PROPERTIES, getImportParameters( request ) );
+        }
+
+        Map<String, String> mapParameters = getImportParameters( request );
+        mapParameters.put( PARAMETER_PREVIEW, Boolean.TRUE.toString( ) );
+        return redirect( request, VIEW_IMPORT_PROPERTIES, mapParameters );
+    }
+
+    private Map<String, String> getImportParameters( HttpServletRequest request )
+    {
+        Map<String, String> mapParameters = new HashMap<>( );
+        if ( request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) != null )
+        {
+            mapParameters.put( PARAMETER_ID_ENVIRONNEMENT, request.getParameter( PARAMETER_ID_ENVIRONNEMENT ) );
+        }
+        else
+        {
+            mapParameters.put( PARAMETER_ID_APPLICATION, request.getParameter( PARAMETER_ID_APPLICATION ) );
+        }
+        return mapParameters;
+    }
+
+    private void addImportInfo( List<VaultSecretsDiff> listDiffs )
+    {
+        int nAdded = 0;
+        int nModified = 0;
+        int nRemoved = 0;
+        for ( VaultSecretsDiff diff : listDiffs )
+        {
+            nAdded += diff.getAdded( ).size( );
+            nModified += diff.getModified( ).size( );
+            nRemoved += diff.getRemoved( ).size( );
+        }
+        addInfo( I18nService.getLocalizedString( INFO_PROPERTIES_IMPORTED, new Object [ ] {
+                nAdded, nModified, nRemoved
+        }, getLocale( ) ) );
+    }
+
+    private void resetImport( )
+    {
+        _mapImport = null;
+        _listImportDiffs = null;
+        _bImportReplace = false;
+    }
+
+    /**
+     * Gets the properties of a page, with their keys only. The values are fetched when they are revealed.
+     *
+     * @param listKeys
+     *            the keys of the page
+     * @return the properties
+     */
     @Override
-    List<Properties> getItemsFromIds( List<Integer> listIds )
+    List<Properties> getItemsFromIds( List<String> listKeys )
     {
-        return null;
+        List<Properties> listProperties = new ArrayList<>( listKeys.size( ) );
+        for ( String strKey : listKeys )
+        {
+            Properties properties = new Properties( );
+            properties.setKey( strKey );
+            properties.setIdenvironnement( _nIdEnvironnement );
+            listProperties.add( properties );
+        }
+        return listProperties;
     }
 }
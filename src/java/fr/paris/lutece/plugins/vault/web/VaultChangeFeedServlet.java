@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.web;
+
+import com.bettercloud.vault.VaultException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.business.EnvironnementHome;
+import fr.paris.lutece.plugins.vault.rs.VaultHttpClient;
+import fr.paris.lutece.plugins.vault.service.VaultChangeEvent;
+import fr.paris.lutece.plugins.vault.service.VaultChangeListener;
+import fr.paris.lutece.plugins.vault.service.VaultChangeNotifier;
+import fr.paris.lutece.plugins.vault.service.VaultService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server-sent events feed of the changes of an environment. The consuming application subscribes with the codes of its application and environment and
+ * the token of the environment in the X-Vault-Token header, and receives an event each time the secrets are written, carrying the new version and never
+ * the secrets : it then reads them from the properties REST resource. The request is put in asynchronous mode, so an idle subscriber holds no thread,
+ * and the events are written without blocking : each subscriber queues its events until the container tells its output is ready, and a subscriber too
+ * slow to read them is dropped, so that it never delays the others.
+ */
+public class VaultChangeFeedServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+    private static final String PROPERTY_TIMEOUT = "vault.changes.timeout";
+    private static final String PROPERTY_RETRY = "vault.changes.retry";
+    private static final String PROPERTY_MAX_PENDING = "vault.changes.maxPending";
+    private static final String PROPERTY_WRITE_TIMEOUT = "vault.changes.writeTimeout";
+    private static final String PARAMETER_APPLICATION = "application";
+    private static final String PARAMETER_ENVIRONNEMENT = "environnement";
+    private static final String HEADER_TOKEN = "X-Vault-Token";
+    private static final String HEADER_LAST_EVENT_ID = "Last-Event-ID";
+    private static final String CONTENT_TYPE = "text/event-stream; charset=UTF-8";
+    private static final AtomicBoolean SYNCHRONOUS_LOGGED = new AtomicBoolean( );
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        String strToken = request.getHeader( HEADER_TOKEN );
+        if ( strToken == null || strToken.isEmpty( ) )
+        {
+            response.sendError( HttpServletResponse.SC_UNAUTHORIZED );
+            return;
+        }
+
+        String strApplicationCode = request.getParameter( PARAMETER_APPLICATION );
+        String strEnvironnementCode = request.getParameter( PARAMETER_ENVIRONNEMENT );
+        Environnement environnement;
+        long lVersion;
+        try
+        {
+            Optional<Environnement> env = EnvironnementHome.findByCodesWithoutSecrets( strApplicationCode, strEnvironnementCode );
+            if ( !env.isPresent( ) || !VaultService.getInstance( ).isEnvironnementToken( env.get( ), strToken ) )
+            {
+                response.sendError( HttpServletResponse.SC_FORBIDDEN );
+                return;
+            }
+            environnement = env.get( );
+            lVersion = VaultService.getInstance( ).getSecretsVersion( environnement );
+        }
+        catch( VaultException e )
+        {
+            AppLogService.error( "Unable to subscribe to the changes of " + strApplicationCode + "/" + strEnvironnementCode, e );
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+            return;
+        }
+
+        response.setContentType( CONTENT_TYPE );
+        response.setHeader( "Cache-Control", "no-cache" );
+        // Stops the reverse proxies that honour it from buffering the events
+        response.setHeader( "X-Accel-Buffering", "no" );
+
+        Subscriber subscriber = new Subscriber( environnement, response.getOutputStream( ) );
+        subscriber.write( "retry: " + AppPropertiesService.getPropertyInt( PROPERTY_RETRY, 5000 ) + "\n\n" );
+        // A new subscriber, or one that missed changes while reconnecting, gets the current version first
+        if ( !String.valueOf( lVersion ).equals( request.getHeader( HEADER_LAST_EVENT_ID ) ) )
+        {
+            subscriber.onChange( new VaultChangeEvent( environnement.getPath( ), VaultChangeEvent.TYPE_MODIFIED, lVersion ) );
+        }
+
+        if ( !request.isAsyncSupported( ) )
+        {
+            // The feed degrades to polling : the client reconnects after the retry delay
+            if ( SYNCHRONOUS_LOGGED.compareAndSet( false, true ) )
+            {
+                AppLogService.info( "Asynchronous requests are not enabled for the change feed, the subscribers will poll" );
+            }
+            subscriber.writePending( );
+            return;
+        }
+
+        AsyncContext asyncContext = request.startAsync( );
+        asyncContext.setTimeout( AppPropertiesService.getPropertyInt( PROPERTY_TIMEOUT, 300 ) * 1000L );
+        subscriber.start( asyncContext, lVersion );
+    }
+
+    /**
+     * A subscribed client, queuing the events until its suspended response can be written without blocking
+     */
+    private static final class Subscriber implements VaultChangeListener, AsyncListener, WriteListener
+    {
+        private final Environnement _environnement;
+        private final ServletOutputStream _out;
+        private final Deque<byte [ ]> _queue = new ArrayDeque<>( );
+        private final int _nMaxPending;
+        private final long _lWriteTimeout;
+        private AsyncContext _asyncContext;
+        private boolean _bNonBlocking;
+        private boolean _bFlushed = true;
+        private boolean _bCompleting;
+        private long _lBlockedSince;
+        private boolean _bClosed;
+
+        private Subscriber( Environnement environnement, ServletOutputStream out )
+        {
+            _environnement = environnement;
+            _out = out;
+            _nMaxPending = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_MAX_PENDING, 100 ) );
+            _lWriteTimeout = AppPropertiesService.getPropertyInt( PROPERTY_WRITE_TIMEOUT, 30 ) * 1000L;
+        }
+
+        private void start( AsyncContext asyncContext, long lVersion )
+        {
+            synchronized( this )
+            {
+                _asyncContext = asyncContext;
+                _bNonBlocking = true;
+            }
+            asyncContext.addListener( this );
+            // The container calls onWritePossible once the output is ready, which writes the events queued so far
+            _out.setWriteListener( this );
+            if ( !VaultChangeNotifier.getInstance( ).subscribe( _environnement.getPath( ), this ) )
+            {
+                AppLogService.error( "Maximum number of change feed subscribers reached, closing the subscription to " + _environnement.getPath( ) );
+                close( );
+                return;
+            }
+
+            // A write published before the subscription is caught up with, from the cache
+            try
+            {
+                long lCurrentVersion = VaultService.getInstance( ).getSecretsVersion( _environnement );
+                if ( lCurrentVersion != lVersion )
+                {
+                    onChange( new VaultChangeEvent( _environnement.getPath( ), VaultChangeEvent.TYPE_MODIFIED, lCurrentVersion ) );
+                }
+            }
+            catch( VaultException e )
+            {
+                AppLogService.error( "Unable to read the version of " + _environnement.getPath( ), e );
+                close( );
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onChange( VaultChangeEvent event )
+        {
+            ObjectNode data = VaultHttpClient.getObjectMapper( ).createObjectNode( );
+            data.put( PARAMETER_APPLICATION, _environnement.getApplicationCode( ) );
+            data.put( PARAMETER_ENVIRONNEMENT, _environnement.getCode( ) );
+            data.put( "version", event.getVersion( ) );
+
+            StringBuilder sbEvent = new StringBuilder( );
+            if ( VaultChangeEvent.TYPE_MODIFIED.equals( event.getType( ) ) )
+            {
+                sbEvent.append( "id: " ).append( event.getVersion( ) ).append( '\n' );
+            }
+            sbEvent.append( "event: " ).append( event.getType( ) ).append( '\n' );
+            sbEvent.append( "data: " ).append( data.toString( ) ).append( "\n\n" );
+
+            if ( VaultChangeEvent.TYPE_REMOVED.equals( event.getType( ) ) )
+            {
+                // Closed once the event is written
+                synchronized( this )
+                {
+                    _bCompleting = true;
+                }
+            }
+            write( sbEvent.toString( ) );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onHeartbeat( )
+        {
+            // A comment line, ignored by the clients
+            write( ": heartbeat\n\n" );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onWritePossible( )
+        {
+            drain( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onError( Throwable throwable )
+        {
+            // The client went away
+            close( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onComplete( AsyncEvent event )
+        {
+            unsubscribe( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onTimeout( AsyncEvent event )
+        {
+            // The client reconnects with the id of the last event it received
+            close( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onError( AsyncEvent event )
+        {
+            close( );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onStartAsync( AsyncEvent event )
+        {
+            // Not restarted
+        }
+
+        /**
+         * Queues an event, and writes the queue if the output is ready. The subscriber is dropped when its queue is full or its output has not been ready
+         * for the write timeout : the client does not read the events.
+         *
+         * @param strEvent
+         *            the event
+         */
+        private void write( String strEvent )
+        {
+            boolean bTooSlow;
+            synchronized( this )
+            {
+                if ( _bClosed )
+                {
+                    return;
+                }
+                bTooSlow = _queue.size( ) >= _nMaxPending || ( _lBlockedSince != 0 && System.currentTimeMillis( ) - _lBlockedSince > _lWriteTimeout );
+                if ( !bTooSlow )
+                {
+                    _queue.add( strEvent.getBytes( StandardCharsets.UTF_8 ) );
+                }
+            }
+            if ( bTooSlow )
+            {
+                AppLogService.info( "Change feed subscriber of " + _environnement.getPath( ) + " does not read the events, closing its subscription" );
+                close( );
+                return;
+            }
+            drain( );
+        }
+
+        /**
+         * Writes the queued events as long as the output accepts them without blocking. Once it no longer does, the container calls onWritePossible when
+         * the client has read enough.
+         */
+        private void drain( )
+        {
+            boolean bClose;
+            synchronized( this )
+            {
+                if ( _bClosed || !_bNonBlocking )
+                {
+                    return;
+                }
+                try
+                {
+                    bClose = writeReady( );
+                }
+                catch( IOException e )
+                {
+                    bClose = true;
+                }
+            }
+            if ( bClose )
+            {
+                close( );
+            }
+        }
+
+        /**
+         * Writes the queued events while the output is ready.
+         *
+         * @return true if the subscription is to be closed, its last event being written
+         * @throws IOException
+         *             if the client went away
+         */
+        private boolean writeReady( ) throws IOException
+        {
+            while ( _out.isReady( ) )
+            {
+                byte [ ] event = _queue.poll( );
+                if ( event != null )
+                {
+                    _out.write( event );
+                    _bFlushed = false;
+                }
+                else
+                    if ( !_bFlushed )
+                    {
+                        _out.flush( );
+                        _bFlushed = true;
+                    }
+                    else
+                    {
+                        _lBlockedSince = 0;
+                        return _bCompleting;
+                    }
+            }
+            if ( _lBlockedSince == 0 )
+            {
+                _lBlockedSince = System.currentTimeMillis( );
+            }
+            return false;
+        }
+
+        /**
+         * Writes the queued events in blocking mode, for a request which is not asynchronous.
+         *
+         * @throws IOException
+         *             if the client went away
+         */
+        private synchronized void writePending( ) throws IOException
+        {
+            for ( byte [ ] event : _queue )
+            {
+                _out.write( event );
+            }
+            _queue.clear( );
+            _out.flush( );
+        }
+
+        private void close( )
+        {
+            AsyncContext asyncContext;
+            synchronized( this )
+            {
+                if ( _bClosed )
+                {
+                    return;
+                }
+                _bClosed = true;
+                _queue.clear( );
+                asyncContext = _asyncContext;
+            }
+            unsubscribe( );
+            if ( asyncContext != null )
+            {
+                try
+                {
+                    asyncContext.complete( );
+                }
+                catch( IllegalStateException e )
+                {
+                    // Already completed by the container
+                }
+            }
+        }
+
+        private void unsubscribe( )
+        {
+            VaultChangeNotifier.getInstance( ).unsubscribe( _environnement.getPath( ), this );
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.web;
+
+import fr.paris.lutece.plugins.vault.service.VaultCircuitBreaker;
+import fr.paris.lutece.plugins.vault.service.VaultInvalidationService;
+import fr.paris.lutece.plugins.vault.service.VaultMetrics;
+import fr.paris.lutece.plugins.vault.service.VaultReplicaRouter;
+import fr.paris.lutece.plugins.vault.service.VaultRetryPolicy;
+import fr.paris.lutece.plugins.vault.service.VaultService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Exposes the metrics of the Vault calls, of the secret cache, of the circuit breaker and of the read replicas in the Prometheus text format. The scraper
+ * must send the vault.metrics.token property as a bearer token : the metrics name the applications and show the activity of each one, so they are not
+ * served while no token is configured.
+ */
+public class VaultMetricsServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+    private static final String PROPERTY_TOKEN = "vault.metrics.token";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final String PREFIX_BEARER = "Bearer ";
+    private static final AtomicBoolean DISABLED_LOGGED = new AtomicBoolean( );
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        String strToken = AppPropertiesService.getProperty( PROPERTY_TOKEN );
+        if ( strToken == null || strToken.isEmpty( ) )
+        {
+            if ( DISABLED_LOGGED.compareAndSet( false, true ) )
+            {
+                AppLogService.info( "The Vault metrics are not served until the property " + PROPERTY_TOKEN + " is set" );
+            }
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+        if ( !isAuthorized( request, strToken ) )
+        {
+            response.sendError( HttpServletResponse.SC_UNAUTHORIZED );
+            return;
+        }
+
+        response.setContentType( CONTENT_TYPE );
+        response.setHeader( "Cache-Control", "no-cache" );
+        PrintWriter writer = response.getWriter( );
+        writer.write( VaultMetrics.scrape( ) );
+        writer.write( VaultMetrics.scrape( VaultService.getInstance( ).getSecretCache( ) ) );
+        writer.write( VaultMetrics.scrape( VaultCircuitBreaker.getInstance( ) ) );
+        writer.write( VaultMetrics.scrape( VaultRetryPolicy.getInstance( ) ) );
+        writer.write( VaultMetrics.scrape( VaultReplicaRouter.getInstance( ) ) );
+        writer.write( VaultMetrics.scrape( VaultInvalidationService.getInstance( ) ) );
+        writer.flush( );
+    }
+
+    private static boolean isAuthorized( HttpServletRequest request, String strToken )
+    {
+        String strAuthorization = request.getHeader( HEADER_AUTHORIZATION );
+        if ( strAuthorization == null || !strAuthorization.startsWith( PREFIX_BEARER ) )
+        {
+            return false;
+        }
+        return MessageDigest.isEqual( strToken.getBytes( StandardCharsets.UTF_8 ),
+                strAuthorization.substring( PREFIX_BEARER.length( ) ).trim( ).getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
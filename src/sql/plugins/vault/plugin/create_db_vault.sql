@@ -21,7 +21,25 @@ CREATE TABLE `vault_environnement` (
 `code` varchar(50) COLLATE utf8mb3_unicode_ci NOT NULL DEFAULT '',
 `idapplication` int NOT NULL DEFAULT '0',
 `type` varchar(50) CHARACTER SET utf8mb3 COLLATE utf8mb3_unicode_ci NOT NULL,
-PRIMARY KEY (`id_environnement`)
+PRIMARY KEY (`id_environnement`),
+UNIQUE KEY `uk_vault_environnement_code` (`idapplication`, `code`),
+KEY `idx_vault_environnement_application` (`idapplication`, `id_environnement`)
+);
+
+--
+-- Structure for table vault_environnement_token
+--
+
+DROP TABLE IF EXISTS vault_environnement_token;
+CREATE TABLE `vault_environnement_token` (
+`id_environnement` int NOT NULL,
+`accessor` varchar(255) CHARACTER SET utf8mb3 COLLATE utf8mb3_unicode_ci NOT NULL DEFAULT '',
+`date_expiration` timestamp NULL DEFAULT NULL,
+`date_renewal` timestamp NULL DEFAULT NULL,
+`renewal_claim` varchar(50) COLLATE utf8mb3_unicode_ci NULL DEFAULT NULL,
+PRIMARY KEY (`id_environnement`),
+KEY `idx_vault_environnement_token_renewal` (`date_renewal`),
+KEY `idx_vault_environnement_token_claim` (`renewal_claim`)
 );
 
 --
@@ -36,3 +54,41 @@ CREATE TABLE `vault_properties` (
 `idenvironnement` int NOT NULL DEFAULT '0',
 PRIMARY KEY (`id_properties`)
 );
+
+--
+-- Structure for table vault_job
+--
+
+DROP TABLE IF EXISTS vault_job;
+CREATE TABLE `vault_job` (
+`id_job` int NOT NULL AUTO_INCREMENT,
+`job_type` varchar(50) COLLATE utf8mb3_unicode_ci NOT NULL DEFAULT '',
+`id_environnement` int NOT NULL DEFAULT '0',
+`id_application` int NOT NULL DEFAULT '0',
+`parameters` varchar(1000) COLLATE utf8mb3_unicode_ci DEFAULT NULL,
+`status` varchar(20) COLLATE utf8mb3_unicode_ci NOT NULL DEFAULT 'PENDING',
+`progress` int NOT NULL DEFAULT '0',
+`message` varchar(255) COLLATE utf8mb3_unicode_ci DEFAULT NULL,
+`node` varchar(255) COLLATE utf8mb3_unicode_ci DEFAULT NULL,
+`id_user` int NOT NULL DEFAULT '0',
+`date_update` timestamp NULL DEFAULT NULL,
+PRIMARY KEY (`id_job`),
+KEY `idx_vault_job_status` (`status`),
+KEY `idx_vault_job_application` (`id_application`)
+);
+
+--
+-- Structure for table vault_change_log
+--
+
+DROP TABLE IF EXISTS vault_change_log;
+CREATE TABLE `vault_change_log` (
+`id_change` int NOT NULL AUTO_INCREMENT,
+`change_type` varchar(20) COLLATE utf8mb3_unicode_ci NOT NULL DEFAULT '',
+`change_key` varchar(255) COLLATE utf8mb3_unicode_ci NOT NULL DEFAULT '',
+`version` bigint NOT NULL DEFAULT '-1',
+`node` varchar(50) COLLATE utf8mb3_unicode_ci NOT NULL DEFAULT '',
+`date_change` timestamp NULL DEFAULT NULL,
+PRIMARY KEY (`id_change`),
+KEY `idx_vault_change_log_date` (`date_change`)
+);
@@ -35,6 +35,8 @@ package fr.paris.lutece.plugins.vault.business;
 
 import fr.paris.lutece.test.LuteceTestCase;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -77,6 +79,22 @@ public class ApplicationBusinessTest extends LuteceTestCase
         // List test
         ApplicationHome.getApplicationsList( );
 
+        // Page test : the pages around the application hold it, and a list by ids keeps the order of the ids
+        Application application2 = new Application( );
+        application2.setName( NAME1 );
+        application2.setCode( CODE1 );
+        ApplicationHome.create( application2 );
+        List<Application> listPage = ApplicationHome.getApplicationsPage( application.getId( ) - 1, true, 2 );
+        assertEquals( application.getId( ), listPage.get( 0 ).getId( ) );
+        assertEquals( application2.getId( ), listPage.get( 1 ).getId( ) );
+        listPage = ApplicationHome.getApplicationsPage( application2.getId( ), false, 1 );
+        assertEquals( 1, listPage.size( ) );
+        assertEquals( application.getId( ), listPage.get( 0 ).getId( ) );
+        listPage = ApplicationHome.getApplicationsListByIds( Arrays.asList( application2.getId( ), application.getId( ) ) );
+        assertEquals( application2.getId( ), listPage.get( 0 ).getId( ) );
+        assertEquals( application.getId( ), listPage.get( 1 ).getId( ) );
+        ApplicationHome.remove( application2.getId( ) );
+
         // Delete test
         ApplicationHome.remove( application.getId( ) );
         optApplicationStored = ApplicationHome.findByPrimaryKey( application.getId( ) );
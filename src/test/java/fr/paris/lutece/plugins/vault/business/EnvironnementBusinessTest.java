@@ -36,7 +36,11 @@ package fr.paris.lutece.plugins.vault.business;
 import com.bettercloud.vault.VaultException;
 import fr.paris.lutece.test.LuteceTestCase;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.springframework.context.i18n.LocaleContextHolder.getLocale;
 
@@ -49,6 +53,8 @@ public class EnvironnementBusinessTest extends LuteceTestCase
     private static final String CODE2 = "Code2";
     private static final String TOKEN1 = "Token1";
     private static final String TOKEN2 = "Token2";
+    private static final String TYPE1 = "Type1";
+    private static final String TYPE2 = "Type2";
     private static final int IDAPPLICATION1 = 1;
     private static final int IDAPPLICATION2 = 2;
 
@@ -93,4 +99,81 @@ public class EnvironnementBusinessTest extends LuteceTestCase
 
     }
 
+    /**
+     * test Environnement batch creation
+     */
+    public void testCreateAll( )
+    {
+        List<Environnement> listEnvironnements = new ArrayList<>( );
+        for ( String strType : new String [ ] {
+                TYPE1, TYPE1, TYPE2
+        } )
+        {
+            Environnement environnement = new Environnement( );
+            environnement.setType( strType );
+            environnement.setIdapplication( IDAPPLICATION1 );
+            listEnvironnements.add( environnement );
+        }
+        int nCount = EnvironnementHome.getEnvironnementListByType( TYPE1 ).size( );
+
+        // Create test : the codes follow each other for a same type
+        EnvironnementHome.createAll( listEnvironnements );
+        int nFirst = Integer.parseInt( listEnvironnements.get( 0 ).getCode( ).substring( TYPE1.length( ) ) );
+        assertEquals( TYPE1 + ( nFirst + 1 ), listEnvironnements.get( 1 ).getCode( ) );
+        for ( Environnement environnement : listEnvironnements )
+        {
+            Environnement environnementStored = EnvironnementHome.findByPrimaryKeyWithoutSecrets( environnement.getId( ) )
+                    .orElse( new Environnement( ) );
+            assertEquals( environnement.getType( ), environnementStored.getType( ) );
+            assertEquals( environnement.getCode( ), environnementStored.getCode( ) );
+            assertEquals( environnement.getIdapplication( ), environnementStored.getIdapplication( ) );
+        }
+        assertEquals( nCount + 2, EnvironnementHome.getEnvironnementListByType( TYPE1 ).size( ) );
+
+        // Create after a delete test : the next code follows the highest one of the application, not the number of environnements
+        EnvironnementHome.remove( listEnvironnements.remove( 0 ).getId( ) );
+        Environnement environnementAfterDelete = new Environnement( );
+        environnementAfterDelete.setType( TYPE1 );
+        environnementAfterDelete.setIdapplication( IDAPPLICATION1 );
+        EnvironnementHome.createAll( Collections.singletonList( environnementAfterDelete ) );
+        listEnvironnements.add( environnementAfterDelete );
+        assertEquals( TYPE1 + ( nFirst + 2 ), environnementAfterDelete.getCode( ) );
+
+        Environnement environnementSingle = new Environnement( );
+        environnementSingle.setType( TYPE1 );
+        environnementSingle.setIdapplication( IDAPPLICATION1 );
+        EnvironnementHome.create( environnementSingle );
+        listEnvironnements.add( environnementSingle );
+        assertEquals( TYPE1 + ( nFirst + 3 ), environnementSingle.getCode( ) );
+
+        // Delete test
+        for ( Environnement environnement : listEnvironnements )
+        {
+            EnvironnementHome.remove( environnement.getId( ) );
+        }
+    }
+
+    /**
+     * test the lazy loading of the properties
+     */
+    public void testLazyProperties( )
+    {
+        AtomicInteger nCalls = new AtomicInteger( );
+        List<Properties> listProperties = new ArrayList<>( );
+        Environnement environnement = new Environnement( );
+        environnement.setListPropertiesSupplier( ( ) -> {
+            nCalls.incrementAndGet( );
+            return listProperties;
+        } );
+
+        assertEquals( 0, nCalls.get( ) );
+        assertSame( listProperties, environnement.getListProperties( ) );
+        assertSame( listProperties, environnement.getListProperties( ) );
+        assertEquals( 1, nCalls.get( ) );
+
+        environnement.setListProperties( null );
+        assertNull( environnement.getListProperties( ) );
+        assertEquals( 1, nCalls.get( ) );
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+/**
+ * This is the business class test for the object EnvironnementToken
+ */
+public class EnvironnementTokenBusinessTest extends LuteceTestCase
+{
+    private static final int IDENVIRONNEMENT1 = 999999;
+    private static final String ACCESSOR1 = "Accessor1";
+    private static final String ACCESSOR2 = "Accessor2";
+    private static final String CLAIM1 = "Claim1";
+    private static final String CLAIM2 = "Claim2";
+
+    /**
+     * test EnvironnementToken
+     */
+    public void testBusiness( )
+    {
+        // Initialize an object
+        EnvironnementToken environnementToken = new EnvironnementToken( );
+        environnementToken.setIdEnvironnement( IDENVIRONNEMENT1 );
+        environnementToken.setAccessor( ACCESSOR1 );
+        environnementToken.setDateExpiration( new Timestamp( System.currentTimeMillis( ) + 60000 ) );
+        environnementToken.setDateRenewal( new Timestamp( System.currentTimeMillis( ) - 1000 ) );
+
+        // Create test
+        EnvironnementTokenHome.save( environnementToken );
+        Optional<EnvironnementToken> optEnvironnementTokenStored = EnvironnementTokenHome.findByEnvironnement( IDENVIRONNEMENT1 );
+        EnvironnementToken environnementTokenStored = optEnvironnementTokenStored.orElse( new EnvironnementToken( ) );
+        assertEquals( environnementTokenStored.getAccessor( ), environnementToken.getAccessor( ) );
+
+        assertEquals( environnementTokenStored.getDateExpiration( ), environnementToken.getDateExpiration( ) );
+
+        // Renewal test : the token is due, then no longer once its renewal date is moved, and the dates of a replaced accessor are not updated
+        assertTrue( EnvironnementTokenHome.getEnvironnementTokensToRenew( new Timestamp( System.currentTimeMillis( ) ), 1000 ).stream( )
+                .anyMatch( t -> t.getIdEnvironnement( ) == IDENVIRONNEMENT1 ) );
+
+        // Claim test : a due token is claimed once, and is no longer due until the end of the claim
+        Timestamp dateNow = new Timestamp( System.currentTimeMillis( ) );
+        Timestamp dateClaimEnd = new Timestamp( System.currentTimeMillis( ) + 30000 );
+        assertTrue( EnvironnementTokenHome.claimEnvironnementTokensToRenew( CLAIM1, dateNow, dateClaimEnd, 1000 ).stream( )
+                .anyMatch( t -> t.getIdEnvironnement( ) == IDENVIRONNEMENT1 ) );
+        assertFalse( EnvironnementTokenHome.claimEnvironnementTokensToRenew( CLAIM2, dateNow, dateClaimEnd, 1000 ).stream( )
+                .anyMatch( t -> t.getIdEnvironnement( ) == IDENVIRONNEMENT1 ) );
+        assertFalse( EnvironnementTokenHome.getEnvironnementTokensToRenew( dateNow, 1000 ).stream( )
+                .anyMatch( t -> t.getIdEnvironnement( ) == IDENVIRONNEMENT1 ) );
+
+        environnementToken.setDateRenewal( new Timestamp( System.currentTimeMillis( ) + 30000 ) );
+        EnvironnementTokenHome.updateDates( environnementToken );
+        assertFalse( EnvironnementTokenHome.getEnvironnementTokensToRenew( new Timestamp( System.currentTimeMillis( ) ), 1000 ).stream( )
+                .anyMatch( t -> t.getIdEnvironnement( ) == IDENVIRONNEMENT1 ) );
+
+        // Update test
+        environnementToken.setAccessor( ACCESSOR2 );
+        EnvironnementTokenHome.save( environnementToken );
+        optEnvironnementTokenStored = EnvironnementTokenHome.findByEnvironnement( IDENVIRONNEMENT1 );
+        environnementTokenStored = optEnvironnementTokenStored.orElse( new EnvironnementToken( ) );
+        assertEquals( environnementTokenStored.getAccessor( ), environnementToken.getAccessor( ) );
+
+        // List test
+        EnvironnementTokenHome.getEnvironnementTokensList( );
+
+        // Delete test : a replaced accessor does not remove the current one
+        EnvironnementTokenHome.remove( IDENVIRONNEMENT1, ACCESSOR1 );
+        assertTrue( EnvironnementTokenHome.findByEnvironnement( IDENVIRONNEMENT1 ).isPresent( ) );
+        EnvironnementTokenHome.remove( IDENVIRONNEMENT1, ACCESSOR2 );
+        optEnvironnementTokenStored = EnvironnementTokenHome.findByEnvironnement( IDENVIRONNEMENT1 );
+        environnementTokenStored = optEnvironnementTokenStored.orElse( null );
+        assertNull( environnementTokenStored );
+
+    }
+
+}
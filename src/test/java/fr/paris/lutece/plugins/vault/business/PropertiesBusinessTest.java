@@ -34,6 +34,7 @@
 package fr.paris.lutece.plugins.vault.business;
 
 import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.service.VaultStubServer;
 import fr.paris.lutece.test.LuteceTestCase;
 
 import java.util.Optional;
@@ -52,6 +53,16 @@ public class PropertiesBusinessTest extends LuteceTestCase
     private static final int IDENVIRONNEMENT1 = 1;
     private static final int IDENVIRONNEMENT2 = 2;
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        VaultStubServer.getSharedInstance( );
+    }
+
     /**
      * test Properties
      */
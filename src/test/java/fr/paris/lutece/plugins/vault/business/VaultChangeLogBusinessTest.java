@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is the business class test for the object VaultChangeLog
+ */
+public class VaultChangeLogBusinessTest extends LuteceTestCase
+{
+    private static final String TYPE1 = "modified";
+    private static final String KEY1 = "Key1";
+    private static final String KEY2 = "Key2";
+    private static final long VERSION1 = 3;
+    private static final String NODE1 = "Node1";
+
+    /**
+     * test VaultChangeLog
+     */
+    public void testBusiness( )
+    {
+        int nLastId = VaultChangeLogHome.getLastId( );
+
+        // Initialize the objects
+        VaultChangeLog change1 = new VaultChangeLog( );
+        change1.setType( TYPE1 );
+        change1.setKey( KEY1 );
+        change1.setVersion( VERSION1 );
+        change1.setNode( NODE1 );
+        VaultChangeLog change2 = new VaultChangeLog( );
+        change2.setType( TYPE1 );
+        change2.setKey( KEY2 );
+        change2.setVersion( VERSION1 );
+        change2.setNode( NODE1 );
+
+        // Create test
+        VaultChangeLogHome.create( change1 );
+        VaultChangeLogHome.create( change2 );
+        assertTrue( change2.getId( ) > change1.getId( ) );
+        assertEquals( change2.getId( ), VaultChangeLogHome.getLastId( ) );
+
+        // Read test : in ascending order of id, from the last id read
+        List<VaultChangeLog> listChanges = VaultChangeLogHome.getChangesAfter( nLastId, 10 );
+        assertEquals( 2, listChanges.size( ) );
+        VaultChangeLog changeStored = listChanges.get( 0 );
+        assertEquals( change1.getId( ), changeStored.getId( ) );
+        assertEquals( change1.getType( ), changeStored.getType( ) );
+        assertEquals( change1.getKey( ), changeStored.getKey( ) );
+        assertEquals( change1.getVersion( ), changeStored.getVersion( ) );
+        assertEquals( change1.getNode( ), changeStored.getNode( ) );
+        assertEquals( 1, VaultChangeLogHome.getChangesAfter( nLastId, 1 ).size( ) );
+        assertEquals( KEY2, VaultChangeLogHome.getChangesAfter( change1.getId( ), 10 ).get( 0 ).getKey( ) );
+        assertEquals( 1, VaultChangeLogHome.getChangesByIds( Arrays.asList( change2.getId( ), change2.getId( ) + 1000 ) ).size( ) );
+
+        // Delete test
+        VaultChangeLogHome.removeBefore( new Timestamp( System.currentTimeMillis( ) + 1000 ) );
+        assertTrue( VaultChangeLogHome.getChangesAfter( nLastId, 10 ).isEmpty( ) );
+    }
+
+}
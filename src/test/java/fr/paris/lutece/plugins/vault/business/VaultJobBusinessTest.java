@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.business;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+/**
+ * This is the business class test for the object VaultJob
+ */
+public class VaultJobBusinessTest extends LuteceTestCase
+{
+    private static final int IDENVIRONNEMENT1 = 1;
+    private static final int IDAPPLICATION1 = 999999;
+    private static final String NODE1 = "Node1";
+    private static final String NODE2 = "Node2";
+    private static final String MESSAGE1 = "Message1";
+
+    /**
+     * test VaultJob
+     */
+    public void testBusiness( )
+    {
+        // Initialize an object
+        VaultJob vaultJob = new VaultJob( );
+        vaultJob.setType( VaultJob.TYPE_REMOVE );
+        vaultJob.setIdEnvironnement( IDENVIRONNEMENT1 );
+        vaultJob.setIdApplication( IDAPPLICATION1 );
+        vaultJob.setStatus( VaultJob.STATUS_PENDING );
+
+        // Create test
+        VaultJobHome.create( vaultJob );
+        Optional<VaultJob> optVaultJobStored = VaultJobHome.findByPrimaryKey( vaultJob.getId( ) );
+        VaultJob vaultJobStored = optVaultJobStored.orElse( new VaultJob( ) );
+        assertEquals( vaultJobStored.getType( ), vaultJob.getType( ) );
+        assertEquals( vaultJobStored.getIdEnvironnement( ), vaultJob.getIdEnvironnement( ) );
+        assertEquals( vaultJobStored.getStatus( ), vaultJob.getStatus( ) );
+        assertTrue( VaultJobHome.getIdPendingJobsList( ).contains( vaultJob.getId( ) ) );
+        assertEquals( 1, VaultJobHome.getActiveJobsListByApplication( IDAPPLICATION1 ).size( ) );
+
+        // Claim test : a job runs on one node only
+        assertTrue( VaultJobHome.claim( vaultJob.getId( ), NODE1 ).isPresent( ) );
+        assertFalse( VaultJobHome.claim( vaultJob.getId( ), NODE2 ).isPresent( ) );
+
+        // Resume test
+        VaultJobHome.resetRunning( NODE1 );
+        vaultJobStored = VaultJobHome.findByPrimaryKey( vaultJob.getId( ) ).orElse( new VaultJob( ) );
+        assertEquals( VaultJob.STATUS_PENDING, vaultJobStored.getStatus( ) );
+
+        // Lease test : a job is taken over by another node once its lease expired
+        assertTrue( VaultJobHome.claim( vaultJob.getId( ), NODE1 ).isPresent( ) );
+        Timestamp dateBeforeRenewal = new Timestamp( System.currentTimeMillis( ) - 1000 );
+        VaultJobHome.renewLeases( NODE1 );
+        VaultJobHome.resetExpired( dateBeforeRenewal, MESSAGE1 );
+        assertFalse( VaultJobHome.claim( vaultJob.getId( ), NODE2 ).isPresent( ) );
+        VaultJob vaultJobNode1 = VaultJobHome.findByPrimaryKey( vaultJob.getId( ) ).orElse( new VaultJob( ) );
+        VaultJobHome.resetExpired( new Timestamp( System.currentTimeMillis( ) + 1000 ), MESSAGE1 );
+        vaultJob = VaultJobHome.claim( vaultJob.getId( ), NODE2 ).orElse( new VaultJob( ) );
+        assertEquals( NODE2, vaultJob.getNode( ) );
+
+        // Ownership test : the node which lost the job can no longer update it
+        vaultJobNode1.setProgress( 50 );
+        assertFalse( VaultJobHome.update( vaultJobNode1 ) );
+        assertEquals( NODE2, VaultJobHome.findByPrimaryKey( vaultJob.getId( ) ).orElse( new VaultJob( ) ).getNode( ) );
+
+        // Update test
+        vaultJob.setStatus( VaultJob.STATUS_DONE );
+        vaultJob.setProgress( 100 );
+        vaultJob.setMessage( MESSAGE1 );
+        assertTrue( VaultJobHome.update( vaultJob ) );
+        vaultJobStored = VaultJobHome.findByPrimaryKey( vaultJob.getId( ) ).orElse( new VaultJob( ) );
+        assertEquals( vaultJobStored.getStatus( ), vaultJob.getStatus( ) );
+        assertEquals( vaultJobStored.getProgress( ), vaultJob.getProgress( ) );
+        assertEquals( vaultJobStored.getMessage( ), vaultJob.getMessage( ) );
+        assertTrue( VaultJobHome.getActiveJobsListByApplication( IDAPPLICATION1 ).isEmpty( ) );
+
+        // Delete test
+        VaultJobHome.removeFinishedBefore( new Timestamp( System.currentTimeMillis( ) + 1000 ) );
+        optVaultJobStored = VaultJobHome.findByPrimaryKey( vaultJob.getId( ) );
+        vaultJobStored = optVaultJobStored.orElse( null );
+        assertNull( vaultJobStored );
+
+    }
+
+    /**
+     * test a job generating a token runs on the node which enqueued it only
+     */
+    public void testTokenJob( )
+    {
+        VaultJob vaultJob = new VaultJob( );
+        vaultJob.setType( VaultJob.TYPE_REGENERATE_TOKEN );
+        vaultJob.setIdEnvironnement( IDENVIRONNEMENT1 );
+        vaultJob.setIdApplication( IDAPPLICATION1 );
+        vaultJob.setStatus( VaultJob.STATUS_PENDING );
+        vaultJob.setNode( NODE1 );
+        VaultJobHome.create( vaultJob );
+
+        // Claim test : another node cannot run it
+        assertTrue( vaultJob.isProducingToken( ) );
+        assertFalse( VaultJobHome.claim( vaultJob.getId( ), NODE2 ).isPresent( ) );
+        assertTrue( VaultJobHome.claim( vaultJob.getId( ), NODE1 ).isPresent( ) );
+
+        // Resume test : the node itself runs it again when it starts again
+        VaultJobHome.resetRunning( NODE1 );
+        assertFalse( VaultJobHome.claim( vaultJob.getId( ), NODE2 ).isPresent( ) );
+        assertTrue( VaultJobHome.claim( vaultJob.getId( ), NODE1 ).isPresent( ) );
+
+        // Lease test : once its lease expired, it is put in error instead of being taken over
+        VaultJobHome.resetExpired( new Timestamp( System.currentTimeMillis( ) + 1000 ), MESSAGE1 );
+        VaultJob vaultJobStored = VaultJobHome.findByPrimaryKey( vaultJob.getId( ) ).orElse( new VaultJob( ) );
+        assertEquals( VaultJob.STATUS_ERROR, vaultJobStored.getStatus( ) );
+        assertEquals( MESSAGE1, vaultJobStored.getMessage( ) );
+        assertFalse( VaultJobHome.claim( vaultJob.getId( ), NODE2 ).isPresent( ) );
+
+        VaultJobHome.removeFinishedBefore( new Timestamp( System.currentTimeMillis( ) + 1000 ) );
+        assertFalse( VaultJobHome.findByPrimaryKey( vaultJob.getId( ) ).isPresent( ) );
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.rs;
+
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * This is the test class for the conditional requests of the properties REST resource
+ */
+public class EnvironnementPropertiesRestTest extends LuteceTestCase
+{
+    /**
+     * test the ETag follows the environnement and its version, and If-None-Match is compared weakly
+     */
+    public void testETag( )
+    {
+        Environnement environnement = new Environnement( );
+        environnement.setId( 12 );
+        String strETag = EnvironnementPropertiesRest.getETag( environnement, 3 );
+        assertEquals( "\"12-3\"", strETag );
+        assertFalse( strETag.equals( EnvironnementPropertiesRest.getETag( environnement, 4 ) ) );
+
+        assertTrue( EnvironnementPropertiesRest.matches( "\"12-3\"", strETag ) );
+        assertTrue( EnvironnementPropertiesRest.matches( "W/\"12-3\"", strETag ) );
+        assertTrue( EnvironnementPropertiesRest.matches( "\"12-2\", \"12-3\"", strETag ) );
+        assertTrue( EnvironnementPropertiesRest.matches( "*", strETag ) );
+        assertFalse( EnvironnementPropertiesRest.matches( "\"12-2\"", strETag ) );
+        assertFalse( EnvironnementPropertiesRest.matches( "12-3", strETag ) );
+        assertFalse( EnvironnementPropertiesRest.matches( null, strETag ) );
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the test class for the bulk executor
+ */
+public class VaultBulkExecutorTest extends LuteceTestCase
+{
+    /**
+     * test results are returned in the order of the keys
+     */
+    public void testRun( ) throws VaultBulkException
+    {
+        List<String> listKeys = new ArrayList<>( );
+        for ( int i = 0; i < 50; i++ )
+        {
+            listKeys.add( "Key" + i );
+        }
+
+        Map<String, String> mapResults = VaultBulkExecutor.run( "Test", listKeys, x -> x.toLowerCase( ) );
+        assertEquals( listKeys, new ArrayList<>( mapResults.keySet( ) ) );
+        assertEquals( "key42", mapResults.get( "Key42" ) );
+    }
+
+    /**
+     * test a bulk operation run from the tasks of another one does not wait for permits held by the outer tasks
+     */
+    public void testNestedRun( ) throws VaultBulkException
+    {
+        List<String> listKeys = new ArrayList<>( );
+        for ( int i = 0; i < 20; i++ )
+        {
+            listKeys.add( "Key" + i );
+        }
+
+        Map<String, Integer> mapResults = VaultBulkExecutor.run( "Outer", listKeys,
+                x -> VaultBulkExecutor.run( "Inner", Arrays.asList( x + "a", x + "b" ), y -> y.length( ) ).size( ) );
+        assertEquals( 20, mapResults.size( ) );
+        assertEquals( Integer.valueOf( 2 ), mapResults.get( "Key19" ) );
+    }
+
+    /**
+     * test failures are aggregated
+     */
+    public void testFailures( )
+    {
+        try
+        {
+            VaultBulkExecutor.run( "Test", Arrays.asList( "Key1", "Key2", "Key3" ), x -> {
+                if ( !"Key2".equals( x ) )
+                {
+                    throw new VaultException( "Error " + x );
+                }
+                return x;
+            } );
+            fail( "VaultBulkException expected" );
+        }
+        catch( VaultBulkException e )
+        {
+            assertEquals( Arrays.asList( "Key1", "Key3" ), new ArrayList<>( e.getFailures( ).keySet( ) ) );
+            assertEquals( "Error Key3", e.getFailures( ).get( "Key3" ).getMessage( ) );
+            assertEquals( 2, e.getSuppressed( ).length );
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Application;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the test class for the notification of the changes of environments, run against the in-process Vault stub
+ */
+public class VaultChangeNotifierTest extends LuteceTestCase
+{
+    private static final String APPLICATION_CODE = "changesapp";
+
+    private VaultStubServer _stub;
+    private Application _application;
+    private Environnement _environnement;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _stub = VaultStubServer.getSharedInstance( );
+        _stub.reset( );
+        VaultService.getInstance( ).getSecretCache( ).clear( );
+
+        _application = new Application( );
+        _application.setId( 1 );
+        _application.setCode( APPLICATION_CODE );
+        _environnement = new Environnement( );
+        _environnement.setId( 700001 );
+        _environnement.setIdapplication( _application.getId( ) );
+        _environnement.setCode( "dev" );
+        _environnement.setPath( EnvironnementUtil.getEnvironmentPath( APPLICATION_CODE, _environnement.getCode( ) ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        _stub.reset( );
+        super.tearDown( );
+    }
+
+    /**
+     * test the subscribers are notified of the writes and of the removal of their environnement only
+     */
+    public void testPublish( ) throws VaultException, InterruptedException
+    {
+        VaultChangeNotifier notifier = VaultChangeNotifier.getInstance( );
+        RecordingListener listener = new RecordingListener( );
+        RecordingListener otherListener = new RecordingListener( );
+        int nSubscribers = notifier.getSubscriberCount( );
+        assertTrue( notifier.subscribe( _environnement.getPath( ), listener ) );
+        assertTrue( notifier.subscribe( _environnement.getPath( ) + "other", otherListener ) );
+        assertEquals( nSubscribers + 2, notifier.getSubscriberCount( ) );
+        try
+        {
+            VaultService.getInstance( ).writeSecret( "Key1", "Value1", _application, _environnement );
+            VaultChangeEvent event = listener.poll( );
+            assertEquals( VaultChangeEvent.TYPE_MODIFIED, event.getType( ) );
+            assertEquals( _stub.getVersion( _environnement.getPath( ) ), event.getVersion( ) );
+            // The cache was invalidated before the event was published
+            assertEquals( event.getVersion( ), VaultService.getInstance( ).getSecretsVersion( _environnement ) );
+
+            VaultService.getInstance( ).updateSecret( "Key1", "Value2", _application, _environnement );
+            assertEquals( event.getVersion( ) + 1, listener.poll( ).getVersion( ) );
+
+            VaultService.getInstance( ).removeEnv( null, APPLICATION_CODE, _environnement );
+            assertEquals( VaultChangeEvent.TYPE_REMOVED, listener.poll( ).getType( ) );
+            assertTrue( otherListener._queueEvents.isEmpty( ) );
+        }
+        finally
+        {
+            notifier.unsubscribe( _environnement.getPath( ), listener );
+            notifier.unsubscribe( _environnement.getPath( ), listener );
+            notifier.unsubscribe( _environnement.getPath( ) + "other", otherListener );
+        }
+        assertEquals( nSubscribers, notifier.getSubscriberCount( ) );
+    }
+
+    /**
+     * Records the events received
+     */
+    private static final class RecordingListener implements VaultChangeListener
+    {
+        private final BlockingQueue<VaultChangeEvent> _queueEvents = new LinkedBlockingQueue<>( );
+
+        @Override
+        public void onChange( VaultChangeEvent event )
+        {
+            _queueEvents.add( event );
+        }
+
+        @Override
+        public void onHeartbeat( )
+        {
+            // Nothing to keep alive
+        }
+
+        private VaultChangeEvent poll( ) throws InterruptedException
+        {
+            VaultChangeEvent event = _queueEvents.poll( 5, TimeUnit.SECONDS );
+            assertNotNull( "event expected", event );
+            return event;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the test class for the circuit breaker
+ */
+public class VaultCircuitBreakerTest extends LuteceTestCase
+{
+    private static final int OPEN_DURATION = 50;
+
+    /**
+     * test the circuit opens after consecutive failures, refuses the calls, and closes once a probe succeeds
+     */
+    public void testOpenAndProbe( ) throws Exception
+    {
+        VaultCircuitBreaker circuitBreaker = new VaultCircuitBreaker( 3, OPEN_DURATION, 10, 0 );
+        AtomicInteger nCalls = new AtomicInteger( );
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertFails( circuitBreaker, nCalls, 503 );
+        }
+        assertEquals( VaultCircuitBreaker.State.OPEN, circuitBreaker.getState( ) );
+        assertEquals( 1, circuitBreaker.getOpenedCount( ) );
+
+        // Refused without calling Vault
+        try
+        {
+            circuitBreaker.call( ( ) -> nCalls.incrementAndGet( ) );
+            fail( "VaultUnavailableException expected" );
+        }
+        catch( VaultUnavailableException e )
+        {
+            assertEquals( 3, nCalls.get( ) );
+            assertEquals( 1, circuitBreaker.getRejectedOpenCount( ) );
+        }
+
+        // A failing probe opens the circuit again
+        Thread.sleep( OPEN_DURATION + 10 );
+        assertEquals( VaultCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState( ) );
+        assertFails( circuitBreaker, nCalls, 0 );
+        assertEquals( VaultCircuitBreaker.State.OPEN, circuitBreaker.getState( ) );
+        assertEquals( 2, circuitBreaker.getOpenedCount( ) );
+
+        // A successful probe closes it
+        Thread.sleep( OPEN_DURATION + 10 );
+        assertEquals( Integer.valueOf( 5 ), circuitBreaker.call( ( ) -> nCalls.incrementAndGet( ) ) );
+        assertEquals( VaultCircuitBreaker.State.CLOSED, circuitBreaker.getState( ) );
+    }
+
+    /**
+     * test the errors of a healthy Vault, such as a missing secret, do not open the circuit
+     */
+    public void testClientErrors( )
+    {
+        VaultCircuitBreaker circuitBreaker = new VaultCircuitBreaker( 3, OPEN_DURATION, 10, 0 );
+        AtomicInteger nCalls = new AtomicInteger( );
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertFails( circuitBreaker, nCalls, 404 );
+        }
+        assertEquals( VaultCircuitBreaker.State.CLOSED, circuitBreaker.getState( ) );
+
+        // A success resets the consecutive failures
+        assertFails( circuitBreaker, nCalls, 503 );
+        assertFails( circuitBreaker, nCalls, 503 );
+        assertFails( circuitBreaker, nCalls, 400 );
+        assertFails( circuitBreaker, nCalls, 503 );
+        assertEquals( VaultCircuitBreaker.State.CLOSED, circuitBreaker.getState( ) );
+    }
+
+    /**
+     * test a call is refused when the bulkhead is full
+     */
+    public void testBulkhead( ) throws Exception
+    {
+        VaultCircuitBreaker circuitBreaker = new VaultCircuitBreaker( 3, OPEN_DURATION, 1, 10 );
+        CountDownLatch started = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newSingleThreadExecutor( );
+        try
+        {
+            Future<Boolean> future = executor.submit( ( ) -> circuitBreaker.call( ( ) -> {
+                started.countDown( );
+                try
+                {
+                    return release.await( 5, TimeUnit.SECONDS );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread( ).interrupt( );
+                    return false;
+                }
+            } ) );
+            assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+            assertEquals( 1, circuitBreaker.getCallsInFlight( ) );
+
+            try
+            {
+                circuitBreaker.call( ( ) -> true );
+                fail( "VaultUnavailableException expected" );
+            }
+            catch( VaultUnavailableException e )
+            {
+                assertEquals( 1, circuitBreaker.getRejectedBulkheadCount( ) );
+            }
+
+            release.countDown( );
+            assertTrue( future.get( ) );
+            assertEquals( 0, circuitBreaker.getCallsInFlight( ) );
+            assertTrue( circuitBreaker.call( ( ) -> true ) );
+            assertEquals( VaultCircuitBreaker.State.CLOSED, circuitBreaker.getState( ) );
+        }
+        finally
+        {
+            executor.shutdownNow( );
+        }
+    }
+
+    /**
+     * test the state is written with the metrics
+     */
+    public void testMetrics( )
+    {
+        VaultCircuitBreaker circuitBreaker = new VaultCircuitBreaker( 1, OPEN_DURATION, 10, 0 );
+        assertTrue( VaultMetrics.scrape( circuitBreaker ).contains( "vault_circuit_breaker_state{state=\"closed\"} 1" ) );
+        assertFails( circuitBreaker, new AtomicInteger( ), 503 );
+        String strMetrics = VaultMetrics.scrape( circuitBreaker );
+        assertTrue( strMetrics.contains( "vault_circuit_breaker_state{state=\"open\"} 1" ) );
+        assertTrue( strMetrics.contains( "vault_circuit_breaker_opened_total 1" ) );
+    }
+
+    private static void assertFails( VaultCircuitBreaker circuitBreaker, AtomicInteger nCalls, int nStatus )
+    {
+        try
+        {
+            circuitBreaker.call( ( ) -> {
+                nCalls.incrementAndGet( );
+                throw new VaultException( "Vault responded with HTTP status code: " + nStatus, nStatus );
+            } );
+            fail( "VaultException expected" );
+        }
+        catch( VaultException e )
+        {
+            assertEquals( nStatus, e.getHttpStatusCode( ) );
+        }
+    }
+}
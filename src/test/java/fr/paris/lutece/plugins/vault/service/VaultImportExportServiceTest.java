@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Application;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This is the test class for the import and export of secrets, run against the in-process Vault stub
+ */
+public class VaultImportExportServiceTest extends LuteceTestCase
+{
+    private static final String APPLICATION_CODE = "importapp";
+    private static final String ENV_DEV = "dev";
+    private static final String ENV_PROD = "prod";
+
+    private VaultStubServer _stub;
+    private Application _application;
+    private List<Environnement> _listEnvironnements;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _stub = VaultStubServer.getSharedInstance( );
+        _stub.reset( );
+        VaultService.getInstance( ).getSecretCache( ).clear( );
+
+        _application = new Application( );
+        _application.setId( 1 );
+        _application.setCode( APPLICATION_CODE );
+        _listEnvironnements = Arrays.asList( createEnvironnement( 800001, ENV_DEV ), createEnvironnement( 800002, ENV_PROD ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        _stub.reset( );
+        super.tearDown( );
+    }
+
+    /**
+     * test the files of an environnement and of an application are read in each format
+     */
+    public void testRead( ) throws IOException
+    {
+        Map<String, Map<String, String>> mapImported = VaultImportExportService.readEnvironnement(
+                stream( "{\"url\": \"jdbc:h2\", \"pool\": {\"size\": 10, \"enabled\": true}}" ), VaultSecretsFormat.JSON, ENV_DEV );
+        Map<String, String> mapSecrets = mapImported.get( ENV_DEV );
+        assertEquals( "jdbc:h2", mapSecrets.get( "url" ) );
+        assertEquals( "10", mapSecrets.get( "pool.size" ) );
+        assertEquals( "true", mapSecrets.get( "pool.enabled" ) );
+
+        mapImported = VaultImportExportService.readApplication( stream( "dev:\n  url: jdbc:h2\nprod:\n  url: jdbc:postgresql\n  pool:\n    size: 20\n" ),
+                VaultSecretsFormat.YAML );
+        assertEquals( "jdbc:h2", mapImported.get( ENV_DEV ).get( "url" ) );
+        assertEquals( "20", mapImported.get( ENV_PROD ).get( "pool.size" ) );
+
+        mapImported = VaultImportExportService.readApplication( stream( "dev.url=jdbc:h2\nprod.pool.size=20\n" ), VaultSecretsFormat.PROPERTIES );
+        assertEquals( "jdbc:h2", mapImported.get( ENV_DEV ).get( "url" ) );
+        assertEquals( "20", mapImported.get( ENV_PROD ).get( "pool.size" ) );
+
+        try
+        {
+            VaultImportExportService.readEnvironnement( stream( "{\"hosts\": [\"a\", \"b\"]}" ), VaultSecretsFormat.JSON, ENV_DEV );
+            fail( "IllegalArgumentException expected" );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // Arrays are not supported
+        }
+        try
+        {
+            VaultImportExportService.readApplication( stream( "{\"url\": \"jdbc:h2\"}" ), VaultSecretsFormat.JSON );
+            fail( "IllegalArgumentException expected" );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // Key outside an environnement
+        }
+        assertEquals( VaultSecretsFormat.YAML, VaultSecretsFormat.fromFileName( "secrets.yml" ) );
+    }
+
+    /**
+     * test the preview writes nothing, and the import writes each environnement once
+     */
+    public void testPreviewAndImport( ) throws VaultException
+    {
+        VaultService.getInstance( ).writeSecret( "kept", "1", _application, _listEnvironnements.get( 0 ) );
+        VaultService.getInstance( ).writeSecret( "changed", "1", _application, _listEnvironnements.get( 0 ) );
+        long lVersion = _stub.getVersion( _listEnvironnements.get( 0 ).getPath( ) );
+
+        Map<String, Map<String, String>> mapImported = new TreeMap<>( );
+        mapImported.put( ENV_DEV, secrets( "changed", "2", "added", "3" ) );
+        mapImported.put( ENV_PROD, secrets( "added", "4" ) );
+        assertTrue( VaultImportExportService.getUnknownEnvironnements( _listEnvironnements, mapImported ).isEmpty( ) );
+        assertEquals( Collections.singleton( "qa" ),
+                VaultImportExportService.getUnknownEnvironnements( _listEnvironnements, Collections.singletonMap( "qa", secrets( "a", "b" ) ) ) );
+
+        List<VaultSecretsDiff> listDiffs = VaultImportExportService.preview( _listEnvironnements, mapImported, true );
+        VaultSecretsDiff diff = listDiffs.get( 0 );
+        assertEquals( ENV_DEV, diff.getEnvironnementCode( ) );
+        assertEquals( Collections.singleton( "added" ), diff.getAdded( ) );
+        assertEquals( Collections.singleton( "changed" ), diff.getModified( ) );
+        assertEquals( Collections.singleton( "kept" ), diff.getRemoved( ) );
+        assertEquals( lVersion, _stub.getVersion( _listEnvironnements.get( 0 ).getPath( ) ) );
+
+        VaultImportExportService.importSecrets( _application, _listEnvironnements, mapImported, false );
+        assertEquals( lVersion + 1, _stub.getVersion( _listEnvironnements.get( 0 ).getPath( ) ) );
+        Map<String, Object> mapStored = _stub.getSecrets( _listEnvironnements.get( 0 ).getPath( ) );
+        assertEquals( "1", mapStored.get( "kept" ) );
+        assertEquals( "2", mapStored.get( "changed" ) );
+        assertEquals( "3", mapStored.get( "added" ) );
+        assertEquals( "4", _stub.getSecrets( _listEnvironnements.get( 1 ).getPath( ) ).get( "added" ) );
+
+        // Importing the same file again changes nothing
+        listDiffs = VaultImportExportService.importSecrets( _application, _listEnvironnements, mapImported, false );
+        assertFalse( listDiffs.get( 0 ).hasChanges( ) );
+        assertEquals( lVersion + 1, _stub.getVersion( _listEnvironnements.get( 0 ).getPath( ) ) );
+
+        VaultImportExportService.importSecrets( _application, _listEnvironnements, mapImported, true );
+        assertFalse( _stub.getSecrets( _listEnvironnements.get( 0 ).getPath( ) ).containsKey( "kept" ) );
+    }
+
+    /**
+     * test an environment modified since the preview is not imported, the others being written
+     */
+    public void testImportAfterConcurrentChange( ) throws VaultException
+    {
+        VaultService.getInstance( ).writeSecret( "url", "jdbc:h2", _application, _listEnvironnements.get( 0 ) );
+        VaultService.getInstance( ).writeSecret( "url", "jdbc:postgresql", _application, _listEnvironnements.get( 1 ) );
+
+        Map<String, Map<String, String>> mapImported = new TreeMap<>( );
+        mapImported.put( ENV_DEV, secrets( "url", "jdbc:hsqldb" ) );
+        mapImported.put( ENV_PROD, secrets( "url", "jdbc:mysql" ) );
+        List<VaultSecretsDiff> listDiffs = VaultImportExportService.preview( _listEnvironnements, mapImported, true );
+        assertEquals( _stub.getVersion( _listEnvironnements.get( 0 ).getPath( ) ), listDiffs.get( 0 ).getVersion( ) );
+
+        // Written by someone else after the preview
+        VaultService.getInstance( ).writeSecret( "pool.size", "10", _application, _listEnvironnements.get( 0 ) );
+
+        try
+        {
+            VaultImportExportService.importSecrets( _application, _listEnvironnements, mapImported, true, listDiffs );
+            fail( "VaultBulkException expected" );
+        }
+        catch( VaultBulkException e )
+        {
+            assertEquals( Collections.singleton( ENV_DEV ), e.getFailures( ).keySet( ) );
+            assertTrue( e.getFailures( ).get( ENV_DEV ) instanceof VaultConflictException );
+        }
+        assertEquals( "jdbc:h2", _stub.getSecrets( _listEnvironnements.get( 0 ).getPath( ) ).get( "url" ) );
+        assertEquals( "10", _stub.getSecrets( _listEnvironnements.get( 0 ).getPath( ) ).get( "pool.size" ) );
+        assertEquals( "jdbc:mysql", _stub.getSecrets( _listEnvironnements.get( 1 ).getPath( ) ).get( "url" ) );
+
+        // Imported once previewed again
+        listDiffs = VaultImportExportService.preview( _listEnvironnements, mapImported, true );
+        assertEquals( Collections.singleton( "pool.size" ), listDiffs.get( 0 ).getRemoved( ) );
+        VaultImportExportService.importSecrets( _application, _listEnvironnements, mapImported, true, listDiffs );
+        assertEquals( secrets( "url", "jdbc:hsqldb" ), _stub.getSecrets( _listEnvironnements.get( 0 ).getPath( ) ) );
+    }
+
+    /**
+     * test an exported application is imported back identically in each format
+     */
+    public void testExportRoundTrip( ) throws IOException, VaultException
+    {
+        Map<String, String> mapDev = secrets( "url", "jdbc:h2", "special key", "a=b: #!\\ \n\tend", "accents", "été" );
+        Map<String, String> mapProd = secrets( "url", "jdbc:postgresql" );
+        Map<String, Map<String, String>> mapImported = new TreeMap<>( );
+        mapImported.put( ENV_DEV, mapDev );
+        mapImported.put( ENV_PROD, mapProd );
+        VaultImportExportService.importSecrets( _application, _listEnvironnements, mapImported, false );
+
+        for ( VaultSecretsFormat format : VaultSecretsFormat.values( ) )
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream( );
+            VaultImportExportService.exportApplication( _listEnvironnements, format, outputStream );
+            Map<String, Map<String, String>> mapExported = VaultImportExportService
+                    .readApplication( new ByteArrayInputStream( outputStream.toByteArray( ) ), format );
+            assertEquals( format.name( ), mapImported, mapExported );
+
+            outputStream = new ByteArrayOutputStream( );
+            VaultImportExportService.exportEnvironnement( _listEnvironnements.get( 0 ), format, outputStream );
+            assertEquals( format.name( ), mapDev,
+                    VaultImportExportService.readEnvironnement( new ByteArrayInputStream( outputStream.toByteArray( ) ), format, ENV_DEV ).get( ENV_DEV ) );
+        }
+    }
+
+    private Environnement createEnvironnement( int nId, String strCode )
+    {
+        Environnement environnement = new Environnement( );
+        environnement.setId( nId );
+        environnement.setIdapplication( _application.getId( ) );
+        environnement.setApplicationCode( APPLICATION_CODE );
+        environnement.setCode( strCode );
+        environnement.setPath( EnvironnementUtil.getEnvironmentPath( APPLICATION_CODE, strCode ) );
+        return environnement;
+    }
+
+    private static Map<String, String> secrets( String... keysAndValues )
+    {
+        Map<String, String> mapSecrets = new TreeMap<>( );
+        for ( int i = 0; i < keysAndValues.length; i += 2 )
+        {
+            mapSecrets.put( keysAndValues [i], keysAndValues [i + 1] );
+        }
+        return mapSecrets;
+    }
+
+    private static InputStream stream( String strContent )
+    {
+        return new ByteArrayInputStream( strContent.getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is the test class for the invalidation of the in-memory state of the other nodes
+ */
+public class VaultInvalidationServiceTest extends LuteceTestCase
+{
+    private static final String PATH = "/secret/invalidationapp/dev";
+    private static final String APPLICATION_CODE = "invalidationapp";
+    private static final String ENVIRONNEMENT_CODE = "dev";
+
+    private VaultStubServer _stub;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _stub = VaultStubServer.getSharedInstance( );
+        _stub.reset( );
+        VaultPolicyService.getInstance( ).clear( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        _stub.reset( );
+        super.tearDown( );
+    }
+
+    /**
+     * test an invalidation received from another node forgets the cached secrets and the deployed policy
+     */
+    public void testApply( ) throws VaultException
+    {
+        VaultInvalidationService service = VaultInvalidationService.getInstance( );
+        long lReceivedCount = service.getReceivedCount( );
+
+        VaultSecretCache cache = VaultService.getInstance( ).getSecretCache( );
+        cache.put( PATH, Collections.singletonMap( "key", "value" ), 1, cache.getInvalidationStamp( ) );
+        service.apply( new VaultInvalidation( VaultInvalidation.TYPE_SECRETS_MODIFIED, PATH, 2 ) );
+        assertNull( cache.get( PATH ) );
+
+        VaultPolicyService policyService = VaultPolicyService.getInstance( );
+        Environnement environnement = new Environnement( );
+        environnement.setCode( ENVIRONNEMENT_CODE );
+        assertTrue( policyService.deployPolicy( APPLICATION_CODE, environnement ) );
+        assertEquals( 1, policyService.getDeployedCount( ) );
+        service.apply( new VaultInvalidation( VaultInvalidation.TYPE_POLICY, VaultPolicyService.getPolicyName( APPLICATION_CODE, ENVIRONNEMENT_CODE ),
+                VaultSecretCache.VERSION_UNKNOWN ) );
+        assertEquals( 0, policyService.getDeployedCount( ) );
+        // Written again even though unchanged, since another node removed it
+        assertTrue( policyService.deployPolicy( APPLICATION_CODE, environnement ) );
+
+        assertEquals( lReceivedCount + 2, service.getReceivedCount( ) );
+    }
+
+    /**
+     * test the changes published on the database bus are read by the other nodes only, once
+     */
+    public void testDatabaseBus( )
+    {
+        VaultDatabaseInvalidationBus bus1 = new VaultDatabaseInvalidationBus( 0, 3600000 );
+        VaultDatabaseInvalidationBus bus2 = new VaultDatabaseInvalidationBus( 0, 3600000 );
+        List<VaultInvalidation> listReceived1 = new ArrayList<>( );
+        List<VaultInvalidation> listReceived2 = new ArrayList<>( );
+        bus1.start( listReceived1::add );
+        bus2.start( listReceived2::add );
+
+        bus1.publish( new VaultInvalidation( VaultInvalidation.TYPE_SECRETS_MODIFIED, PATH, 3 ) );
+        assertEquals( 0, bus1.poll( ) );
+        assertTrue( listReceived1.isEmpty( ) );
+        assertEquals( 1, bus2.poll( ) );
+        assertEquals( PATH, listReceived2.get( 0 ).getKey( ) );
+        assertEquals( VaultInvalidation.TYPE_SECRETS_MODIFIED, listReceived2.get( 0 ).getType( ) );
+        assertEquals( 3, listReceived2.get( 0 ).getVersion( ) );
+
+        // Read once
+        assertEquals( 0, bus2.poll( ) );
+
+        bus1.shutdown( );
+        bus2.shutdown( );
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * This is the test class for the Vault metrics
+ */
+public class VaultMetricsTest extends LuteceTestCase
+{
+    private static final String APP_CODE = "app1";
+
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        VaultMetrics.reset( );
+    }
+
+    /**
+     * test the count, errors and calls in flight
+     */
+    public void testScrape( )
+    {
+        VaultMetrics.start( VaultMetrics.OPERATION_WRITE_SECRET, APP_CODE ).close( );
+
+        VaultMetrics.Sample sample = VaultMetrics.start( VaultMetrics.OPERATION_WRITE_SECRET, APP_CODE );
+        sample.error( );
+        sample.close( );
+        sample.close( );
+
+        VaultMetrics.Sample sampleInFlight = VaultMetrics.start( VaultMetrics.OPERATION_REMOVE_POLICY, APP_CODE );
+
+        String strMetrics = VaultMetrics.scrape( );
+        String strTags = "{operation=\"writeSecret\",application=\"app1\"}";
+        assertTrue( strMetrics.contains( "vault_request_seconds_count" + strTags + " 2\n" ) );
+        assertTrue( strMetrics.contains( "vault_request_seconds_bucket{operation=\"writeSecret\",application=\"app1\",le=\"+Inf\"} 2\n" ) );
+        assertTrue( strMetrics.contains( "vault_request_errors_total" + strTags + " 1\n" ) );
+        assertTrue( strMetrics.contains( "vault_requests_in_flight" + strTags + " 0\n" ) );
+        assertTrue( strMetrics.contains( "vault_requests_in_flight{operation=\"removePolicy\",application=\"app1\"} 1\n" ) );
+        assertTrue( strMetrics.contains( "# TYPE vault_request_seconds histogram\n" ) );
+
+        sampleInFlight.close( );
+        assertTrue( VaultMetrics.scrape( ).contains( "vault_requests_in_flight{operation=\"removePolicy\",application=\"app1\"} 0\n" ) );
+    }
+
+    /**
+     * test the escaping of the tag values
+     */
+    public void testEscape( )
+    {
+        VaultMetrics.start( VaultMetrics.OPERATION_CREATE_POLICY, "a\"b\\c" ).close( );
+        VaultMetrics.start( VaultMetrics.OPERATION_CREATE_POLICY, null ).close( );
+
+        String strMetrics = VaultMetrics.scrape( );
+        assertTrue( strMetrics.contains( "application=\"a\\\"b\\\\c\"" ) );
+        assertTrue( strMetrics.contains( "vault_request_seconds_count{operation=\"createPolicy\",application=\"\"} 1\n" ) );
+    }
+
+    /**
+     * test the counters of the secret cache
+     */
+    public void testScrapeCache( )
+    {
+        VaultSecretCache cache = new VaultSecretCache( 60000, 10, 1000 );
+        cache.get( "/secret/app/env1" );
+
+        String strMetrics = VaultMetrics.scrape( cache );
+        assertTrue( strMetrics.contains( "vault_cache_misses_total 1\n" ) );
+        assertTrue( strMetrics.contains( "vault_cache_hits_total 0\n" ) );
+        assertTrue( strMetrics.contains( "vault_cache_entries 0\n" ) );
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.rs.VaultAPI;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the test class for the rendering and deployment of the policies, run against the in-process Vault stub
+ */
+public class VaultPolicyServiceTest extends LuteceTestCase
+{
+    private static final String APPLICATION_CODE = "policyapp";
+    private static final String ENVIRONNEMENT_CODE = "dev";
+
+    private VaultStubServer _stub;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _stub = VaultStubServer.getSharedInstance( );
+        _stub.reset( );
+        VaultPolicyService.getInstance( ).clear( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        _stub.reset( );
+        super.tearDown( );
+    }
+
+    /**
+     * test the compiled template renders its variables, and refuses a missing value or an unclosed variable
+     */
+    public void testTemplate( )
+    {
+        VaultPolicyTemplate template = new VaultPolicyTemplate( "path \"${a}/${b}\" ${a}" );
+        assertEquals( Arrays.asList( "a", "b", "a" ), template.getVariables( ) );
+        Map<String, String> mapValues = new HashMap<>( );
+        mapValues.put( "a", "x" );
+        mapValues.put( "b", "yy" );
+        assertEquals( "path \"x/yy\" x", template.render( mapValues ) );
+
+        mapValues.remove( "b" );
+        try
+        {
+            template.render( mapValues );
+            fail( "IllegalArgumentException expected" );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // expected
+        }
+        try
+        {
+            new VaultPolicyTemplate( "path \"${a\"" );
+            fail( "IllegalArgumentException expected" );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // expected
+        }
+
+        String strPolicy = VaultPolicyService.renderPolicy( APPLICATION_CODE, ENVIRONNEMENT_CODE );
+        assertTrue( strPolicy.contains( "path \"secret/data/policyapp/dev\"" ) );
+        assertTrue( strPolicy.contains( "path \"secret/metadata/policyapp/dev/*\"" ) );
+        assertFalse( strPolicy.contains( "${" ) );
+    }
+
+    /**
+     * test an unchanged policy is written once, and written again once removed
+     */
+    public void testDeployPolicy( ) throws VaultException
+    {
+        VaultPolicyService service = VaultPolicyService.getInstance( );
+        Environnement environnement = new Environnement( );
+        environnement.setCode( ENVIRONNEMENT_CODE );
+        String strName = VaultPolicyService.getPolicyName( APPLICATION_CODE, ENVIRONNEMENT_CODE );
+
+        assertTrue( service.deployPolicy( APPLICATION_CODE, environnement ) );
+        assertEquals( VaultPolicyService.renderPolicy( APPLICATION_CODE, ENVIRONNEMENT_CODE ), _stub.getPolicies( ).get( strName ) );
+        assertEquals( _stub.getPolicies( ).get( strName ), VaultAPI.readPolicy( APPLICATION_CODE, strName ) );
+
+        long lRequestCount = _stub.getRequestCount( );
+        assertFalse( service.deployPolicy( APPLICATION_CODE, environnement ) );
+        assertEquals( lRequestCount, _stub.getRequestCount( ) );
+        assertEquals( 1, service.getDeployedCount( ) );
+
+        service.removePolicy( APPLICATION_CODE, environnement );
+        assertNull( VaultAPI.readPolicy( APPLICATION_CODE, strName ) );
+        assertEquals( 0, service.getDeployedCount( ) );
+        assertTrue( service.deployPolicy( APPLICATION_CODE, environnement ) );
+        assertTrue( _stub.getPolicies( ).containsKey( strName ) );
+    }
+}
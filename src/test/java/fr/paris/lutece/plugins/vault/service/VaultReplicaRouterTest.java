@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * This is the test class for the replica router
+ */
+public class VaultReplicaRouterTest extends LuteceTestCase
+{
+    private static final String REPLICA_1 = "http://127.0.0.1:18201";
+    private static final String REPLICA_2 = "http://127.0.0.1:18202";
+    private static final String PATH = "/secret/app/env";
+
+    /**
+     * test the reads go to the healthy replica with the lowest latency, and to the primary when no replica is healthy
+     */
+    public void testSelection( )
+    {
+        VaultReplicaRouter router = new VaultReplicaRouter( Arrays.asList( REPLICA_1, REPLICA_2 ), 0.5, 0 );
+        router.recordSuccess( REPLICA_1, 10000000 );
+        router.recordSuccess( REPLICA_2, 2000000 );
+        assertEquals( REPLICA_2, router.getReadAdress( PATH ) );
+
+        // The average follows the latency of the last calls
+        router.recordSuccess( REPLICA_2, 30000000 );
+        assertEquals( 16000000, router.getLatencyNanos( REPLICA_2 ), 1 );
+        assertEquals( REPLICA_1, router.getReadAdress( PATH ) );
+
+        // The errors of a healthy Vault do not leave a replica aside
+        router.recordFailure( REPLICA_1, new VaultException( "permission denied", 403 ) );
+        assertEquals( REPLICA_1, router.getReadAdress( PATH ) );
+        router.recordFailure( REPLICA_1, new VaultException( "Vault is sealed", 503 ) );
+        assertFalse( router.isHealthy( REPLICA_1 ) );
+        assertEquals( REPLICA_2, router.getReadAdress( PATH ) );
+        router.recordFailure( REPLICA_2, new VaultException( "timeout" ) );
+        assertNull( router.getReadAdress( PATH ) );
+
+        assertEquals( 2, router.getReadCount( REPLICA_1 ) );
+        assertEquals( 2, router.getReadCount( REPLICA_2 ) );
+        assertEquals( 1, router.getPrimaryReadCount( ) );
+
+        // Without replicas, everything is read from the primary
+        VaultReplicaRouter primaryOnly = new VaultReplicaRouter( Collections.emptyList( ), 0.5, 1000 );
+        primaryOnly.markWritten( PATH );
+        assertNull( primaryOnly.getReadAdress( PATH ) );
+        assertEquals( 0, primaryOnly.getPrimaryReadCount( ) );
+    }
+
+    /**
+     * test an environment just written is read from the primary until the replicas have caught up
+     */
+    public void testReadAfterWrite( ) throws InterruptedException
+    {
+        VaultReplicaRouter router = new VaultReplicaRouter( Collections.singletonList( REPLICA_1 ), 0.5, 50 );
+        router.markWritten( PATH );
+        assertNull( router.getReadAdress( PATH ) );
+        assertEquals( REPLICA_1, router.getReadAdress( PATH + "2" ) );
+
+        Thread.sleep( 60 );
+        assertEquals( REPLICA_1, router.getReadAdress( PATH ) );
+    }
+
+    /**
+     * test the health check puts back in service the replicas healthy again, and leaves aside the others
+     */
+    public void testHealthCheck( ) throws IOException
+    {
+        VaultStubServer replica1 = new VaultStubServer( ).start( 0 );
+        VaultStubServer replica2 = new VaultStubServer( ).start( 0 );
+        try
+        {
+            VaultReplicaRouter router = new VaultReplicaRouter( Arrays.asList( replica1.getAddress( ), replica2.getAddress( ) ), 0.5, 0 );
+            router.recordFailure( replica1.getAddress( ), new VaultException( "timeout" ) );
+            router.recordFailure( replica2.getAddress( ), new VaultException( "timeout" ) );
+            assertNull( router.getReadAdress( PATH ) );
+
+            assertEquals( 2, router.checkHealth( ) );
+            assertTrue( router.isHealthy( replica1.getAddress( ) ) );
+            assertTrue( router.getLatencyNanos( replica1.getAddress( ) ) > 0 );
+            assertNotNull( router.getReadAdress( PATH ) );
+
+            // A sealed replica
+            replica1.failNext( 1, 503 );
+            assertEquals( 1, router.checkHealth( ) );
+            assertFalse( router.isHealthy( replica1.getAddress( ) ) );
+            assertEquals( replica2.getAddress( ), router.getReadAdress( PATH ) );
+
+            replica2.stop( );
+            assertEquals( 1, router.checkHealth( ) );
+            assertEquals( replica1.getAddress( ), router.getReadAdress( PATH ) );
+        }
+        finally
+        {
+            replica1.stop( );
+            replica2.stop( );
+        }
+    }
+}
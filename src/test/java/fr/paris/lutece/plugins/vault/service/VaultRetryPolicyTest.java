@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.net.ConnectException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the test class for the retry policy
+ */
+public class VaultRetryPolicyTest extends LuteceTestCase
+{
+    /**
+     * test an idempotent call is retried on transient failures, up to the maximum number of attempts
+     */
+    public void testRetry( ) throws VaultException
+    {
+        VaultRetryPolicy retryPolicy = new VaultRetryPolicy( 3, 1, 5 );
+        AtomicInteger nAttempts = new AtomicInteger( );
+        assertEquals( "ok", retryPolicy.call( VaultMetrics.OPERATION_READ_SECRETS, ( ) -> {
+            if ( nAttempts.incrementAndGet( ) < 3 )
+            {
+                throw new VaultException( "Vault responded with HTTP status code: 500", 500 );
+            }
+            return "ok";
+        } ) );
+        assertEquals( 3, nAttempts.get( ) );
+        assertEquals( 2, retryPolicy.getRetryCount( ) );
+
+        nAttempts.set( 0 );
+        assertFails( retryPolicy, VaultMetrics.OPERATION_READ_SECRETS, nAttempts, new VaultException( "timeout" ) );
+        assertEquals( 3, nAttempts.get( ) );
+
+        // The errors of a healthy Vault are not retried
+        nAttempts.set( 0 );
+        assertFails( retryPolicy, VaultMetrics.OPERATION_READ_SECRETS, nAttempts, new VaultException( "permission denied", 403 ) );
+        assertEquals( 1, nAttempts.get( ) );
+
+        // Nor the calls refused by the circuit breaker
+        nAttempts.set( 0 );
+        assertFails( retryPolicy, VaultMetrics.OPERATION_READ_SECRETS, nAttempts, new VaultUnavailableException( "open" ) );
+        assertEquals( 1, nAttempts.get( ) );
+    }
+
+    /**
+     * test a call which must not be applied twice is only retried when Vault did not process it
+     */
+    public void testNotIdempotent( )
+    {
+        VaultRetryPolicy retryPolicy = new VaultRetryPolicy( 3, 1, 5 );
+        AtomicInteger nAttempts = new AtomicInteger( );
+        assertFails( retryPolicy, VaultMetrics.OPERATION_CREATE_TOKEN, nAttempts, new VaultException( "Vault responded with HTTP status code: 500", 500 ) );
+        assertEquals( 1, nAttempts.get( ) );
+
+        nAttempts.set( 0 );
+        assertFails( retryPolicy, VaultMetrics.OPERATION_CREATE_TOKEN, nAttempts, new VaultException( "timeout" ) );
+        assertEquals( 1, nAttempts.get( ) );
+
+        nAttempts.set( 0 );
+        assertFails( retryPolicy, VaultMetrics.OPERATION_CREATE_TOKEN, nAttempts, new VaultException( "Vault is sealed", 503 ) );
+        assertEquals( 3, nAttempts.get( ) );
+
+        nAttempts.set( 0 );
+        assertFails( retryPolicy, VaultMetrics.OPERATION_CREATE_TOKEN, nAttempts, new VaultException( new ConnectException( "Connection refused" ) ) );
+        assertEquals( 3, nAttempts.get( ) );
+    }
+
+    /**
+     * test the backoff is random, and bounded by the exponential cap
+     */
+    public void testBackoff( )
+    {
+        VaultRetryPolicy retryPolicy = new VaultRetryPolicy( 10, 100, 1000 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertTrue( retryPolicy.getBackoff( 1 ) <= 100 );
+            assertTrue( retryPolicy.getBackoff( 3 ) <= 400 );
+            long lBackoff = retryPolicy.getBackoff( 40 );
+            assertTrue( lBackoff >= 0 && lBackoff <= 1000 );
+        }
+        assertEquals( 0, new VaultRetryPolicy( 3, 0, 0 ).getBackoff( 2 ) );
+    }
+
+    private static void assertFails( VaultRetryPolicy retryPolicy, String strOperation, AtomicInteger nAttempts, VaultException exception )
+    {
+        try
+        {
+            retryPolicy.call( strOperation, ( ) -> {
+                nAttempts.incrementAndGet( );
+                throw exception;
+            } );
+            fail( "VaultException expected" );
+        }
+        catch( VaultException e )
+        {
+            assertSame( exception, e );
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the test class for the secret cache
+ */
+public class VaultSecretCacheTest extends LuteceTestCase
+{
+    private static final String PATH1 = "/secret/app/env1";
+    private static final String PATH2 = "/secret/app/env2";
+    private static final String PATH3 = "/secret/app/env3";
+
+    /**
+     * test get, put and invalidate
+     */
+    public void testReadThrough( )
+    {
+        VaultSecretCache cache = new VaultSecretCache( 60000, 10, 1000 );
+        assertNull( cache.get( PATH1 ) );
+
+        Map<String, String> mapSecrets = secrets( "Key1", "Value1" );
+        cache.put( PATH1, mapSecrets );
+        mapSecrets.put( "Key1", "Changed" );
+
+        Map<String, String> mapCached = cache.get( PATH1 );
+        assertEquals( "Value1", mapCached.get( "Key1" ) );
+        mapCached.put( "Key2", "Value2" );
+        assertFalse( cache.get( PATH1 ).containsKey( "Key2" ) );
+        assertEquals( 2, cache.getHitCount( ) );
+        assertEquals( 1, cache.getMissCount( ) );
+
+        cache.invalidate( PATH1 );
+        assertNull( cache.get( PATH1 ) );
+        assertEquals( 0, cache.getSize( ) );
+    }
+
+    /**
+     * test TTL, entry and size eviction
+     */
+    public void testEviction( ) throws InterruptedException
+    {
+        VaultSecretCache cache = new VaultSecretCache( 60000, 2, 1000 );
+        cache.put( PATH1, secrets( "Key1", "Value1" ) );
+        cache.put( PATH2, secrets( "Key1", "Value1" ) );
+        cache.get( PATH1 );
+        cache.put( PATH3, secrets( "Key1", "Value1" ) );
+        assertEquals( 2, cache.getEntryCount( ) );
+        assertNull( cache.get( PATH2 ) );
+        assertNotNull( cache.get( PATH1 ) );
+
+        cache = new VaultSecretCache( 60000, 10, 10 );
+        cache.put( PATH1, secrets( "Key1", "12345678" ) );
+        cache.put( PATH2, secrets( "Key1", "12345678" ) );
+        assertNull( cache.get( PATH1 ) );
+        assertEquals( 8, cache.getSize( ) );
+
+        cache = new VaultSecretCache( 1, 10, 1000 );
+        cache.put( PATH1, secrets( "Key1", "Value1" ) );
+        Thread.sleep( 5 );
+        assertNull( cache.get( PATH1 ) );
+
+        // Expired entries are purged without being read
+        cache.put( PATH1, secrets( "Key1", "Value1" ) );
+        cache.put( PATH2, secrets( "Key1", "Value1" ) );
+        Thread.sleep( 5 );
+        assertEquals( 2, cache.purgeExpired( ) );
+        assertEquals( 0, cache.getEntryCount( ) );
+        assertEquals( 0, cache.getSize( ) );
+
+        cache = new VaultSecretCache( 0, 10, 1000 );
+        cache.put( PATH1, secrets( "Key1", "Value1" ) );
+        assertNull( cache.get( PATH1 ) );
+    }
+
+    /**
+     * test secrets read before an invalidation are not stored
+     */
+    public void testInvalidationStamp( )
+    {
+        VaultSecretCache cache = new VaultSecretCache( 60000, 10, 1000 );
+        long lStamp = cache.getInvalidationStamp( );
+        cache.invalidate( PATH1 );
+        cache.put( PATH1, secrets( "Key1", "Stale" ), lStamp );
+        assertNull( cache.get( PATH1 ) );
+
+        lStamp = cache.getInvalidationStamp( );
+        cache.put( PATH1, secrets( "Key1", "Value1" ), lStamp );
+        assertEquals( "Value1", cache.get( PATH1 ).get( "Key1" ) );
+    }
+
+    /**
+     * test the version of a document is kept with its secrets
+     */
+    public void testVersion( )
+    {
+        VaultSecretCache cache = new VaultSecretCache( 60000, 10, 1000 );
+        assertEquals( VaultSecretCache.VERSION_UNKNOWN, cache.getVersion( PATH1 ) );
+
+        cache.put( PATH1, secrets( "Key1", "Value1" ), 4, cache.getInvalidationStamp( ) );
+        assertEquals( 4, cache.getVersion( PATH1 ) );
+        cache.put( PATH1, secrets( "Key1", "Value2" ) );
+        assertEquals( VaultSecretCache.VERSION_UNKNOWN, cache.getVersion( PATH1 ) );
+        assertEquals( "Value2", cache.get( PATH1 ).get( "Key1" ) );
+
+        cache.put( PATH1, secrets( "Key1", "Value3" ), 5, cache.getInvalidationStamp( ) );
+        cache.invalidate( PATH1 );
+        assertEquals( VaultSecretCache.VERSION_UNKNOWN, cache.getVersion( PATH1 ) );
+    }
+
+    private static Map<String, String> secrets( String strKey, String strValue )
+    {
+        Map<String, String> mapSecrets = new HashMap<>( );
+        mapSecrets.put( strKey, strValue );
+        return mapSecrets;
+    }
+}
@@ -0,0 +1,596 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.plugins.vault.business.Application;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.business.Properties;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This is the test class for VaultService, run against the in-process Vault stub
+ */
+public class VaultServiceTest extends LuteceTestCase
+{
+    private static final String APPLICATION_CODE = "stubapp";
+    private static final String KEY1 = "Key1";
+    private static final String KEY2 = "Key2";
+    private static final String VALUE1 = "Value1";
+    private static final String VALUE2 = "Value2";
+    private static final String KEY_ENVIRONNEMENT = "Environnement";
+
+    private static int _nIdEnvironnement = 900000;
+    private VaultStubServer _stub;
+    private Application _application;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _stub = VaultStubServer.getSharedInstance( );
+        _stub.reset( );
+        VaultPolicyService.getInstance( ).clear( );
+        VaultCircuitBreaker.getInstance( ).reset( );
+        VaultService.getInstance( ).getSecretCache( ).clear( );
+        VaultService.getInstance( ).getTokenCache( ).clear( );
+
+        _application = new Application( );
+        _application.setId( 1 );
+        _application.setCode( APPLICATION_CODE );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        _stub.reset( );
+        super.tearDown( );
+    }
+
+    /**
+     * test secrets are written in a single document
+     */
+    public void testSecrets( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+
+        assertTrue( service.getSecretsByEnv( _application, environnement ).isEmpty( ) );
+
+        service.writeSecret( KEY1, VALUE1, _application, environnement );
+        service.writeSecret( KEY2, VALUE1, _application, environnement );
+        service.updateSecret( KEY2, VALUE2, _application, environnement );
+        assertEquals( VALUE2, _stub.getSecrets( environnement.getPath( ) ).get( KEY2 ) );
+
+        List<Properties> listProperties = service.getSecretsByEnv( _application, environnement );
+        assertEquals( 2, listProperties.size( ) );
+        assertEquals( VALUE1, service.getDetailsSecret( KEY1, environnement ) );
+
+        service.deleteSecret( KEY1, _application, environnement );
+        assertNull( service.getSecret( KEY1, _application, environnement ) );
+        assertEquals( Collections.singleton( KEY2 ), _stub.getSecrets( environnement.getPath( ) ).keySet( ) );
+    }
+
+    /**
+     * test an update is a single check-and-set write, and a concurrent edit is detected
+     */
+    public void testUpdateCheckAndSet( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+        service.writeSecret( KEY1, VALUE1, _application, environnement );
+        long lVersion = _stub.getVersion( environnement.getPath( ) );
+
+        Properties propertiesAdmin1 = service.getSecret( KEY1, _application, environnement );
+        Properties propertiesAdmin2 = service.getSecret( KEY1, _application, environnement );
+        assertEquals( lVersion, propertiesAdmin1.getVersion( ) );
+
+        long lRequestCount = _stub.getRequestCount( );
+        service.updateSecret( KEY1, VALUE2, _application, environnement, propertiesAdmin2.getVersion( ) );
+        assertEquals( 2, _stub.getRequestCount( ) - lRequestCount );
+        assertEquals( lVersion + 1, _stub.getVersion( environnement.getPath( ) ) );
+
+        try
+        {
+            service.updateSecret( KEY1, "Value3", _application, environnement, propertiesAdmin1.getVersion( ) );
+            fail( "VaultConflictException expected" );
+        }
+        catch( VaultConflictException e )
+        {
+            assertEquals( lVersion, e.getExpectedVersion( ) );
+        }
+        assertEquals( VALUE2, _stub.getSecrets( environnement.getPath( ) ).get( KEY1 ) );
+
+        // Without an expected version, the update applies to the current one
+        service.updateSecret( KEY1, "Value3", _application, environnement );
+        assertEquals( "Value3", service.getDetailsSecret( KEY1, environnement ) );
+    }
+
+    /**
+     * test concurrent writes of different keys of the same environnement are not lost
+     */
+    public void testConcurrentWritesSameEnvironnement( ) throws Exception
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService.getInstance( ).writeSecret( KEY1, VALUE1, _application, environnement );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            List<Future<Integer>> listFutures = new ArrayList<>( );
+            for ( int i = 0; i < 2; i++ )
+            {
+                String strPrefix = "Thread" + i;
+                listFutures.add( executor.submit( ( ) -> {
+                    int nWritten = 0;
+                    for ( int j = 0; j < 10; j++ )
+                    {
+                        try
+                        {
+                            VaultService.getInstance( ).writeSecret( strPrefix + "Key" + j, VALUE1, _application, environnement );
+                            nWritten++;
+                        }
+                        catch( VaultConflictException e )
+                        {
+                            // Check-and-set attempts exhausted
+                        }
+                    }
+                    return nWritten;
+                } ) );
+            }
+            int nWritten = 1;
+            for ( Future<Integer> future : listFutures )
+            {
+                nWritten += future.get( );
+            }
+            assertEquals( nWritten, _stub.getSecrets( environnement.getPath( ) ).size( ) );
+        }
+        finally
+        {
+            executor.shutdown( );
+        }
+    }
+
+    /**
+     * test the instance is created once when first requested by concurrent threads
+     */
+    public void testConcurrentGetInstance( ) throws Exception
+    {
+        int nThreads = 16;
+        CyclicBarrier barrier = new CyclicBarrier( nThreads );
+        ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+        try
+        {
+            List<Future<VaultService>> listFutures = new ArrayList<>( );
+            for ( int i = 0; i < nThreads; i++ )
+            {
+                listFutures.add( executor.submit( ( ) -> {
+                    barrier.await( );
+                    return VaultService.getInstance( );
+                } ) );
+            }
+            for ( Future<VaultService> future : listFutures )
+            {
+                assertSame( VaultService.getInstance( ), future.get( ) );
+            }
+        }
+        finally
+        {
+            executor.shutdown( );
+        }
+    }
+
+    /**
+     * stress test : concurrent reads and writes on shared environnements never return the secrets of another environnement, and the cache ends
+     * consistent with Vault
+     */
+    public void testConcurrentReadsAndWrites( ) throws Exception
+    {
+        _stub.setLatency( 0, 2 );
+        List<Environnement> listEnvironnements = new ArrayList<>( );
+        for ( int i = 0; i < 4; i++ )
+        {
+            Environnement environnement = createEnvironnement( );
+            VaultService.getInstance( ).writeSecret( KEY_ENVIRONNEMENT, environnement.getCode( ), _application, environnement );
+            listEnvironnements.add( environnement );
+        }
+
+        int nThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+        try
+        {
+            List<Future<Void>> listFutures = new ArrayList<>( );
+            for ( int i = 0; i < nThreads; i++ )
+            {
+                String strPrefix = "Thread" + i + "Key";
+                listFutures.add( executor.submit( ( ) -> {
+                    stress( listEnvironnements, strPrefix, 100 );
+                    return null;
+                } ) );
+            }
+            for ( Future<Void> future : listFutures )
+            {
+                future.get( );
+            }
+        }
+        finally
+        {
+            executor.shutdown( );
+        }
+
+        for ( Environnement environnement : listEnvironnements )
+        {
+            Map<String, Object> mapStored = _stub.getSecrets( environnement.getPath( ) );
+            List<Properties> listProperties = VaultService.getInstance( ).getSecretsByEnv( _application, environnement );
+            assertEquals( mapStored.size( ), listProperties.size( ) );
+            for ( Properties properties : listProperties )
+            {
+                assertEquals( mapStored.get( properties.getKey( ) ), properties.getValue( ) );
+            }
+        }
+    }
+
+    private void stress( List<Environnement> listEnvironnements, String strPrefix, int nOperations ) throws VaultException
+    {
+        VaultService service = VaultService.getInstance( );
+        ThreadLocalRandom random = ThreadLocalRandom.current( );
+        for ( int i = 0; i < nOperations; i++ )
+        {
+            Environnement environnement = listEnvironnements.get( random.nextInt( listEnvironnements.size( ) ) );
+            if ( random.nextBoolean( ) )
+            {
+                try
+                {
+                    service.writeSecret( strPrefix + random.nextInt( 5 ), String.valueOf( i ), _application, environnement );
+                }
+                catch( VaultConflictException e )
+                {
+                    // Check-and-set attempts exhausted
+                }
+            }
+            else
+            {
+                List<Properties> listProperties = service.getSecretsByEnv( _application, environnement );
+                assertNotNull( listProperties );
+                for ( Properties properties : listProperties )
+                {
+                    assertEquals( environnement.getId( ), properties.getIdenvironnement( ) );
+                    if ( KEY_ENVIRONNEMENT.equals( properties.getKey( ) ) )
+                    {
+                        assertEquals( environnement.getCode( ), properties.getValue( ) );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * test an environnement without document is read as empty at version 0, without being written
+     */
+    public void testMissingDocument( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+
+        assertTrue( service.getSecretsByEnv( _application, environnement ).isEmpty( ) );
+        assertEquals( 0, service.getSecretsVersion( environnement ) );
+        assertNull( _stub.getSecrets( environnement.getPath( ) ) );
+
+        // The first write creates the document with a check-and-set on version 0
+        service.updateSecret( KEY1, VALUE1, _application, environnement, 0 );
+        assertEquals( VALUE1, _stub.getSecrets( environnement.getPath( ) ).get( KEY1 ) );
+        assertEquals( 1, service.getSecretsVersion( environnement ) );
+    }
+
+    /**
+     * test an environnement stored with one path per key is migrated on read
+     */
+    public void testLegacyMigration( )
+    {
+        Environnement environnement = createEnvironnement( );
+        _stub.putSecrets( environnement.getPath( ) + "/" + KEY1, Collections.singletonMap( KEY1, VALUE1 ) );
+        _stub.putSecrets( environnement.getPath( ) + "/" + KEY2, Collections.singletonMap( KEY2, VALUE2 ) );
+
+        assertEquals( 2, VaultService.getInstance( ).getSecretsByEnv( _application, environnement ).size( ) );
+        assertEquals( VALUE2, _stub.getSecrets( environnement.getPath( ) ).get( KEY2 ) );
+        assertNull( _stub.getSecrets( environnement.getPath( ) + "/" + KEY1 ) );
+        // Deleted with their metadata, so that they are no longer listed
+        assertEquals( 0, _stub.getVersion( environnement.getPath( ) + "/" + KEY1 ) );
+        assertEquals( 0, _stub.getVersion( environnement.getPath( ) + "/" + KEY2 ) );
+    }
+
+    /**
+     * test the token and policy of an environnement are created, then revoked with the environnement
+     */
+    public void testTokenAndRemoval( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+
+        String strToken = service.createEnvironnementToken( APPLICATION_CODE, environnement );
+        String strAccessor = service.getEnvAccessor( environnement.getId( ) );
+        assertEquals( strToken, _stub.getTokens( ).get( strAccessor ) );
+        assertTrue( _stub.getPolicies( ).containsKey( APPLICATION_CODE + environnement.getCode( ) ) );
+
+        service.writeSecret( KEY1, VALUE1, _application, environnement );
+        service.removeEnv( strAccessor, APPLICATION_CODE, environnement );
+        assertNull( _stub.getSecrets( environnement.getPath( ) ) );
+        assertEquals( 0, _stub.getVersion( environnement.getPath( ) ) );
+        assertTrue( _stub.getPolicies( ).isEmpty( ) );
+        assertTrue( _stub.getTokens( ).isEmpty( ) );
+        assertNull( service.getEnvAccessor( environnement.getId( ) ) );
+
+        // A read after the removal does not bring the environnement back
+        assertTrue( service.getSecretsByEnv( _application, environnement ).isEmpty( ) );
+        assertEquals( 0, _stub.getVersion( environnement.getPath( ) ) );
+    }
+
+    /**
+     * test the version of an environnement changes with its writes, and is then read from the cache
+     */
+    public void testSecretsVersion( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+        service.writeSecret( KEY1, VALUE1, _application, environnement );
+
+        long lVersion = service.getSecretsVersion( environnement );
+        assertEquals( _stub.getVersion( environnement.getPath( ) ), lVersion );
+        long lRequestCount = _stub.getRequestCount( );
+        assertEquals( lVersion, service.getSecretsVersion( environnement ) );
+        assertEquals( VALUE1, service.readSecrets( environnement ).get( KEY1 ) );
+        assertEquals( lRequestCount, _stub.getRequestCount( ) );
+
+        service.writeSecret( KEY2, VALUE2, _application, environnement );
+        assertEquals( lVersion + 1, service.getSecretsVersion( environnement ) );
+    }
+
+    /**
+     * test the keys of an environnement are listed sorted, from the cache once read
+     */
+    public void testSecretKeys( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+        service.writeSecret( KEY2, VALUE2, _application, environnement );
+        service.writeSecret( KEY1, VALUE1, _application, environnement );
+
+        assertEquals( Arrays.asList( KEY1, KEY2 ), service.getSecretKeys( environnement ) );
+        long lRequestCount = _stub.getRequestCount( );
+        assertEquals( Arrays.asList( KEY1, KEY2 ), service.getSecretKeys( environnement ) );
+        assertEquals( lRequestCount, _stub.getRequestCount( ) );
+    }
+
+    /**
+     * test the token of an environnement is accepted, looked up once, and refused once regenerated
+     */
+    public void testEnvironnementToken( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        Environnement other = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+        String strToken = service.createEnvironnementToken( APPLICATION_CODE, environnement );
+        String strOtherToken = service.createEnvironnementToken( APPLICATION_CODE, other );
+
+        assertTrue( service.isEnvironnementToken( environnement, strToken ) );
+        long lRequestCount = _stub.getRequestCount( );
+        assertTrue( service.isEnvironnementToken( environnement, strToken ) );
+        assertEquals( lRequestCount, _stub.getRequestCount( ) );
+
+        assertFalse( service.isEnvironnementToken( environnement, strOtherToken ) );
+        assertFalse( service.isEnvironnementToken( environnement, "hvs.unknown" ) );
+        assertFalse( service.isEnvironnementToken( environnement, null ) );
+
+        String strNewToken = service.regenerateToken( APPLICATION_CODE, environnement );
+        assertFalse( service.isEnvironnementToken( environnement, strToken ) );
+        assertTrue( service.isEnvironnementToken( environnement, strNewToken ) );
+    }
+
+    /**
+     * test the policies and tokens of several environnements are created together, and the tokens created are kept when another one fails
+     */
+    public void testCreateEnvironnementTokens( ) throws VaultException
+    {
+        List<Environnement> listEnvironnements = Arrays.asList( createEnvironnement( ), createEnvironnement( ), createEnvironnement( ) );
+        VaultService service = VaultService.getInstance( );
+
+        Map<String, String> mapTokens = service.createEnvironnementTokens( APPLICATION_CODE, listEnvironnements );
+        assertEquals( 3, mapTokens.size( ) );
+        for ( Environnement environnement : listEnvironnements )
+        {
+            String strAccessor = service.getEnvAccessor( environnement.getId( ) );
+            assertEquals( mapTokens.get( environnement.getCode( ) ), _stub.getTokens( ).get( strAccessor ) );
+            assertTrue( _stub.getPolicies( ).containsKey( APPLICATION_CODE + environnement.getCode( ) ) );
+        }
+
+        listEnvironnements = Arrays.asList( createEnvironnement( ), createEnvironnement( ), createEnvironnement( ) );
+        _stub.failNext( 1, 403 );
+        try
+        {
+            service.createEnvironnementTokens( APPLICATION_CODE, listEnvironnements );
+            fail( "VaultBulkException expected" );
+        }
+        catch( VaultBulkException e )
+        {
+            assertEquals( 1, e.getFailures( ).size( ) );
+            Map<String, String> mapCreated = e.getResults( );
+            assertEquals( 2, mapCreated.size( ) );
+            for ( Map.Entry<String, String> token : mapCreated.entrySet( ) )
+            {
+                assertTrue( _stub.getTokens( ).containsValue( token.getValue( ) ) );
+            }
+        }
+    }
+
+    /**
+     * test a failing update is reported and does not change the value read
+     */
+    public void testInjectedErrors( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+        service.writeSecret( KEY1, VALUE1, _application, environnement );
+        assertEquals( VALUE1, service.getDetailsSecret( KEY1, environnement ) );
+
+        _stub.setErrorRate( 1, 503 );
+        try
+        {
+            service.updateSecret( KEY1, VALUE2, _application, environnement );
+            fail( "VaultException expected" );
+        }
+        catch( VaultException e )
+        {
+            assertEquals( 503, e.getHttpStatusCode( ) );
+        }
+        assertEquals( VALUE1, service.getDetailsSecret( KEY1, environnement ) );
+        service.getSecretCache( ).clear( );
+        assertNull( service.getSecretsByEnv( _application, environnement ) );
+        assertTrue( _stub.getErrorCount( ) > 0 );
+
+        _stub.setErrorRate( 0, 503 );
+        // The retried failures opened the circuit breaker : it is closed as a successful probe would
+        VaultCircuitBreaker.getInstance( ).reset( );
+        assertEquals( VALUE1, service.getDetailsSecret( KEY1, environnement ) );
+    }
+
+    /**
+     * test transient errors are retried, except for a token creation Vault may have processed
+     */
+    public void testTransientErrors( ) throws VaultException
+    {
+        Environnement environnement = createEnvironnement( );
+        VaultService service = VaultService.getInstance( );
+        service.writeSecret( KEY1, VALUE1, _application, environnement );
+
+        service.getSecretCache( ).clear( );
+        _stub.failNext( 2, 503 );
+        assertEquals( VALUE1, service.getDetailsSecret( KEY1, environnement ) );
+        _stub.failNext( 1, 429 );
+        service.updateSecret( KEY1, VALUE2, _application, environnement );
+        assertEquals( VALUE2, _stub.getSecrets( environnement.getPath( ) ).get( KEY1 ) );
+
+        // The policy is deployed by the first creation, so that the token creation is the next request
+        service.createEnvironnementToken( APPLICATION_CODE, environnement );
+        _stub.failNext( 1, 503 );
+        assertNotNull( service.createEnvironnementToken( APPLICATION_CODE, environnement ) );
+        _stub.failNext( 1, 500 );
+        try
+        {
+            service.createEnvironnementToken( APPLICATION_CODE, environnement );
+            fail( "VaultException expected" );
+        }
+        catch( VaultException e )
+        {
+            assertEquals( 500, e.getHttpStatusCode( ) );
+        }
+    }
+
+    /**
+     * test concurrent writes with latency and random errors : each write either succeeds or throws, and only the successful ones are stored
+     */
+    public void testConcurrentWritesWithLatencyAndErrors( ) throws Exception
+    {
+        _stub.setLatency( 0, 5 ).setErrorRate( 0.1, 503 );
+
+        // Writes to the same environnement are read-modify-write : one thread per environnement
+        List<Environnement> listEnvironnements = new ArrayList<>( );
+        List<Future<Integer>> listFutures = new ArrayList<>( );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            for ( int i = 0; i < 8; i++ )
+            {
+                Environnement environnement = createEnvironnement( );
+                listEnvironnements.add( environnement );
+                listFutures.add( executor.submit( ( ) -> writeKeys( environnement, 20 ) ) );
+            }
+            for ( int i = 0; i < listEnvironnements.size( ); i++ )
+            {
+                int nWritten = listFutures.get( i ).get( );
+                Map<String, Object> mapSecrets = _stub.getSecrets( listEnvironnements.get( i ).getPath( ) );
+                assertEquals( nWritten, mapSecrets == null ? 0 : mapSecrets.size( ) );
+            }
+        }
+        finally
+        {
+            executor.shutdown( );
+        }
+        assertTrue( _stub.getErrorCount( ) > 0 );
+    }
+
+    private int writeKeys( Environnement environnement, int nKeys )
+    {
+        int nWritten = 0;
+        for ( int i = 0; i < nKeys; i++ )
+        {
+            try
+            {
+                VaultService.getInstance( ).writeSecret( "Key" + i, VALUE1, _application, environnement );
+                nWritten++;
+            }
+            catch( VaultException e )
+            {
+                // Injected error
+            }
+        }
+        return nWritten;
+    }
+
+    private Environnement createEnvironnement( )
+    {
+        Environnement environnement = new Environnement( );
+        environnement.setId( ++_nIdEnvironnement );
+        environnement.setIdapplication( _application.getId( ) );
+        environnement.setCode( "env" + environnement.getId( ) );
+        environnement.setPath( EnvironnementUtil.getEnvironmentPath( APPLICATION_CODE, environnement.getCode( ) ) );
+        return environnement;
+    }
+}
@@ -0,0 +1,786 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stub of the subset of the Vault HTTP API used by the plugin : KV v2 secrets, ACL policies, token creation, lookup, and renewal and revocation by accessor,
+ * and health check.
+ * Secrets, policies and tokens are kept in memory, and writes of secrets honour the check-and-set option. As in Vault, a delete of the data path only
+ * marks the document as deleted, its metadata being kept and the path still listed, while a delete of the metadata path removes it. A latency and a rate
+ * of errors can be injected on every request.
+ */
+public class VaultStubServer
+{
+    private static final String PREFIX = "/v1/";
+    private static final String PATH_POLICIES = "sys/policies/acl/";
+    private static final String PATH_TOKEN_CREATE = "auth/token/create";
+    private static final String PATH_TOKEN_REVOKE_ACCESSOR = "auth/token/revoke-accessor";
+    private static final String PATH_TOKEN_LOOKUP_SELF = "auth/token/lookup-self";
+    private static final String PATH_TOKEN_RENEW_ACCESSOR = "auth/token/renew-accessor";
+    private static final String PATH_HEALTH = "sys/health";
+    private static final long DEFAULT_TOKEN_TTL = 2764800;
+    private static final String SEGMENT_DATA = "data";
+    private static final String SEGMENT_METADATA = "metadata";
+    private static final String HEADER_TOKEN = "X-Vault-Token";
+    private static final String METHOD_LIST = "LIST";
+    private static final String PROPERTY_SERVER_ADDRESS = "vault.vaultServerAdress";
+    private static final String ERROR_INJECTED = "injected error";
+    private static final String ERROR_CHECK_AND_SET = "check-and-set parameter did not match the current version";
+
+    private static VaultStubServer _sharedInstance;
+
+    private final ObjectMapper _mapper = new ObjectMapper( );
+    private final Map<String, Map<String, Object>> _mapSecrets = new ConcurrentHashMap<>( );
+    private final Map<String, AtomicLong> _mapVersions = new ConcurrentHashMap<>( );
+    private final Map<String, String> _mapDeletionTimes = new ConcurrentHashMap<>( );
+    private final Map<String, String> _mapPolicies = new ConcurrentHashMap<>( );
+    private final Map<String, String> _mapTokens = new ConcurrentHashMap<>( );
+    private final Map<String, Long> _mapTokenLeases = new ConcurrentHashMap<>( );
+    private final Map<String, AtomicLong> _mapTokenRenewals = new ConcurrentHashMap<>( );
+    private final AtomicLong _lRequestCount = new AtomicLong( );
+    private final AtomicLong _lErrorCount = new AtomicLong( );
+    private volatile long _lLatencyMin;
+    private volatile long _lLatencyMax;
+    private volatile double _dErrorRate;
+    private volatile int _nErrorStatus = 503;
+    private final AtomicInteger _nFailNext = new AtomicInteger( );
+    private HttpServer _server;
+    private ExecutorService _executor;
+
+    static
+    {
+        // Read once by the JDK server : without it, each small response waits for the delayed ACK of the client (about 40 ms)
+        System.setProperty( "sun.net.httpserver.nodelay", "true" );
+    }
+
+    /**
+     * Gets the stub shared by the tests of the JVM, started on first call on the port of the vault.vaultServerAdress property so that VaultService and
+     * VaultAPI use it.
+     *
+     * @return the shared stub
+     * @throws IOException
+     *             if the port cannot be bound (a Vault server is already listening there)
+     */
+    public static synchronized VaultStubServer getSharedInstance( ) throws IOException
+    {
+        if ( _sharedInstance == null )
+        {
+            URI uri = URI.create( AppPropertiesService.getProperty( PROPERTY_SERVER_ADDRESS ) );
+            _sharedInstance = new VaultStubServer( ).start( uri.getPort( ) );
+        }
+        return _sharedInstance;
+    }
+
+    /**
+     * Starts the server on the loopback interface.
+     *
+     * @param nPort
+     *            the port, 0 for any free port
+     * @return this server
+     * @throws IOException
+     *             if the port cannot be bound
+     */
+    public VaultStubServer start( int nPort ) throws IOException
+    {
+        _server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress( ), nPort ), 0 );
+        _executor = Executors.newCachedThreadPool( r -> {
+            Thread thread = new Thread( r, "vault-stub" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        _server.setExecutor( _executor );
+        _server.createContext( "/", this::handle );
+        _server.start( );
+        return this;
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop( )
+    {
+        if ( _server != null )
+        {
+            _server.stop( 0 );
+            _executor.shutdownNow( );
+            _server = null;
+        }
+    }
+
+    /**
+     * Gets the address of the server, as expected by the vault.vaultServerAdress property.
+     *
+     * @return the address
+     */
+    public String getAddress( )
+    {
+        return "http://127.0.0.1:" + _server.getAddress( ).getPort( );
+    }
+
+    /**
+     * Sets the latency added to every request, drawn uniformly between the two bounds.
+     *
+     * @param lMinMillis
+     *            the minimal latency in milliseconds
+     * @param lMaxMillis
+     *            the maximal latency in milliseconds
+     * @return this server
+     */
+    public VaultStubServer setLatency( long lMinMillis, long lMaxMillis )
+    {
+        if ( lMinMillis < 0 || lMaxMillis < lMinMillis )
+        {
+            throw new IllegalArgumentException( "Invalid latency [" + lMinMillis + ", " + lMaxMillis + "]" );
+        }
+        _lLatencyMin = lMinMillis;
+        _lLatencyMax = lMaxMillis;
+        return this;
+    }
+
+    /**
+     * Sets the rate of requests answered with an error instead of being processed.
+     *
+     * @param dErrorRate
+     *            the rate, between 0 and 1
+     * @param nStatus
+     *            the HTTP status of the errors, for example 503 (sealed Vault) or 429 (rate limit)
+     * @return this server
+     */
+    public VaultStubServer setErrorRate( double dErrorRate, int nStatus )
+    {
+        if ( dErrorRate < 0 || dErrorRate > 1 )
+        {
+            throw new IllegalArgumentException( "Invalid error rate " + dErrorRate );
+        }
+        _dErrorRate = dErrorRate;
+        _nErrorStatus = nStatus;
+        return this;
+    }
+
+    /**
+     * Answers the next requests with an error instead of processing them.
+     *
+     * @param nCount
+     *            the number of requests
+     * @param nStatus
+     *            the HTTP status of the errors
+     * @return this server
+     */
+    public VaultStubServer failNext( int nCount, int nStatus )
+    {
+        _nErrorStatus = nStatus;
+        _nFailNext.set( nCount );
+        return this;
+    }
+
+    /**
+     * Clears the secrets, policies, tokens and counters, and removes the injected latency and errors.
+     */
+    public void reset( )
+    {
+        _lLatencyMin = 0;
+        _lLatencyMax = 0;
+        _dErrorRate = 0;
+        _nFailNext.set( 0 );
+        _lErrorCount.set( 0 );
+        _mapSecrets.clear( );
+        _mapVersions.clear( );
+        _mapDeletionTimes.clear( );
+        _mapPolicies.clear( );
+        _mapTokens.clear( );
+        _mapTokenLeases.clear( );
+        _mapTokenRenewals.clear( );
+        _lRequestCount.set( 0 );
+    }
+
+    /**
+     * Stores a token directly, without any HTTP call.
+     *
+     * @param strAccessor
+     *            the accessor of the token
+     * @param strToken
+     *            the token
+     */
+    public void putToken( String strAccessor, String strToken )
+    {
+        _mapTokens.put( strAccessor, strToken );
+    }
+
+    /**
+     * Stores a secret document directly, without any HTTP call.
+     *
+     * @param strPath
+     *            the logical path, for example /secret/app/env
+     * @param mapData
+     *            the key/value pairs
+     */
+    public synchronized void putSecrets( String strPath, Map<String, ? extends Object> mapData )
+    {
+        String strKey = normalize( strPath );
+        _mapSecrets.put( strKey, new TreeMap<>( mapData ) );
+        _mapVersions.computeIfAbsent( strKey, k -> new AtomicLong( ) ).incrementAndGet( );
+        _mapDeletionTimes.remove( strKey );
+    }
+
+    /**
+     * Gets the current version of a secret document.
+     *
+     * @param strPath
+     *            the logical path
+     * @return the version, 0 if the document was never written or its metadata were deleted
+     */
+    public long getVersion( String strPath )
+    {
+        AtomicLong version = _mapVersions.get( normalize( strPath ) );
+        return version == null ? 0 : version.get( );
+    }
+
+    /**
+     * Gets a secret document.
+     *
+     * @param strPath
+     *            the logical path
+     * @return the key/value pairs or null
+     */
+    public Map<String, Object> getSecrets( String strPath )
+    {
+        return _mapSecrets.get( normalize( strPath ) );
+    }
+
+    /**
+     * Gets the policies by name.
+     *
+     * @return the policies
+     */
+    public Map<String, String> getPolicies( )
+    {
+        return _mapPolicies;
+    }
+
+    /**
+     * Gets the valid tokens by accessor.
+     *
+     * @return the tokens
+     */
+    public Map<String, String> getTokens( )
+    {
+        return _mapTokens;
+    }
+
+    /**
+     * Gets the lease duration given to a token when it was created or last renewed.
+     *
+     * @param strAccessor
+     *            the accessor of the token
+     * @return the lease duration in seconds, null if the token is unknown
+     */
+    public Long getTokenLease( String strAccessor )
+    {
+        return _mapTokenLeases.get( strAccessor );
+    }
+
+    /**
+     * Gets the number of renewals of a token.
+     *
+     * @param strAccessor
+     *            the accessor of the token
+     * @return the renewal count
+     */
+    public long getTokenRenewalCount( String strAccessor )
+    {
+        AtomicLong renewals = _mapTokenRenewals.get( strAccessor );
+        return renewals == null ? 0 : renewals.get( );
+    }
+
+    /**
+     * Gets the number of requests received.
+     *
+     * @return the request count
+     */
+    public long getRequestCount( )
+    {
+        return _lRequestCount.get( );
+    }
+
+    /**
+     * Gets the number of injected errors.
+     *
+     * @return the error count
+     */
+    public long getErrorCount( )
+    {
+        return _lErrorCount.get( );
+    }
+
+    private void handle( HttpExchange exchange ) throws IOException
+    {
+        _lRequestCount.incrementAndGet( );
+        try
+        {
+            // The body is always consumed, otherwise the next request on the kept-alive connection is not answered
+            JsonNode body = readBody( exchange );
+            String strPath = exchange.getRequestURI( ).getPath( );
+            delay( );
+            boolean bFail = _nFailNext.getAndUpdate( n -> Math.max( 0, n - 1 ) ) > 0;
+            if ( bFail || ( _dErrorRate > 0 && ThreadLocalRandom.current( ).nextDouble( ) < _dErrorRate ) )
+            {
+                _lErrorCount.incrementAndGet( );
+                sendErrors( exchange, _nErrorStatus, ERROR_INJECTED );
+            }
+            else
+                if ( strPath.equals( PREFIX + PATH_HEALTH ) )
+                {
+                    // Unauthenticated, as in Vault
+                    handleHealth( exchange );
+                }
+                else
+                    if ( exchange.getRequestHeaders( ).getFirst( HEADER_TOKEN ) == null )
+                    {
+                        sendErrors( exchange, 403, "permission denied" );
+                    }
+                    else
+                        if ( !strPath.startsWith( PREFIX ) )
+                        {
+                            sendErrors( exchange, 404, "unsupported path" );
+                        }
+                        else
+                        {
+                            route( exchange, strPath.substring( PREFIX.length( ) ), body );
+                        }
+        }
+        finally
+        {
+            exchange.close( );
+        }
+    }
+
+    private void route( HttpExchange exchange, String strPath, JsonNode body ) throws IOException
+    {
+        String strMethod = exchange.getRequestMethod( );
+        if ( strPath.startsWith( PATH_POLICIES ) )
+        {
+            handlePolicy( exchange, strMethod, strPath.substring( PATH_POLICIES.length( ) ), body );
+        }
+        else
+            if ( strPath.equals( PATH_TOKEN_CREATE ) )
+            {
+                handleTokenCreate( exchange, body );
+            }
+            else
+                if ( strPath.equals( PATH_TOKEN_REVOKE_ACCESSOR ) )
+                {
+                    handleRevokeAccessor( exchange, body );
+                }
+                else
+                    if ( strPath.equals( PATH_TOKEN_LOOKUP_SELF ) )
+                    {
+                        handleLookupSelf( exchange );
+                    }
+                    else
+                        if ( strPath.equals( PATH_TOKEN_RENEW_ACCESSOR ) )
+                        {
+                            handleRenewAccessor( exchange, body );
+                        }
+                        else
+                        {
+                            // <mount>/data/<path> or <mount>/metadata/<path>
+                            String [ ] segments = strPath.split( "/", 3 );
+                            if ( segments.length < 3 )
+                            {
+                                sendErrors( exchange, 404, "unsupported path" );
+                            }
+                            else
+                                if ( SEGMENT_DATA.equals( segments [1] ) )
+                                {
+                                    handleData( exchange, strMethod, segments [0] + "/" + normalize( segments [2] ), body );
+                                }
+                                else
+                                    if ( SEGMENT_METADATA.equals( segments [1] ) )
+                                    {
+                                        handleMetadata( exchange, strMethod, segments [0] + "/" + normalize( segments [2] ) );
+                                    }
+                                    else
+                                    {
+                                        sendErrors( exchange, 404, "unsupported path" );
+                                    }
+                        }
+    }
+
+    private void handleData( HttpExchange exchange, String strMethod, String strKey, JsonNode body ) throws IOException
+    {
+        switch( strMethod )
+        {
+            case "GET":
+                Map<String, Object> mapData = _mapSecrets.get( strKey );
+                if ( mapData == null )
+                {
+                    sendErrors( exchange, 404 );
+                    return;
+                }
+                ObjectNode data = _mapper.createObjectNode( );
+                data.set( "data", _mapper.valueToTree( mapData ) );
+                data.set( "metadata", metadata( strKey ) );
+                send( exchange, 200, response( data ) );
+                break;
+            case "POST":
+            case "PUT":
+                Map<String, Object> mapWritten = new TreeMap<>( );
+                body.path( "data" ).fields( ).forEachRemaining( e -> mapWritten.put( e.getKey( ), e.getValue( ).isTextual( ) ? e.getValue( ).asText( ) : e.getValue( ) ) );
+                JsonNode cas = body.path( "options" ).path( "cas" );
+                ObjectNode metadata;
+                synchronized( this )
+                {
+                    AtomicLong version = _mapVersions.get( strKey );
+                    if ( !cas.isMissingNode( ) && cas.asLong( ) != ( version == null ? 0 : version.get( ) ) )
+                    {
+                        sendErrors( exchange, 400, ERROR_CHECK_AND_SET );
+                        return;
+                    }
+                    _mapSecrets.put( strKey, mapWritten );
+                    _mapVersions.computeIfAbsent( strKey, k -> new AtomicLong( ) ).incrementAndGet( );
+                    _mapDeletionTimes.remove( strKey );
+                    metadata = metadata( strKey );
+                }
+                send( exchange, 200, response( metadata ) );
+                break;
+            case "DELETE":
+                // Soft delete : the versions and metadata are kept
+                synchronized( this )
+                {
+                    if ( _mapSecrets.remove( strKey ) != null )
+                    {
+                        _mapDeletionTimes.put( strKey, Instant.now( ).toString( ) );
+                    }
+                }
+                send( exchange, 204, null );
+                break;
+            default:
+                sendErrors( exchange, 405 );
+        }
+    }
+
+    private void handleMetadata( HttpExchange exchange, String strMethod, String strKey ) throws IOException
+    {
+        String strQuery = exchange.getRequestURI( ).getQuery( );
+        if ( METHOD_LIST.equals( strMethod ) || ( "GET".equals( strMethod ) && strQuery != null && strQuery.contains( "list=true" ) ) )
+        {
+            TreeSet<String> setKeys = new TreeSet<>( );
+            String strPrefix = strKey.isEmpty( ) || strKey.endsWith( "/" ) ? strKey : strKey + "/";
+            for ( String strStored : _mapVersions.keySet( ) )
+            {
+                if ( strStored.startsWith( strPrefix ) && strStored.length( ) > strPrefix.length( ) )
+                {
+                    String strChild = strStored.substring( strPrefix.length( ) );
+                    int nSlash = strChild.indexOf( '/' );
+                    setKeys.add( nSlash < 0 ? strChild : strChild.substring( 0, nSlash + 1 ) );
+                }
+            }
+            if ( setKeys.isEmpty( ) )
+            {
+                sendErrors( exchange, 404 );
+                return;
+            }
+            ObjectNode data = _mapper.createObjectNode( );
+            ArrayNode keys = data.putArray( "keys" );
+            setKeys.forEach( keys::add );
+            send( exchange, 200, response( data ) );
+        }
+        else
+            if ( "DELETE".equals( strMethod ) )
+            {
+                synchronized( this )
+                {
+                    _mapSecrets.remove( strKey );
+                    _mapVersions.remove( strKey );
+                    _mapDeletionTimes.remove( strKey );
+                }
+                send( exchange, 204, null );
+            }
+            else
+                if ( "GET".equals( strMethod ) && _mapVersions.containsKey( strKey ) )
+                {
+                    send( exchange, 200, response( metadata( strKey ) ) );
+                }
+                else
+                {
+                    sendErrors( exchange, 404 );
+                }
+    }
+
+    private void handlePolicy( HttpExchange exchange, String strMethod, String strName, JsonNode body ) throws IOException
+    {
+        switch( strMethod )
+        {
+            case "POST":
+            case "PUT":
+                _mapPolicies.put( strName, body.path( "policy" ).asText( ) );
+                send( exchange, 204, null );
+                break;
+            case "DELETE":
+                _mapPolicies.remove( strName );
+                send( exchange, 204, null );
+                break;
+            case "GET":
+                String strPolicy = _mapPolicies.get( strName );
+                if ( strPolicy == null )
+                {
+                    sendErrors( exchange, 404 );
+                    return;
+                }
+                ObjectNode data = _mapper.createObjectNode( );
+                data.put( "name", strName );
+                data.put( "policy", strPolicy );
+                send( exchange, 200, response( data ) );
+                break;
+            default:
+                sendErrors( exchange, 405 );
+        }
+    }
+
+    private void handleTokenCreate( HttpExchange exchange, JsonNode body ) throws IOException
+    {
+        String strToken = "hvs." + UUID.randomUUID( ).toString( ).replace( "-", "" );
+        String strAccessor = UUID.randomUUID( ).toString( ).replace( "-", "" );
+        long lLease = parseDuration( body.path( "period" ).asText( body.path( "ttl" ).asText( "" ) ), DEFAULT_TOKEN_TTL );
+        _mapTokens.put( strAccessor, strToken );
+        _mapTokenLeases.put( strAccessor, lLease );
+
+        ObjectNode root = response( null );
+        ObjectNode auth = root.putObject( "auth" );
+        auth.put( "client_token", strToken );
+        auth.put( "accessor", strAccessor );
+        ArrayNode policies = auth.putArray( "policies" );
+        body.path( "policies" ).forEach( policies::add );
+        auth.set( "token_policies", policies.deepCopy( ) );
+        auth.putObject( "metadata" );
+        auth.put( "lease_duration", lLease );
+        auth.put( "renewable", true );
+        auth.put( "entity_id", "" );
+        auth.put( "token_type", "service" );
+        auth.put( "orphan", false );
+        send( exchange, 200, root );
+    }
+
+    private void handleRevokeAccessor( HttpExchange exchange, JsonNode body ) throws IOException
+    {
+        String strAccessor = body.path( "accessor" ).asText( );
+        if ( _mapTokens.remove( strAccessor ) == null )
+        {
+            sendErrors( exchange, 400, "invalid accessor" );
+            return;
+        }
+        send( exchange, 204, null );
+    }
+
+    private void handleRenewAccessor( HttpExchange exchange, JsonNode body ) throws IOException
+    {
+        String strAccessor = body.path( "accessor" ).asText( );
+        Long lCurrentLease = _mapTokenLeases.get( strAccessor );
+        if ( !_mapTokens.containsKey( strAccessor ) || lCurrentLease == null )
+        {
+            sendErrors( exchange, 400, "invalid accessor" );
+            return;
+        }
+        long lLease = parseDuration( body.path( "increment" ).asText( "" ), lCurrentLease );
+        _mapTokenLeases.put( strAccessor, lLease );
+        _mapTokenRenewals.computeIfAbsent( strAccessor, k -> new AtomicLong( ) ).incrementAndGet( );
+
+        ObjectNode root = response( null );
+        ObjectNode auth = root.putObject( "auth" );
+        auth.put( "accessor", strAccessor );
+        auth.put( "lease_duration", lLease );
+        auth.put( "renewable", true );
+        send( exchange, 200, root );
+    }
+
+    private void handleHealth( HttpExchange exchange ) throws IOException
+    {
+        ObjectNode health = _mapper.createObjectNode( );
+        health.put( "initialized", true );
+        health.put( "sealed", false );
+        health.put( "standby", false );
+        send( exchange, 200, health );
+    }
+
+    private void handleLookupSelf( HttpExchange exchange ) throws IOException
+    {
+        String strToken = exchange.getRequestHeaders( ).getFirst( HEADER_TOKEN );
+        for ( Map.Entry<String, String> token : _mapTokens.entrySet( ) )
+        {
+            if ( token.getValue( ).equals( strToken ) )
+            {
+                ObjectNode data = _mapper.createObjectNode( );
+                data.put( "accessor", token.getKey( ) );
+                data.put( "id", strToken );
+                data.put( "type", "service" );
+                send( exchange, 200, response( data ) );
+                return;
+            }
+        }
+        sendErrors( exchange, 403, "permission denied" );
+    }
+
+    private void delay( ) throws IOException
+    {
+        long lLatency = _lLatencyMax > _lLatencyMin ? ThreadLocalRandom.current( ).nextLong( _lLatencyMin, _lLatencyMax + 1 ) : _lLatencyMin;
+        if ( lLatency > 0 )
+        {
+            try
+            {
+                Thread.sleep( lLatency );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                throw new IOException( e );
+            }
+        }
+    }
+
+    private ObjectNode metadata( String strKey )
+    {
+        ObjectNode metadata = _mapper.createObjectNode( );
+        AtomicLong version = _mapVersions.get( strKey );
+        metadata.put( "version", version == null ? 0 : version.get( ) );
+        metadata.put( "destroyed", false );
+        metadata.put( "deletion_time", _mapDeletionTimes.getOrDefault( strKey, "" ) );
+        return metadata;
+    }
+
+    private ObjectNode response( JsonNode data )
+    {
+        ObjectNode root = _mapper.createObjectNode( );
+        root.put( "request_id", UUID.randomUUID( ).toString( ) );
+        root.put( "lease_id", "" );
+        root.put( "renewable", false );
+        root.put( "lease_duration", 0 );
+        root.set( "data", data );
+        root.putNull( "wrap_info" );
+        root.putNull( "warnings" );
+        root.putNull( "auth" );
+        return root;
+    }
+
+    private JsonNode readBody( HttpExchange exchange ) throws IOException
+    {
+        try ( InputStream in = exchange.getRequestBody( ) )
+        {
+            byte [ ] body = in.readAllBytes( );
+            return body.length == 0 ? _mapper.createObjectNode( ) : _mapper.readTree( body );
+        }
+    }
+
+    private void sendErrors( HttpExchange exchange, int nStatus, String... errors ) throws IOException
+    {
+        ObjectNode root = _mapper.createObjectNode( );
+        ArrayNode array = root.putArray( "errors" );
+        for ( String strError : errors )
+        {
+            array.add( strError );
+        }
+        send( exchange, nStatus, root );
+    }
+
+    private void send( HttpExchange exchange, int nStatus, JsonNode body ) throws IOException
+    {
+        if ( body == null )
+        {
+            exchange.sendResponseHeaders( nStatus, -1 );
+            return;
+        }
+        byte [ ] bytes = _mapper.writeValueAsString( body ).getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders( ).set( "Content-Type", "application/json" );
+        exchange.sendResponseHeaders( nStatus, bytes.length );
+        try ( OutputStream out = exchange.getResponseBody( ) )
+        {
+            out.write( bytes );
+        }
+    }
+
+    /**
+     * Parses a Vault duration : a number of seconds, or a number followed by s, m or h.
+     */
+    private static long parseDuration( String strDuration, long lDefault )
+    {
+        if ( strDuration == null || strDuration.isEmpty( ) )
+        {
+            return lDefault;
+        }
+        char cUnit = strDuration.charAt( strDuration.length( ) - 1 );
+        long lMultiplier = cUnit == 'h' ? 3600 : ( cUnit == 'm' ? 60 : 1 );
+        String strNumber = Character.isDigit( cUnit ) ? strDuration : strDuration.substring( 0, strDuration.length( ) - 1 );
+        return Long.parseLong( strNumber ) * lMultiplier;
+    }
+
+    private static String normalize( String strPath )
+    {
+        String strKey = strPath;
+        while ( strKey.startsWith( "/" ) )
+        {
+            strKey = strKey.substring( 1 );
+        }
+        while ( strKey.endsWith( "/" ) )
+        {
+            strKey = strKey.substring( 0, strKey.length( ) - 1 );
+        }
+        return strKey;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * This is the test class for the token cache, run against the in-process Vault stub
+ */
+public class VaultTokenCacheTest extends LuteceTestCase
+{
+    private static final String ACCESSOR = "accessor1";
+    private static final String TOKEN = "token1";
+    private static final String TOKEN_REFUSED1 = "refused1";
+    private static final String TOKEN_REFUSED2 = "refused2";
+    private static final String TOKEN_REFUSED3 = "refused3";
+
+    private VaultStubServer _stub;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _stub = VaultStubServer.getSharedInstance( );
+        _stub.reset( );
+        VaultCircuitBreaker.getInstance( ).reset( );
+        _stub.putToken( ACCESSOR, TOKEN );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        _stub.reset( );
+        super.tearDown( );
+    }
+
+    /**
+     * test accepted and refused tokens are both looked up once
+     */
+    public void testLookup( ) throws VaultException
+    {
+        VaultTokenCache cache = new VaultTokenCache( 60000, 60000, 10 );
+
+        assertEquals( ACCESSOR, cache.getAccessor( TOKEN ) );
+        assertNull( cache.getAccessor( TOKEN_REFUSED1 ) );
+        long lRequests = _stub.getRequestCount( );
+        assertEquals( ACCESSOR, cache.getAccessor( TOKEN ) );
+        assertNull( cache.getAccessor( TOKEN_REFUSED1 ) );
+        assertEquals( lRequests, _stub.getRequestCount( ) );
+        assertEquals( 2, cache.getEntryCount( ) );
+
+        cache.invalidate( ACCESSOR );
+        assertEquals( 1, cache.getEntryCount( ) );
+        assertEquals( ACCESSOR, cache.getAccessor( TOKEN ) );
+        assertEquals( lRequests + 1, _stub.getRequestCount( ) );
+    }
+
+    /**
+     * test the expired entries are purged, and the least recently used evicted beyond the maximum
+     */
+    public void testExpiryAndEviction( ) throws Exception
+    {
+        VaultTokenCache cache = new VaultTokenCache( 60000, 50, 2 );
+        cache.getAccessor( TOKEN_REFUSED1 );
+        cache.getAccessor( TOKEN );
+        cache.getAccessor( TOKEN_REFUSED2 );
+        cache.getAccessor( TOKEN );
+        cache.getAccessor( TOKEN_REFUSED3 );
+        assertEquals( 2, cache.getEntryCount( ) );
+
+        // The accepted token was used after the second refused one : it is kept, and the refused ones evicted
+        long lRequests = _stub.getRequestCount( );
+        assertEquals( ACCESSOR, cache.getAccessor( TOKEN ) );
+        assertEquals( lRequests, _stub.getRequestCount( ) );
+
+        Thread.sleep( 100 );
+        assertEquals( 1, cache.purgeExpired( ) );
+        assertEquals( 1, cache.getEntryCount( ) );
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.service;
+
+import com.bettercloud.vault.VaultException;
+import com.bettercloud.vault.api.Auth;
+import fr.paris.lutece.plugins.vault.business.Environnement;
+import fr.paris.lutece.plugins.vault.business.EnvironnementToken;
+import fr.paris.lutece.plugins.vault.rs.VaultAPI;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This is the test class for the lease and renewal of the environment tokens, run against the in-process Vault stub
+ */
+public class VaultTokenRenewalServiceTest extends LuteceTestCase
+{
+    private static final String APPLICATION_CODE = "renewalapp";
+    private static final long LEASE = 3600;
+
+    private VaultStubServer _stub;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _stub = VaultStubServer.getSharedInstance( );
+        _stub.reset( );
+        VaultPolicyService.getInstance( ).clear( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        _stub.reset( );
+        super.tearDown( );
+    }
+
+    /**
+     * test the renewal dates fall in the jittered share of the lease and are spread
+     */
+    public void testRenewalTime( )
+    {
+        long lNow = System.currentTimeMillis( );
+        long lLeaseMillis = LEASE * 1000;
+        Set<Long> setTimes = new HashSet<>( );
+        for ( int i = 0; i < 100; i++ )
+        {
+            long lRenewal = VaultTokenRenewalService.getRenewalTime( lNow, LEASE );
+            assertTrue( lRenewal >= lNow + (long) ( lLeaseMillis * 0.56 ) );
+            assertTrue( lRenewal <= lNow + (long) ( lLeaseMillis * 0.76 ) );
+            setTimes.add( lRenewal );
+        }
+        assertTrue( setTimes.size( ) > 50 );
+
+        // A token that does not expire is checked again later
+        assertTrue( VaultTokenRenewalService.getRenewalTime( lNow, 0 ) > lNow );
+
+        EnvironnementToken token = VaultTokenRenewalService.newEnvironnementToken( 1, "accessor", LEASE );
+        assertTrue( token.getDateExpiration( ).getTime( ) >= lNow + lLeaseMillis );
+        assertTrue( token.getDateRenewal( ).before( token.getDateExpiration( ) ) );
+        assertNull( VaultTokenRenewalService.newEnvironnementToken( 1, "accessor", 0 ).getDateExpiration( ) );
+    }
+
+    /**
+     * test the tokens are created with the configured lease and renewed from their accessor
+     */
+    public void testRenewAccessor( ) throws VaultException
+    {
+        Auth.TokenRequest tokenRequest = new Auth.TokenRequest( );
+        VaultTokenRenewalService.applyLeaseOptions( tokenRequest );
+        assertEquals( Boolean.TRUE, tokenRequest.getRenewable( ) );
+
+        Environnement environnement = new Environnement( );
+        environnement.setId( 600001 );
+        environnement.setCode( "dev" );
+        environnement.setPath( EnvironnementUtil.getEnvironmentPath( APPLICATION_CODE, environnement.getCode( ) ) );
+        VaultService.getInstance( ).createEnvironnementToken( APPLICATION_CODE, environnement );
+        String strAccessor = VaultService.getInstance( ).getEnvAccessor( environnement.getId( ) );
+
+        assertEquals( LEASE, VaultAPI.renewTokenAccessor( APPLICATION_CODE, strAccessor, "1h" ) );
+        assertEquals( Long.valueOf( LEASE ), _stub.getTokenLease( strAccessor ) );
+        assertEquals( 1, _stub.getTokenRenewalCount( strAccessor ) );
+
+        // Without an increment, the token keeps its lease
+        assertEquals( LEASE, VaultAPI.renewTokenAccessor( APPLICATION_CODE, strAccessor, null ) );
+
+        _stub.getTokens( ).remove( strAccessor );
+        try
+        {
+            VaultAPI.renewTokenAccessor( APPLICATION_CODE, strAccessor, "1h" );
+            fail( "VaultException expected" );
+        }
+        catch( VaultException e )
+        {
+            assertEquals( 400, e.getHttpStatusCode( ) );
+        }
+    }
+}
@@ -43,6 +43,7 @@ import fr.paris.lutece.portal.service.admin.AdminAuthenticationService;
 import fr.paris.lutece.portal.service.security.UserNotSignedException;
 import java.util.List;
 import java.io.IOException;
+import fr.paris.lutece.plugins.vault.service.VaultStubServer;
 import fr.paris.lutece.test.LuteceTestCase;
 import fr.paris.lutece.portal.service.security.SecurityTokenService;
 import fr.paris.lutece.portal.web.LocalVariables;
@@ -61,6 +62,16 @@ public class EnvironnementJspBeanTest extends LuteceTestCase
     private static final int IDAPPLICATION1 = 1;
     private static final int IDAPPLICATION2 = 2;
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        VaultStubServer.getSharedInstance( );
+    }
+
     public void testJspBeans( ) throws AccessDeniedException, IOException, VaultException
     {
         MockHttpServletRequest request = new MockHttpServletRequest( );
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.vault.web;
+
+import fr.paris.lutece.test.LuteceTestCase;
+import fr.paris.lutece.util.url.UrlItem;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This is the test class for the keyset paginator, over an in-memory list of ids
+ */
+public class KeysetPaginatorTest extends LuteceTestCase
+{
+    private static final List<Integer> IDS = Arrays.asList( 2, 3, 5, 8, 13, 21, 34 );
+    private static final String URL = "jsp/admin/plugins/vault/ManageApplications.jsp";
+
+    private int _nLoadedItems;
+
+    /**
+     * test the pages are walked forward and backward from the ids of their bounds
+     */
+    public void testPages( )
+    {
+        KeysetPaginator<Integer> paginator = getPage( null, null );
+        assertEquals( Arrays.asList( 2, 3, 5 ), paginator.getPageItems( ) );
+        assertFalse( paginator.isPreviousPage( ) );
+        assertTrue( paginator.isNextPage( ) );
+        assertEquals( URL + "?items_per_page=3&after=5", paginator.getNextPageUrl( ) );
+
+        paginator = getPage( "5", null );
+        assertEquals( Arrays.asList( 8, 13, 21 ), paginator.getPageItems( ) );
+        assertTrue( paginator.isPreviousPage( ) );
+        assertTrue( paginator.isNextPage( ) );
+        assertEquals( URL + "?items_per_page=3&before=8", paginator.getPreviousPageUrl( ) );
+
+        paginator = getPage( "21", null );
+        assertEquals( Collections.singletonList( 34 ), paginator.getPageItems( ) );
+        assertFalse( paginator.isNextPage( ) );
+
+        // Only the page and one more item are loaded, whatever the size of the list
+        assertTrue( _nLoadedItems <= 4 );
+
+        paginator = getPage( null, "8" );
+        assertEquals( Arrays.asList( 2, 3, 5 ), paginator.getPageItems( ) );
+        assertFalse( paginator.isPreviousPage( ) );
+        assertTrue( paginator.isNextPage( ) );
+
+        paginator = getPage( null, "21" );
+        assertEquals( Arrays.asList( 5, 8, 13 ), paginator.getPageItems( ) );
+        assertTrue( paginator.isPreviousPage( ) );
+        assertEquals( URL + "?items_per_page=3&before=5", paginator.getPreviousPageUrl( ) );
+        assertEquals( URL + "?items_per_page=3&after=13", paginator.getNextPageUrl( ) );
+
+        // A page emptied meanwhile still links back to the items before it
+        paginator = getPage( "34", null );
+        assertTrue( paginator.getPageItems( ).isEmpty( ) );
+        assertTrue( paginator.isPreviousPage( ) );
+        assertEquals( URL + "?items_per_page=3&before=35", paginator.getPreviousPageUrl( ) );
+
+        assertEquals( Arrays.asList( 2, 3, 5 ), getPage( "x", null ).getPageItems( ) );
+    }
+
+    private KeysetPaginator<Integer> getPage( String strAfter, String strBefore )
+    {
+        MockHttpServletRequest request = new MockHttpServletRequest( );
+        if ( strAfter != null )
+        {
+            request.addParameter( KeysetPaginator.PARAMETER_AFTER, strAfter );
+        }
+        if ( strBefore != null )
+        {
+            request.addParameter( KeysetPaginator.PARAMETER_BEFORE, strBefore );
+        }
+        _nLoadedItems = 0;
+        return new KeysetPaginator<>( request, this::load, Integer::intValue, 3, new UrlItem( URL ) );
+    }
+
+    /**
+     * Loads like the DAO : ascending after the id, descending before it, then in ascending order like the home
+     */
+    private List<Integer> load( int nIdFrom, boolean bForward, int nLimit )
+    {
+        List<Integer> listIds = new ArrayList<>( IDS );
+        if ( !bForward )
+        {
+            Collections.reverse( listIds );
+        }
+        List<Integer> listPage = listIds.stream( ).filter( n -> bForward ? n > nIdFrom : n < nIdFrom ).limit( nLimit ).collect( Collectors.toList( ) );
+        if ( !bForward )
+        {
+            Collections.reverse( listPage );
+        }
+        _nLoadedItems += listPage.size( );
+        return listPage;
+    }
+}
@@ -45,6 +45,7 @@ import fr.paris.lutece.portal.service.security.UserNotSignedException;
 import java.util.List;
 import java.io.IOException;
 
+import fr.paris.lutece.plugins.vault.service.VaultStubServer;
 import fr.paris.lutece.test.LuteceTestCase;
 import fr.paris.lutece.portal.service.security.SecurityTokenService;
 import fr.paris.lutece.portal.web.LocalVariables;
@@ -64,6 +65,16 @@ public class PropertiesJspBeanTest extends LuteceTestCase
     private static final int IDENVIRONNEMENT1 = 1;
     private static final int IDENVIRONNEMENT2 = 2;
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        VaultStubServer.getSharedInstance( );
+    }
+
     public void testJspBeans( ) throws AccessDeniedException, IOException
     {
         MockHttpServletRequest request = new MockHttpServletRequest( );
@@ -112,6 +123,12 @@ public class PropertiesJspBeanTest extends LuteceTestCase
             fail( "user not signed in" );
         }
 
+        // reveal the value of the created Properties
+        request = new MockHttpServletRequest( );
+        request.addParameter( "idEnv", String.valueOf( IDENVIRONNEMENT1 ) );
+        request.addParameter( "key", KEY1 );
+        assertTrue( jspbean.getPropertyValueJson( request ).contains( VALUE1 ) );
+
         // display modify Properties JSP
         request = new MockHttpServletRequest( );
         request.addParameter( "key", KEY1 );
@@ -0,0 +1 @@
+<%@ page trimDirectiveWhitespaces="true" %><jsp:useBean id="manageapplicationProperties" scope="session" class="fr.paris.lutece.plugins.vault.web.PropertiesJspBean" /><% manageapplicationProperties.init( request, fr.paris.lutece.plugins.vault.web.AbstractManageApplicationJspBean.RIGHT_MANAGEAPPLICATION ); manageapplicationProperties.doExportProperties( request, response ); %>
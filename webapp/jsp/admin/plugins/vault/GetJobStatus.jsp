@@ -0,0 +1 @@
+<%@ page contentType="application/json; charset=UTF-8" %><jsp:useBean id="manageapplicationEnvironnement" scope="session" class="fr.paris.lutece.plugins.vault.web.EnvironnementJspBean" /><% manageapplicationEnvironnement.init( request, fr.paris.lutece.plugins.vault.web.AbstractManageApplicationJspBean.RIGHT_MANAGEAPPLICATION ); %><%= manageapplicationEnvironnement.getJobStatusJson( request ) %>